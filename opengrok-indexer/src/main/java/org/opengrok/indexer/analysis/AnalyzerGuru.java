@@ -30,6 +30,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.Reader;
+import java.io.StringReader;
 import java.io.Writer;
 import java.lang.reflect.InvocationTargetException;
 import java.nio.charset.StandardCharsets;
@@ -47,6 +48,9 @@ import java.util.TreeMap;
 import java.util.TreeSet;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.Tokenizer;
+import org.apache.lucene.analysis.sinks.TeeSinkTokenFilter;
 import org.apache.lucene.document.DateTools;
 import org.apache.lucene.document.Document;
 import org.apache.lucene.document.Field;
@@ -55,6 +59,7 @@ import org.apache.lucene.document.FieldType;
 import org.apache.lucene.document.SortedDocValuesField;
 import org.apache.lucene.document.StringField;
 import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.IndexableField;
 import org.apache.lucene.util.BytesRef;
 import org.opengrok.indexer.analysis.FileAnalyzerFactory.Matcher;
 import org.opengrok.indexer.analysis.ada.AdaAnalyzerFactory;
@@ -90,6 +95,7 @@ import org.opengrok.indexer.analysis.pascal.PascalAnalyzerFactory;
 import org.opengrok.indexer.analysis.perl.PerlAnalyzerFactory;
 import org.opengrok.indexer.analysis.php.PhpAnalyzerFactory;
 import org.opengrok.indexer.analysis.plain.PlainAnalyzerFactory;
+import org.opengrok.indexer.analysis.plain.PlainFullTokenizer;
 import org.opengrok.indexer.analysis.plain.XMLAnalyzerFactory;
 import org.opengrok.indexer.analysis.powershell.PowershellAnalyzerFactory;
 import org.opengrok.indexer.analysis.python.PythonAnalyzerFactory;
@@ -596,6 +602,9 @@ public class AnalyzerGuru {
                     doc.add(new TextField(QueryBuilder.HIST, hr));
                     History history;
                     if ((history = histGuru.getHistory(file)) != null) {
+                        if (RuntimeEnvironment.getInstance().isStoredHistoryEnabled()) {
+                            StoredHistory.addField(doc, history);
+                        }
                         List<HistoryEntry> historyEntries = history.getHistoryEntries(1, 0);
                         if (historyEntries.size() > 0) {
                             HistoryEntry histEntry = historyEntries.get(0);
@@ -636,13 +645,58 @@ public class AnalyzerGuru {
             if (g == AbstractAnalyzer.Genre.PLAIN || g == AbstractAnalyzer.Genre.XREFABLE || g == AbstractAnalyzer.Genre.HTML) {
                 doc.add(new Field(QueryBuilder.T, g.typeName(), string_ft_stored_nanalyzed_norms));
             }
-            fa.analyze(doc, StreamSource.fromFile(file), xrefOut);
+            StreamSource src = StreamSource.fromFile(file,
+                    RuntimeEnvironment.getInstance().getSingleReadSizeLimit());
+            fa.analyze(doc, src, xrefOut);
+            if (RuntimeEnvironment.getInstance().isStoredTextEnabled() &&
+                    (g == AbstractAnalyzer.Genre.PLAIN || g == AbstractAnalyzer.Genre.XREFABLE)) {
+                StoredText.addFields(doc, src, project);
+            }
+            if (RuntimeEnvironment.getInstance().isTrigramIndexEnabled()) {
+                addTrigramFields(doc);
+            }
 
             String type = fa.getFileTypeName();
             doc.add(new StringField(QueryBuilder.TYPE, type, Store.YES));
         }
     }
 
+    /**
+     * Index the tokens of the {@link QueryBuilder#FULL} fields also as
+     * trigrams in {@link QueryBuilder#FULL_TRIGRAMS}, see {@link TrigramFilter}.
+     * Each full field is replaced with one which passes its tokens on to the
+     * trigram field added right after it, so the text is tokenized only once.
+     */
+    private static void addTrigramFields(Document doc) {
+        IndexableField[] fullFields = doc.getFields(QueryBuilder.FULL);
+        if (fullFields.length == 0) {
+            return;
+        }
+        doc.removeFields(QueryBuilder.FULL);
+        for (IndexableField full : fullFields) {
+            TeeSinkTokenFilter tee = new TeeSinkTokenFilter(getFullTokenStream(full));
+            doc.add(new OGKTextField(QueryBuilder.FULL, tee));
+            doc.add(new OGKTextField(QueryBuilder.FULL_TRIGRAMS, new TrigramFilter(tee.newSinkTokenStream())));
+        }
+    }
+
+    /**
+     * Get the token stream of a {@link QueryBuilder#FULL} field in the same way
+     * as the index writer would.
+     */
+    private static TokenStream getFullTokenStream(IndexableField full) {
+        if (full instanceof Field && ((Field) full).tokenStreamValue() != null) {
+            return ((Field) full).tokenStreamValue();
+        }
+        Reader reader = full.readerValue();
+        if (reader == null) {
+            reader = new StringReader(full.stringValue());
+        }
+        Tokenizer tokenizer = new JFlexTokenizer(new PlainFullTokenizer(AbstractAnalyzer.DUMMY_READER));
+        tokenizer.setReader(reader);
+        return tokenizer;
+    }
+
     /**
      * Write a browse-able version of the file.
      *
@@ -0,0 +1,123 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License (the "License").
+ * You may not use this file except in compliance with the License.
+ *
+ * See LICENSE.txt included in this distribution for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at LICENSE.txt.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information: Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ */
+
+/*
+ * Copyright (c) 2021, Oracle and/or its affiliates. All rights reserved.
+ */
+package org.opengrok.indexer.analysis;
+
+import org.apache.lucene.store.ByteArrayDataInput;
+import org.apache.lucene.store.DataOutput;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+/**
+ * Represents a container for helpers shared by the compact binary formats of
+ * the stored fields, i.e. {@link DefinitionsCodec} and {@link ScopesCodec}.
+ * <p>
+ * Strings are kept in a dictionary of distinct values written ahead of the
+ * data, and are referred to by their index plus one so that zero can stand for
+ * {@code null}.
+ */
+final class CodecUtil {
+
+    private CodecUtil() {
+    }
+
+    static boolean hasMagic(byte[] bytes, byte[] magic) {
+        if (bytes == null || bytes.length < magic.length) {
+            return false;
+        }
+        for (int i = 0; i < magic.length; i++) {
+            if (bytes[i] != magic[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    static void addString(Map<String, Integer> dictionary, String str) {
+        if (str != null) {
+            dictionary.putIfAbsent(str, dictionary.size());
+        }
+    }
+
+    static void writeDictionary(DataOutput out, Map<String, Integer> dictionary) throws IOException {
+        out.writeVInt(dictionary.size());
+        for (String str : dictionary.keySet()) {
+            byte[] bytes = str.getBytes(StandardCharsets.UTF_8);
+            out.writeVInt(bytes.length);
+            out.writeBytes(bytes, 0, bytes.length);
+        }
+    }
+
+    static void writeStringRef(DataOutput out, Map<String, Integer> dictionary, String str)
+            throws IOException {
+        out.writeVInt(str == null ? 0 : dictionary.get(str) + 1);
+    }
+
+    static String[] readDictionary(ByteArrayDataInput in) throws IOException {
+        String[] dictionary = new String[readCount(in)];
+        for (int i = 0; i < dictionary.length; i++) {
+            byte[] bytes = new byte[readCount(in)];
+            in.readBytes(bytes, 0, bytes.length);
+            dictionary[i] = new String(bytes, StandardCharsets.UTF_8);
+        }
+        return dictionary;
+    }
+
+    /**
+     * Skips over the dictionary without decoding any string.
+     * @return array of position and length in bytes of each string
+     */
+    static int[] skipDictionary(ByteArrayDataInput in) throws IOException {
+        int[] offsets = new int[2 * readCount(in)];
+        for (int i = 0; i < offsets.length; i += 2) {
+            offsets[i + 1] = readCount(in);
+            offsets[i] = in.getPosition();
+            in.skipBytes(offsets[i + 1]);
+        }
+        return offsets;
+    }
+
+    static String readStringRef(ByteArrayDataInput in, String[] dictionary) throws IOException {
+        int ref = in.readVInt();
+        return ref == 0 ? null : dictionary[ref - 1];
+    }
+
+    static String readStringRef(ByteArrayDataInput in, byte[] bytes, int[] offsets)
+            throws IOException {
+        int ref = in.readVInt();
+        if (ref == 0) {
+            return null;
+        }
+        int i = 2 * (ref - 1);
+        return new String(bytes, offsets[i], offsets[i + 1], StandardCharsets.UTF_8);
+    }
+
+    private static int readCount(ByteArrayDataInput in) throws IOException {
+        int count = in.readVInt();
+        if (count < 0) {
+            throw new IOException("Invalid count " + count);
+        }
+        return count;
+    }
+}
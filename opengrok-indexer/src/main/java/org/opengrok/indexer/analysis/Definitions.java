@@ -26,12 +26,12 @@ package org.opengrok.indexer.analysis;
 import org.opengrok.indexer.util.WhitelistObjectInputFilter;
 
 import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.ObjectInputFilter;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.Serializable;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -78,6 +78,12 @@ public class Definitions implements Serializable {
      */
     private final List<Tag> tags;
 
+    /**
+     * Compact binary representation of the tags which have not been decoded
+     * yet, see {@link #deserialize(byte[])}.
+     */
+    private transient byte[] encoded;
+
     public Definitions() {
         symbols = new HashMap<>();
         line_maps = new HashMap<>();
@@ -88,6 +94,7 @@ public class Definitions implements Serializable {
      * Reset all {@link Tag#used} values to {@code false}.
      */
     public void resetUnused() {
+        materialize();
         for (Tag tag : tags) {
             tag.used = false;
         }
@@ -99,6 +106,7 @@ public class Definitions implements Serializable {
      * @return a set containing all the symbols
      */
     public Set<String> getSymbols() {
+        materialize();
         return symbols.keySet();
     }
 
@@ -109,6 +117,7 @@ public class Definitions implements Serializable {
      * @return {@code true} if there is a tag for {@code symbol}
      */
     public boolean hasSymbol(String symbol) {
+        materialize();
         return symbols.containsKey(symbol);
     }
 
@@ -121,6 +130,7 @@ public class Definitions implements Serializable {
      * @return {@code true} if {@code symbol} is defined on the specified line
      */
     public boolean hasDefinitionAt(String symbol, int lineNumber, String[] strs) {
+        materialize();
         Set<Integer> lines = symbols.get(symbol);
         if (strs.length > 0) {
             strs[0] = "none";
@@ -154,6 +164,7 @@ public class Definitions implements Serializable {
      * @return the number of times the specified symbol is defined
      */
     public int occurrences(String symbol) {
+        materialize();
         Set<Integer> lines = symbols.get(symbol);
         return lines == null ? 0 : lines.size();
     }
@@ -164,6 +175,7 @@ public class Definitions implements Serializable {
      * @return number of distinct symbols
      */
     public int numberOfSymbols() {
+        materialize();
         return symbols.size();
     }
 
@@ -173,6 +185,7 @@ public class Definitions implements Serializable {
      * @return all tags
      */
     public List<Tag> getTags() {
+        materialize();
         return tags;
     }
 
@@ -183,6 +196,14 @@ public class Definitions implements Serializable {
      * @return list of tags
      */
     public List<Tag> getTags(int line) {
+        if (encoded != null) {
+            try {
+                return DefinitionsCodec.decodeLine(encoded, line);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
         LineTagMap line_map = line_maps.get(line);
         List<Tag> result = null;
 
@@ -266,6 +287,7 @@ public class Definitions implements Serializable {
 
     public void addTag(int line, String symbol, String type, String text,
             String namespace, String signature, int lineStart, int lineEnd) {
+        materialize();
         Tag new_tag = new Tag(line, symbol, type, text, namespace, signature,
             lineStart, lineEnd);
         tags.add(new_tag);
@@ -293,6 +315,26 @@ public class Definitions implements Serializable {
         ltags.add(new_tag);
     }
 
+    /**
+     * Decode the tags kept in {@link #encoded} so that the maps can be used.
+     */
+    private void materialize() {
+        if (encoded != null) {
+            byte[] bytes = encoded;
+            encoded = null;
+            try {
+                DefinitionsCodec.decode(bytes, this);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        materialize();
+        out.defaultWriteObject();
+    }
+
     /**
      * Create a binary representation of this object.
      *
@@ -300,14 +342,19 @@ public class Definitions implements Serializable {
      * @throws IOException if an error happens when writing to the array
      */
     public byte[] serialize() throws IOException {
-        try (ByteArrayOutputStream bytes = new ByteArrayOutputStream(); var oos = new ObjectOutputStream(bytes)) {
-            oos.writeObject(this);
-            return bytes.toByteArray();
+        if (encoded != null) {
+            return encoded.clone();
         }
+        return DefinitionsCodec.encode(this);
     }
 
     /**
      * De-serialize a binary representation of a {@code Definitions} object.
+     * <p>
+     * The compact representation produced by {@link #serialize()} is decoded
+     * lazily: {@link #getTags(int)} looks up only the tags of the given line
+     * and the whole object is decoded on first use of any other method.
+     * Java serialized objects written by older versions are still accepted.
      *
      * @param bytes a byte array containing the {@code Definitions} object
      * @return a {@code Definitions} object
@@ -318,6 +365,11 @@ public class Definitions implements Serializable {
      * type than {@code Definitions}
      */
     public static Definitions deserialize(byte[] bytes) throws IOException, ClassNotFoundException {
+        if (DefinitionsCodec.isEncoded(bytes)) {
+            Definitions defs = new Definitions();
+            defs.encoded = bytes;
+            return defs;
+        }
         try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
             in.setObjectInputFilter(serialFilter);
             return (Definitions) in.readObject();
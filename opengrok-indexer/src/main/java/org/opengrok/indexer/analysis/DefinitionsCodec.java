@@ -0,0 +1,204 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License (the "License").
+ * You may not use this file except in compliance with the License.
+ *
+ * See LICENSE.txt included in this distribution for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at LICENSE.txt.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information: Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ */
+
+/*
+ * Copyright (c) 2021, Oracle and/or its affiliates. All rights reserved.
+ */
+package org.opengrok.indexer.analysis;
+
+import org.apache.lucene.store.ByteArrayDataInput;
+import org.apache.lucene.store.ByteBuffersDataOutput;
+import org.opengrok.indexer.analysis.Definitions.Tag;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Represents the compact binary format of {@link Definitions} stored in the
+ * {@code TAGS} field.
+ * <p>
+ * The format is a header of {@link #MAGIC} followed by a dictionary of all
+ * the distinct strings of the tags, the total number of tags and then the tags
+ * grouped by line in ascending order. Each group starts with the line delta,
+ * the number of tags and the length in bytes of the group so that a single
+ * line can be looked up by skipping over the other groups. Each tag refers to
+ * the dictionary by index and carries its ordinal within
+ * {@link Definitions#getTags()} so that the original order can be restored.
+ * All numbers are variable-length integers.
+ */
+final class DefinitionsCodec {
+
+    /**
+     * Leading bytes of the format, the last one being its version.
+     */
+    private static final byte[] MAGIC = {'O', 'G', 'D', 1};
+
+    private DefinitionsCodec() {
+    }
+
+    /**
+     * @param bytes serialized {@link Definitions}
+     * @return a value indicating if {@code bytes} are in this format (as
+     * opposed to Java object serialization used previously)
+     */
+    static boolean isEncoded(byte[] bytes) {
+        return CodecUtil.hasMagic(bytes, MAGIC);
+    }
+
+    static byte[] encode(Definitions defs) throws IOException {
+        List<Tag> tags = defs.getTags();
+        Map<String, Integer> dictionary = new LinkedHashMap<>();
+        TreeMap<Integer, List<Integer>> byLine = new TreeMap<>();
+        for (int i = 0; i < tags.size(); i++) {
+            Tag tag = tags.get(i);
+            CodecUtil.addString(dictionary, tag.symbol);
+            CodecUtil.addString(dictionary, tag.type);
+            CodecUtil.addString(dictionary, tag.text);
+            CodecUtil.addString(dictionary, tag.namespace);
+            CodecUtil.addString(dictionary, tag.signature);
+            byLine.computeIfAbsent(tag.line, k -> new ArrayList<>()).add(i);
+        }
+
+        ByteBuffersDataOutput out = new ByteBuffersDataOutput();
+        out.writeBytes(MAGIC, 0, MAGIC.length);
+        CodecUtil.writeDictionary(out, dictionary);
+        out.writeVInt(tags.size());
+        out.writeVInt(byLine.size());
+
+        ByteBuffersDataOutput group = new ByteBuffersDataOutput();
+        int prevLine = 0;
+        for (Map.Entry<Integer, List<Integer>> entry : byLine.entrySet()) {
+            group.reset();
+            for (int ordinal : entry.getValue()) {
+                Tag tag = tags.get(ordinal);
+                group.writeVInt(ordinal);
+                CodecUtil.writeStringRef(group, dictionary, tag.symbol);
+                CodecUtil.writeStringRef(group, dictionary, tag.type);
+                CodecUtil.writeStringRef(group, dictionary, tag.text);
+                CodecUtil.writeStringRef(group, dictionary, tag.namespace);
+                CodecUtil.writeStringRef(group, dictionary, tag.signature);
+                group.writeZInt(tag.lineStart);
+                group.writeZInt(tag.lineEnd);
+            }
+            int line = entry.getKey();
+            out.writeZInt(line - prevLine);
+            out.writeVInt(entry.getValue().size());
+            byte[] groupBytes = group.toArrayCopy();
+            out.writeVInt(groupBytes.length);
+            out.writeBytes(groupBytes, 0, groupBytes.length);
+            prevLine = line;
+        }
+        return out.toArrayCopy();
+    }
+
+    /**
+     * Decodes all the tags of {@code bytes} into {@code defs} in their
+     * original order.
+     */
+    static void decode(byte[] bytes, Definitions defs) throws IOException {
+        ByteArrayDataInput in = new ByteArrayDataInput(bytes);
+        in.skipBytes(MAGIC.length);
+        String[] dictionary = CodecUtil.readDictionary(in);
+        Tag[] tags = new Tag[in.readVInt()];
+        int lineCount = in.readVInt();
+        int line = 0;
+        for (int i = 0; i < lineCount; i++) {
+            line += in.readZInt();
+            int tagCount = in.readVInt();
+            in.readVInt(); // group length
+            for (int j = 0; j < tagCount; j++) {
+                int ordinal = in.readVInt();
+                if (ordinal >= tags.length) {
+                    throw new IOException("Invalid tag ordinal " + ordinal);
+                }
+                tags[ordinal] = readTag(in, line, dictionary);
+            }
+        }
+        for (Tag tag : tags) {
+            if (tag == null) {
+                throw new IOException("Missing tag in encoded definitions");
+            }
+            defs.addTag(tag.line, tag.symbol, tag.type, tag.text, tag.namespace,
+                    tag.signature, tag.lineStart, tag.lineEnd);
+        }
+    }
+
+    /**
+     * Decodes only the tags of {@code bytes} which are on the specified line,
+     * skipping over the tags of other lines and resolving only the strings
+     * which are referenced.
+     * @return list of tags in their original order or {@code null} if there
+     * are no tags on {@code lineNumber}
+     */
+    static List<Tag> decodeLine(byte[] bytes, int lineNumber) throws IOException {
+        ByteArrayDataInput in = new ByteArrayDataInput(bytes);
+        in.skipBytes(MAGIC.length);
+        int[] offsets = CodecUtil.skipDictionary(in);
+        in.readVInt(); // total number of tags
+        int lineCount = in.readVInt();
+        int line = 0;
+        for (int i = 0; i < lineCount; i++) {
+            line += in.readZInt();
+            int tagCount = in.readVInt();
+            int length = in.readVInt();
+            if (line < lineNumber) {
+                in.skipBytes(length);
+            } else if (line > lineNumber) {
+                break;
+            } else {
+                // Tags of a line are encoded in ascending order of ordinal.
+                List<Tag> result = new ArrayList<>(tagCount);
+                for (int j = 0; j < tagCount; j++) {
+                    in.readVInt(); // ordinal
+                    result.add(readTag(in, line, bytes, offsets));
+                }
+                return result;
+            }
+        }
+        return null;
+    }
+
+    private static Tag readTag(ByteArrayDataInput in, int line, String[] dictionary)
+            throws IOException {
+        String symbol = CodecUtil.readStringRef(in, dictionary);
+        String type = CodecUtil.readStringRef(in, dictionary);
+        String text = CodecUtil.readStringRef(in, dictionary);
+        String namespace = CodecUtil.readStringRef(in, dictionary);
+        String signature = CodecUtil.readStringRef(in, dictionary);
+        int lineStart = in.readZInt();
+        int lineEnd = in.readZInt();
+        return new Tag(line, symbol, type, text, namespace, signature, lineStart, lineEnd);
+    }
+
+    private static Tag readTag(ByteArrayDataInput in, int line, byte[] bytes, int[] offsets)
+            throws IOException {
+        String symbol = CodecUtil.readStringRef(in, bytes, offsets);
+        String type = CodecUtil.readStringRef(in, bytes, offsets);
+        String text = CodecUtil.readStringRef(in, bytes, offsets);
+        String namespace = CodecUtil.readStringRef(in, bytes, offsets);
+        String signature = CodecUtil.readStringRef(in, bytes, offsets);
+        int lineStart = in.readZInt();
+        int lineEnd = in.readZInt();
+        return new Tag(line, symbol, type, text, namespace, signature, lineStart, lineEnd);
+    }
+}
@@ -25,11 +25,9 @@ package org.opengrok.indexer.analysis;
 import org.opengrok.indexer.util.WhitelistObjectInputFilter;
 
 import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.ObjectInputFilter;
 import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 import java.io.Serializable;
 import java.util.TreeSet;
 
@@ -157,23 +155,25 @@ public class Scopes implements Serializable {
      * @throws IOException if an error happens when writing to the array
      */
     public byte[] serialize() throws IOException {
-        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
-        new ObjectOutputStream(bytes).writeObject(this);
-        return bytes.toByteArray();
+        return ScopesCodec.encode(scopes);
     }
 
     /**
-     * De-serialize a binary representation of a {@code Definitions} object.
+     * De-serialize a binary representation of a {@code Scopes} object.
+     * Java serialized objects written by older versions are still accepted.
      *
-     * @param bytes a byte array containing the {@code Definitions} object
-     * @return a {@code Definitions} object
+     * @param bytes a byte array containing the {@code Scopes} object
+     * @return a {@code Scopes} object
      * @throws IOException if an I/O error happens when reading the array
      * @throws ClassNotFoundException if the class definition for an object
      * stored in the byte array cannot be found
      * @throws ClassCastException if the array contains an object of another
-     * type than {@code Definitions}
+     * type than {@code Scopes}
      */
     public static Scopes deserialize(byte[] bytes) throws IOException, ClassNotFoundException {
+        if (ScopesCodec.isEncoded(bytes)) {
+            return ScopesCodec.decode(bytes);
+        }
         try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
             in.setObjectInputFilter(serialFilter);
             return (Scopes) in.readObject();
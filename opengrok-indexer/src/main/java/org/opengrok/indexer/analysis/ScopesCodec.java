@@ -0,0 +1,104 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License (the "License").
+ * You may not use this file except in compliance with the License.
+ *
+ * See LICENSE.txt included in this distribution for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at LICENSE.txt.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information: Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ */
+
+/*
+ * Copyright (c) 2021, Oracle and/or its affiliates. All rights reserved.
+ */
+package org.opengrok.indexer.analysis;
+
+import org.apache.lucene.store.ByteArrayDataInput;
+import org.apache.lucene.store.ByteBuffersDataOutput;
+import org.opengrok.indexer.analysis.Scopes.Scope;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Represents the compact binary format of {@link Scopes} stored in the
+ * {@code SCOPES} field.
+ * <p>
+ * The format is a header of {@link #MAGIC} followed by a dictionary of all
+ * the distinct strings of the scopes and then the scopes in ascending order of
+ * their starting line, each as the delta from the previous starting line, the
+ * number of lines to the ending line and references into the dictionary.
+ * All numbers are variable-length integers.
+ */
+final class ScopesCodec {
+
+    /**
+     * Leading bytes of the format, the last one being its version.
+     */
+    private static final byte[] MAGIC = {'O', 'G', 'S', 1};
+
+    private ScopesCodec() {
+    }
+
+    /**
+     * @param bytes serialized {@link Scopes}
+     * @return a value indicating if {@code bytes} are in this format (as
+     * opposed to Java object serialization used previously)
+     */
+    static boolean isEncoded(byte[] bytes) {
+        return CodecUtil.hasMagic(bytes, MAGIC);
+    }
+
+    static byte[] encode(Collection<Scope> scopes) throws IOException {
+        Map<String, Integer> dictionary = new LinkedHashMap<>();
+        for (Scope scope : scopes) {
+            CodecUtil.addString(dictionary, scope.getName());
+            CodecUtil.addString(dictionary, scope.getNamespace());
+            CodecUtil.addString(dictionary, scope.getSignature());
+        }
+
+        ByteBuffersDataOutput out = new ByteBuffersDataOutput();
+        out.writeBytes(MAGIC, 0, MAGIC.length);
+        CodecUtil.writeDictionary(out, dictionary);
+        out.writeVInt(scopes.size());
+        int prevLine = 0;
+        for (Scope scope : scopes) {
+            out.writeZInt(scope.getLineFrom() - prevLine);
+            out.writeZInt(scope.getLineTo() - scope.getLineFrom());
+            CodecUtil.writeStringRef(out, dictionary, scope.getName());
+            CodecUtil.writeStringRef(out, dictionary, scope.getNamespace());
+            CodecUtil.writeStringRef(out, dictionary, scope.getSignature());
+            prevLine = scope.getLineFrom();
+        }
+        return out.toArrayCopy();
+    }
+
+    static Scopes decode(byte[] bytes) throws IOException {
+        ByteArrayDataInput in = new ByteArrayDataInput(bytes);
+        in.skipBytes(MAGIC.length);
+        String[] dictionary = CodecUtil.readDictionary(in);
+        int count = in.readVInt();
+        Scopes scopes = new Scopes();
+        int lineFrom = 0;
+        for (int i = 0; i < count; i++) {
+            lineFrom += in.readZInt();
+            int lineTo = lineFrom + in.readZInt();
+            String name = CodecUtil.readStringRef(in, dictionary);
+            String namespace = CodecUtil.readStringRef(in, dictionary);
+            String signature = CodecUtil.readStringRef(in, dictionary);
+            scopes.addScope(new Scope(lineFrom, lineTo, name, namespace, signature));
+        }
+        return scopes;
+    }
+}
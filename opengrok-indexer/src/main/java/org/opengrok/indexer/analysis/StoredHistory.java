@@ -0,0 +1,172 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License (the "License").
+ * You may not use this file except in compliance with the License.
+ *
+ * See LICENSE.txt included in this distribution for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at LICENSE.txt.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information: Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ */
+
+/*
+ * Copyright (c) 2021, Oracle and/or its affiliates. All rights reserved.
+ */
+package org.opengrok.indexer.analysis;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.StoredField;
+import org.apache.lucene.index.IndexableField;
+import org.apache.lucene.util.BytesRef;
+import org.opengrok.indexer.history.History;
+import org.opengrok.indexer.history.HistoryEntry;
+import org.opengrok.indexer.search.QueryBuilder;
+
+/**
+ * Stores the history entries of a file in its document in
+ * {@link QueryBuilder#STORED_HISTORY}, so that the matches of history searches
+ * can be shown without getting the complete history of the file from
+ * {@link org.opengrok.indexer.history.HistoryGuru}.
+ * <p>
+ * Only the revision, date, author and message of the entries, which make up
+ * the text indexed in {@link QueryBuilder#HIST}, are stored, compressed
+ * together. The entries are decompressed one at a time as they are iterated,
+ * so finding the first few matches does not decode the whole history.
+ */
+public final class StoredHistory {
+
+    /**
+     * Length written for a {@code null} string.
+     */
+    private static final int NULL = -1;
+
+    private StoredHistory() {
+    }
+
+    /**
+     * Store the entries of the history in the document.
+     * @param doc document of the file
+     * @param history history of the file
+     * @throws IOException if the entries cannot be compressed
+     */
+    public static void addField(Document doc, History history) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(new DeflaterOutputStream(bytes))) {
+            for (HistoryEntry entry : history.getHistoryEntries()) {
+                out.writeBoolean(true);
+                writeString(out, entry.getRevision());
+                Date date = entry.getDate();
+                out.writeBoolean(date != null);
+                out.writeLong(date == null ? 0 : date.getTime());
+                writeString(out, entry.getAuthor());
+                writeString(out, entry.getMessage());
+            }
+            out.writeBoolean(false);
+        }
+        doc.add(new StoredField(QueryBuilder.STORED_HISTORY, new BytesRef(bytes.toByteArray())));
+    }
+
+    /**
+     * Get the history entries stored in the document, newest first.
+     * @param doc document retrieved from the index
+     * @return iterator of the entries or {@code null} if the history is not
+     * stored. The iterator throws {@link UncheckedIOException} if the stored
+     * entries cannot be read.
+     */
+    public static Iterator<HistoryEntry> getEntries(Document doc) {
+        IndexableField field = doc.getField(QueryBuilder.STORED_HISTORY);
+        if (field == null) {
+            return null;
+        }
+        BytesRef bytes = field.binaryValue();
+        return new EntryIterator(new DataInputStream(new InflaterInputStream(
+                new ByteArrayInputStream(bytes.bytes, bytes.offset, bytes.length))));
+    }
+
+    private static void writeString(DataOutputStream out, String str) throws IOException {
+        if (str == null) {
+            out.writeInt(NULL);
+            return;
+        }
+        byte[] utf8 = str.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(utf8.length);
+        out.write(utf8);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length == NULL) {
+            return null;
+        }
+        byte[] utf8 = new byte[length];
+        in.readFully(utf8);
+        return new String(utf8, StandardCharsets.UTF_8);
+    }
+
+    private static final class EntryIterator implements Iterator<HistoryEntry> {
+        private final DataInputStream in;
+        private HistoryEntry next;
+        private boolean done;
+
+        private EntryIterator(DataInputStream in) {
+            this.in = in;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (next == null && !done) {
+                next = readNext();
+                done = next == null;
+            }
+            return next != null;
+        }
+
+        @Override
+        public HistoryEntry next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            HistoryEntry entry = next;
+            next = null;
+            return entry;
+        }
+
+        private HistoryEntry readNext() {
+            try {
+                if (!in.readBoolean()) {
+                    return null;
+                }
+                String revision = readString(in);
+                boolean hasDate = in.readBoolean();
+                long time = in.readLong();
+                Date date = hasDate ? new Date(time) : null;
+                String author = readString(in);
+                String message = readString(in);
+                return new HistoryEntry(revision, date, author, message == null ? "" : message, true);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,394 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License (the "License").
+ * You may not use this file except in compliance with the License.
+ *
+ * See LICENSE.txt included in this distribution for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at LICENSE.txt.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information: Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ */
+
+/*
+ * Copyright (c) 2021, Oracle and/or its affiliates. All rights reserved.
+ */
+package org.opengrok.indexer.analysis;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.StoredField;
+import org.apache.lucene.index.IndexableField;
+import org.apache.lucene.store.ByteArrayDataInput;
+import org.apache.lucene.store.ByteBuffersDataOutput;
+import org.apache.lucene.util.BytesRef;
+import org.opengrok.indexer.configuration.Project;
+import org.opengrok.indexer.search.QueryBuilder;
+import org.opengrok.indexer.util.IOUtils;
+
+/**
+ * Stores the text of a source file in its document in
+ * {@link QueryBuilder#STORED_TEXT}, so that the context of the search results
+ * can be produced without reading the file from the source root.
+ * <p>
+ * The text is split into blocks of at most {@link #BLOCK_SIZE} characters,
+ * each of them stored as a separate value of the field compressed on its own.
+ * The blocks end after a line break unless a line does not fit in a block.
+ * Each block starts with a header of variable length integers which holds
+ * whether the block continues the last line of the previous block, the tab
+ * size used when indexing the file, and the length and the number of line
+ * breaks of the block with the tabs expanded. The blocks are decompressed
+ * one at a time as the text is read, so reading only the start of a long text
+ * does not decompress the rest of it, and the highlighter decompresses only
+ * the blocks around the matches, see
+ * {@link #getExpandedText(Document, int, int[], int)}.
+ * <p>
+ * The stored text is the text read from the file in UTF-8 with any byte order
+ * mark stripped, i.e. with the tabs not yet expanded, the same as the text
+ * which the highlighter reads from the source root.
+ */
+public final class StoredText {
+
+    /**
+     * Maximum number of characters in a block.
+     */
+    static final int BLOCK_SIZE = 32 * 1024;
+
+    /**
+     * Header flag of a block which continues the last line of the previous block.
+     */
+    private static final int CONTINUES_LINE = 1;
+
+    private StoredText() {
+    }
+
+    /**
+     * Store the text of the source file in the document.
+     * @param doc document of the file
+     * @param src source of the file content
+     * @param project project of the file or {@code null}, which determines
+     * the tab size, see {@link ExpandTabsReader#wrap(Reader, Project)}
+     * @throws IOException if the file cannot be read
+     */
+    public static void addFields(Document doc, StreamSource src, Project project) throws IOException {
+        try (InputStream in = src.getStream();
+             Reader reader = IOUtils.createBOMStrippedReader(in, StandardCharsets.UTF_8.name())) {
+            addFields(doc, reader, project != null && project.hasTabSizeSetting() ? project.getTabSize() : 0);
+        }
+    }
+
+    /**
+     * Store the text read from the reader in the document.
+     * @param doc document of the file
+     * @param reader reader of the text
+     * @param tabSize tab size used for the other fields of the document,
+     * effective only if greater than zero
+     * @throws IOException if the text cannot be read
+     */
+    static void addFields(Document doc, Reader reader, int tabSize) throws IOException {
+        BlockWriter writer = new BlockWriter(doc, Math.max(tabSize, 0));
+        char[] block = new char[BLOCK_SIZE];
+        int length = 0;
+        int n;
+        while ((n = reader.read(block, length, block.length - length)) != -1) {
+            length += n;
+            if (length == block.length) {
+                int end = getBlockEnd(block, length);
+                writer.add(block, end);
+                System.arraycopy(block, end, block, 0, length - end);
+                length -= end;
+            }
+        }
+        if (length > 0 || !writer.added) {
+            // Always add at least one block so that an empty text is also known to be stored.
+            writer.add(block, length);
+        }
+    }
+
+    /**
+     * @return length of the block to store out of the full buffer, i.e. up to
+     * the last line break, or else without splitting a surrogate pair or
+     * a carriage return and line feed
+     */
+    private static int getBlockEnd(char[] block, int length) {
+        for (int i = length - 1; i >= 0; i--) {
+            if (block[i] == '\n' || (block[i] == '\r' && i < length - 1 && block[i + 1] != '\n')) {
+                return i + 1;
+            }
+        }
+        char last = block[length - 1];
+        return Character.isHighSurrogate(last) || last == '\r' ? length - 1 : length;
+    }
+
+    /**
+     * @param doc document retrieved from the index
+     * @return whether the document has the text of the file stored
+     */
+    public static boolean isStored(Document doc) {
+        return doc.getField(QueryBuilder.STORED_TEXT) != null;
+    }
+
+    /**
+     * Get a reader of the text stored in the document.
+     * @param doc document retrieved from the index
+     * @return reader of the text or {@code null} if the text is not stored
+     */
+    public static Reader getReader(Document doc) {
+        IndexableField[] blocks = doc.getFields(QueryBuilder.STORED_TEXT);
+        if (blocks.length == 0) {
+            return null;
+        }
+        return new BlockReader(blocks);
+    }
+
+    /**
+     * Get the text stored in the document with the tabs expanded, decompressing
+     * only the blocks which contain the offsets and the blocks around them
+     * with the given number of lines. The other blocks are replaced with
+     * spaces followed by as many line breaks as they have, so that the
+     * offsets and the line numbers of the text are kept.
+     * @param doc document retrieved from the index
+     * @param tabSize tab size to expand the tabs to, effective only if greater than zero
+     * @param offsets offsets in the text with the tabs expanded
+     * @param surroundLines number of lines to keep before and after the lines of the offsets
+     * @return text or {@code null} if the text is not stored or was stored with another tab size
+     * @throws IOException if the text cannot be decompressed
+     */
+    public static String getExpandedText(Document doc, int tabSize, int[] offsets, int surroundLines)
+            throws IOException {
+        IndexableField[] fields = doc.getFields(QueryBuilder.STORED_TEXT);
+        if (fields.length == 0) {
+            return null;
+        }
+        Block[] blocks = new Block[fields.length];
+        int[] starts = new int[fields.length];
+        int length = 0;
+        for (int i = 0; i < fields.length; i++) {
+            blocks[i] = new Block(fields[i].binaryValue());
+            if (blocks[i].tabSize != Math.max(tabSize, 0)) {
+                return null;
+            }
+            starts[i] = length;
+            length += blocks[i].expandedLength;
+        }
+
+        // Select the blocks of the lines of the offsets, including the continued lines.
+        boolean[] selected = new boolean[blocks.length];
+        for (int offset : offsets) {
+            int i = Arrays.binarySearch(starts, offset);
+            i = i >= 0 ? i : -i - 2;
+            if (i < 0 || offset > length) {
+                continue;
+            }
+            int first = i;
+            while (first > 0 && blocks[first].continuesLine) {
+                first--;
+            }
+            int last = i;
+            while (last + 1 < blocks.length && blocks[last + 1].continuesLine) {
+                last++;
+            }
+            // Add the blocks around until they have the surrounding lines.
+            for (int lines = 0; first > 0 && lines < surroundLines; ) {
+                lines += blocks[--first].lineBreaks;
+            }
+            while (first > 0 && blocks[first].continuesLine) {
+                first--;
+            }
+            for (int lines = 0; last + 1 < blocks.length && lines < surroundLines; ) {
+                lines += blocks[++last].lineBreaks;
+            }
+            while (last + 1 < blocks.length && blocks[last + 1].continuesLine) {
+                last++;
+            }
+            Arrays.fill(selected, first, last + 1, true);
+        }
+
+        StringBuilder text = new StringBuilder(length);
+        int i = 0;
+        while (i < blocks.length) {
+            if (selected[i]) {
+                // The selected blocks start at the start of a line so the tabs are expanded the same way.
+                StringBuilder raw = new StringBuilder();
+                int expandedLength = 0;
+                for (; i < blocks.length && selected[i]; i++) {
+                    raw.append(blocks[i].decompress());
+                    expandedLength += blocks[i].expandedLength;
+                }
+                int textLength = text.length();
+                try (Reader reader = ExpandTabsReader.wrap(new StringReader(raw.toString()), tabSize)) {
+                    char[] buf = new char[8192];
+                    int n;
+                    while ((n = reader.read(buf)) != -1) {
+                        text.append(buf, 0, n);
+                    }
+                }
+                if (text.length() - textLength != expandedLength) {
+                    throw new IOException("Stored text does not match its header");
+                }
+            } else {
+                for (int j = blocks[i].expandedLength - blocks[i].lineBreaks; j > 0; j--) {
+                    text.append(' ');
+                }
+                for (int j = blocks[i].lineBreaks; j > 0; j--) {
+                    text.append('\n');
+                }
+                i++;
+            }
+        }
+        return text.toString();
+    }
+
+    private static BytesRef compress(char[] chars, int length) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (Writer out = new OutputStreamWriter(new DeflaterOutputStream(bytes),
+                StandardCharsets.UTF_8)) {
+            out.write(chars, 0, length);
+        }
+        return new BytesRef(bytes.toByteArray());
+    }
+
+    private static String decompress(byte[] bytes, int offset, int length) throws IOException {
+        try (InputStream in = new InflaterInputStream(new ByteArrayInputStream(bytes, offset, length))) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * Adds the blocks to the document, keeping track of the position on the
+     * line with the tabs expanded across the blocks.
+     */
+    private static final class BlockWriter {
+        private final Document doc;
+        private final int tabSize;
+        private boolean added;
+        private boolean continuesLine;
+        private int column;
+
+        private BlockWriter(Document doc, int tabSize) {
+            this.doc = doc;
+            this.tabSize = tabSize;
+        }
+
+        void add(char[] chars, int length) throws IOException {
+            int expandedLength = 0;
+            int lineBreaks = 0;
+            for (int i = 0; i < length; i++) {
+                char c = chars[i];
+                if (c == '\t' && tabSize > 0) {
+                    int spaces = tabSize - (column % tabSize);
+                    column += spaces;
+                    expandedLength += spaces;
+                } else {
+                    if (c == '\n' || c == '\r') {
+                        column = 0;
+                        // A carriage return and line feed is a single line break.
+                        if (c == '\n' || i == length - 1 || chars[i + 1] != '\n') {
+                            lineBreaks++;
+                        }
+                    } else {
+                        column++;
+                    }
+                    expandedLength++;
+                }
+            }
+
+            ByteBuffersDataOutput out = new ByteBuffersDataOutput();
+            out.writeVInt(continuesLine ? CONTINUES_LINE : 0);
+            out.writeVInt(tabSize);
+            out.writeVInt(expandedLength);
+            out.writeVInt(lineBreaks);
+            BytesRef compressed = compress(chars, length);
+            out.writeBytes(compressed.bytes, compressed.offset, compressed.length);
+            doc.add(new StoredField(QueryBuilder.STORED_TEXT, out.toArrayCopy()));
+
+            added = true;
+            continuesLine = length > 0 && chars[length - 1] != '\n' && chars[length - 1] != '\r';
+        }
+    }
+
+    /**
+     * Stored block with its header read.
+     */
+    private static final class Block {
+        private final BytesRef bytes;
+        private final boolean continuesLine;
+        private final int tabSize;
+        private final int expandedLength;
+        private final int lineBreaks;
+        private final int dataOffset;
+
+        Block(BytesRef bytes) {
+            ByteArrayDataInput in = new ByteArrayDataInput(bytes.bytes, bytes.offset, bytes.length);
+            this.bytes = bytes;
+            this.continuesLine = (in.readVInt() & CONTINUES_LINE) != 0;
+            this.tabSize = in.readVInt();
+            this.expandedLength = in.readVInt();
+            this.lineBreaks = in.readVInt();
+            this.dataOffset = in.getPosition();
+        }
+
+        String decompress() throws IOException {
+            return StoredText.decompress(bytes.bytes, dataOffset, bytes.offset + bytes.length - dataOffset);
+        }
+    }
+
+    /**
+     * Reads the blocks of the text, decompressing each of them only once all
+     * the preceding text has been read.
+     */
+    private static final class BlockReader extends Reader {
+        private final IndexableField[] blocks;
+        private int nextBlock;
+        private String block = "";
+        private int position;
+
+        private BlockReader(IndexableField[] blocks) {
+            this.blocks = blocks;
+        }
+
+        @Override
+        public int read(char[] cbuf, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            while (position == block.length()) {
+                if (nextBlock == blocks.length) {
+                    return -1;
+                }
+                block = new Block(blocks[nextBlock++].binaryValue()).decompress();
+                position = 0;
+            }
+            int n = Math.min(len, block.length() - position);
+            block.getChars(position, position + n, cbuf, off);
+            position += n;
+            return n;
+        }
+
+        @Override
+        public void close() {
+            nextBlock = blocks.length;
+            block = "";
+            position = 0;
+        }
+    }
+}
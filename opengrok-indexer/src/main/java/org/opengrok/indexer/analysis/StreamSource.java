@@ -18,7 +18,7 @@
  */
 
 /*
- * Copyright (c) 2013, 2018, Oracle and/or its affiliates. All rights reserved.
+ * Copyright (c) 2013, 2021, Oracle and/or its affiliates. All rights reserved.
  * Portions Copyright (c) 2018, Chris Fraire <cfraire@me.com>.
  */
 package org.opengrok.indexer.analysis;
@@ -30,6 +30,7 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 
 /**
  * This class lets you create {@code InputStream}s that read data from a
@@ -68,6 +69,41 @@ public abstract class StreamSource {
         };
     }
 
+    /**
+     * Helper method that creates a {@code StreamSource} instance that
+     * reads data from a file, which is read into memory once if it is not
+     * larger than the specified limit so that all the streams are served from
+     * the same buffer. Otherwise every stream reads from the file as for
+     * {@link #fromFile(File)}.
+     *
+     * @param file the data file
+     * @param sizeLimit the maximum size in bytes of a file to read into
+     * memory, or {@code 0} to always read from the file
+     * @return a stream source that reads from {@code file} or from its content
+     * @throws IOException if an error occurs when reading the file
+     */
+    public static StreamSource fromFile(final File file, long sizeLimit) throws IOException {
+        if (sizeLimit <= 0 || file.length() > sizeLimit) {
+            return fromFile(file);
+        }
+        return fromBytes(Files.readAllBytes(file.toPath()));
+    }
+
+    /**
+     * Helper method that creates a {@code StreamSource} instance that
+     * reads data from a byte array, which must not be modified afterward.
+     * @param buf the source bytes
+     * @return a stream source that reads from {@code buf}
+     */
+    public static StreamSource fromBytes(final byte[] buf) {
+        return new StreamSource() {
+            @Override
+            public InputStream getStream() {
+                return new ByteArrayInputStream(buf);
+            }
+        };
+    }
+
     /**
      * Helper method that creates a {@code StreamSource} instance that
      * reads data from a String.
@@ -0,0 +1,118 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License (the "License").
+ * You may not use this file except in compliance with the License.
+ *
+ * See LICENSE.txt included in this distribution for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at LICENSE.txt.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information: Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ */
+
+/*
+ * Copyright (c) 2021, Oracle and/or its affiliates. All rights reserved.
+ */
+package org.opengrok.indexer.analysis;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.lucene.analysis.TokenFilter;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.analysis.tokenattributes.PositionIncrementAttribute;
+
+/**
+ * Splits each token into the trigrams of the token enclosed in
+ * {@link #START} and {@link #END}, e.g. {@code abcd} into
+ * {@code \u0002ab abc bcd cd\u0003}.
+ * <p>
+ * The trigrams of a token are at consecutive positions and consecutive tokens
+ * are separated by a gap, so a phrase of trigrams matches exactly the tokens
+ * containing the substring the trigrams were made of, see {@link #trigrams(String)}.
+ */
+public final class TrigramFilter extends TokenFilter {
+
+    /**
+     * Marks the start of a token.
+     */
+    public static final char START = '\u0002';
+
+    /**
+     * Marks the end of a token.
+     */
+    public static final char END = '\u0003';
+
+    private static final int GRAM_SIZE = 3;
+
+    /**
+     * Extra position increment between tokens so that phrases cannot span them.
+     */
+    private static final int TOKEN_GAP = 1;
+
+    private final CharTermAttribute termAtt = addAttribute(CharTermAttribute.class);
+    private final PositionIncrementAttribute posIncAtt = addAttribute(PositionIncrementAttribute.class);
+
+    private char[] token = new char[16];
+    private int tokenLength;
+    private int gramStart;
+    private int tokenPosInc;
+
+    public TrigramFilter(TokenStream input) {
+        super(input);
+    }
+
+    @Override
+    public boolean incrementToken() throws IOException {
+        while (gramStart + GRAM_SIZE > tokenLength) {
+            if (!input.incrementToken()) {
+                return false;
+            }
+            tokenLength = termAtt.length() + 2;
+            if (token.length < tokenLength) {
+                token = new char[tokenLength];
+            }
+            token[0] = START;
+            System.arraycopy(termAtt.buffer(), 0, token, 1, termAtt.length());
+            token[tokenLength - 1] = END;
+            gramStart = 0;
+            tokenPosInc = posIncAtt.getPositionIncrement() + TOKEN_GAP;
+        }
+
+        termAtt.copyBuffer(token, gramStart, GRAM_SIZE);
+        posIncAtt.setPositionIncrement(gramStart == 0 ? tokenPosInc : 1);
+        gramStart++;
+        return true;
+    }
+
+    @Override
+    public void reset() throws IOException {
+        super.reset();
+        tokenLength = 0;
+        gramStart = 0;
+    }
+
+    /**
+     * Get the trigrams of the text in the same form as the filter produces
+     * them, so that a phrase of them matches the tokens which contain the text.
+     * @param text text with {@link #START} or {@link #END} to match only at
+     * the start or end of tokens
+     * @return trigrams of the text or an empty list if it is too short
+     */
+    public static List<String> trigrams(String text) {
+        List<String> trigrams = new ArrayList<>();
+        for (int i = 0; i + GRAM_SIZE <= text.length(); i++) {
+            trigrams.add(text.substring(i, i + GRAM_SIZE));
+        }
+        return trigrams;
+    }
+}
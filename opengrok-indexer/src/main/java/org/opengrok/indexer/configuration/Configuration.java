@@ -120,11 +120,20 @@ public final class Configuration {
      * Should the history log be cached?
      */
     private boolean historyCache;
+    /**
+     * Implementation of the history cache.
+     */
+    private HistoryCacheType historyCacheType;
     /**
      * The maximum time in milliseconds {@code HistoryCache.get()} can take
      * before its result is cached.
      */
     private int historyCacheTime;
+    /**
+     * Should file annotations be cached (and created for the current
+     * version of files during indexing)?
+     */
+    private boolean annotationCacheEnabled;
     /**
      * flag to generate history. This is bigger hammer than @{code historyCache}
      * above. If set to false, no history query will be ever made and the webapp
@@ -194,6 +203,27 @@ public final class Configuration {
     private int indexingParallelism;
     private int historyParallelism;
     private int historyFileParallelism;
+    /**
+     * If true, the directory tree of each project is listed in parallel ahead
+     * of the ordered traversal that determines which files need indexing.
+     */
+    private boolean parallelTraversalEnabled;
+    /**
+     * If true, files found by the traversal of a project are indexed right
+     * away instead of after the traversal has completed.
+     */
+    private boolean indexingPipelineEnabled;
+    /**
+     * If true, the history cache of repositories is generated concurrently
+     * with indexing and each project is indexed as soon as the history cache
+     * of its repositories is ready.
+     */
+    private boolean historyCachePipelineEnabled;
+    /**
+     * Files not larger than this many bytes are read into memory once for
+     * analysis instead of being re-read by each consumer. Zero disables it.
+     */
+    private int singleReadSizeLimit;
     private boolean tagsEnabled;
     private int hitsPerPage;
     private int cachePages;
@@ -233,6 +263,15 @@ public final class Configuration {
 
     private boolean mergeCommitsEnabled;
 
+    /**
+     * Maximum number of bytes of Git pack files JGit keeps in its window cache.
+     */
+    private long gitPackedGitLimit;
+    /**
+     * Should JGit use memory mapping to read Git pack files?
+     */
+    private boolean gitPackedGitMMAP;
+
     public static final double defaultRamBufferSize = 16;
 
     /**
@@ -282,6 +321,67 @@ public final class Configuration {
      */
     private int MaxRevisionThreadCount;
 
+    /**
+     * Number of threads used for searching the projects of a multi-project
+     * search concurrently, each in its own index, with the results merged
+     * afterwards. This is total for the whole webapp. If not positive,
+     * multi-project searches go through a single reader over all the indexes.
+     */
+    private int projectSearchThreadCount;
+
+    /**
+     * Maximum time in milliseconds a search request is allowed to take,
+     * including the generation of the context of the hits. Searches which do
+     * not finish in time return the hits found so far, marked as partial,
+     * see {@link org.opengrok.indexer.search.SearchDeadline}. The API callers
+     * can ask for a shorter limit. If not positive, there is no limit.
+     */
+    private long searchTimeout;
+
+    /**
+     * Upper bound of the estimated memory in bytes used by the cache of the
+     * top hits of recent searches. If not positive, the cache is disabled.
+     */
+    private long queryResultCacheSize;
+
+    /**
+     * Should the full text tokens be indexed also as trigrams so that
+     * wildcard and regular expression full text searches can use them?
+     * Changing this requires reindexing from scratch.
+     */
+    private boolean trigramIndexEnabled;
+
+    /**
+     * Upper bound of the estimated memory in bytes used by the in-memory
+     * indexes of the terms of the segments by their trigrams, which are used
+     * to rewrite the wildcard and regular expression full text searches when
+     * {@link #trigramIndexEnabled} is set. If not positive, they are not used.
+     */
+    private long trigramTermIndexCacheSize;
+
+    /**
+     * Should the text of the files be stored compressed in the index so that
+     * the context of search results is produced without reading the source
+     * root? Takes effect for files indexed after changing it.
+     */
+    private boolean storedTextEnabled;
+
+    /**
+     * Should the history entries of the files be stored compressed in the
+     * index so that the context of history search results is produced without
+     * getting the complete history of the file? Takes effect for files
+     * indexed after changing it.
+     */
+    private boolean storedHistoryEnabled;
+
+    /**
+     * Should the documents in the index be sorted by the last modified time
+     * of the files, newest first? The searches sorted by the last modified
+     * time can then stop collecting the hits once they have enough of them.
+     * Changing this requires reindexing from scratch.
+     */
+    private boolean indexSortedByDate;
+
     /**
      * If false, do not display listing or projects/repositories on the index page.
      */
@@ -509,6 +609,7 @@ public final class Configuration {
         cmds = new HashMap<>();
         setAllowLeadingWildcard(true);
         setAllowedSymlinks(new HashSet<>());
+        setAnnotationCacheEnabled(false);
         setAuthenticationTokens(new HashSet<>());
         setAuthorizationWatchdogEnabled(false);
         //setBugPage("http://bugs.myserver.org/bugdatabase/view_bug.do?bug_id=");
@@ -530,15 +631,21 @@ public final class Configuration {
         setFetchHistoryWhenNotInCache(true);
         setFoldingEnabled(true);
         setGenerateHtml(true);
+        setGitPackedGitLimit(10 * 1024 * 1024);
+        setGitPackedGitMMAP(false);
         setGroups(new TreeSet<>());
         setGroupsCollapseThreshold(4);
         setHandleHistoryOfRenamedFiles(false);
         setHistoryCache(true);
         setHistoryCacheTime(30);
+        setHistoryCachePipelineEnabled(false);
+        setHistoryCacheType(HistoryCacheType.FILE);
         setHistoryEnabled(true);
         setHitsPerPage(25);
         setIgnoredNames(new IgnoredNames());
         setIncludedNames(new Filter());
+        setIndexingPipelineEnabled(false);
+        setIndexSortedByDate(false);
         setIndexVersionedFilesOnly(false);
         setLastEditedDisplayMode(true);
         //luceneLocking default is OFF
@@ -550,11 +657,14 @@ public final class Configuration {
         setNavigateWindowEnabled(false);
         setNestingMaximum(1);
         setOptimizeDatabase(true);
+        setParallelTraversalEnabled(false);
         setPluginDirectory(null);
         setPluginStack(new AuthorizationStack(AuthControlFlag.REQUIRED, "default stack"));
+        setProjectSearchThreadCount(0);
         setPrintProgress(false);
         setDisabledRepositories(new HashSet<>());
         setProjects(new ConcurrentHashMap<>());
+        setQueryResultCacheSize(0);
         setQuickContextScan(true);
         //below can cause an outofmemory error, since it is defaulting to NO LIMIT
         setRamBufferSize(defaultRamBufferSize); //MB
@@ -565,9 +675,15 @@ public final class Configuration {
         setRevisionMessageCollapseThreshold(200);
         setScanningDepth(defaultScanningDepth); // default depth of scanning for repositories
         setScopesEnabled(true);
+        setSearchTimeout(0);
+        setSingleReadSizeLimit(0);
         setSourceRoot(null);
         //setTabSize(4);
+        setStoredHistoryEnabled(false);
+        setStoredTextEnabled(false);
         setTagsEnabled(false);
+        setTrigramIndexEnabled(false);
+        setTrigramTermIndexCacheSize(64 * 1024 * 1024);
         //setUserPage("http://www.myserver.org/viewProfile.jspa?username=");
         // Set to empty string so we can append it to the URL
         // unconditionally later.
@@ -797,6 +913,25 @@ public final class Configuration {
     public void setHistoryCache(boolean historyCache) {
         this.historyCache = historyCache;
     }
+
+    public boolean isAnnotationCacheEnabled() {
+        return annotationCacheEnabled;
+    }
+
+    public void setAnnotationCacheEnabled(boolean flag) {
+        this.annotationCacheEnabled = flag;
+    }
+
+    public HistoryCacheType getHistoryCacheType() {
+        return historyCacheType;
+    }
+
+    /**
+     * @param historyCacheType implementation of the history cache to use
+     */
+    public void setHistoryCacheType(HistoryCacheType historyCacheType) {
+        this.historyCacheType = historyCacheType;
+    }
     
     /**
      * How long can a history request take before it's cached? If the time is
@@ -844,6 +979,28 @@ public final class Configuration {
         return mergeCommitsEnabled;
     }
 
+    public long getGitPackedGitLimit() {
+        return gitPackedGitLimit;
+    }
+
+    /**
+     * @param limit maximum number of bytes of Git pack files cached by JGit
+     */
+    public void setGitPackedGitLimit(long limit) {
+        this.gitPackedGitLimit = limit;
+    }
+
+    public boolean isGitPackedGitMMAP() {
+        return gitPackedGitMMAP;
+    }
+
+    /**
+     * @param flag whether JGit should read Git pack files using memory mapping
+     */
+    public void setGitPackedGitMMAP(boolean flag) {
+        this.gitPackedGitMMAP = flag;
+    }
+
     public boolean isNavigateWindowEnabled() {
         return navigateWindowEnabled;
     }
@@ -1165,6 +1322,48 @@ public final class Configuration {
         this.historyFileParallelism = Math.max(value, 0);
     }
 
+    public boolean isParallelTraversalEnabled() {
+        return parallelTraversalEnabled;
+    }
+
+    public void setParallelTraversalEnabled(boolean flag) {
+        this.parallelTraversalEnabled = flag;
+    }
+
+    public boolean isIndexingPipelineEnabled() {
+        return indexingPipelineEnabled;
+    }
+
+    public void setIndexingPipelineEnabled(boolean flag) {
+        this.indexingPipelineEnabled = flag;
+    }
+
+    public boolean isHistoryCachePipelineEnabled() {
+        return historyCachePipelineEnabled;
+    }
+
+    public void setHistoryCachePipelineEnabled(boolean flag) {
+        this.historyCachePipelineEnabled = flag;
+    }
+
+    public int getSingleReadSizeLimit() {
+        return singleReadSizeLimit;
+    }
+
+    /**
+     * Set the maximum size of files which are read into memory once for analysis.
+     *
+     * @param limit the new value in bytes, {@code 0} to disable
+     * @throws IllegalArgumentException when the limit is negative
+     */
+    public void setSingleReadSizeLimit(int limit) throws IllegalArgumentException {
+        if (limit < 0) {
+            throw new IllegalArgumentException(
+                    String.format(NEGATIVE_NUMBER_ERROR, "singleReadSizeLimit", limit));
+        }
+        this.singleReadSizeLimit = limit;
+    }
+
     public boolean isTagsEnabled() {
         return this.tagsEnabled;
     }
@@ -1308,6 +1507,70 @@ public final class Configuration {
         this.MaxSearchThreadCount = count;
     }
 
+    public int getProjectSearchThreadCount() {
+        return projectSearchThreadCount;
+    }
+
+    public void setProjectSearchThreadCount(int count) {
+        this.projectSearchThreadCount = count;
+    }
+
+    public long getSearchTimeout() {
+        return searchTimeout;
+    }
+
+    public void setSearchTimeout(long timeout) {
+        this.searchTimeout = timeout;
+    }
+
+    public long getQueryResultCacheSize() {
+        return queryResultCacheSize;
+    }
+
+    public void setQueryResultCacheSize(long size) {
+        this.queryResultCacheSize = size;
+    }
+
+    public boolean isTrigramIndexEnabled() {
+        return trigramIndexEnabled;
+    }
+
+    public void setTrigramIndexEnabled(boolean flag) {
+        this.trigramIndexEnabled = flag;
+    }
+
+    public long getTrigramTermIndexCacheSize() {
+        return trigramTermIndexCacheSize;
+    }
+
+    public void setTrigramTermIndexCacheSize(long size) {
+        this.trigramTermIndexCacheSize = size;
+    }
+
+    public boolean isStoredTextEnabled() {
+        return storedTextEnabled;
+    }
+
+    public void setStoredTextEnabled(boolean flag) {
+        this.storedTextEnabled = flag;
+    }
+
+    public boolean isStoredHistoryEnabled() {
+        return storedHistoryEnabled;
+    }
+
+    public void setStoredHistoryEnabled(boolean flag) {
+        this.storedHistoryEnabled = flag;
+    }
+
+    public boolean isIndexSortedByDate() {
+        return indexSortedByDate;
+    }
+
+    public void setIndexSortedByDate(boolean flag) {
+        this.indexSortedByDate = flag;
+    }
+
     public int getMaxRevisionThreadCount() {
         return MaxRevisionThreadCount;
     }
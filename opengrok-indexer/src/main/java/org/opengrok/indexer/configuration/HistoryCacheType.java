@@ -0,0 +1,43 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License (the "License").
+ * You may not use this file except in compliance with the License.
+ *
+ * See LICENSE.txt included in this distribution for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at LICENSE.txt.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information: Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ */
+
+/*
+ * Copyright (c) 2021, Oracle and/or its affiliates. All rights reserved.
+ */
+package org.opengrok.indexer.configuration;
+
+/**
+ * Represents a container for the names of history cache implementations.
+ */
+public enum HistoryCacheType {
+    /**
+     * Per source file history encoded as XML and compressed with gzip.
+     */
+    FILE,
+    /**
+     * Per source file history in compact binary format that allows appending.
+     * Existing {@link #FILE} cache files are migrated on the fly.
+     */
+    BINARY,
+    /**
+     * History of all files of a repository stored in single Lucene index
+     * per repository.
+     */
+    LUCENE
+}
@@ -56,6 +56,7 @@ import jakarta.ws.rs.client.Entity;
 import jakarta.ws.rs.core.Response;
 import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.MultiReader;
+import org.apache.lucene.search.ReferenceManager;
 import org.apache.lucene.search.SearcherManager;
 import org.apache.lucene.store.AlreadyClosedException;
 import org.apache.lucene.store.Directory;
@@ -68,6 +69,7 @@ import org.opengrok.indexer.history.RepositoryInfo;
 import org.opengrok.indexer.index.IndexDatabase;
 import org.opengrok.indexer.index.IndexerParallelizer;
 import org.opengrok.indexer.logger.LoggerFactory;
+import org.opengrok.indexer.search.QueryResultCache;
 import org.opengrok.indexer.util.CloseableReentrantReadWriteLock;
 import org.opengrok.indexer.util.CtagsUtil;
 import org.opengrok.indexer.util.ForbiddenSymlinkException;
@@ -95,6 +97,8 @@ public final class RuntimeEnvironment {
     private final LazilyInstantiate<IndexerParallelizer> lzIndexerParallelizer;
     private final LazilyInstantiate<ExecutorService> lzSearchExecutor;
     private final LazilyInstantiate<ExecutorService> lzRevisionExecutor;
+    private final LazilyInstantiate<ExecutorService> lzProjectSearchExecutor;
+    private final LazilyInstantiate<ExecutorService> lzTrigramIndexExecutor;
     private static final RuntimeEnvironment instance = new RuntimeEnvironment();
 
     private final Map<Project, List<RepositoryInfo>> repository_map = new ConcurrentHashMap<>();
@@ -146,6 +150,8 @@ public final class RuntimeEnvironment {
                 new IndexerParallelizer(this));
         lzSearchExecutor = LazilyInstantiate.using(this::newSearchExecutor);
         lzRevisionExecutor = LazilyInstantiate.using(this::newRevisionExecutor);
+        lzProjectSearchExecutor = LazilyInstantiate.using(this::newProjectSearchExecutor);
+        lzTrigramIndexExecutor = LazilyInstantiate.using(this::newTrigramIndexExecutor);
     }
 
     // Instance of authorization framework and its lock.
@@ -177,6 +183,32 @@ public final class RuntimeEnvironment {
                 });
     }
 
+    /**
+     * Gets the thread pool used for searching the projects of a multi-project
+     * search concurrently. This is separate from {@link #getSearchExecutor()}
+     * because the per-project searches submit their index slices to that one.
+     */
+    public ExecutorService getProjectSearchExecutor() {
+        return lzProjectSearchExecutor.get();
+    }
+
+    private ExecutorService newProjectSearchExecutor() {
+        return Executors.newFixedThreadPool(Math.max(1, this.getProjectSearchThreadCount()),
+                new NamedThreadFactory("project-search"));
+    }
+
+    /**
+     * Gets the thread pool used for building the trigram indexes of the terms
+     * of the segments, so that the searches do not wait for them.
+     */
+    public ExecutorService getTrigramIndexExecutor() {
+        return lzTrigramIndexExecutor.get();
+    }
+
+    private ExecutorService newTrigramIndexExecutor() {
+        return Executors.newSingleThreadExecutor(new NamedThreadFactory("trigram-index"));
+    }
+
     public ExecutorService getRevisionExecutor() {
         return lzRevisionExecutor.get();
     }
@@ -677,6 +709,22 @@ public final class RuntimeEnvironment {
         syncWriteConfiguration(useHistoryCache, Configuration::setHistoryCache);
     }
 
+    public boolean isAnnotationCacheEnabled() {
+        return syncReadConfiguration(Configuration::isAnnotationCacheEnabled);
+    }
+
+    public void setAnnotationCacheEnabled(boolean flag) {
+        syncWriteConfiguration(flag, Configuration::setAnnotationCacheEnabled);
+    }
+
+    public HistoryCacheType getHistoryCacheType() {
+        return syncReadConfiguration(Configuration::getHistoryCacheType);
+    }
+
+    public void setHistoryCacheType(HistoryCacheType historyCacheType) {
+        syncWriteConfiguration(historyCacheType, Configuration::setHistoryCacheType);
+    }
+
     /**
      * Should we generate HTML or not during the indexing phase.
      *
@@ -1128,6 +1176,38 @@ public final class RuntimeEnvironment {
                 parallelism;
     }
 
+    public boolean isParallelTraversalEnabled() {
+        return syncReadConfiguration(Configuration::isParallelTraversalEnabled);
+    }
+
+    public void setParallelTraversalEnabled(boolean flag) {
+        syncWriteConfiguration(flag, Configuration::setParallelTraversalEnabled);
+    }
+
+    public boolean isIndexingPipelineEnabled() {
+        return syncReadConfiguration(Configuration::isIndexingPipelineEnabled);
+    }
+
+    public void setIndexingPipelineEnabled(boolean flag) {
+        syncWriteConfiguration(flag, Configuration::setIndexingPipelineEnabled);
+    }
+
+    public boolean isHistoryCachePipelineEnabled() {
+        return syncReadConfiguration(Configuration::isHistoryCachePipelineEnabled);
+    }
+
+    public void setHistoryCachePipelineEnabled(boolean flag) {
+        syncWriteConfiguration(flag, Configuration::setHistoryCachePipelineEnabled);
+    }
+
+    public int getSingleReadSizeLimit() {
+        return syncReadConfiguration(Configuration::getSingleReadSizeLimit);
+    }
+
+    public void setSingleReadSizeLimit(int limit) {
+        syncWriteConfiguration(limit, Configuration::setSingleReadSizeLimit);
+    }
+
     public boolean isTagsEnabled() {
         return syncReadConfiguration(Configuration::isTagsEnabled);
     }
@@ -1255,6 +1335,22 @@ public final class RuntimeEnvironment {
         return syncReadConfiguration(Configuration::isMergeCommitsEnabled);
     }
 
+    public long getGitPackedGitLimit() {
+        return syncReadConfiguration(Configuration::getGitPackedGitLimit);
+    }
+
+    public void setGitPackedGitLimit(long limit) {
+        syncWriteConfiguration(limit, Configuration::setGitPackedGitLimit);
+    }
+
+    public boolean isGitPackedGitMMAP() {
+        return syncReadConfiguration(Configuration::isGitPackedGitMMAP);
+    }
+
+    public void setGitPackedGitMMAP(boolean flag) {
+        syncWriteConfiguration(flag, Configuration::setGitPackedGitMMAP);
+    }
+
     public void setNavigateWindowEnabled(boolean navigateWindowEnabled) {
         syncWriteConfiguration(navigateWindowEnabled, Configuration::setNavigateWindowEnabled);
     }
@@ -1280,6 +1376,77 @@ public final class RuntimeEnvironment {
         return syncReadConfiguration(Configuration::getMaxSearchThreadCount);
     }
 
+    public void setProjectSearchThreadCount(int projectSearchThreadCount) {
+        syncWriteConfiguration(projectSearchThreadCount, Configuration::setProjectSearchThreadCount);
+    }
+
+    public int getProjectSearchThreadCount() {
+        return syncReadConfiguration(Configuration::getProjectSearchThreadCount);
+    }
+
+    /**
+     * @return whether multi-project searches search the projects concurrently
+     */
+    public boolean isProjectSearchConcurrent() {
+        return getProjectSearchThreadCount() > 0;
+    }
+
+    public void setSearchTimeout(long searchTimeout) {
+        syncWriteConfiguration(searchTimeout, Configuration::setSearchTimeout);
+    }
+
+    public long getSearchTimeout() {
+        return syncReadConfiguration(Configuration::getSearchTimeout);
+    }
+
+    public void setQueryResultCacheSize(long queryResultCacheSize) {
+        syncWriteConfiguration(queryResultCacheSize, Configuration::setQueryResultCacheSize);
+    }
+
+    public long getQueryResultCacheSize() {
+        return syncReadConfiguration(Configuration::getQueryResultCacheSize);
+    }
+
+    public boolean isTrigramIndexEnabled() {
+        return syncReadConfiguration(Configuration::isTrigramIndexEnabled);
+    }
+
+    public void setTrigramIndexEnabled(boolean flag) {
+        syncWriteConfiguration(flag, Configuration::setTrigramIndexEnabled);
+    }
+
+    public long getTrigramTermIndexCacheSize() {
+        return syncReadConfiguration(Configuration::getTrigramTermIndexCacheSize);
+    }
+
+    public void setTrigramTermIndexCacheSize(long size) {
+        syncWriteConfiguration(size, Configuration::setTrigramTermIndexCacheSize);
+    }
+
+    public boolean isStoredTextEnabled() {
+        return syncReadConfiguration(Configuration::isStoredTextEnabled);
+    }
+
+    public void setStoredTextEnabled(boolean flag) {
+        syncWriteConfiguration(flag, Configuration::setStoredTextEnabled);
+    }
+
+    public boolean isStoredHistoryEnabled() {
+        return syncReadConfiguration(Configuration::isStoredHistoryEnabled);
+    }
+
+    public void setStoredHistoryEnabled(boolean flag) {
+        syncWriteConfiguration(flag, Configuration::setStoredHistoryEnabled);
+    }
+
+    public boolean isIndexSortedByDate() {
+        return syncReadConfiguration(Configuration::isIndexSortedByDate);
+    }
+
+    public void setIndexSortedByDate(boolean flag) {
+        syncWriteConfiguration(flag, Configuration::setIndexSortedByDate);
+    }
+
     public void setMaxRevisionThreadCount(int maxRevisionThreadCount) {
         syncWriteConfiguration(maxRevisionThreadCount, Configuration::setMaxRevisionThreadCount);
     }
@@ -1769,8 +1936,34 @@ public final class RuntimeEnvironment {
         if (mgr == null) {
             File indexDir = new File(getDataRootPath(), IndexDatabase.INDEX_DIR);
             Directory dir = FSDirectory.open(new File(indexDir, projectName).toPath());
-            mgr = new SearcherManager(dir, new ThreadpoolSearcherFactory());
-            searcherManagerMap.put(projectName, mgr);
+            try {
+                mgr = new SearcherManager(dir, new ThreadpoolSearcherFactory());
+            } catch (IOException e) {
+                dir.close();
+                throw e;
+            }
+            mgr.addListener(new ReferenceManager.RefreshListener() {
+                @Override
+                public void beforeRefresh() {
+                }
+
+                @Override
+                public void afterRefresh(boolean didRefresh) {
+                    if (didRefresh) {
+                        QueryResultCache.getInstance().invalidate(projectName);
+                    }
+                }
+            });
+            SearcherManager prev = searcherManagerMap.putIfAbsent(projectName, mgr);
+            if (prev != null) {
+                // Another thread was faster, use its manager. Closing the manager does not close the directory.
+                try {
+                    mgr.close();
+                } finally {
+                    dir.close();
+                }
+                mgr = prev;
+            }
         }
         searcher = (SuperIndexSearcher) mgr.acquire();
         searcher.setSearcherManager(mgr);
@@ -1804,6 +1997,7 @@ public final class RuntimeEnvironment {
 
         for (String proj : toRemove) {
             searcherManagerMap.remove(proj);
+            QueryResultCache.getInstance().invalidate(proj);
         }
     }
 
@@ -51,6 +51,8 @@ public class SuggesterConfig {
     public static final int BUILD_TERMINATION_TIME_DEFAULT = 1800; // half an hour should be enough
     public static final int TIME_THRESHOLD_DEFAULT = 2000; // 2 sec
     public static final int REBUILD_THREAD_POOL_PERCENT_NCPUS_DEFAULT = 80;
+    public static final boolean OFF_HEAP_LOOKUPS_DEFAULT = false;
+    public static final int MAX_RESIDENT_PROJECTS_DEFAULT = Short.MAX_VALUE;
 
     public static final Set<String> allowedProjectsDefault = null;
     public static final Set<String> allowedFieldsDefault = Set.of(
@@ -141,6 +143,18 @@ public class SuggesterConfig {
      */
     private int rebuildThreadPoolSizeInNcpuPercent;
 
+    /**
+     * Specifies if the WFST data structures should be memory-mapped when first used instead of being loaded onto
+     * the heap.
+     */
+    private boolean offHeapLookups;
+
+    /**
+     * Specifies for how many projects at most the WFST data structures stay memory-mapped if
+     * {@link #offHeapLookups} is enabled. The least recently used ones are unmapped first.
+     */
+    private int maxResidentProjects;
+
     public SuggesterConfig() {
         setEnabled(ENABLED_DEFAULT);
         setMaxResults(MAX_RESULTS_DEFAULT);
@@ -157,6 +171,8 @@ public class SuggesterConfig {
         setRebuildCronConfig(REBUILD_CRON_CONFIG_DEFAULT);
         setBuildTerminationTime(BUILD_TERMINATION_TIME_DEFAULT);
         setRebuildThreadPoolSizeInNcpuPercent(REBUILD_THREAD_POOL_PERCENT_NCPUS_DEFAULT);
+        setOffHeapLookups(OFF_HEAP_LOOKUPS_DEFAULT);
+        setMaxResidentProjects(MAX_RESIDENT_PROJECTS_DEFAULT);
     }
 
     public boolean isEnabled() {
@@ -302,6 +318,25 @@ public class SuggesterConfig {
         return rebuildThreadPoolSizeInNcpuPercent;
     }
 
+    public boolean isOffHeapLookups() {
+        return offHeapLookups;
+    }
+
+    public void setOffHeapLookups(final boolean offHeapLookups) {
+        this.offHeapLookups = offHeapLookups;
+    }
+
+    public int getMaxResidentProjects() {
+        return maxResidentProjects;
+    }
+
+    public void setMaxResidentProjects(final int maxResidentProjects) {
+        if (maxResidentProjects < 1) {
+            throw new IllegalArgumentException("Maximum resident projects for suggestions cannot be less than 1");
+        }
+        this.maxResidentProjects = maxResidentProjects;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) {
@@ -324,14 +359,16 @@ public class SuggesterConfig {
                 Objects.equals(allowedProjects, that.allowedProjects) &&
                 Objects.equals(allowedFields, that.allowedFields) &&
                 Objects.equals(rebuildCronConfig, that.rebuildCronConfig) &&
-                rebuildThreadPoolSizeInNcpuPercent == that.rebuildThreadPoolSizeInNcpuPercent;
+                rebuildThreadPoolSizeInNcpuPercent == that.rebuildThreadPoolSizeInNcpuPercent &&
+                offHeapLookups == that.offHeapLookups &&
+                maxResidentProjects == that.maxResidentProjects;
     }
 
     @Override
     public int hashCode() {
         return Objects.hash(enabled, maxResults, minChars, allowedProjects, maxProjects, allowedFields,
                 allowComplexQueries, allowMostPopular, showScores, showProjects, showTime, rebuildCronConfig,
-                buildTerminationTime, rebuildThreadPoolSizeInNcpuPercent);
+                buildTerminationTime, rebuildThreadPoolSizeInNcpuPercent, offHeapLookups, maxResidentProjects);
     }
 
     /**
@@ -355,6 +392,8 @@ public class SuggesterConfig {
         res.setRebuildCronConfig("1 0 * * *");
         res.setBuildTerminationTime(1 + res.getBuildTerminationTime());
         res.setRebuildThreadPoolSizeInNcpuPercent(1 + res.getRebuildThreadPoolSizeInNcpuPercent());
+        res.setOffHeapLookups(!res.isOffHeapLookups());
+        res.setMaxResidentProjects(res.getMaxResidentProjects() - 1);
         return res;
     }
 
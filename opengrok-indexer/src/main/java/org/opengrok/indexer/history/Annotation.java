@@ -29,6 +29,8 @@ import org.opengrok.indexer.util.Color;
 import org.opengrok.indexer.util.LazilyInstantiate;
 import org.opengrok.indexer.util.RainbowColorGenerator;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.StringWriter;
 import java.io.Writer;
@@ -258,6 +260,54 @@ public class Annotation {
         return filename;
     }
 
+    /**
+     * Write the annotation in the format read by {@link #read(DataInputStream)}.
+     * @param out output stream
+     * @throws IOException on error
+     */
+    void write(DataOutputStream out) throws IOException {
+        BinaryHistoryFile.writeString(out, filename);
+        out.writeInt(lines.size());
+        for (Line line : lines) {
+            BinaryHistoryFile.writeString(out, line.revision);
+            BinaryHistoryFile.writeString(out, line.author);
+            out.writeBoolean(line.enabled);
+        }
+        out.writeInt(desc.size());
+        for (Entry<String, String> entry : desc.entrySet()) {
+            BinaryHistoryFile.writeString(out, entry.getKey());
+            BinaryHistoryFile.writeString(out, entry.getValue());
+        }
+        out.writeInt(fileVersions.size());
+        for (Entry<String, Integer> entry : fileVersions.entrySet()) {
+            BinaryHistoryFile.writeString(out, entry.getKey());
+            out.writeInt(entry.getValue());
+        }
+    }
+
+    /**
+     * @param in input stream with data written by {@link #write(DataOutputStream)}
+     * @return annotation
+     * @throws IOException on error
+     */
+    static Annotation read(DataInputStream in) throws IOException {
+        Annotation annotation = new Annotation(BinaryHistoryFile.readString(in));
+        int lineCount = in.readInt();
+        for (int i = 0; i < lineCount; i++) {
+            annotation.addLine(BinaryHistoryFile.readString(in), BinaryHistoryFile.readString(in),
+                    in.readBoolean());
+        }
+        int descCount = in.readInt();
+        for (int i = 0; i < descCount; i++) {
+            annotation.addDesc(BinaryHistoryFile.readString(in), BinaryHistoryFile.readString(in));
+        }
+        int fileVersionCount = in.readInt();
+        for (int i = 0; i < fileVersionCount; i++) {
+            annotation.addFileVersion(BinaryHistoryFile.readString(in), in.readInt());
+        }
+        return annotation;
+    }
+
     //TODO below might be useless, need to test with more SCMs and different commit messages
     // to see if it will not be useful, if title attribute of <a> loses it's breath
     public void writeTooltipMap(Writer out) throws IOException {
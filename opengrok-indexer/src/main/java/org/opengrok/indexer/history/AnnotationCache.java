@@ -0,0 +1,193 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License (the "License").
+ * You may not use this file except in compliance with the License.
+ *
+ * See LICENSE.txt included in this distribution for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at LICENSE.txt.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information: Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ */
+
+/*
+ * Copyright (c) 2021, Oracle and/or its affiliates. All rights reserved.
+ */
+package org.opengrok.indexer.history;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.opengrok.indexer.Metrics;
+import org.opengrok.indexer.configuration.RuntimeEnvironment;
+import org.opengrok.indexer.logger.LoggerFactory;
+import org.opengrok.indexer.util.ForbiddenSymlinkException;
+import org.opengrok.indexer.util.IOUtils;
+
+/**
+ * Class representing file based storage of file annotations.
+ * <p>
+ * The annotations of a source file are stored in a directory under the data
+ * root resembling the path of the file, one file per revision. Annotations of
+ * specific revisions never change, the annotation of the current version of
+ * the file is valid as long as the file is not modified.
+ */
+class AnnotationCache {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(AnnotationCache.class);
+
+    private static final String ANNOTATION_CACHE_DIR_NAME = "annotationcache";
+
+    /**
+     * Name of the cache file for the current version of the source file.
+     */
+    private static final String CURRENT_FILE_NAME = "current";
+
+    /**
+     * Prefix of the names of cache files for specific revisions.
+     */
+    private static final String REVISION_FILE_PREFIX = "rev-";
+
+    private final RuntimeEnvironment env = RuntimeEnvironment.getInstance();
+
+    private Counter annotationCacheHits;
+    private Counter annotationCacheMisses;
+
+    void initialize() {
+        MeterRegistry meterRegistry = Metrics.getRegistry();
+        if (meterRegistry != null) {
+            annotationCacheHits = Counter.builder("annotationcache.annotation.get").
+                    description("annotation cache hits").
+                    tag("what", "hits").
+                    register(meterRegistry);
+            annotationCacheMisses = Counter.builder("annotationcache.annotation.get").
+                    description("annotation cache misses").
+                    tag("what", "miss").
+                    register(meterRegistry);
+        }
+    }
+
+    /**
+     * Get annotation from the cache.
+     * @param file the source file
+     * @param rev revision of the file or {@code null} for the current version
+     * @return annotation or {@code null} if it is not in the cache or is out of date
+     */
+    Annotation get(File file, String rev) {
+        Annotation annotation = null;
+        File cacheFile = getCachedFile(file, rev);
+        if (cacheFile != null && cacheFile.exists() &&
+                (rev != null || FileHistoryCache.isUpToDate(file, cacheFile))) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                    new GZIPInputStream(new FileInputStream(cacheFile))))) {
+                annotation = Annotation.read(in);
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, String.format("Error when reading annotation cache file %s", cacheFile), e);
+            }
+        }
+
+        Counter counter = annotation != null ? annotationCacheHits : annotationCacheMisses;
+        if (counter != null) {
+            counter.increment();
+        }
+        return annotation;
+    }
+
+    /**
+     * Store annotation in the cache.
+     * @param file the source file
+     * @param rev revision of the file or {@code null} for the current version
+     * @param annotation annotation to store
+     */
+    void store(File file, String rev, Annotation annotation) {
+        File cacheFile = getCachedFile(file, rev);
+        if (cacheFile == null) {
+            return;
+        }
+
+        File dir = cacheFile.getParentFile();
+        if (!dir.isDirectory() && !dir.mkdirs() && !dir.isDirectory()) {
+            LOGGER.log(Level.WARNING, "Unable to create annotation cache directory ''{0}''", dir);
+            return;
+        }
+
+        File output = null;
+        try {
+            // Write to temporary file first so that readers never see partially written file.
+            output = File.createTempFile("ogann", null, dir);
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                    new GZIPOutputStream(new FileOutputStream(output))))) {
+                annotation.write(out);
+            }
+            Files.move(output.toPath(), cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, String.format("Cannot store annotation of %s", file), e);
+            if (output != null && output.exists() && !output.delete()) {
+                LOGGER.log(Level.WARNING, "Failed to remove temporary annotation cache file {0}", output);
+            }
+        }
+    }
+
+    /**
+     * Remove the cached annotations of a file or of all files in a directory.
+     * @param path path to the file or directory relative to the source root
+     */
+    void clear(String path) {
+        File dir = new File(getCacheRootPath() + path);
+        if (!dir.exists()) {
+            return;
+        }
+        try {
+            IOUtils.removeRecursive(dir.toPath());
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, String.format("Cannot remove annotation cache %s", dir), e);
+        }
+    }
+
+    private String getCacheRootPath() {
+        return env.getDataRootPath() + File.separatorChar + ANNOTATION_CACHE_DIR_NAME;
+    }
+
+    /**
+     * @return cache file or {@code null} if the file is not under source root
+     */
+    private File getCachedFile(File file, String rev) {
+        String path;
+        try {
+            path = env.getPathRelativeToSourceRoot(file);
+        } catch (ForbiddenSymlinkException e) {
+            LOGGER.log(Level.FINER, e.getMessage());
+            return null;
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, String.format("Failed to get path relative to source root for %s", file), e);
+            return null;
+        }
+
+        String name = rev == null ? CURRENT_FILE_NAME :
+                REVISION_FILE_PREFIX + URLEncoder.encode(rev, StandardCharsets.UTF_8);
+        return new File(getCacheRootPath() + path, name);
+    }
+}
@@ -0,0 +1,207 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License (the "License").
+ * You may not use this file except in compliance with the License.
+ *
+ * See LICENSE.txt included in this distribution for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at LICENSE.txt.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information: Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ */
+
+/*
+ * Copyright (c) 2021, Oracle and/or its affiliates. All rights reserved.
+ */
+package org.opengrok.indexer.history;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.opengrok.indexer.logger.LoggerFactory;
+import org.opengrok.indexer.util.ForbiddenSymlinkException;
+
+/**
+ * Class representing file based storage of per source file history in the
+ * binary format of {@link BinaryHistoryFile}.
+ * <p>
+ * Unlike {@link FileHistoryCache}, incremental updates append the new entries
+ * to the cache file instead of decoding, merging and rewriting the whole
+ * history, and the most recent entry can be read without reading the rest.
+ * The file is rewritten only if all the entries have to be retagged or once
+ * it consists of {@link #MAX_CHUNKS} appended parts.
+ * <p>
+ * Cache files of {@link FileHistoryCache} are migrated to the binary format
+ * when the history of the file is next stored or retrieved.
+ */
+class BinaryHistoryCache extends FileHistoryCache {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(BinaryHistoryCache.class);
+
+    static final String CACHED_FILE_SUFFIX = ".bin";
+
+    /**
+     * Maximum number of appended parts of a cache file before it is compacted.
+     */
+    static final int MAX_CHUNKS = 32;
+
+    @Override
+    File getCachedFile(File file) throws HistoryException, ForbiddenSymlinkException {
+        return getCachedFile(file, CACHED_FILE_SUFFIX);
+    }
+
+    private static File getLegacyCachedFile(File file) throws HistoryException, ForbiddenSymlinkException {
+        return getCachedFile(file, FileHistoryCache.CACHED_FILE_SUFFIX);
+    }
+
+    @Override
+    History readHistory(File cacheFile) throws IOException {
+        return BinaryHistoryFile.read(cacheFile, Integer.MAX_VALUE);
+    }
+
+    @Override
+    void writeHistory(History history, File output) throws IOException {
+        BinaryHistoryFile.write(output, history);
+    }
+
+    @Override
+    void storeHistory(History histNew, File file, File cacheFile, Repository repo,
+            boolean mergeHistory) throws HistoryException {
+
+        File legacyFile = getLegacyFile(file);
+
+        if (mergeHistory && !cacheFile.exists() && legacyFile != null && legacyFile.exists()) {
+            migrate(legacyFile, histNew, cacheFile, repo);
+        } else if (mergeHistory && cacheFile.exists() && !isRetagNeeded(repo) &&
+                !histNew.getHistoryEntries().isEmpty() && append(histNew, cacheFile)) {
+            LOGGER.log(Level.FINEST, "Appended history to {0}", cacheFile);
+        } else {
+            super.storeHistory(histNew, file, cacheFile, repo, mergeHistory);
+        }
+
+        if (legacyFile != null) {
+            deleteLegacyFile(legacyFile);
+        }
+    }
+
+    /**
+     * Append new history to the cache file unless it is too fragmented.
+     * @return whether the history was appended
+     */
+    private boolean append(History histNew, File cacheFile) {
+        try {
+            int chunkCount = BinaryHistoryFile.getChunkCount(cacheFile);
+            if (chunkCount < MAX_CHUNKS) {
+                BinaryHistoryFile.append(cacheFile, histNew, chunkCount);
+                return true;
+            }
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING,
+                    String.format("Cannot append to history cache file %s, rewriting", cacheFile), e);
+        }
+        return false;
+    }
+
+    /**
+     * Merge the history from legacy cache file with new history and store it
+     * in the binary format.
+     */
+    private void migrate(File legacyFile, History histNew, File cacheFile, Repository repo)
+            throws HistoryException {
+        History history = null;
+        try {
+            history = mergeOldAndNewHistory(readCache(legacyFile), histNew, repo);
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING,
+                    String.format("Cannot read history cache file %s", legacyFile), e);
+        }
+        writeHistoryToFile(cacheFile.getParentFile(), history == null ? histNew : history, cacheFile);
+    }
+
+    @Override
+    public History get(File file, Repository repository, boolean withFiles)
+            throws HistoryException, ForbiddenSymlinkException {
+        File cacheFile = getCachedFile(file);
+        if (!cacheFile.exists()) {
+            File legacyFile = getLegacyCachedFile(file);
+            // Migrate only up-to-date cache files so that stale history does not appear current.
+            if (isUpToDate(file, legacyFile)) {
+                try {
+                    writeHistoryToFile(cacheFile.getParentFile(), readCache(legacyFile), cacheFile);
+                    deleteLegacyFile(legacyFile);
+                } catch (IOException | HistoryException e) {
+                    LOGGER.log(Level.WARNING,
+                            String.format("Cannot migrate history cache file %s", legacyFile), e);
+                }
+            }
+        }
+
+        return super.get(file, repository, withFiles);
+    }
+
+    @Override
+    public HistoryEntry getLastHistoryEntry(File file) throws HistoryException, ForbiddenSymlinkException {
+        File cacheFile = getCachedFile(file);
+        if (!isUpToDate(file, cacheFile)) {
+            return null;
+        }
+
+        try {
+            List<HistoryEntry> entries = BinaryHistoryFile.read(cacheFile, 1).getHistoryEntries();
+            return entries.isEmpty() ? null : entries.get(0);
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING,
+                    String.format("Error when reading cache file %s", cacheFile), e);
+            return null;
+        }
+    }
+
+    @Override
+    public boolean hasCacheForFile(File file) throws HistoryException {
+        if (super.hasCacheForFile(file)) {
+            return true;
+        }
+        File legacyFile = getLegacyFile(file);
+        return legacyFile != null && legacyFile.exists();
+    }
+
+    @Override
+    public void clearFile(String path) {
+        try {
+            File legacyFile = getLegacyFile(new File(env.getSourceRootPath() + path));
+            if (legacyFile != null) {
+                deleteLegacyFile(legacyFile);
+            }
+        } catch (HistoryException ex) {
+            LOGGER.log(Level.WARNING, "cannot get history file for file " + path, ex);
+        }
+
+        super.clearFile(path);
+    }
+
+    private static File getLegacyFile(File file) throws HistoryException {
+        try {
+            return getLegacyCachedFile(file);
+        } catch (ForbiddenSymlinkException ex) {
+            LOGGER.log(Level.FINER, ex.getMessage());
+            return null;
+        }
+    }
+
+    private static void deleteLegacyFile(File legacyFile) {
+        if (legacyFile.exists() && !legacyFile.delete()) {
+            LOGGER.log(Level.WARNING, "Failed to remove history cache file {0}",
+                    legacyFile.getAbsolutePath());
+        }
+    }
+}
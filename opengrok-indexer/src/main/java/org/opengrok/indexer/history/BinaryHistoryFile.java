@@ -0,0 +1,340 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License (the "License").
+ * You may not use this file except in compliance with the License.
+ *
+ * See LICENSE.txt included in this distribution for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at LICENSE.txt.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information: Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ */
+
+/*
+ * Copyright (c) 2021, Oracle and/or its affiliates. All rights reserved.
+ */
+package org.opengrok.indexer.history;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Represents the binary format of the history of a single file used by
+ * {@link BinaryHistoryCache} for files and by {@link LuceneHistoryCache} for
+ * stored fields.
+ * <p>
+ * The file starts with {@link #MAGIC} and continues with chunks of history
+ * entries. Each chunk holds the entries of one store operation, most recent
+ * first, compressed with deflate and followed by a fixed size trailer
+ * with the number of entries, the length of the compressed data, the number
+ * of chunks in the file up to this one and {@link #TRAILER_MAGIC}.
+ * Newer history is appended as a new chunk so the existing entries do not have
+ * to be decoded and encoded again, and since the trailers are read from the end of the file the most
+ * recent entries can be read without reading the older chunks.
+ */
+final class BinaryHistoryFile {
+
+    /**
+     * Leading bytes of the file, the last one being the version of the format.
+     */
+    private static final byte[] MAGIC = {'O', 'G', 'H', 1};
+
+    private static final int TRAILER_MAGIC = 0x4F474843;
+
+    private static final int TRAILER_SIZE = 4 * Integer.BYTES;
+
+    private BinaryHistoryFile() {
+    }
+
+    /**
+     * Write history to a new file.
+     * @param file file to write
+     * @param history history to write
+     * @throws IOException on error
+     */
+    static void write(File file, History history) throws IOException {
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(MAGIC);
+            out.write(encodeChunk(history, 1));
+        }
+    }
+
+    /**
+     * Append history entries more recent than those already in the file.
+     * The chunk is appended to a temporary copy of the file which then
+     * replaces the file so that readers never see a partially written chunk
+     * and a failure leaves the file intact.
+     * @param file existing file in this format
+     * @param history history to append
+     * @param chunkCount number of chunks in the file, see {@link #getChunkCount(File)}
+     * @throws IOException on error
+     */
+    static void append(File file, History history, int chunkCount) throws IOException {
+        byte[] chunk = encodeChunk(history, chunkCount + 1);
+        File output = File.createTempFile("oghist", null, file.getParentFile());
+        try {
+            Files.copy(file.toPath(), output.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            try (FileOutputStream out = new FileOutputStream(output, true)) {
+                out.write(chunk);
+            }
+            Files.move(output.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(output.toPath());
+        }
+    }
+
+    /**
+     * @param file file in this format
+     * @return number of chunks in the file
+     * @throws IOException if the file cannot be read or is not valid
+     */
+    static int getChunkCount(File file) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            Input input = fileInput(raf);
+            checkMagic(input, file.toString());
+            long length = input.length();
+            if (length == MAGIC.length) {
+                return 0;
+            }
+            return readTrailer(input, length, file.toString())[2];
+        }
+    }
+
+    /**
+     * Read the most recent history entries from the file.
+     * @param file file in this format
+     * @param limit maximum number of entries to read
+     * @return history with at most {@code limit} most recent entries, the most
+     * recent first
+     * @throws IOException if the file cannot be read or is not valid
+     */
+    static History read(File file, int limit) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            return read(fileInput(raf), limit, file.toString());
+        }
+    }
+
+    /**
+     * Encode history in this format.
+     * @param history history to encode
+     * @return bytes which can be decoded with {@link #decode(byte[], int)}
+     * @throws IOException on error
+     */
+    static byte[] encode(History history) throws IOException {
+        byte[] chunk = encodeChunk(history, 1);
+        byte[] bytes = Arrays.copyOf(MAGIC, MAGIC.length + chunk.length);
+        System.arraycopy(chunk, 0, bytes, MAGIC.length, chunk.length);
+        return bytes;
+    }
+
+    /**
+     * Decode the most recent history entries.
+     * @param bytes history in this format
+     * @param limit maximum number of entries to decode
+     * @return history with at most {@code limit} most recent entries, the most
+     * recent first
+     * @throws IOException if the bytes are not valid
+     */
+    static History decode(byte[] bytes, int limit) throws IOException {
+        Input input = new Input() {
+            @Override
+            public long length() {
+                return bytes.length;
+            }
+
+            @Override
+            public void readFully(long position, byte[] buf) throws IOException {
+                if (position < 0 || position + buf.length > bytes.length) {
+                    throw new EOFException();
+                }
+                System.arraycopy(bytes, (int) position, buf, 0, buf.length);
+            }
+        };
+        return read(input, limit, "history bytes");
+    }
+
+    /**
+     * Random access to data in this format.
+     */
+    private interface Input {
+        long length() throws IOException;
+
+        void readFully(long position, byte[] buf) throws IOException;
+    }
+
+    private static Input fileInput(RandomAccessFile raf) {
+        return new Input() {
+            @Override
+            public long length() throws IOException {
+                return raf.length();
+            }
+
+            @Override
+            public void readFully(long position, byte[] buf) throws IOException {
+                raf.seek(position);
+                raf.readFully(buf);
+            }
+        };
+    }
+
+    private static History read(Input input, int limit, String name) throws IOException {
+        List<HistoryEntry> entries = new ArrayList<>();
+        History history = new History(entries);
+        checkMagic(input, name);
+        long end = input.length();
+        while (end > MAGIC.length && entries.size() < limit) {
+            int[] trailer = readTrailer(input, end, name);
+            int count = trailer[0];
+            int bodyLength = trailer[1];
+            long start = end - TRAILER_SIZE - bodyLength;
+
+            byte[] body = new byte[bodyLength];
+            input.readFully(start, body);
+            try (DataInputStream in = new DataInputStream(
+                    new InflaterInputStream(new ByteArrayInputStream(body)))) {
+                for (int i = 0; i < count && entries.size() < limit; i++) {
+                    readEntry(in, history);
+                }
+            }
+            end = start;
+        }
+        return history;
+    }
+
+    private static byte[] encodeChunk(History history, int chunkNumber) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(new DeflaterOutputStream(body))) {
+            for (HistoryEntry entry : history.getHistoryEntries()) {
+                writeEntry(out, entry, history.getTags().get(entry.getRevision()));
+            }
+        }
+
+        ByteArrayOutputStream chunk = new ByteArrayOutputStream(body.size() + TRAILER_SIZE);
+        try (DataOutputStream out = new DataOutputStream(chunk)) {
+            body.writeTo(out);
+            out.writeInt(history.getHistoryEntries().size());
+            out.writeInt(body.size());
+            out.writeInt(chunkNumber);
+            out.writeInt(TRAILER_MAGIC);
+        }
+        return chunk.toByteArray();
+    }
+
+    private static void writeEntry(DataOutputStream out, HistoryEntry entry, String tags)
+            throws IOException {
+        writeString(out, entry.getRevision());
+        Date date = entry.getDate();
+        out.writeBoolean(date != null);
+        if (date != null) {
+            out.writeLong(date.getTime());
+        }
+        writeString(out, entry.getAuthor());
+        writeString(out, entry.getMessage());
+        out.writeBoolean(entry.isActive());
+        out.writeInt(entry.getFiles().size());
+        for (String file : entry.getFiles()) {
+            writeString(out, file);
+        }
+        writeString(out, tags);
+    }
+
+    private static void readEntry(DataInputStream in, History history) throws IOException {
+        HistoryEntry entry = new HistoryEntry();
+        entry.setRevision(readString(in));
+        if (in.readBoolean()) {
+            entry.setDate(new Date(in.readLong()));
+        }
+        entry.setAuthor(readString(in));
+        entry.setMessage(readString(in));
+        entry.setActive(in.readBoolean());
+        int fileCount = in.readInt();
+        if (fileCount > 0) {
+            TreeSet<String> files = new TreeSet<>();
+            for (int i = 0; i < fileCount; i++) {
+                files.add(readString(in));
+            }
+            entry.setFiles(files);
+        }
+        String tags = readString(in);
+        if (tags != null) {
+            history.getTags().put(entry.getRevision(), tags);
+        }
+        history.getHistoryEntries().add(entry);
+    }
+
+    static void writeString(DataOutputStream out, String str) throws IOException {
+        if (str == null) {
+            out.writeInt(-1);
+        } else {
+            byte[] bytes = str.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void checkMagic(Input input, String name) throws IOException {
+        byte[] magic = new byte[MAGIC.length];
+        if (input.length() < MAGIC.length) {
+            throw new IOException("Truncated history cache " + name);
+        }
+        input.readFully(0, magic);
+        if (!Arrays.equals(magic, MAGIC)) {
+            throw new IOException("Unknown format of history cache " + name);
+        }
+    }
+
+    /**
+     * @return number of entries, length of the compressed data and chunk number
+     */
+    private static int[] readTrailer(Input input, long end, String name) throws IOException {
+        if (end - MAGIC.length < TRAILER_SIZE) {
+            throw new IOException("Truncated history cache " + name);
+        }
+        byte[] buf = new byte[TRAILER_SIZE];
+        input.readFully(end - TRAILER_SIZE, buf);
+        ByteBuffer trailer = ByteBuffer.wrap(buf);
+        int count = trailer.getInt();
+        int bodyLength = trailer.getInt();
+        int chunkNumber = trailer.getInt();
+        if (trailer.getInt() != TRAILER_MAGIC || count < 0 || bodyLength < 0 ||
+                end - TRAILER_SIZE - bodyLength < MAGIC.length) {
+            throw new IOException("Corrupted history cache " + name);
+        }
+        return new int[] {count, bodyLength, chunkNumber};
+    }
+}
@@ -51,6 +51,7 @@ import java.util.List;
 import java.util.ListIterator;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
@@ -76,15 +77,17 @@ import org.opengrok.indexer.util.TandemPath;
 class FileHistoryCache implements HistoryCache {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(FileHistoryCache.class);
-    private static final RuntimeEnvironment env = RuntimeEnvironment.getInstance();
+    static final RuntimeEnvironment env = RuntimeEnvironment.getInstance();
 
     private final Object lock = new Object();
 
-    private static final String HISTORY_CACHE_DIR_NAME = "historycache";
+    static final String HISTORY_CACHE_DIR_NAME = "historycache";
     private static final String LATEST_REV_FILE_NAME = "OpenGroklatestRev";
+    static final String CACHED_FILE_SUFFIX = ".gz";
 
     private final PathAccepter pathAccepter = env.getPathAccepter();
     private boolean historyIndexDone = false;
+    private final Set<String> historyIndexDoneRepositories = ConcurrentHashMap.newKeySet();
 
     private Counter fileHistoryCacheHits;
     private Counter fileHistoryCacheMisses;
@@ -99,6 +102,16 @@ class FileHistoryCache implements HistoryCache {
         return historyIndexDone;
     }
 
+    @Override
+    public void setHistoryIndexDone(RepositoryInfo repository) {
+        historyIndexDoneRepositories.add(repository.getDirectoryName());
+    }
+
+    @Override
+    public boolean isHistoryIndexDone(RepositoryInfo repository) {
+        return isHistoryIndexDone() || historyIndexDoneRepositories.contains(repository.getDirectoryName());
+    }
+
     /**
      * Generate history cache for single renamed file.
      * @param filename file path
@@ -191,7 +204,18 @@ class FileHistoryCache implements HistoryCache {
      * @param file the file to find the cache for
      * @return file that might contain cached history for <code>file</code>
      */
-    private static File getCachedFile(File file) throws HistoryException,
+    File getCachedFile(File file) throws HistoryException, ForbiddenSymlinkException {
+        return getCachedFile(file, CACHED_FILE_SUFFIX);
+    }
+
+    /**
+     * Get a <code>File</code> object describing the cache file with given suffix.
+     *
+     * @param file the file to find the cache for
+     * @param suffix suffix of the cache file
+     * @return file that might contain cached history for <code>file</code>
+     */
+    static File getCachedFile(File file, String suffix) throws HistoryException,
             ForbiddenSymlinkException {
 
         StringBuilder sb = new StringBuilder();
@@ -210,7 +234,7 @@ class FileHistoryCache implements HistoryCache {
                     "source root for " + file, e);
         }
 
-        return new File(TandemPath.join(sb.toString(), ".gz"));
+        return new File(TandemPath.join(sb.toString(), suffix));
     }
 
     private static XMLDecoder getDecoder(InputStream in) {
@@ -235,13 +259,39 @@ class FileHistoryCache implements HistoryCache {
         }
     }
 
+    /**
+     * Read history from a cache file in the format of this cache.
+     * @param cacheFile the cache file
+     * @return history
+     * @throws IOException on error
+     */
+    History readHistory(File cacheFile) throws IOException {
+        return readCache(cacheFile);
+    }
+
+    /**
+     * Write history to a file in the format of this cache.
+     * @param history history to store
+     * @param output the file to write to
+     * @throws IOException on error
+     */
+    void writeHistory(History history, File output) throws IOException {
+        try (FileOutputStream out = new FileOutputStream(output);
+            XMLEncoder e = new XMLEncoder(new GZIPOutputStream(
+                new BufferedOutputStream(out)))) {
+            e.setPersistenceDelegate(File.class,
+                    new FilePersistenceDelegate());
+            e.writeObject(history);
+        }
+    }
+
     /**
      * Store history in file on disk.
      * @param dir directory where the file will be saved
      * @param history history to store
      * @param cacheFile the file to store the history to
      */
-    private void writeHistoryToFile(File dir, History history, File cacheFile) throws HistoryException {
+    void writeHistoryToFile(File dir, History history, File cacheFile) throws HistoryException {
         // We have a problem that multiple threads may access the cache layer
         // at the same time. Since I would like to avoid read-locking, I just
         // serialize the write access to the cache file. The generation of the
@@ -253,13 +303,7 @@ class FileHistoryCache implements HistoryCache {
         final File output;
         try {
             output = File.createTempFile("oghist", null, dir);
-            try (FileOutputStream out = new FileOutputStream(output);
-                XMLEncoder e = new XMLEncoder(new GZIPOutputStream(
-                    new BufferedOutputStream(out)))) {
-                e.setPersistenceDelegate(File.class,
-                        new FilePersistenceDelegate());
-                e.writeObject(history);
-            }
+            writeHistory(history, output);
         } catch (IOException ioe) {
             throw new HistoryException("Failed to write history", ioe);
         }
@@ -290,44 +334,63 @@ class FileHistoryCache implements HistoryCache {
      * @param repo repository to where pre pre-image of the cacheFile belong
      * @return merged history (can be null if merge failed for some reason)
      */
-    private History mergeOldAndNewHistory(File cacheFile, History histNew, Repository repo) {
-
-        History histOld;
-        History history = null;
-
+    History mergeOldAndNewHistory(File cacheFile, History histNew, Repository repo) {
         try {
-            histOld = readCache(cacheFile);
-            // Merge old history with the new history.
-            List<HistoryEntry> listOld = histOld.getHistoryEntries();
-            if (!listOld.isEmpty()) {
-                List<HistoryEntry> listNew = histNew.getHistoryEntries();
-                ListIterator<HistoryEntry> li = listNew.listIterator(listNew.size());
-                while (li.hasPrevious()) {
-                    listOld.add(0, li.previous());
-                }
-                history = new History(listOld);
-
-                // Retag the changesets in case there have been some new
-                // tags added to the repository. Technically we should just
-                // retag the last revision from the listOld however this
-                // does not solve the problem when listNew contains new tags
-                // retroactively tagging changesets from listOld so we resort
-                // to this somewhat crude solution of retagging from scratch.
-                if (env.isTagsEnabled() && repo.hasFileBasedTags()) {
-                    history.strip();
-                    repo.assignTagsInHistory(history);
-                }
-            }
+            return mergeOldAndNewHistory(readHistory(cacheFile), histNew, repo);
         } catch (IOException ex) {
             LOGGER.log(Level.SEVERE,
                 String.format("Cannot open history cache file %s", cacheFile.getPath()), ex);
         }
 
+        return null;
+    }
+
+    /**
+     * Merge old history with histNew, return merged history.
+     *
+     * @param histOld history object with cached history entries
+     * @param histNew history object with new history entries
+     * @param repo repository to where the histories belong
+     * @return merged history (can be null if there were no old entries)
+     */
+    static History mergeOldAndNewHistory(History histOld, History histNew, Repository repo) {
+        History history = null;
+
+        // Merge old history with the new history.
+        List<HistoryEntry> listOld = histOld.getHistoryEntries();
+        if (!listOld.isEmpty()) {
+            List<HistoryEntry> listNew = histNew.getHistoryEntries();
+            ListIterator<HistoryEntry> li = listNew.listIterator(listNew.size());
+            while (li.hasPrevious()) {
+                listOld.add(0, li.previous());
+            }
+            history = new History(listOld);
+
+            // Retag the changesets in case there have been some new
+            // tags added to the repository. Technically we should just
+            // retag the last revision from the listOld however this
+            // does not solve the problem when listNew contains new tags
+            // retroactively tagging changesets from listOld so we resort
+            // to this somewhat crude solution of retagging from scratch.
+            if (isRetagNeeded(repo)) {
+                history.strip();
+                repo.assignTagsInHistory(history);
+            }
+        }
+
         return history;
     }
 
     /**
-     * Store history object (encoded as XML and compressed with gzip) in a file.
+     * @param repo repository
+     * @return whether merged history of the repository has to be retagged from scratch
+     */
+    static boolean isRetagNeeded(Repository repo) {
+        return env.isTagsEnabled() && repo.hasFileBasedTags();
+    }
+
+    /**
+     * Store history object in the cache file corresponding to a file.
      *
      * @param histNew history object to store
      * @param file file to store the history object into
@@ -335,7 +398,7 @@ class FileHistoryCache implements HistoryCache {
      * @param mergeHistory whether to merge the history with existing or
      *                     store the histNew as is
      */
-    private void storeFile(History histNew, File file, Repository repo,
+    void storeFile(History histNew, File file, Repository repo,
             boolean mergeHistory) throws HistoryException {
 
         File cacheFile;
@@ -345,7 +408,6 @@ class FileHistoryCache implements HistoryCache {
             LOGGER.log(Level.FINER, e.getMessage());
             return;
         }
-        History history = histNew;
 
         File dir = cacheFile.getParentFile();
         if (!dir.isDirectory() && !dir.mkdirs()) {
@@ -353,6 +415,25 @@ class FileHistoryCache implements HistoryCache {
                     "Unable to create cache directory '" + dir + "'.");
         }
 
+        storeHistory(histNew, file, cacheFile, repo, mergeHistory);
+    }
+
+    /**
+     * Store history object in the cache file, possibly merging it with the
+     * history already stored there.
+     *
+     * @param histNew history object to store
+     * @param file the file whose history is stored
+     * @param cacheFile the cache file (its directory already exists)
+     * @param repo repository for the file
+     * @param mergeHistory whether to merge the history with existing or
+     *                     store the histNew as is
+     */
+    void storeHistory(History histNew, File file, File cacheFile, Repository repo,
+            boolean mergeHistory) throws HistoryException {
+
+        History history = histNew;
+
         if (mergeHistory && cacheFile.exists()) {
             history = mergeOldAndNewHistory(cacheFile, histNew, repo);
         }
@@ -363,7 +444,7 @@ class FileHistoryCache implements HistoryCache {
             history = histNew;
         }
 
-        writeHistoryToFile(dir, history, cacheFile);
+        writeHistoryToFile(cacheFile.getParentFile(), history, cacheFile);
     }
 
     private void storeFile(History histNew, File file, Repository repo)
@@ -563,7 +644,7 @@ class FileHistoryCache implements HistoryCache {
                 new Object[]{renamedFileHistoryCount.intValue(), repository.getDirectoryName()});
     }
 
-    private void createDirectoriesForFiles(Set<String> files) throws HistoryException {
+    void createDirectoriesForFiles(Set<String> files) throws HistoryException {
         // The directories for the files have to be created before
         // the actual files otherwise storeFile() might be racing for
         // mkdirs() if there are multiple files from single directory
@@ -588,17 +669,12 @@ class FileHistoryCache implements HistoryCache {
     @Override
     public History get(File file, Repository repository, boolean withFiles)
             throws HistoryException, ForbiddenSymlinkException {
-        File cache = getCachedFile(file);
-        if (isUpToDate(file, cache)) {
-            try {
-                if (fileHistoryCacheHits != null) {
-                    fileHistoryCacheHits.increment();
-                }
-                return readCache(cache);
-            } catch (Exception e) {
-                LOGGER.log(Level.WARNING,
-                        "Error when reading cache file '" + cache, e);
+        History cachedHistory = getCachedHistory(file, repository);
+        if (cachedHistory != null) {
+            if (fileHistoryCacheHits != null) {
+                fileHistoryCacheHits.increment();
             }
+            return cachedHistory;
         }
 
         if (fileHistoryCacheMisses != null) {
@@ -609,9 +685,11 @@ class FileHistoryCache implements HistoryCache {
          * for directories may contain lots of files untracked by given SCM.
          * For these it would be waste of time to get their history
          * since the history of all files in this repository should have been
-         * fetched in the first phase of indexing.
+         * fetched already, either in the first phase of indexing or, when
+         * indexing runs in pipeline with history cache creation, before the
+         * project of the repository is indexed.
          */
-        if (isHistoryIndexDone() && repository.isHistoryEnabled() &&
+        if (isHistoryIndexDone(repository) && repository.isHistoryEnabled() &&
                 repository.hasHistoryForDirectories() &&
                 !env.isFetchHistoryWhenNotInCache()) {
             return null;
@@ -640,9 +718,7 @@ class FileHistoryCache implements HistoryCache {
             // a sub-directory change. This will cause us to present a stale
             // history log until a the current directory is updated and
             // invalidates the cache entry.
-            if ((cache != null) &&
-                        (cache.exists() ||
-                             (time > env.getHistoryReaderTimeLimit()))) {
+            if (hasCacheForFile(file) || time > env.getHistoryReaderTimeLimit()) {
                 // retrieving the history takes too long, cache it!
                 storeFile(history, file, repository);
             }
@@ -651,6 +727,27 @@ class FileHistoryCache implements HistoryCache {
         return history;
     }
 
+    /**
+     * Get the history of a file from the cache if the cache is up to date.
+     * @param file the file to retrieve history for
+     * @param repository the repository of the file
+     * @return cached history or {@code null} if it is not in the cache, is out
+     * of date or cannot be read
+     */
+    History getCachedHistory(File file, Repository repository)
+            throws HistoryException, ForbiddenSymlinkException {
+        File cache = getCachedFile(file);
+        if (isUpToDate(file, cache)) {
+            try {
+                return readHistory(cache);
+            } catch (Exception e) {
+                LOGGER.log(Level.WARNING,
+                        "Error when reading cache file '" + cache, e);
+            }
+        }
+        return null;
+    }
+
     /**
      * Check if the cache is up to date for the specified file.
      * @param file the file to check
@@ -658,7 +755,7 @@ class FileHistoryCache implements HistoryCache {
      * the file
      * @return {@code true} if the cache is up to date, {@code false} otherwise
      */
-    private boolean isUpToDate(File file, File cachedFile) {
+    static boolean isUpToDate(File file, File cachedFile) {
         return cachedFile != null && cachedFile.exists() &&
                 file.lastModified() <= cachedFile.lastModified();
     }
@@ -71,7 +71,6 @@ import org.eclipse.jgit.revwalk.FollowFilter;
 import org.eclipse.jgit.revwalk.RevCommit;
 import org.eclipse.jgit.revwalk.RevTree;
 import org.eclipse.jgit.revwalk.RevWalk;
-import org.eclipse.jgit.storage.file.FileRepositoryBuilder;
 import org.eclipse.jgit.treewalk.AbstractTreeIterator;
 import org.eclipse.jgit.treewalk.CanonicalTreeParser;
 import org.eclipse.jgit.treewalk.TreeWalk;
@@ -675,8 +674,12 @@ public class GitRepository extends RepositoryWithPerPartesHistory {
         return true;
     }
 
+    /**
+     * @param directory top-level directory of the repository
+     * @return JGit repository from {@link JGitRepositoryPool} which has to be closed after use
+     */
     private org.eclipse.jgit.lib.Repository getJGitRepository(String directory) throws IOException {
-        return FileRepositoryBuilder.create(Paths.get(directory, ".git").toFile());
+        return JGitRepositoryPool.getInstance().get(directory);
     }
 
     private void rebuildTagList(File directory) {
@@ -787,6 +790,7 @@ public class GitRepository extends RepositoryWithPerPartesHistory {
 
     @Override
     public String determineCurrentVersion(CommandTimeoutType cmdType) throws IOException {
+        String version = null;
         try (org.eclipse.jgit.lib.Repository repository = getJGitRepository(getDirectoryName())) {
             Ref head = repository.exactRef(Constants.HEAD);
             if (head != null && head.getObjectId() != null) {
@@ -794,7 +798,7 @@ public class GitRepository extends RepositoryWithPerPartesHistory {
                     RevCommit commit = walk.parseCommit(head.getObjectId());
                     int commitTime = commit.getCommitTime();
                     Date date = new Date((long) (commitTime) * 1000);
-                    return String.format("%s %s %s %s",
+                    version = String.format("%s %s %s %s",
                             format(date),
                             reader.abbreviate(head.getObjectId()).name(),
                             commit.getAuthorIdent().getName(),
@@ -803,6 +807,9 @@ public class GitRepository extends RepositoryWithPerPartesHistory {
             }
         }
 
-        return null;
+        // Reopen the repository after it changed so that no stale state is used.
+        JGitRepositoryPool.getInstance().setVersion(getDirectoryName(), version);
+
+        return version;
     }
 }
@@ -64,6 +64,21 @@ interface HistoryCache {
     History get(File file, Repository repository, boolean withFiles)
             throws HistoryException, ForbiddenSymlinkException;
 
+    /**
+     * Retrieve the most recent history entry for the given file from the cache
+     * if the cache is up to date and the entry can be read without reading
+     * the whole history of the file.
+     *
+     * @param file The file to retrieve the history entry for
+     * @return the most recent history entry or {@code null} if not available
+     * @throws HistoryException if the history cannot be read
+     * @throws ForbiddenSymlinkException if symbolic-link checking encounters
+     * an ineligible link
+     */
+    default HistoryEntry getLastHistoryEntry(File file) throws HistoryException, ForbiddenSymlinkException {
+        return null;
+    }
+
     /**
      * Store the history for a repository.
      *
@@ -95,6 +110,16 @@ interface HistoryCache {
      */
     void optimize() throws HistoryException;
 
+    /**
+     * Make the changes done outside of {@link #store(History, Repository)},
+     * e.g. by {@link #clearFile(String)}, durable. Implementations which
+     * persist every change right away do not need to do anything.
+     *
+     * @throws HistoryException if the changes could not be persisted
+     */
+    default void flush() throws HistoryException {
+    }
+
     /**
      * Check if the specified file is present in the cache.
      * @param file the file to check
@@ -151,4 +176,18 @@ interface HistoryCache {
     // Set and query if history index phase is done.
     void setHistoryIndexDone();
     boolean isHistoryIndexDone();
+
+    /**
+     * Record that the history of the repository has been cached, while the
+     * history of other repositories may still be in progress.
+     * @param repository repository whose history has been cached
+     */
+    void setHistoryIndexDone(RepositoryInfo repository);
+
+    /**
+     * @param repository repository
+     * @return whether the history of the repository has been cached, either
+     * on its own or as part of the whole history index phase
+     */
+    boolean isHistoryIndexDone(RepositoryInfo repository);
 }
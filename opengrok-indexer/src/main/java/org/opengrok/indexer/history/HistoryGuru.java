@@ -37,8 +37,10 @@ import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
@@ -48,6 +50,7 @@ import java.util.stream.Collectors;
 
 import org.opengrok.indexer.configuration.CommandTimeoutType;
 import org.opengrok.indexer.configuration.Configuration.RemoteSCM;
+import org.opengrok.indexer.configuration.HistoryCacheType;
 import org.opengrok.indexer.configuration.PathAccepter;
 import org.opengrok.indexer.configuration.RuntimeEnvironment;
 import org.opengrok.indexer.logger.LoggerFactory;
@@ -77,6 +80,11 @@ public final class HistoryGuru {
      */
     private final HistoryCache historyCache;
 
+    /**
+     * The annotation cache, used if enabled in the configuration.
+     */
+    private final AnnotationCache annotationCache;
+
     /**
      * Map of repositories, with {@code DirectoryName} as key.
      */
@@ -88,6 +96,17 @@ public final class HistoryGuru {
      */
     private final Map<String, String> repositoryRoots = new ConcurrentHashMap<>();
 
+    /**
+     * Futures of history cache creation of individual repositories with
+     * {@code DirectoryName} as key.
+     */
+    private final Map<String, CompletableFuture<Void>> pendingCaches = new ConcurrentHashMap<>();
+
+    /**
+     * Future of all history cache creation started by {@link #createCacheAsync(Collection)}.
+     */
+    private volatile CompletableFuture<Void> pendingCache = CompletableFuture.completedFuture(null);
+
     /**
      * Interface to perform repository lookup for a given file path and HistoryGuru state.
      */
@@ -102,7 +121,13 @@ public final class HistoryGuru {
 
         HistoryCache cache = null;
         if (env.useHistoryCache()) {
-            cache = new FileHistoryCache();
+            if (env.getHistoryCacheType() == HistoryCacheType.BINARY) {
+                cache = new BinaryHistoryCache();
+            } else if (env.getHistoryCacheType() == HistoryCacheType.LUCENE) {
+                cache = new LuceneHistoryCache();
+            } else {
+                cache = new FileHistoryCache();
+            }
 
             try {
                 cache.initialize();
@@ -114,6 +139,8 @@ public final class HistoryGuru {
             }
         }
         historyCache = cache;
+        annotationCache = new AnnotationCache();
+        annotationCache.initialize();
         repositoryLookup = RepositoryLookup.cached();
     }
 
@@ -160,10 +187,19 @@ public final class HistoryGuru {
 
         Repository repo = getRepository(file);
         if (repo != null) {
+            boolean useAnnotationCache = env.isAnnotationCacheEnabled();
+            if (useAnnotationCache) {
+                ret = annotationCache.get(file, rev);
+                if (ret != null) {
+                    return ret;
+                }
+            }
+
             ret = repo.annotate(file, rev);
             History hist = null;
             try {
-                hist = repo.getHistory(file);
+                // The descriptions do not need the files of the changesets.
+                hist = getHistory(file, false, true);
             } catch (HistoryException ex) {
                 LOGGER.log(Level.FINEST,
                         "Cannot get messages for tooltip: ", ex);
@@ -191,11 +227,34 @@ public final class HistoryGuru {
                     }
                 }
             }
+
+            if (useAnnotationCache && ret != null) {
+                annotationCache.store(file, rev, ret);
+            }
         }
 
         return ret;
     }
 
+    /**
+     * Create annotation of the current version of a file in the annotation
+     * cache unless it is there already. Does nothing if the annotation cache
+     * is disabled or the file cannot be annotated.
+     *
+     * @param file the file to annotate
+     */
+    public void createAnnotationCache(File file) {
+        if (!env.isAnnotationCacheEnabled() || !hasAnnotation(file)) {
+            return;
+        }
+
+        try {
+            annotate(file, null);
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, String.format("Cannot annotate %s", file), e);
+        }
+    }
+
     /**
      * Get the appropriate history reader for given file.
      *
@@ -238,6 +297,17 @@ public final class HistoryGuru {
     public HistoryEntry getLastHistoryEntry(File file, boolean ui) throws HistoryException {
         final Repository repo = getRepository(file);
         if (repo != null) {
+            if (repo.isHistoryEnabled() && useCache() && historyCache.supportsRepository(repo)) {
+                try {
+                    HistoryEntry entry = historyCache.getLastHistoryEntry(file);
+                    if (entry != null) {
+                        return entry;
+                    }
+                } catch (ForbiddenSymlinkException ex) {
+                    LOGGER.log(Level.FINER, ex.getMessage());
+                    return null;
+                }
+            }
             return repo.getLastHistoryEntry(file, ui);
         }
         return null;
@@ -569,6 +639,23 @@ public final class HistoryGuru {
     }
 
     private void createCacheReal(Collection<Repository> repositories) {
+        try {
+            startCache(repositories).get();
+        } catch (InterruptedException ex) {
+            LOGGER.log(Level.SEVERE, "interrupted while waiting for history cache", ex);
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException ex) {
+            LOGGER.log(Level.SEVERE, "history cache creation failed", ex);
+        }
+    }
+
+    /**
+     * Start creating history cache for the repositories in the history executor.
+     * @param repositories repositories to process
+     * @return future completed once the history cache of all the repositories
+     * has been created and optimized
+     */
+    private CompletableFuture<Void> startCache(Collection<Repository> repositories) {
         Statistics elapsed = new Statistics();
         ExecutorService executor = env.getIndexerParallelizer().getHistoryExecutor();
         // Since we know each repository object from the repositories
@@ -579,7 +666,7 @@ public final class HistoryGuru {
         HashMap<Repository, String> repos2process = new HashMap<>();
 
         // Collect the list of <latestRev,repo> pairs first so that we
-        // do not have to deal with latch decrementing in the cycle below.
+        // do not have to deal with failures in the cycle below.
         for (final Repository repo : repositories) {
             final String latestRev;
 
@@ -596,42 +683,94 @@ public final class HistoryGuru {
 
         LOGGER.log(Level.INFO, "Creating historycache for {0} repositories",
                 repos2process.size());
-        final CountDownLatch latch = new CountDownLatch(repos2process.size());
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
         for (final Map.Entry<Repository, String> entry : repos2process.entrySet()) {
-            executor.submit(() -> {
+            CompletableFuture<Void> future = CompletableFuture.runAsync(() -> {
                 try {
                     createCache(entry.getKey(), entry.getValue());
+                    historyCache.setHistoryIndexDone(entry.getKey());
                 } catch (Exception ex) {
                     // We want to catch any exception since we are in thread.
                     LOGGER.log(Level.WARNING, "createCacheReal() got exception", ex);
-                } finally {
-                    latch.countDown();
                 }
-            });
+            }, executor);
+            pendingCaches.put(entry.getKey().getDirectoryName(), future);
+            futures.add(future);
         }
 
         /*
-         * Wait until the history of all repositories is done. This is necessary
-         * since the next phase of generating index will need the history to
-         * be ready as it is recorded in Lucene index.
+         * Finish once the history of all repositories is done. Unless the
+         * history cache is created in pipeline with indexing, the next phase
+         * of generating index waits for this as the history is recorded in
+         * Lucene index.
          */
-        try {
-            latch.await();
-        } catch (InterruptedException ex) {
-            LOGGER.log(Level.SEVERE, "latch exception", ex);
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).thenRun(() -> {
+            // The cache has been populated. Now, optimize how it is stored on
+            // disk to enhance performance and save space.
+            try {
+                historyCache.optimize();
+            } catch (HistoryException he) {
+                LOGGER.log(Level.WARNING,
+                        "Failed optimizing the history cache database", he);
+            }
+            elapsed.report(LOGGER, "Done history cache for all repositories", "indexer.history.cache");
+            historyCache.setHistoryIndexDone();
+        });
+    }
+
+    /**
+     * Start creating history cache for selected repositories without waiting
+     * for it to finish. Use {@link #getCacheFuture(Collection)} to wait for
+     * the history cache of particular repositories and {@link #waitForCache()}
+     * for all of them.
+     *
+     * @param repositories list of repository paths relative to source root,
+     *                     all repositories if {@code null} or empty
+     */
+    public void createCacheAsync(Collection<String> repositories) {
+        if (!useCache()) {
             return;
         }
 
-        // The cache has been populated. Now, optimize how it is stored on
-        // disk to enhance performance and save space.
+        Collection<Repository> repos = repositories == null || repositories.isEmpty() ?
+                this.repositories.values() : getReposFromString(repositories);
+        CompletableFuture<Void> future = startCache(repos);
+        pendingCache = pendingCache.thenCombine(future, (a, b) -> null);
+    }
+
+    /**
+     * Get the future of history cache creation started by
+     * {@link #createCacheAsync(Collection)} for a set of repositories.
+     *
+     * @param repositories repositories or {@code null} for all repositories
+     * @return future that completes once the history cache of the repositories
+     * is ready; completed future if it is not being created
+     */
+    public CompletableFuture<Void> getCacheFuture(Collection<? extends RepositoryInfo> repositories) {
+        if (repositories == null) {
+            return pendingCache;
+        }
+
+        return CompletableFuture.allOf(repositories.stream().
+                map(repo -> pendingCaches.get(repo.getDirectoryName())).
+                filter(Objects::nonNull).
+                toArray(CompletableFuture[]::new));
+    }
+
+    /**
+     * Wait for history cache creation started by {@link #createCacheAsync(Collection)}.
+     */
+    public void waitForCache() {
         try {
-            historyCache.optimize();
-        } catch (HistoryException he) {
-            LOGGER.log(Level.WARNING,
-                    "Failed optimizing the history cache database", he);
+            pendingCache.get();
+        } catch (InterruptedException ex) {
+            LOGGER.log(Level.SEVERE, "interrupted while waiting for history cache", ex);
+            Thread.currentThread().interrupt();
+            return;
+        } catch (ExecutionException ex) {
+            LOGGER.log(Level.SEVERE, "history cache creation failed", ex);
         }
-        elapsed.report(LOGGER, "Done history cache for all repositories", "indexer.history.cache");
-        historyCache.setHistoryIndexDone();
+        pendingCaches.clear();
     }
 
     /**
@@ -680,10 +819,12 @@ public final class HistoryGuru {
     }
 
     /**
-     * Clear entry for single file from history cache.
+     * Clear entry for single file from history cache and annotation cache.
      * @param path path to the file relative to the source root
      */
     public void clearCacheFile(String path) {
+        annotationCache.clear(path);
+
         if (!useCache()) {
             return;
         }
@@ -691,6 +832,22 @@ public final class HistoryGuru {
         historyCache.clearFile(path);
     }
 
+    /**
+     * Make the pending changes of the history cache durable, e.g. those done
+     * by {@link #clearCacheFile(String)}.
+     */
+    public void flushCache() {
+        if (!useCache()) {
+            return;
+        }
+
+        try {
+            historyCache.flush();
+        } catch (HistoryException e) {
+            LOGGER.log(Level.WARNING, "Failed to flush the history cache", e);
+        }
+    }
+
     /**
      * Remove history data for a list of repositories. Those that are
      * successfully cleared are removed from the internal list of repositories.
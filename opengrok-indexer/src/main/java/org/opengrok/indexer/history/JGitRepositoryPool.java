@@ -0,0 +1,171 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License (the "License").
+ * You may not use this file except in compliance with the License.
+ *
+ * See LICENSE.txt included in this distribution for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at LICENSE.txt.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information: Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ */
+
+/*
+ * Copyright (c) 2021, Oracle and/or its affiliates. All rights reserved.
+ */
+package org.opengrok.indexer.history;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.eclipse.jgit.storage.file.FileRepositoryBuilder;
+import org.eclipse.jgit.storage.file.WindowCacheConfig;
+import org.opengrok.indexer.configuration.RuntimeEnvironment;
+
+/**
+ * Bounded cache of open JGit repositories so that the pack file indexes and
+ * refs of a Git repository are not read again for each operation.
+ * <p>
+ * JGit repositories are reference counted: the pool holds one reference to
+ * each repository it keeps and {@link #get(String)} hands out another one,
+ * which is released by closing the repository as usual. A repository evicted
+ * from the pool is therefore closed only once it is no longer in use.
+ */
+final class JGitRepositoryPool {
+
+    /**
+     * Maximum number of repositories kept open.
+     */
+    static final int MAX_SIZE = 64;
+
+    private static final JGitRepositoryPool INSTANCE = new JGitRepositoryPool(MAX_SIZE);
+
+    private static final class Entry {
+        private final org.eclipse.jgit.lib.Repository repository;
+        private String version;
+
+        Entry(org.eclipse.jgit.lib.Repository repository) {
+            this.repository = repository;
+        }
+    }
+
+    private final Map<String, Entry> entries;
+
+    private long packedGitLimit = -1;
+    private boolean packedGitMMAP;
+
+    JGitRepositoryPool(int maxSize) {
+        entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                if (size() > maxSize) {
+                    eldest.getValue().repository.close();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    static JGitRepositoryPool getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * @param directory top-level directory of the Git repository
+     * @return open JGit repository which has to be closed by the caller
+     * @throws IOException if the repository cannot be opened
+     */
+    synchronized org.eclipse.jgit.lib.Repository get(String directory) throws IOException {
+        configureWindowCache();
+
+        Entry entry = entries.get(directory);
+        if (entry != null && !entry.repository.getDirectory().isDirectory()) {
+            // The repository was removed (and possibly recreated) since it was opened.
+            remove(directory);
+            entry = null;
+        }
+        if (entry == null) {
+            entry = new Entry(FileRepositoryBuilder.create(new File(directory, ".git")));
+            entries.put(directory, entry);
+        }
+        entry.repository.incrementOpen();
+        return entry.repository;
+    }
+
+    /**
+     * Record the current version of the repository. If it differs from the
+     * version recorded previously, the repository is closed so that it is
+     * opened afresh the next time it is needed.
+     * @param directory top-level directory of the Git repository
+     * @param version current version of the repository as determined by {@link GitRepository}
+     */
+    synchronized void setVersion(String directory, String version) {
+        Entry entry = entries.get(directory);
+        if (entry == null) {
+            return;
+        }
+        if (entry.version != null && !entry.version.equals(version)) {
+            remove(directory);
+        } else {
+            entry.version = version;
+        }
+    }
+
+    /**
+     * Close the repository if it is open.
+     * @param directory top-level directory of the Git repository
+     */
+    synchronized void remove(String directory) {
+        Entry entry = entries.remove(directory);
+        if (entry != null) {
+            entry.repository.close();
+        }
+    }
+
+    /**
+     * Close all repositories.
+     */
+    synchronized void clear() {
+        for (Iterator<Entry> it = entries.values().iterator(); it.hasNext(); ) {
+            it.next().repository.close();
+            it.remove();
+        }
+    }
+
+    synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Apply the JGit window cache settings from the configuration if they
+     * changed since they were last applied.
+     */
+    private void configureWindowCache() {
+        RuntimeEnvironment env = RuntimeEnvironment.getInstance();
+        long limit = env.getGitPackedGitLimit();
+        boolean mmap = env.isGitPackedGitMMAP();
+        if (limit == packedGitLimit && mmap == packedGitMMAP) {
+            return;
+        }
+
+        WindowCacheConfig config = new WindowCacheConfig();
+        config.setPackedGitLimit(limit);
+        config.setPackedGitMMAP(mmap);
+        config.install();
+        packedGitLimit = limit;
+        packedGitMMAP = mmap;
+    }
+}
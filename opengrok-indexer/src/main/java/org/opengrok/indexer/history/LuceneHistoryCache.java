@@ -0,0 +1,635 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License (the "License").
+ * You may not use this file except in compliance with the License.
+ *
+ * See LICENSE.txt included in this distribution for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at LICENSE.txt.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information: Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ */
+
+/*
+ * Copyright (c) 2021, Oracle and/or its affiliates. All rights reserved.
+ */
+package org.opengrok.indexer.history;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.StoredField;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.IndexableField;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.SearcherManager;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.opengrok.indexer.configuration.RuntimeEnvironment;
+import org.opengrok.indexer.logger.LoggerFactory;
+import org.opengrok.indexer.util.ForbiddenSymlinkException;
+
+/**
+ * Class representing storage of per source file history in a single store
+ * per repository.
+ * <p>
+ * The histories of all the files of a repository are kept as documents of a
+ * Lucene index in the history cache directory of the repository rather than
+ * as a file per source file as in {@link FileHistoryCache}, so the number of
+ * files under the data root does not grow with the number of source files.
+ * Each document holds the history of one file in the format of
+ * {@link BinaryHistoryFile}, the time it was stored and the date of the most
+ * recent entry which serves {@link #getLastModifiedTimes(File, Repository)}.
+ * <p>
+ * Only the indexer writes the index, the web application opens it read-only
+ * so that the processes do not compete for the index lock. The changes are
+ * committed and made visible to the searchers once per
+ * {@link #store(History, Repository, String)} of a repository; changes done
+ * outside of it, e.g. by {@link #clearFile(String)}, are committed and made
+ * visible by {@link #flush()} or {@link #optimize()}.
+ */
+class LuceneHistoryCache extends FileHistoryCache {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(LuceneHistoryCache.class);
+
+    /**
+     * Name of the index directory within the history cache directory of a repository.
+     */
+    static final String INDEX_DIR_NAME = "OpenGrokHistoryIndex";
+
+    private static final String PATH_FIELD = "path";
+    private static final String PARENT_FIELD = "parent";
+    private static final String HISTORY_FIELD = "history";
+    private static final String CACHED_FIELD = "cached";
+    private static final String DATE_FIELD = "date";
+
+    private static final Set<String> HISTORY_FIELDS = Set.of(HISTORY_FIELD);
+    private static final Set<String> CACHED_HISTORY_FIELDS = Set.of(HISTORY_FIELD, CACHED_FIELD);
+
+    /**
+     * How often the read-only index is checked for changes made by the indexer.
+     */
+    private static final long REFRESH_INTERVAL_MILLIS = 5000;
+
+    /**
+     * Whether the index is only read, i.e. outside of the indexer.
+     */
+    private final boolean readOnly;
+
+    /**
+     * Map of history cache directories of repositories to their stores.
+     */
+    private final Map<String, HistoryStore> stores = new ConcurrentHashMap<>();
+
+    /**
+     * Results of {@link #findStore(File, Repository)} keyed by the directories
+     * of the files relative to the source root, so that the ancestor
+     * directories are not checked on each lookup. Directories without a store
+     * are checked again after {@link #REFRESH_INTERVAL_MILLIS}.
+     */
+    private final Map<String, StoreLookup> storeLookups = new ConcurrentHashMap<>();
+
+    private static final class StoreLookup {
+        private final HistoryStore store;
+        private final long time;
+
+        StoreLookup(HistoryStore store) {
+            this.store = store;
+            this.time = System.currentTimeMillis();
+        }
+
+        boolean isValid() {
+            return store != null || System.currentTimeMillis() - time < REFRESH_INTERVAL_MILLIS;
+        }
+    }
+
+    /**
+     * Represents the index of a single repository.
+     */
+    private static final class HistoryStore {
+        private final File indexDir;
+        private final Directory directory;
+        private final boolean readOnly;
+        private SearcherManager searcherManager;
+        private IndexWriter writer;
+        /**
+         * Number of {@link #store(History, Repository, String)} calls in progress.
+         */
+        private int batches;
+        /**
+         * Searcher used by the batches in progress, acquired before they
+         * write anything so that looking up the history to merge with does
+         * not refresh the searchers for each file.
+         */
+        private IndexSearcher batchSearcher;
+        /**
+         * Whether there are changes the searchers do not see yet.
+         */
+        private boolean changed;
+        /**
+         * Whether there are changes which were not committed yet.
+         */
+        private boolean uncommitted;
+        private long lastRefresh;
+
+        HistoryStore(File indexDir, boolean readOnly) throws IOException {
+            this.indexDir = indexDir;
+            this.readOnly = readOnly;
+            this.directory = FSDirectory.open(indexDir.toPath());
+        }
+
+        /**
+         * @return searcher seeing the changes of the finished batches and
+         * flushes if the index is written in this process, otherwise seeing
+         * the commits of the indexer with a delay of at most
+         * {@link #REFRESH_INTERVAL_MILLIS}; {@code null} if there is no index yet
+         */
+        synchronized IndexSearcher acquireSearcher() throws IOException {
+            if (readOnly) {
+                long now = System.currentTimeMillis();
+                boolean refresh = now - lastRefresh >= REFRESH_INTERVAL_MILLIS;
+                if (refresh) {
+                    lastRefresh = now;
+                }
+                if (searcherManager == null) {
+                    if (!refresh || !DirectoryReader.indexExists(directory)) {
+                        return null;
+                    }
+                    searcherManager = new SearcherManager(directory, null);
+                } else if (refresh) {
+                    searcherManager.maybeRefresh();
+                }
+            } else if (searcherManager == null) {
+                searcherManager = new SearcherManager(getWriter(), null);
+                changed = false;
+            }
+            return searcherManager.acquire();
+        }
+
+        /**
+         * @return searcher of the batches in progress, valid until they end;
+         * {@code null} if there are none
+         */
+        synchronized IndexSearcher getBatchSearcher() {
+            return batchSearcher;
+        }
+
+        private synchronized void refresh() throws IOException {
+            if (searcherManager != null && changed) {
+                changed = false;
+                searcherManager.maybeRefresh();
+            }
+        }
+
+        synchronized void releaseSearcher(IndexSearcher searcher) throws IOException {
+            searcherManager.release(searcher);
+        }
+
+        private synchronized IndexWriter getWriter() throws IOException {
+            if (readOnly) {
+                throw new IOException("History index " + indexDir + " is read-only in this process");
+            }
+            if (writer == null) {
+                IndexWriterConfig iwc = new IndexWriterConfig();
+                iwc.setOpenMode(IndexWriterConfig.OpenMode.CREATE_OR_APPEND);
+                writer = new IndexWriter(directory, iwc);
+            }
+            return writer;
+        }
+
+        void updateDocument(Term term, Document doc) throws IOException {
+            getWriter().updateDocument(term, doc);
+            markChanged();
+        }
+
+        void deleteDocuments(Term term) throws IOException {
+            getWriter().deleteDocuments(term);
+            markChanged();
+        }
+
+        private synchronized void markChanged() {
+            changed = true;
+            uncommitted = true;
+        }
+
+        synchronized void beginBatch() throws IOException {
+            if (batches == 0) {
+                // Let the batch see the changes done outside of batches, e.g. deletions.
+                refresh();
+                batchSearcher = acquireSearcher();
+            }
+            batches++;
+        }
+
+        synchronized void endBatch() throws IOException {
+            if (--batches == 0) {
+                IndexSearcher searcher = batchSearcher;
+                batchSearcher = null;
+                searcherManager.release(searcher);
+                commit();
+            }
+        }
+
+        /**
+         * Commit the changes and make them visible to the searchers.
+         */
+        synchronized void commit() throws IOException {
+            if (writer != null && uncommitted) {
+                writer.commit();
+                uncommitted = false;
+            }
+            refresh();
+        }
+
+        synchronized void close() {
+            try {
+                if (searcherManager != null) {
+                    searcherManager.close();
+                }
+                if (writer != null) {
+                    writer.rollback();
+                }
+                directory.close();
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, String.format("Cannot close history index %s", indexDir), e);
+            }
+        }
+    }
+
+    LuceneHistoryCache() {
+        this(!RuntimeEnvironment.getInstance().isIndexer());
+    }
+
+    /**
+     * @param readOnly whether the index is only read in this process
+     */
+    LuceneHistoryCache(boolean readOnly) {
+        this.readOnly = readOnly;
+    }
+
+    @Override
+    public void store(History history, Repository repository, String tillRevision) throws HistoryException {
+        if (history.getHistoryEntries().isEmpty()) {
+            return;
+        }
+        if (readOnly) {
+            throw new HistoryException("Cannot store history of " + repository.getDirectoryName() +
+                    ", the history index is read-only in this process");
+        }
+
+        HistoryStore store = getStore(repository);
+        try {
+            store.beginBatch();
+        } catch (IOException e) {
+            throw new HistoryException("Cannot open history index " + store.indexDir, e);
+        }
+        try {
+            super.store(history, repository, tillRevision);
+        } finally {
+            try {
+                store.endBatch();
+            } catch (IOException e) {
+                throw new HistoryException("Cannot commit history index " + store.indexDir, e);
+            }
+        }
+    }
+
+    /**
+     * Commit the changes done outside of {@link #store(History, Repository, String)}.
+     */
+    @Override
+    public void flush() throws HistoryException {
+        for (HistoryStore store : stores.values()) {
+            try {
+                store.commit();
+            } catch (IOException e) {
+                throw new HistoryException("Cannot commit history index " + store.indexDir, e);
+            }
+        }
+    }
+
+    @Override
+    public void optimize() {
+        try {
+            flush();
+        } catch (HistoryException e) {
+            LOGGER.log(Level.WARNING, "Cannot commit history index", e);
+        }
+    }
+
+    @Override
+    void createDirectoriesForFiles(Set<String> files) {
+        // There are no per-file directories.
+    }
+
+    @Override
+    void storeFile(History histNew, File file, Repository repo, boolean mergeHistory) throws HistoryException {
+        if (readOnly) {
+            // The indexer stores the history.
+            return;
+        }
+
+        String path;
+        try {
+            path = env.getPathRelativeToSourceRoot(file);
+        } catch (ForbiddenSymlinkException e) {
+            LOGGER.log(Level.FINER, e.getMessage());
+            return;
+        } catch (IOException e) {
+            throw new HistoryException("Failed to get path relative to source root for " + file, e);
+        }
+
+        HistoryStore store = getStore(repo);
+        try {
+            History history = histNew;
+            if (mergeHistory) {
+                // Called from store() so the batch searcher is present.
+                Document doc = findDocument(store.getBatchSearcher(), path, HISTORY_FIELDS);
+                if (doc != null) {
+                    History merged = mergeOldAndNewHistory(getHistory(doc, Integer.MAX_VALUE), histNew, repo);
+                    if (merged != null) {
+                        history = merged;
+                    }
+                }
+            }
+
+            store.updateDocument(new Term(PATH_FIELD, path), createDocument(path, history));
+        } catch (IOException e) {
+            throw new HistoryException("Failed to store history for " + path, e);
+        }
+    }
+
+    private static Document createDocument(String path, History history) throws IOException {
+        Document doc = new Document();
+        doc.add(new StringField(PATH_FIELD, path, Field.Store.YES));
+        doc.add(new StringField(PARENT_FIELD, getParent(path), Field.Store.NO));
+        doc.add(new StoredField(HISTORY_FIELD, BinaryHistoryFile.encode(history)));
+        doc.add(new StoredField(CACHED_FIELD, System.currentTimeMillis()));
+        List<HistoryEntry> entries = history.getHistoryEntries();
+        if (!entries.isEmpty() && entries.get(0).getDate() != null) {
+            doc.add(new StoredField(DATE_FIELD, entries.get(0).getDate().getTime()));
+        }
+        return doc;
+    }
+
+    private static String getParent(String path) {
+        int i = path.lastIndexOf(File.separatorChar);
+        return i < 0 ? "" : path.substring(0, i);
+    }
+
+    private static History getHistory(Document doc, int limit) throws IOException {
+        return BinaryHistoryFile.decode(doc.getBinaryValue(HISTORY_FIELD).bytes, limit);
+    }
+
+    private static boolean isDocumentUpToDate(File file, Document doc) {
+        IndexableField cached = doc.getField(CACHED_FIELD);
+        return cached != null && file.lastModified() <= cached.numericValue().longValue();
+    }
+
+    @Override
+    History getCachedHistory(File file, Repository repository) throws HistoryException {
+        Document doc = getDocument(file, repository, CACHED_HISTORY_FIELDS);
+        if (doc != null && isDocumentUpToDate(file, doc)) {
+            try {
+                return getHistory(doc, Integer.MAX_VALUE);
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, String.format("Error when reading history of %s", file), e);
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public HistoryEntry getLastHistoryEntry(File file) throws HistoryException {
+        Document doc = getDocument(file, null, CACHED_HISTORY_FIELDS);
+        if (doc == null || !isDocumentUpToDate(file, doc)) {
+            return null;
+        }
+
+        try {
+            List<HistoryEntry> entries = getHistory(doc, 1).getHistoryEntries();
+            return entries.isEmpty() ? null : entries.get(0);
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, String.format("Error when reading history of %s", file), e);
+            return null;
+        }
+    }
+
+    @Override
+    public boolean hasCacheForFile(File file) throws HistoryException {
+        try {
+            HistoryStore store = findStore(file, null);
+            IndexSearcher searcher = store == null ? null : store.acquireSearcher();
+            if (searcher == null) {
+                return false;
+            }
+            try {
+                return searcher.count(new TermQuery(new Term(PATH_FIELD, env.getPathRelativeToSourceRoot(file)))) > 0;
+            } finally {
+                store.releaseSearcher(searcher);
+            }
+        } catch (ForbiddenSymlinkException e) {
+            LOGGER.log(Level.FINER, e.getMessage());
+            return false;
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, String.format("Cannot read history index for %s", file), e);
+            return false;
+        }
+    }
+
+    @Override
+    public Map<String, Date> getLastModifiedTimes(File directory, Repository repository) {
+        Map<String, Date> times = new HashMap<>();
+        try {
+            HistoryStore store = findStore(directory, repository);
+            IndexSearcher searcher = store == null ? null : store.acquireSearcher();
+            if (searcher == null) {
+                return Collections.emptyMap();
+            }
+            try {
+                Query query = new TermQuery(new Term(PARENT_FIELD, env.getPathRelativeToSourceRoot(directory)));
+                int count = searcher.count(query);
+                if (count > 0) {
+                    for (ScoreDoc sd : searcher.search(query, count).scoreDocs) {
+                        Document doc = searcher.doc(sd.doc, Set.of(PATH_FIELD, DATE_FIELD));
+                        IndexableField date = doc.getField(DATE_FIELD);
+                        if (date != null) {
+                            String path = doc.get(PATH_FIELD);
+                            times.put(path.substring(path.lastIndexOf(File.separatorChar) + 1),
+                                    new Date(date.numericValue().longValue()));
+                        }
+                    }
+                }
+            } finally {
+                store.releaseSearcher(searcher);
+            }
+        } catch (IOException | ForbiddenSymlinkException | HistoryException e) {
+            LOGGER.log(Level.WARNING,
+                    String.format("Cannot get last modified times for %s", directory), e);
+            return Collections.emptyMap();
+        }
+        return times;
+    }
+
+    @Override
+    public void clear(Repository repository) {
+        String histDir = getRepositoryHistDataDirname(repository);
+        if (histDir != null) {
+            HistoryStore store = stores.remove(histDir);
+            if (store != null) {
+                storeLookups.values().removeIf(lookup -> lookup.store == store);
+                store.close();
+            }
+        }
+
+        super.clear(repository);
+    }
+
+    @Override
+    public void clearFile(String path) {
+        if (readOnly) {
+            return;
+        }
+        try {
+            HistoryStore store = findStore(new File(env.getSourceRootPath() + path), null);
+            if (store == null) {
+                return;
+            }
+            store.deleteDocuments(new Term(PATH_FIELD, path));
+        } catch (IOException | HistoryException e) {
+            LOGGER.log(Level.WARNING, "cannot remove history of file " + path, e);
+        }
+    }
+
+    /**
+     * Get the store of a repository, creating its directory if needed.
+     */
+    private HistoryStore getStore(Repository repository) throws HistoryException {
+        String histDir = getRepositoryHistDataDirname(repository);
+        if (histDir == null) {
+            throw new HistoryException("No history cache directory for " + repository.getDirectoryName());
+        }
+        return getStore(histDir, true);
+    }
+
+    private HistoryStore getStore(String histDir, boolean create) throws HistoryException {
+        HistoryStore store = stores.get(histDir);
+        if (store != null) {
+            return store;
+        }
+
+        File indexDir = new File(histDir, INDEX_DIR_NAME);
+        if (!indexDir.isDirectory()) {
+            if (!create) {
+                return null;
+            }
+            if (!indexDir.mkdirs() && !indexDir.isDirectory()) {
+                throw new HistoryException("Unable to create history index directory '" + indexDir + "'.");
+            }
+        }
+        try {
+            return stores.computeIfAbsent(histDir, dir -> {
+                try {
+                    HistoryStore created = new HistoryStore(indexDir, readOnly);
+                    // Files of the repository may have been looked up before.
+                    storeLookups.values().removeIf(lookup -> lookup.store == null);
+                    return created;
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw new HistoryException("Cannot open history index " + indexDir, e.getCause());
+        }
+    }
+
+    /**
+     * Find the existing store for a file, either in the repository if known,
+     * or in the nearest ancestor directory of the file which has one.
+     */
+    private HistoryStore findStore(File file, Repository repository)
+            throws HistoryException, ForbiddenSymlinkException, IOException {
+        if (repository != null) {
+            String histDir = getRepositoryHistDataDirname(repository);
+            return histDir == null ? null : getStore(histDir, false);
+        }
+
+        String fileDir = getParent(env.getPathRelativeToSourceRoot(file));
+        StoreLookup lookup = storeLookups.get(fileDir);
+        if (lookup != null && lookup.isValid()) {
+            return lookup.store;
+        }
+
+        String histRoot = env.getDataRootPath() + File.separatorChar + HISTORY_CACHE_DIR_NAME;
+        String dir = fileDir;
+        HistoryStore store;
+        while ((store = getStore(histRoot + dir, false)) == null && !dir.isEmpty()) {
+            dir = getParent(dir);
+        }
+        storeLookups.put(fileDir, new StoreLookup(store));
+        return store;
+    }
+
+    private Document getDocument(File file, Repository repository, Set<String> fields) throws HistoryException {
+        try {
+            HistoryStore store = findStore(file, repository);
+            return store == null ? null : getDocument(store, env.getPathRelativeToSourceRoot(file), fields);
+        } catch (ForbiddenSymlinkException e) {
+            LOGGER.log(Level.FINER, e.getMessage());
+            return null;
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, String.format("Cannot read history index for %s", file), e);
+            return null;
+        }
+    }
+
+    private static Document getDocument(HistoryStore store, String path, Set<String> fields) throws IOException {
+        IndexSearcher searcher = store.acquireSearcher();
+        if (searcher == null) {
+            return null;
+        }
+        try {
+            return findDocument(searcher, path, fields);
+        } finally {
+            store.releaseSearcher(searcher);
+        }
+    }
+
+    /**
+     * @param searcher searcher of the store of the file
+     * @param path path of the file relative to the source root
+     * @param fields fields to load
+     * @return document or {@code null} if the file has no history stored
+     */
+    private static Document findDocument(IndexSearcher searcher, String path, Set<String> fields) throws IOException {
+        TopDocs top = searcher.search(new TermQuery(new Term(PATH_FIELD, path)), 1);
+        return top.scoreDocs.length == 0 ? null : searcher.doc(top.scoreDocs[0].doc, fields);
+    }
+}
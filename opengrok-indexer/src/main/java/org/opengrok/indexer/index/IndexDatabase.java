@@ -31,6 +31,7 @@ import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.OutputStreamWriter;
 import java.io.Writer;
 import java.nio.file.Files;
@@ -38,6 +39,7 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashSet;
 import java.util.List;
@@ -45,9 +47,14 @@ import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
 import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -63,6 +70,7 @@ import org.apache.lucene.document.DateTools;
 import org.apache.lucene.document.Document;
 import org.apache.lucene.document.Field;
 import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexNotFoundException;
 import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.IndexWriter;
 import org.apache.lucene.index.IndexWriterConfig;
@@ -70,15 +78,18 @@ import org.apache.lucene.index.IndexWriterConfig.OpenMode;
 import org.apache.lucene.index.IndexableField;
 import org.apache.lucene.index.MultiTerms;
 import org.apache.lucene.index.PostingsEnum;
+import org.apache.lucene.index.SegmentInfos;
 import org.apache.lucene.index.Term;
 import org.apache.lucene.index.Terms;
 import org.apache.lucene.index.TermsEnum;
 import org.apache.lucene.queryparser.classic.ParseException;
 import org.apache.lucene.search.DocIdSetIterator;
-import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.Query;
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.SortField;
 import org.apache.lucene.search.TopDocs;
 import org.apache.lucene.store.AlreadyClosedException;
+import org.apache.lucene.store.Directory;
 import org.apache.lucene.store.FSDirectory;
 import org.apache.lucene.store.LockFactory;
 import org.apache.lucene.store.NativeFSLockFactory;
@@ -96,8 +107,10 @@ import org.opengrok.indexer.analysis.NumLinesLOC;
 import org.opengrok.indexer.configuration.PathAccepter;
 import org.opengrok.indexer.configuration.Project;
 import org.opengrok.indexer.configuration.RuntimeEnvironment;
+import org.opengrok.indexer.configuration.SuperIndexSearcher;
 import org.opengrok.indexer.history.HistoryGuru;
 import org.opengrok.indexer.history.Repository;
+import org.opengrok.indexer.history.RepositoryInfo;
 import org.opengrok.indexer.logger.LoggerFactory;
 import org.opengrok.indexer.search.QueryBuilder;
 import org.opengrok.indexer.util.ForbiddenSymlinkException;
@@ -127,6 +140,15 @@ public class IndexDatabase {
 
     private static final Set<String> REVERT_COUNTS_FIELDS;
 
+    /**
+     * Order of the documents in the index if
+     * {@link RuntimeEnvironment#isIndexSortedByDate()}. It is the same as the
+     * order of the searches sorted by the last modified time, which allows
+     * them to terminate early.
+     */
+    public static final Sort DATE_INDEX_SORT = new Sort(
+            new SortField(QueryBuilder.DATE, SortField.Type.STRING, true));
+
     private final Object INSTANCE_LOCK = new Object();
 
     /**
@@ -161,6 +183,12 @@ public class IndexDatabase {
     private LockFactory lockfact;
     private final BytesRef emptyBR = new BytesRef("");
 
+    /**
+     * Maximum number of pending works per thread of the indexing pool when
+     * {@link RuntimeEnvironment#isIndexingPipelineEnabled()} is set.
+     */
+    private static final int PIPELINE_WORKS_PER_THREAD = 64;
+
     // Directory where we store indexes
     public static final String INDEX_DIR = "index";
     public static final String XREF_DIR = "xref";
@@ -228,7 +256,7 @@ public class IndexDatabase {
                 db.addIndexChangedListener(listener);
             }
 
-            parallelizer.getFixedExecutor().submit(() -> {
+            db.getHistoryCacheFuture().whenCompleteAsync((result, ex) -> {
                 try {
                     db.update();
                 } catch (Throwable e) {
@@ -238,11 +266,26 @@ public class IndexDatabase {
                 } finally {
                     latch.countDown();
                 }
-            });
+            }, parallelizer.getFixedExecutor());
         }
         return latch;
     }
 
+    /**
+     * Get the future of the history cache of the repositories of this index
+     * database. The index should be updated once it completes in case the
+     * history cache is created in pipeline with indexing.
+     * @return future from {@link HistoryGuru#getCacheFuture(java.util.Collection)}
+     */
+    CompletableFuture<Void> getHistoryCacheFuture() {
+        List<RepositoryInfo> repos = null;
+        if (project != null) {
+            repos = RuntimeEnvironment.getInstance().getProjectRepositoriesMap().
+                    getOrDefault(project, Collections.emptyList());
+        }
+        return HistoryGuru.getInstance().getCacheFuture(repos);
+    }
+
     /**
      * Update the index database for a number of sub-directories.
      *
@@ -429,6 +472,7 @@ public class IndexDatabase {
             IndexWriterConfig iwc = new IndexWriterConfig(analyzer);
             iwc.setOpenMode(OpenMode.CREATE_OR_APPEND);
             iwc.setRAMBufferSizeMB(env.getRamBufferSize());
+            iwc.setIndexSort(getIndexSort(indexDirectory, env.isIndexSortedByDate()));
             writer = new IndexWriter(indexDirectory, iwc);
             writer.commit(); // to make sure index exists on the disk
             completer = new PendingFileCompleter();
@@ -494,20 +538,45 @@ public class IndexDatabase {
                     // The actual indexing happens in indexParallel().
 
                     IndexDownArgs args = new IndexDownArgs();
+                    if (env.isParallelTraversalEnabled()) {
+                        args.traversalPool = env.getIndexerParallelizer().getTraversalPool();
+                    }
+                    if (env.isIndexingPipelineEnabled()) {
+                        args.pipeline = new IndexingPipeline(env.getIndexerParallelizer(), dir);
+                    }
                     Statistics elapsed = new Statistics();
                     LOGGER.log(Level.INFO, "Starting traversal of directory {0}", dir);
-                    indexDown(sourceRoot, dir, args);
-                    elapsed.report(LOGGER, String.format("Done traversal of directory %s", dir),
-                            "indexer.db.directory.traversal");
+                    boolean traversed = false;
+                    try {
+                        indexDown(sourceRoot, dir, args);
+                        traversed = true;
+                    } finally {
+                        if (args.pipeline != null && !traversed) {
+                            // Do not leave the submitted works running.
+                            args.pipeline.await();
+                        }
+                    }
+                    elapsed.reportThroughput(LOGGER, Level.INFO,
+                            String.format("Done traversal of directory %s", dir),
+                            "indexer.db.directory.traversal", args.cur_count, "files");
 
                     showFileCount(dir, args);
 
                     args.cur_count = 0;
-                    elapsed = new Statistics();
-                    LOGGER.log(Level.INFO, "Starting indexing of directory {0}", dir);
-                    indexParallel(dir, args);
-                    elapsed.report(LOGGER, String.format("Done indexing of directory %s", dir),
-                            "indexer.db.directory.index");
+                    if (args.pipeline != null) {
+                        // Most of the indexing was done along with the traversal.
+                        elapsed = new Statistics();
+                        args.pipeline.await();
+                        elapsed.report(LOGGER, String.format("Done pipelined indexing of directory %s", dir),
+                                "indexer.db.directory.pipeline");
+                        args.pipeline.finish();
+                    } else {
+                        elapsed = new Statistics();
+                        LOGGER.log(Level.INFO, "Starting indexing of directory {0}", dir);
+                        indexParallel(dir, args);
+                        elapsed.report(LOGGER, String.format("Done indexing of directory %s", dir),
+                                "indexer.db.directory.index");
+                    }
 
                     // Remove data for the trailing terms that indexDown()
                     // did not traverse. These correspond to files that have been
@@ -578,6 +647,8 @@ public class IndexDatabase {
                     running = false;
                 }
             }
+            // Commit the history cache changes done while indexing, e.g. for removed files.
+            HistoryGuru.getInstance().flushCache();
         }
 
         if (finishingException != null) {
@@ -589,6 +660,8 @@ public class IndexDatabase {
                 optimize();
             }
             env.setIndexTimestamp();
+            // Make the changes visible to lookups via the shared searcher, if any.
+            env.maybeRefreshIndexSearchers(Collections.singletonList(project == null ? "" : project.getName()));
         }
     }
 
@@ -628,6 +701,31 @@ public class IndexDatabase {
         return latch;
     }
 
+    /**
+     * Get the index sort to write the index with. The sort of an existing
+     * index is kept as it cannot be changed without reindexing from scratch.
+     * @param directory directory of the index
+     * @param sortedByDate whether the index should be sorted by
+     * {@link #DATE_INDEX_SORT}, see {@link RuntimeEnvironment#isIndexSortedByDate()}
+     * @return index sort or {@code null} for no sort
+     * @throws IOException if the existing index cannot be read
+     */
+    static Sort getIndexSort(Directory directory, boolean sortedByDate) throws IOException {
+        Sort configured = sortedByDate ? DATE_INDEX_SORT : null;
+        if (DirectoryReader.indexExists(directory)) {
+            SegmentInfos infos = SegmentInfos.readLatestCommit(directory);
+            if (infos.size() > 0) {
+                Sort existing = infos.info(0).info.getIndexSort();
+                if (!Objects.equals(existing, configured)) {
+                    LOGGER.log(Level.WARNING, "Keeping index sort {0} of the existing index in {1}, " +
+                            "reindex from scratch to change it", new Object[]{existing, directory});
+                }
+                return existing;
+            }
+        }
+        return configured;
+    }
+
     /**
      * Optimize the index database.
      * @throws IOException I/O exception
@@ -650,6 +748,9 @@ public class IndexDatabase {
             Analyzer analyzer = new StandardAnalyzer();
             IndexWriterConfig conf = new IndexWriterConfig(analyzer);
             conf.setOpenMode(OpenMode.CREATE_OR_APPEND);
+            // Merging must keep the documents in the order of the index sort.
+            conf.setIndexSort(getIndexSort(indexDirectory,
+                    RuntimeEnvironment.getInstance().isIndexSortedByDate()));
 
             wrt = new IndexWriter(indexDirectory, conf);
             wrt.forceMerge(1); // this is deprecated and not needed anymore
@@ -861,6 +962,7 @@ public class IndexDatabase {
         }
 
         setDirty();
+        HistoryGuru.getInstance().createAnnotationCache(file);
         for (IndexChangedListener listener : listeners) {
             listener.fileAdded(path, fa.getClass().getSimpleName());
         }
@@ -1203,6 +1305,9 @@ public class IndexDatabase {
      * comparison to the Lucene index) are passed to
      * {@link #removeFile(boolean)}. New or updated files are noted for
      * indexing.
+     * <p>If {@code args} has a defined {@code traversalPool}, the directory
+     * listings are produced ahead in parallel by {@link DirectoryListingTask}
+     * while this method consumes them in order.
      * @param dir the root indexDirectory to generate indexes for
      * @param parent path to parent directory
      * @param args arguments to control execution and for collecting a list of
@@ -1232,6 +1337,12 @@ public class IndexDatabase {
             return;
         }
 
+        if (args.traversalPool != null) {
+            indexDownListed(dir, parent, args.traversalPool.submit(
+                    new DirectoryListingTask(dir)), args);
+            return;
+        }
+
         File[] files = dir.listFiles();
         if (files == null) {
             LOGGER.log(Level.SEVERE, "Failed to get file listing for: {0}",
@@ -1254,66 +1365,142 @@ public class IndexDatabase {
                 if (file.isDirectory()) {
                     indexDown(file, path, args);
                 } else {
-                    args.cur_count++;
-
-                    if (uidIter != null) {
-                        path = Util.fixPathIfWindows(path);
-                        String uid = Util.path2uid(path,
-                            DateTools.timeToString(file.lastModified(),
-                            DateTools.Resolution.MILLISECOND)); // construct uid for doc
-                        BytesRef buid = new BytesRef(uid);
-                        // Traverse terms that have smaller UID than the current
-                        // file, i.e. given the ordering they positioned before the file
-                        // or it is the file that has been modified.
-                        while (uidIter != null && uidIter.term() != null
-                                && uidIter.term().compareTo(emptyBR) != 0
-                                && uidIter.term().compareTo(buid) < 0) {
-
-                            // If the term's path matches path of currently processed file,
-                            // it is clear that the file has been modified and thus
-                            // removeFile() will be followed by call to addFile() in indexParallel().
-                            // In such case, instruct removeFile() not to remove history
-                            // cache for the file so that incremental history cache
-                            // generation works.
-                            String termPath = Util.uid2url(uidIter.term().utf8ToString());
-                            removeFile(!termPath.equals(path));
-
-                            BytesRef next = uidIter.next();
-                            if (next == null) {
-                                uidIter = null;
-                            }
-                        }
+                    indexDownFile(file, path, file.lastModified(), args);
+                }
+            }
+        }
+    }
 
-                        // If the file was not modified, probably skip to the next one.
-                        if (uidIter != null && uidIter.term() != null &&
-                                uidIter.term().bytesEquals(buid)) {
-
-                            /*
-                             * Possibly short-circuit to force reindexing of prior-version indexes.
-                             */
-                            boolean matchOK = (isWithDirectoryCounts || isCountingDeltas) &&
-                                    checkSettings(file, path);
-                            if (!matchOK) {
-                                removeFile(false);
-                            }
-
-                            BytesRef next = uidIter.next();
-                            if (next == null) {
-                                uidIter = null;
-                            }
-
-                            if (matchOK) {
-                                continue; // keep matching docs
-                            }
-                        }
-                    }
+    /**
+     * Consumes in order the listing of {@code dir} produced ahead by a
+     * {@link DirectoryListingTask}, descending into the listings of
+     * sub-directories as they are encountered.
+     * <p>Symbolic links are not evaluated by the listing task because
+     * {@link #acceptSymlink(Path, File, AcceptSymlinkRet)} depends on the
+     * traversal order, so they are accepted here.
+     * @param dir the directory which was listed
+     * @param parent path to {@code dir}
+     * @param listing the pending listing of {@code dir}
+     * @param args arguments to control execution and for collecting a list of
+     * files for indexing
+     */
+    private void indexDownListed(File dir, String parent, ForkJoinTask<ListedDirectory> listing,
+            IndexDownArgs args) throws IOException {
+
+        if (isInterrupted()) {
+            listing.cancel(false);
+            return;
+        }
 
-                    args.works.add(new IndexFileWork(file, path));
+        ListedDirectory listed;
+        try {
+            listed = listing.join();
+        } catch (RuntimeException e) {
+            LOGGER.log(Level.WARNING, String.format("Failed to list directory %s", dir), e);
+            return;
+        }
+        if (listed == null) {
+            return;
+        }
+
+        AcceptSymlinkRet ret = new AcceptSymlinkRet();
+        for (ListedEntry entry : listed.entries) {
+            File file = entry.file;
+            String path = parent + File.separator + file.getName();
+            if (entry.listing != null) {
+                indexDownListed(file, path, entry.listing, args);
+            } else if (!entry.isSymlink) {
+                indexDownFile(file, path, entry.lastModified, args);
+            } else if (!accept(dir, file, ret)) {
+                if (ret.localRelPath != null) {
+                    // See note in indexDown() about ret.localRelPath.
+                    File xrefPath = new File(xrefDir, path);
+                    PendingSymlinkage psym = new PendingSymlinkage(
+                            xrefPath.getAbsolutePath(), ret.localRelPath);
+                    completer.add(psym);
                 }
+            } else if (file.isDirectory()) {
+                indexDown(file, path, args);
+            } else {
+                indexDownFile(file, path, file.lastModified(), args);
             }
         }
     }
 
+    /**
+     * Merges an accepted file with the ordered UID terms of the index: stale
+     * UIDs positioned before the file are removed, and the file is noted for
+     * indexing if it is new or modified.
+     * @param file the accepted file
+     * @param path path to the file from source root
+     * @param lastModified the last-modified time of {@code file}
+     * @param args arguments for collecting a list of files for indexing
+     */
+    private void indexDownFile(File file, String path, long lastModified, IndexDownArgs args)
+            throws IOException {
+
+        args.cur_count++;
+
+        if (uidIter != null) {
+            path = Util.fixPathIfWindows(path);
+            String uid = Util.path2uid(path,
+                DateTools.timeToString(lastModified,
+                DateTools.Resolution.MILLISECOND)); // construct uid for doc
+            BytesRef buid = new BytesRef(uid);
+            // Traverse terms that have smaller UID than the current
+            // file, i.e. given the ordering they positioned before the file
+            // or it is the file that has been modified.
+            while (uidIter != null && uidIter.term() != null
+                    && uidIter.term().compareTo(emptyBR) != 0
+                    && uidIter.term().compareTo(buid) < 0) {
+
+                // If the term's path matches path of currently processed file,
+                // it is clear that the file has been modified and thus
+                // removeFile() will be followed by call to addFile() in indexParallel().
+                // In such case, instruct removeFile() not to remove history
+                // cache for the file so that incremental history cache
+                // generation works.
+                String termPath = Util.uid2url(uidIter.term().utf8ToString());
+                removeFile(!termPath.equals(path));
+
+                BytesRef next = uidIter.next();
+                if (next == null) {
+                    uidIter = null;
+                }
+            }
+
+            // If the file was not modified, probably skip to the next one.
+            if (uidIter != null && uidIter.term() != null &&
+                    uidIter.term().bytesEquals(buid)) {
+
+                /*
+                 * Possibly short-circuit to force reindexing of prior-version indexes.
+                 */
+                boolean matchOK = (isWithDirectoryCounts || isCountingDeltas) &&
+                        checkSettings(file, path);
+                if (!matchOK) {
+                    removeFile(false);
+                }
+
+                BytesRef next = uidIter.next();
+                if (next == null) {
+                    uidIter = null;
+                }
+
+                if (matchOK) {
+                    return; // keep matching docs
+                }
+            }
+        }
+
+        IndexFileWork work = new IndexFileWork(file, path);
+        if (args.pipeline != null) {
+            args.pipeline.submit(work);
+        } else {
+            args.works.add(work);
+        }
+    }
+
     /**
      * Executes the second, parallel stage of indexing.
      * @param dir the parent directory (when appended to SOURCE_ROOT)
@@ -1339,53 +1526,9 @@ public class IndexDatabase {
             bySuccess = parallelizer.getForkJoinPool().submit(() ->
                 args.works.parallelStream().collect(
                 Collectors.groupingByConcurrent((x) -> {
-                    int tries = 0;
-                    Ctags pctags = null;
-                    boolean ret;
-                    Statistics stats = new Statistics();
-                    while (true) {
-                        try {
-                            if (alreadyClosedCounter.get() > 0) {
-                                ret = false;
-                            } else {
-                                pctags = ctagsPool.get();
-                                addFile(x.file, x.path, pctags);
-                                successCounter.incrementAndGet();
-                                ret = true;
-                            }
-                        } catch (AlreadyClosedException e) {
-                            alreadyClosedCounter.incrementAndGet();
-                            String errmsg = String.format("ERROR addFile(): %s",
-                                x.file);
-                            LOGGER.log(Level.SEVERE, errmsg, e);
-                            x.exception = e;
-                            ret = false;
-                        } catch (InterruptedException e) {
-                            // Allow one retry if interrupted
-                            if (++tries <= 1) {
-                                continue;
-                            }
-                            LOGGER.log(Level.WARNING, "No retry: {0}", x.file);
-                            x.exception = e;
-                            ret = false;
-                        } catch (RuntimeException | IOException e) {
-                            String errmsg = String.format("ERROR addFile(): %s",
-                                x.file);
-                            LOGGER.log(Level.WARNING, errmsg, e);
-                            x.exception = e;
-                            ret = false;
-                        } finally {
-                            if (pctags != null) {
-                                pctags.reset();
-                                ctagsPool.release(pctags);
-                            }
-                        }
-
-                        progress.increment();
-                        stats.report(LOGGER, Level.FINEST,
-                                String.format("file ''%s'' %s", x.file, ret ? "indexed" : "failed indexing"));
-                        return ret;
-                    }
+                    boolean ret = indexFileWork(x, ctagsPool, successCounter, alreadyClosedCounter);
+                    progress.increment();
+                    return ret;
                 }))).get();
         } catch (InterruptedException | ExecutionException e) {
             int successCount = successCounter.intValue();
@@ -1426,6 +1569,67 @@ public class IndexDatabase {
         }
     }
 
+    /**
+     * Adds the file of the specified work to the index using a {@link Ctags}
+     * instance from {@code ctagsPool}, allowing one retry if interrupted.
+     * @param x the work to execute, whose {@code exception} is set on failure
+     * @param ctagsPool the pool of {@link Ctags} instances
+     * @param successCounter counter incremented on success
+     * @param alreadyClosedCounter counter of {@link AlreadyClosedException}s,
+     * which if positive causes the work to be skipped
+     * @return a value indicating if the file was indexed successfully
+     */
+    private boolean indexFileWork(IndexFileWork x, ObjectPool<Ctags> ctagsPool,
+            AtomicInteger successCounter, AtomicInteger alreadyClosedCounter) {
+        int tries = 0;
+        Ctags pctags = null;
+        boolean ret;
+        Statistics stats = new Statistics();
+        while (true) {
+            try {
+                if (alreadyClosedCounter.get() > 0) {
+                    ret = false;
+                } else {
+                    pctags = ctagsPool.get();
+                    addFile(x.file, x.path, pctags);
+                    successCounter.incrementAndGet();
+                    ret = true;
+                }
+            } catch (AlreadyClosedException e) {
+                alreadyClosedCounter.incrementAndGet();
+                String errmsg = String.format("ERROR addFile(): %s",
+                    x.file);
+                LOGGER.log(Level.SEVERE, errmsg, e);
+                x.exception = e;
+                ret = false;
+            } catch (InterruptedException e) {
+                // Allow one retry if interrupted
+                if (++tries <= 1) {
+                    continue;
+                }
+                LOGGER.log(Level.WARNING, "No retry: {0}", x.file);
+                x.exception = e;
+                ret = false;
+            } catch (RuntimeException | IOException e) {
+                String errmsg = String.format("ERROR addFile(): %s",
+                    x.file);
+                LOGGER.log(Level.WARNING, errmsg, e);
+                x.exception = e;
+                ret = false;
+            } finally {
+                if (pctags != null) {
+                    pctags.reset();
+                    ctagsPool.release(pctags);
+                    pctags = null;
+                }
+            }
+
+            stats.report(LOGGER, Level.FINEST,
+                    String.format("file ''%s'' %s", x.file, ret ? "indexed" : "failed indexing"));
+            return ret;
+        }
+    }
+
     private boolean isInterrupted() {
         synchronized (lock) {
             return interrupted;
@@ -1680,15 +1884,14 @@ public class IndexDatabase {
         // Sanitize Windows path delimiters in order not to conflict with Lucene escape character.
         path = path.replace("\\", "/");
 
-        try (IndexReader ireader = getIndexReader(path)) {
-            if (ireader == null) {
-                // No index, no document..
-                return null;
-            }
-
+        SuperIndexSearcher searcher = acquireIndexSearcher(path);
+        if (searcher == null) {
+            // No index, no document..
+            return null;
+        }
+        try {
             Document doc;
             Query q = new QueryBuilder().setPath(path).build();
-            IndexSearcher searcher = new IndexSearcher(ireader);
             Statistics stat = new Statistics();
             TopDocs top = searcher.search(q, 1);
             stat.report(LOGGER, Level.FINEST, "search via getDocument done",
@@ -1707,6 +1910,43 @@ public class IndexDatabase {
             }
 
             return doc;
+        } finally {
+            searcher.getSearcherManager().release(searcher);
+        }
+    }
+
+    /**
+     * Get a searcher for the index database where a given file is located.
+     * The searcher is acquired from the per-project {@code SearcherManager}
+     * in {@link RuntimeEnvironment} so that the index reader is opened once
+     * and shared with searches rather than opened for every lookup. The
+     * caller has to release the searcher back to its manager.
+     *
+     * @param path the file to get the database for
+     * @return searcher or {@code null} if there is no index for the file
+     * @throws IOException on I/O error
+     */
+    private static SuperIndexSearcher acquireIndexSearcher(String path) throws IOException {
+        RuntimeEnvironment env = RuntimeEnvironment.getInstance();
+        File indexDir = new File(env.getDataRootFile(), INDEX_DIR);
+        String projectName = "";
+
+        if (env.hasProjects()) {
+            Project p = Project.getProject(path);
+            if (p == null) {
+                return null;
+            }
+            indexDir = new File(indexDir, p.getPath());
+            projectName = p.getName();
+        }
+        if (!indexDir.exists()) {
+            return null;
+        }
+        try {
+            return env.getIndexSearcher(projectName);
+        } catch (IndexNotFoundException e) {
+            LOGGER.log(Level.FINEST, "No index in {0}", indexDir.getAbsolutePath());
+            return null;
         }
     }
 
@@ -1967,9 +2207,188 @@ public class IndexDatabase {
 
     private static class IndexDownArgs {
         int cur_count;
+        ForkJoinPool traversalPool;
+        IndexingPipeline pipeline;
         final List<IndexFileWork> works = new ArrayList<>();
     }
 
+    /**
+     * Represents the parallel stage of indexing run concurrently with the
+     * serial traversal: works are submitted to the work-stealing pool as soon
+     * as {@link #indexDownFile(File, String, long, IndexDownArgs)} finds them,
+     * and the number of pending works is bounded so that the traversal is
+     * held back if the analysis does not keep up.
+     */
+    private class IndexingPipeline {
+        private final ForkJoinPool pool;
+        private final ObjectPool<Ctags> ctagsPool;
+        private final int capacity;
+        private final Semaphore permits;
+        private final AtomicInteger successCounter = new AtomicInteger();
+        private final AtomicInteger alreadyClosedCounter = new AtomicInteger();
+        private final Progress progress;
+        private int worksCount;
+
+        IndexingPipeline(IndexerParallelizer parallelizer, String dir) {
+            pool = parallelizer.getForkJoinPool();
+            ctagsPool = parallelizer.getCtagsPool();
+            capacity = pool.getParallelism() * PIPELINE_WORKS_PER_THREAD;
+            permits = new Semaphore(capacity);
+            // The number of works is known only once the traversal is done.
+            progress = new Progress(LOGGER, dir);
+        }
+
+        /**
+         * Submits the work for indexing, waiting for a pending work to finish
+         * if the capacity is exhausted.
+         * @param work the work to submit
+         * @throws IOException if interrupted while waiting
+         */
+        void submit(IndexFileWork work) throws IOException {
+            try {
+                permits.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("interrupted while waiting for indexing of " +
+                        work.path);
+            }
+            ++worksCount;
+            try {
+                pool.execute(() -> {
+                    try {
+                        indexFileWork(work, ctagsPool, successCounter, alreadyClosedCounter);
+                    } finally {
+                        progress.increment();
+                        permits.release();
+                    }
+                });
+            } catch (RuntimeException e) {
+                permits.release();
+                throw e;
+            }
+        }
+
+        /**
+         * Waits until all submitted works are done. No more works may be
+         * submitted afterwards.
+         */
+        void await() {
+            progress.setTotalCount(worksCount);
+            try {
+                permits.acquireUninterruptibly(capacity);
+                permits.release(capacity);
+            } finally {
+                progress.close();
+            }
+        }
+
+        /**
+         * Reports the outcome of all submitted works, which must be done.
+         * @throws AlreadyClosedException if any work encountered it
+         */
+        void finish() {
+            int failureCount = worksCount - successCounter.get();
+            if (failureCount > 0) {
+                double pctFailed = 100.0 * failureCount / worksCount;
+                String exmsg = String.format(
+                    "%d failures (%.1f%%) while pipelined-indexing",
+                    failureCount, pctFailed);
+                LOGGER.log(Level.WARNING, exmsg);
+            }
+
+            // See indexParallel() about AlreadyClosedException.
+            int numAlreadyClosed = alreadyClosedCounter.get();
+            if (numAlreadyClosed > 0) {
+                throw new AlreadyClosedException(String.format("count=%d",
+                    numAlreadyClosed));
+            }
+        }
+    }
+
+    /**
+     * Represents the sorted, pre-accepted entries of a directory.
+     */
+    private static class ListedDirectory {
+        final List<ListedEntry> entries;
+
+        ListedDirectory(List<ListedEntry> entries) {
+            this.entries = entries;
+        }
+    }
+
+    /**
+     * Represents an entry of a {@link ListedDirectory}: either an accepted
+     * file, an accepted directory with its pending listing, or a symbolic
+     * link which is yet to be accepted by the ordered traversal.
+     */
+    private static class ListedEntry {
+        final File file;
+        final boolean isSymlink;
+        final long lastModified;
+        final ForkJoinTask<ListedDirectory> listing;
+
+        ListedEntry(File file, boolean isSymlink, long lastModified,
+                ForkJoinTask<ListedDirectory> listing) {
+            this.file = file;
+            this.isSymlink = isSymlink;
+            this.lastModified = lastModified;
+            this.listing = listing;
+        }
+    }
+
+    /**
+     * Represents a task to list, sort and accept the entries of a directory,
+     * forking a task for each accepted sub-directory so that the whole tree
+     * is listed in parallel ahead of {@link #indexDownListed(File, String,
+     * ForkJoinTask, IndexDownArgs)}.
+     */
+    private class DirectoryListingTask extends RecursiveTask<ListedDirectory> {
+        private static final long serialVersionUID = 1L;
+
+        private final transient File dir;
+
+        DirectoryListingTask(File dir) {
+            this.dir = dir;
+        }
+
+        @Override
+        protected ListedDirectory compute() {
+            if (isInterrupted()) {
+                return null;
+            }
+
+            File[] files = dir.listFiles();
+            if (files == null) {
+                LOGGER.log(Level.SEVERE, "Failed to get file listing for: {0}",
+                    dir.getPath());
+                return null;
+            }
+            Arrays.sort(files, FILENAME_COMPARATOR);
+
+            List<ListedEntry> entries = new ArrayList<>(files.length);
+            AcceptSymlinkRet ret = new AcceptSymlinkRet();
+            for (File file : files) {
+                /*
+                 * A non-symlink cannot be a link to itself or to a parent, so
+                 * accept(File, AcceptSymlinkRet) is sufficient and -- as it
+                 * does not reach acceptSymlink() -- safe to call in parallel.
+                 */
+                if (Files.isSymbolicLink(file.toPath())) {
+                    entries.add(new ListedEntry(file, true, 0, null));
+                } else if (accept(file, ret)) {
+                    if (file.isDirectory()) {
+                        DirectoryListingTask task = new DirectoryListingTask(file);
+                        task.fork();
+                        entries.add(new ListedEntry(file, false, 0, task));
+                    } else {
+                        entries.add(new ListedEntry(file, false, file.lastModified(), null));
+                    }
+                }
+            }
+            return new ListedDirectory(entries);
+        }
+    }
+
     private static class IndexFileWork {
         final File file;
         final String path;
@@ -1039,7 +1039,12 @@ public final class Indexer {
                     env.getRepositories().size()), "indexer.repository.scan");
         }
 
-        if (createHistoryCache) {
+        if (createHistoryCache && env.isHistoryCachePipelineEnabled()) {
+            // The indexing of each project waits only for the history of its repositories,
+            // see doIndexerExecution().
+            LOGGER.log(Level.INFO, "Starting generation of history cache in pipeline with indexing");
+            HistoryGuru.getInstance().createCacheAsync(repositories);
+        } else if (createHistoryCache) {
             // Even if history is disabled globally, it can be enabled for some repositories.
             if (repositories != null && !repositories.isEmpty()) {
                 LOGGER.log(Level.INFO, "Generating history cache for repositories: " +
@@ -1118,7 +1123,7 @@ public final class Indexer {
             for (final IndexDatabase db : dbs) {
                 final boolean optimize = env.isOptimizeDatabase();
                 db.addIndexChangedListener(progress);
-                parallelizer.getFixedExecutor().submit(() -> {
+                db.getHistoryCacheFuture().whenCompleteAsync((result, ex) -> {
                     try {
                         if (update) {
                             db.update();
@@ -1132,7 +1137,7 @@ public final class Indexer {
                     } finally {
                         latch.countDown();
                     }
-                });
+                }, parallelizer.getFixedExecutor());
             }
         }
 
@@ -1146,6 +1151,9 @@ public final class Indexer {
         }
         elapsed.report(LOGGER, "Done indexing data of all repositories", "indexer.repository.indexing");
 
+        // History cache created in pipeline with indexing might not have been needed by any index.
+        HistoryGuru.getInstance().waitForCache();
+
         CtagsUtil.deleteTempFiles();
     }
 
@@ -46,7 +46,8 @@ import org.opengrok.indexer.util.ObjectPool;
  * {@link IndexDatabase}. Threads in the former pool are customers of the
  * latter, and the bulk of work is done in the latter pool. The work-stealing
  * {@link ForkJoinPool} makes use of a corresponding fixed pool of {@link Ctags}
- * instances.
+ * instances. Another work-stealing pool is used for optional parallel listing
+ * of directories ahead of the serial stage of {@link IndexDatabase} traversal.
  * <p>Additionally there are pools for executing for history, for renamings in
  * history, and for watching the {@link Ctags} instances for timing purposes.
  */
@@ -56,6 +57,7 @@ public class IndexerParallelizer implements AutoCloseable {
     private final int indexingParallelism;
 
     private LazilyInstantiate<ForkJoinPool> lzForkJoinPool;
+    private LazilyInstantiate<ForkJoinPool> lzTraversalPool;
     private LazilyInstantiate<ObjectPool<Ctags>> lzCtagsPool;
     private LazilyInstantiate<ExecutorService> lzFixedExecutor;
     private LazilyInstantiate<ExecutorService> lzHistoryExecutor;
@@ -79,6 +81,7 @@ public class IndexerParallelizer implements AutoCloseable {
         this.indexingParallelism = env.getIndexingParallelism();
 
         createLazyForkJoinPool();
+        createLazyTraversalPool();
         createLazyCtagsPool();
         createLazyFixedExecutor();
         createLazyHistoryExecutor();
@@ -100,6 +103,14 @@ public class IndexerParallelizer implements AutoCloseable {
         return lzForkJoinPool.get();
     }
 
+    /**
+     * @return the work-stealing pool used for parallel listing of directories
+     * when {@link RuntimeEnvironment#isParallelTraversalEnabled()} is set
+     */
+    public ForkJoinPool getTraversalPool() {
+        return lzTraversalPool.get();
+    }
+
     /**
      * @return the ctagsPool
      */
@@ -155,6 +166,7 @@ public class IndexerParallelizer implements AutoCloseable {
      */
     public void bounce() {
         bounceForkJoinPool();
+        bounceTraversalPool();
         bounceFixedExecutor();
         bounceCtagsPool();
         bounceHistoryExecutor();
@@ -170,6 +182,14 @@ public class IndexerParallelizer implements AutoCloseable {
         }
     }
 
+    private void bounceTraversalPool() {
+        if (lzTraversalPool.isActive()) {
+            ForkJoinPool formerTraversalPool = lzTraversalPool.get();
+            createLazyTraversalPool();
+            formerTraversalPool.shutdown();
+        }
+    }
+
     private void bounceFixedExecutor() {
         if (lzFixedExecutor.isActive()) {
             ExecutorService formerFixedExecutor = lzFixedExecutor.get();
@@ -215,6 +235,11 @@ public class IndexerParallelizer implements AutoCloseable {
                 new ForkJoinPool(indexingParallelism));
     }
 
+    private void createLazyTraversalPool() {
+        lzTraversalPool = LazilyInstantiate.using(() ->
+                new ForkJoinPool(indexingParallelism));
+    }
+
     private void createLazyCtagsPool() {
         lzCtagsPool = LazilyInstantiate.using(() ->
                 new BoundedBlockingObjectPool<>(indexingParallelism,
@@ -54,24 +54,14 @@ import org.opengrok.indexer.util.TandemPath;
  * Represents a tracker of pending file deletions and renamings that can later
  * be executed.
  * <p>
- * {@link PendingFileCompleter} is not generally thread-safe, as only
- * {@link #add(org.opengrok.indexer.index.PendingFileRenaming)} is expected
- * to be run in parallel; that method is thread-safe -- but only among other
- * callers of the same method.
+ * {@link PendingFileCompleter} is not generally thread-safe. The
+ * {@code add()} methods are thread-safe among each other, so that additions
+ * can be made in parallel while files are traversed and analyzed.
  * <p>
- * No methods are thread-safe between each other. E.g.,
- * {@link #complete()} should only be called by a single thread after all
- * additions of {@link PendingSymlinkage}s, {@link PendingFileDeletion}s, and
+ * {@link #complete()} is not thread-safe w.r.t. the other methods and should
+ * only be called by a single thread after all additions of
+ * {@link PendingSymlinkage}s, {@link PendingFileDeletion}s, and
  * {@link PendingFileRenaming}s are indicated.
- * <p>
- * {@link #add(org.opengrok.indexer.index.PendingSymlinkage)} should only
- * be called in serial from a single thread in an isolated stage.
- * <p>
- * {@link #add(org.opengrok.indexer.index.PendingFileDeletion)} should only
- * be called in serial from a single thread in an isolated stage.
- * <p>
- * {@link #add(org.opengrok.indexer.index.PendingFileRenaming)}, as noted,
- * can be called in parallel in an isolated stage.
  */
 class PendingFileCompleter {
 
@@ -118,7 +108,9 @@ class PendingFileCompleter {
 
     /**
      * Adds the specified element to this instance's set if it is not already
-     * present.
+     * present and if there is no pending renaming to the same absolute path
+     * (which can happen when stale files are removed while new files are
+     * already being analyzed).
      * @param e element to be added to this set
      * @return {@code true} if this instance's set did not already contain the
      * specified element
@@ -128,7 +120,12 @@ class PendingFileCompleter {
         if (completing) {
             throw new IllegalStateException("complete() is running");
         }
-        return deletions.add(e);
+        synchronized (INSTANCE_LOCK) {
+            if (renames.contains(new PendingFileRenaming(e.getAbsolutePath(), ""))) {
+                return false;
+            }
+            return deletions.add(e);
+        }
     }
 
     /**
@@ -143,14 +140,16 @@ class PendingFileCompleter {
         if (completing) {
             throw new IllegalStateException("complete() is running");
         }
-        return linkages.add(e);
+        synchronized (INSTANCE_LOCK) {
+            return linkages.add(e);
+        }
     }
 
     /**
      * Adds the specified element to this instance's set if it is not already
      * present, and also remove any pending deletion for the same absolute
-     * path -- all in a thread-safe manner among other callers of this same
-     * method (and only this method).
+     * path -- all in a thread-safe manner among other callers of the
+     * {@code add()} methods.
      * @param e element to be added to this set
      * @return {@code true} if this instance's set did not already contain the
      * specified element
@@ -97,7 +97,7 @@ public class DirectoryExtraReader {
         List<NullableNumLinesLOC> results = new ArrayList<>();
 
         for (ScoreDoc sd : hits.scoreDocs) {
-            Document d = searcher.doc(sd.doc);
+            Document d = searcher.doc(sd.doc, StoredFieldSets.NUM_LINES_LOC);
             NullableNumLinesLOC extra = NumLinesLOCUtil.read(d);
             results.add(extra);
         }
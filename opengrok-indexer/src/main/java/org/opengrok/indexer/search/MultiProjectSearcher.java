@@ -0,0 +1,267 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License (the "License").
+ * You may not use this file except in compliance with the License.
+ *
+ * See LICENSE.txt included in this distribution for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at LICENSE.txt.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information: Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ */
+
+/*
+ * Copyright (c) 2021, Oracle and/or its affiliates. All rights reserved.
+ */
+package org.opengrok.indexer.search;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.IntFunction;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.apache.lucene.index.MultiReader;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.search.TopFieldCollector;
+import org.apache.lucene.search.TopFieldDocs;
+import org.apache.lucene.search.TopScoreDocCollector;
+import org.apache.lucene.search.TotalHits;
+import org.opengrok.indexer.configuration.RuntimeEnvironment;
+import org.opengrok.indexer.logger.LoggerFactory;
+
+/**
+ * Searches the projects of a multi-project search concurrently, each with its
+ * own searcher, and merges the top hits.
+ * <p>
+ * The searchers are expected in the same order as the readers of the
+ * {@link MultiReader} used for the same search, see
+ * {@link RuntimeEnvironment#getMultiReader(SortedSet, ArrayList)}, and the
+ * document IDs of the merged hits are those of that {@link MultiReader}, so
+ * the documents can be retrieved from it as usual.
+ * <p>
+ * Note that the scores are computed with the statistics of the individual
+ * projects rather than of all of them together, so the relevance order may
+ * differ slightly from a search over the {@link MultiReader}.
+ */
+public class MultiProjectSearcher {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(MultiProjectSearcher.class);
+
+    /**
+     * Time in milliseconds to wait past the deadline for the searches to
+     * notice it and return the hits collected so far.
+     */
+    private static final long GRACE_PERIOD = 100;
+
+    private final List<String> projects;
+    private final List<IndexSearcher> searchers;
+    private final int[] docBases;
+    private final SearchDeadline deadline;
+    private final SortedSet<String> timedOutProjects = Collections.synchronizedSortedSet(new TreeSet<>());
+
+    /**
+     * @param projects names of the projects in the order of {@code searchers}
+     * @param searchers searchers of the projects
+     * @param deadline deadline of the searches
+     */
+    public MultiProjectSearcher(Collection<String> projects, List<? extends IndexSearcher> searchers,
+            SearchDeadline deadline) {
+        if (projects.size() != searchers.size()) {
+            throw new IllegalArgumentException("number of projects and searchers differ");
+        }
+        this.projects = new ArrayList<>(projects);
+        this.searchers = new ArrayList<>(searchers);
+        this.deadline = deadline;
+        docBases = new int[searchers.size()];
+        int docBase = 0;
+        for (int i = 0; i < docBases.length; i++) {
+            docBases[i] = docBase;
+            docBase += searchers.get(i).getIndexReader().maxDoc();
+        }
+    }
+
+    /**
+     * Find the top hits by relevance.
+     * @param query query to run
+     * @param n number of hits to return
+     * @return merged top hits of all the projects which finished in time
+     * @throws IOException if searching any of the projects failed
+     */
+    public TopDocs search(Query query, int n) throws IOException {
+        return searchAfter(null, query, n);
+    }
+
+    /**
+     * Find the top hits by relevance which follow the given hit.
+     * @param after last hit of the previous page as returned by this searcher
+     * for the same query, or {@code null} to start from the top hit
+     * @param query query to run
+     * @param n number of hits to return
+     * @return merged top hits of all the projects which finished in time
+     * @throws IOException if searching any of the projects failed
+     */
+    public TopDocs searchAfter(ScoreDoc after, Query query, int n) throws IOException {
+        TopDocs[] shardHits = searchProjects((searcher, docBase, project) -> {
+                    TopScoreDocCollector collector = TopScoreDocCollector.create(n,
+                            toLocalScoreDoc(after, docBase, searcher.getIndexReader().maxDoc()),
+                            Short.MAX_VALUE);
+                    if (!deadline.search(searcher, query, collector)) {
+                        timedOutProjects.add(project);
+                    }
+                    return collector.topDocs();
+                },
+                new TopDocs(new TotalHits(0, TotalHits.Relation.EQUAL_TO), new ScoreDoc[0]),
+                TopDocs[]::new);
+        return toGlobalDocIds(TopDocs.merge(n, shardHits));
+    }
+
+    /**
+     * Find the top hits in the given sort order.
+     * @param query query to run
+     * @param n number of hits to return
+     * @param sort sort order
+     * @return merged top hits of all the projects which finished in time
+     * @throws IOException if searching any of the projects failed
+     */
+    public TopFieldDocs search(Query query, int n, Sort sort) throws IOException {
+        TopFieldDocs[] shardHits = searchProjects((searcher, docBase, project) -> {
+                    TopFieldCollector collector = SearchDeadline.createCollector(searcher, n, sort);
+                    if (!deadline.search(searcher, query, collector)) {
+                        timedOutProjects.add(project);
+                    }
+                    return collector.topDocs();
+                },
+                new TopFieldDocs(new TotalHits(0, TotalHits.Relation.EQUAL_TO), new ScoreDoc[0],
+                        sort.getSort()),
+                TopFieldDocs[]::new);
+        return toGlobalDocIds(TopDocs.merge(sort, n, shardHits));
+    }
+
+    /**
+     * @return names of the projects whose results of the last search are
+     * incomplete or left out because they did not finish in time
+     */
+    public SortedSet<String> getTimedOutProjects() {
+        return Collections.unmodifiableSortedSet(timedOutProjects);
+    }
+
+    /**
+     * @return whether the last search returned partial results
+     */
+    public boolean isPartial() {
+        return !timedOutProjects.isEmpty();
+    }
+
+    @FunctionalInterface
+    private interface ProjectSearch<T extends TopDocs> {
+        T search(IndexSearcher searcher, int docBase, String project) throws IOException;
+    }
+
+    private <T extends TopDocs> T[] searchProjects(ProjectSearch<T> search, T empty,
+            IntFunction<T[]> arrayFactory) throws IOException {
+        ExecutorService executor = RuntimeEnvironment.getInstance().getProjectSearchExecutor();
+
+        timedOutProjects.clear();
+        List<Future<T>> futures = new ArrayList<>(searchers.size());
+        for (int i = 0; i < searchers.size(); i++) {
+            IndexSearcher searcher = searchers.get(i);
+            int docBase = docBases[i];
+            String project = projects.get(i);
+            futures.add(executor.submit(() -> search.search(searcher, docBase, project)));
+        }
+
+        T[] results = arrayFactory.apply(futures.size());
+        try {
+            for (int i = 0; i < results.length; i++) {
+                Future<T> future = futures.get(i);
+                try {
+                    if (deadline.isTimeoutEnabled()) {
+                        results[i] = future.get(deadline.getRemainingMillis() + GRACE_PERIOD,
+                                TimeUnit.MILLISECONDS);
+                    } else {
+                        results[i] = future.get();
+                    }
+                } catch (TimeoutException e) {
+                    /*
+                     * The search stops by itself once it notices the deadline.
+                     * It is not interrupted as that could close the channels
+                     * of the index files it reads.
+                     */
+                    future.cancel(false);
+                    deadline.setExceeded();
+                    timedOutProjects.add(projects.get(i));
+                    results[i] = empty;
+                }
+            }
+        } catch (ExecutionException e) {
+            futures.forEach(future -> future.cancel(true));
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        } catch (InterruptedException e) {
+            futures.forEach(future -> future.cancel(true));
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while searching projects");
+        }
+
+        if (!timedOutProjects.isEmpty()) {
+            LOGGER.log(Level.WARNING, "search of projects {0} did not finish in {1} ms",
+                    new Object[]{timedOutProjects, deadline.getTimeout()});
+        }
+        return results;
+    }
+
+    /**
+     * Convert a hit with the document ID of the {@link MultiReader} to a hit
+     * which the paging collector of a single project can use. Documents with
+     * the same score are ordered by the ID, so if the hit belongs to one of
+     * the preceding projects all such documents follow it and if it belongs
+     * to one of the following projects none of them do.
+     */
+    private static ScoreDoc toLocalScoreDoc(ScoreDoc after, int docBase, int maxDoc) {
+        if (after == null) {
+            return null;
+        }
+        int doc = after.doc - docBase;
+        if (doc < 0) {
+            doc = -1;
+        } else if (doc >= maxDoc) {
+            doc = Integer.MAX_VALUE;
+        }
+        return new ScoreDoc(doc, after.score);
+    }
+
+    /**
+     * Convert the document IDs of the merged hits from the IDs within the
+     * individual projects to the IDs of the {@link MultiReader}.
+     */
+    private <T extends TopDocs> T toGlobalDocIds(T topDocs) {
+        for (ScoreDoc scoreDoc : topDocs.scoreDocs) {
+            scoreDoc.doc += docBases[scoreDoc.shardIndex];
+        }
+        return topDocs;
+    }
+}
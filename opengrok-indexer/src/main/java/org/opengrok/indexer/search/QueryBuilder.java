@@ -75,6 +75,9 @@ public class QueryBuilder {
     public static final String OBJUID = "objuid"; // object UID
     public static final String OBJSER = "objser"; // object serialized
     public static final String OBJVER = "objver"; // object version
+    public static final String FULL_TRIGRAMS = "fulltrigrams"; // trigrams of FULL tokens
+    public static final String STORED_TEXT = "storedtext"; // compressed text of the file
+    public static final String STORED_HISTORY = "storedhist"; // compressed history entries of the file
 
     protected static final List<String> searchFields = Arrays.asList(FULL, DEFS, REFS, PATH, HIST);
     private static final HashSet<String> searchFieldsSet = new HashSet<>(searchFields);
@@ -0,0 +1,326 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License (the "License").
+ * You may not use this file except in compliance with the License.
+ *
+ * See LICENSE.txt included in this distribution for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at LICENSE.txt.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information: Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ */
+
+/*
+ * Copyright (c) 2021, Oracle and/or its affiliates. All rights reserved.
+ */
+package org.opengrok.indexer.search;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.search.FieldDoc;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.search.TopFieldDocs;
+import org.apache.lucene.search.TotalHits;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.RamUsageEstimator;
+import org.opengrok.indexer.Metrics;
+import org.opengrok.indexer.configuration.RuntimeEnvironment;
+
+/**
+ * Cache of the top hits of recent searches.
+ * <p>
+ * The entries are keyed by the query, the sort order and the versions of the
+ * indexes of the searched projects, so an entry can only be found as long as
+ * the searched indexes do not change and the document IDs of its hits are
+ * still valid. The entries of a project are also dropped as soon as its
+ * searchers are refreshed, see {@link #invalidate(String)}.
+ * <p>
+ * The cache is bounded by the estimated memory used by its entries, see
+ * {@link RuntimeEnvironment#getQueryResultCacheSize()}, and evicts the least
+ * recently used entries first. It is disabled if the size is not positive.
+ */
+public final class QueryResultCache {
+
+    /**
+     * Project name used in the keys for searches of the index without projects.
+     */
+    public static final String NO_PROJECT = "";
+
+    private static final QueryResultCache INSTANCE = new QueryResultCache();
+
+    private static final long ENTRY_OVERHEAD = RamUsageEstimator.shallowSizeOfInstance(Entry.class) +
+            RamUsageEstimator.shallowSizeOfInstance(Key.class) + 2 * RamUsageEstimator.NUM_BYTES_OBJECT_REF;
+
+    private final Map<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    private long bytes;
+
+    private Counter hits;
+    private Counter misses;
+    private Counter evictions;
+
+    private QueryResultCache() {
+        MeterRegistry meterRegistry = Metrics.getRegistry();
+        if (meterRegistry != null) {
+            hits = Counter.builder("search.cache.get").
+                    description("query result cache hits").
+                    tag("what", "hits").
+                    register(meterRegistry);
+            misses = Counter.builder("search.cache.get").
+                    description("query result cache misses").
+                    tag("what", "miss").
+                    register(meterRegistry);
+            evictions = Counter.builder("search.cache.evictions").
+                    description("query result cache entries evicted to stay within the size limit").
+                    register(meterRegistry);
+            Gauge.builder("search.cache.size", this, QueryResultCache::getSize).
+                    description("estimated size of the query result cache in bytes").
+                    register(meterRegistry);
+        }
+    }
+
+    public static QueryResultCache getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Key of the cached results.
+     */
+    public static final class Key {
+        private final String query;
+        private final String sort;
+        private final SortedMap<String, Long> indexVersions;
+
+        /**
+         * @param query the query
+         * @param sort description of the sort order of the hits
+         * @param indexVersions versions of the indexes of the searched
+         * projects keyed by the project names, see {@link #getIndexVersions(Collection, List)}
+         */
+        public Key(Query query, String sort, SortedMap<String, Long> indexVersions) {
+            this.query = query.toString();
+            this.sort = sort;
+            this.indexVersions = Collections.unmodifiableSortedMap(new TreeMap<>(indexVersions));
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            Key key = (Key) o;
+            return query.equals(key.query) && sort.equals(key.sort) && indexVersions.equals(key.indexVersions);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(query, sort, indexVersions);
+        }
+
+        private long ramBytesUsed() {
+            return 2L * (query.length() + sort.length()) +
+                    indexVersions.keySet().stream().mapToLong(name -> 2L * name.length() + 64).sum();
+        }
+    }
+
+    private static final class Entry {
+        private final TopDocs topDocs;
+        private final long bytes;
+
+        private Entry(TopDocs topDocs, long bytes) {
+            this.topDocs = topDocs;
+            this.bytes = bytes;
+        }
+    }
+
+    /**
+     * Get the versions of the indexes of the searched projects.
+     * @param projects names of the projects in the order of {@code searchers}
+     * @param searchers searchers of the projects
+     * @return versions of the indexes keyed by the project names or
+     * {@code null} if the version of any of the indexes is not known
+     */
+    public static SortedMap<String, Long> getIndexVersions(Collection<String> projects,
+            List<? extends IndexSearcher> searchers) {
+        if (projects.size() != searchers.size()) {
+            return null;
+        }
+        SortedMap<String, Long> versions = new TreeMap<>();
+        Iterator<? extends IndexSearcher> searcherIterator = searchers.iterator();
+        for (String project : projects) {
+            IndexReader reader = searcherIterator.next().getIndexReader();
+            if (!(reader instanceof DirectoryReader)) {
+                return null;
+            }
+            versions.put(project, ((DirectoryReader) reader).getVersion());
+        }
+        return versions;
+    }
+
+    /**
+     * Get the top hits of a search.
+     * @param key key of the search
+     * @param n number of hits needed
+     * @return the top {@code n} hits or {@code null} if they are not in the cache
+     */
+    public TopDocs get(Key key, int n) {
+        if (!isEnabled()) {
+            return null;
+        }
+        Entry entry;
+        synchronized (this) {
+            entry = entries.get(key);
+        }
+        if (entry == null || !hasHits(entry.topDocs, n)) {
+            if (misses != null) {
+                misses.increment();
+            }
+            return null;
+        }
+        if (hits != null) {
+            hits.increment();
+        }
+        return truncate(entry.topDocs, n);
+    }
+
+    /**
+     * Store the top hits of a search.
+     * @param key key of the search
+     * @param topDocs complete top hits of the search
+     */
+    public void put(Key key, TopDocs topDocs) {
+        long limit = RuntimeEnvironment.getInstance().getQueryResultCacheSize();
+        if (limit <= 0) {
+            return;
+        }
+        long size = ENTRY_OVERHEAD + key.ramBytesUsed() + ramBytesUsed(topDocs);
+        if (size > limit) {
+            return;
+        }
+        synchronized (this) {
+            Entry previous = entries.get(key);
+            if (previous != null && previous.topDocs.scoreDocs.length >= topDocs.scoreDocs.length) {
+                return;
+            }
+            Entry entry = new Entry(topDocs, size);
+            previous = entries.put(key, entry);
+            if (previous != null) {
+                bytes -= previous.bytes;
+            }
+            bytes += size;
+            evict(limit);
+        }
+    }
+
+    /**
+     * Drop the entries of searches which include the project.
+     * @param project name of the project
+     */
+    public synchronized void invalidate(String project) {
+        Iterator<Map.Entry<Key, Entry>> iterator = entries.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<Key, Entry> mapEntry = iterator.next();
+            if (mapEntry.getKey().indexVersions.containsKey(project)) {
+                bytes -= mapEntry.getValue().bytes;
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Drop all the entries.
+     */
+    public synchronized void clear() {
+        entries.clear();
+        bytes = 0;
+    }
+
+    /**
+     * @return estimated size of the entries in bytes
+     */
+    public synchronized long getSize() {
+        return bytes;
+    }
+
+    private boolean isEnabled() {
+        return RuntimeEnvironment.getInstance().getQueryResultCacheSize() > 0;
+    }
+
+    private void evict(long limit) {
+        Iterator<Entry> iterator = entries.values().iterator();
+        while (bytes > limit && iterator.hasNext()) {
+            bytes -= iterator.next().bytes;
+            iterator.remove();
+            if (evictions != null) {
+                evictions.increment();
+            }
+        }
+    }
+
+    /**
+     * @return whether the hits contain the top {@code n} hits of the search
+     */
+    private static boolean hasHits(TopDocs topDocs, int n) {
+        return topDocs.scoreDocs.length >= n ||
+                (topDocs.totalHits.relation == TotalHits.Relation.EQUAL_TO &&
+                        topDocs.scoreDocs.length >= topDocs.totalHits.value);
+    }
+
+    private static TopDocs truncate(TopDocs topDocs, int n) {
+        if (topDocs.scoreDocs.length <= n) {
+            return topDocs;
+        }
+        ScoreDoc[] scoreDocs = Arrays.copyOf(topDocs.scoreDocs, n);
+        if (topDocs instanceof TopFieldDocs) {
+            return new TopFieldDocs(topDocs.totalHits, scoreDocs, ((TopFieldDocs) topDocs).fields);
+        }
+        return new TopDocs(topDocs.totalHits, scoreDocs);
+    }
+
+    private static long ramBytesUsed(TopDocs topDocs) {
+        long size = RamUsageEstimator.shallowSizeOf(topDocs) + RamUsageEstimator.shallowSizeOf(topDocs.scoreDocs);
+        for (ScoreDoc scoreDoc : topDocs.scoreDocs) {
+            size += RamUsageEstimator.shallowSizeOf(scoreDoc);
+            if (scoreDoc instanceof FieldDoc && ((FieldDoc) scoreDoc).fields != null) {
+                Object[] fields = ((FieldDoc) scoreDoc).fields;
+                size += RamUsageEstimator.shallowSizeOf(fields);
+                for (Object field : fields) {
+                    if (field instanceof BytesRef) {
+                        size += RamUsageEstimator.shallowSizeOf(field) +
+                                RamUsageEstimator.sizeOf(((BytesRef) field).bytes);
+                    } else if (field != null) {
+                        size += RamUsageEstimator.shallowSizeOf(field);
+                    }
+                }
+            }
+        }
+        return size;
+    }
+}
@@ -51,6 +51,7 @@ import org.apache.lucene.search.ScoreDoc;
 import org.opengrok.indexer.analysis.AbstractAnalyzer;
 import org.opengrok.indexer.analysis.Definitions;
 import org.opengrok.indexer.analysis.Scopes;
+import org.opengrok.indexer.analysis.StoredText;
 import org.opengrok.indexer.configuration.Project;
 import org.opengrok.indexer.configuration.RuntimeEnvironment;
 import org.opengrok.indexer.history.HistoryException;
@@ -92,7 +93,7 @@ public final class Results {
                 new LinkedHashMap<>();
         for (int i = startIdx; i < stopIdx; i++) {
             int docId = hits[i].doc;
-            Document doc = searcher.doc(docId);
+            Document doc = searcher.doc(docId, StoredFieldSets.PATH);
 
             String rpath = doc.get(QueryBuilder.PATH);
             if (rpath == null) {
@@ -201,7 +202,7 @@ public final class Results {
 
             out.write("</td></tr>");
             for (int docId : entry.getValue()) {
-                Document doc = sh.searcher.doc(docId);
+                Document doc = sh.searcher.doc(docId, StoredFieldSets.LISTING);
                 String rpath = doc.get(QueryBuilder.PATH);
                 String rpathE = Util.URIEncodePath(rpath);
                 if (evenRow) {
@@ -222,7 +223,12 @@ public final class Results {
                 out.write(htmlize(rpath.substring(rpath.lastIndexOf('/') + 1)));
                 out.write("</a>");
                 out.write("</td><td><code class=\"con\">");
-                if (sh.sourceContext != null) {
+                // Once out of time, list the remaining hits without context.
+                boolean timedOut = sh.deadline.shouldExit();
+                if (timedOut) {
+                    sh.deadline.setExceeded();
+                }
+                if (sh.sourceContext != null && !timedOut) {
                     AbstractAnalyzer.Genre genre = AbstractAnalyzer.Genre.get(
                             doc.get(QueryBuilder.T));
                     if (AbstractAnalyzer.Genre.XREFABLE == genre && sh.summarizer != null) {
@@ -235,13 +241,13 @@ public final class Results {
                         String htags = getTags(sh.sourceRoot, rpath, false);
                         out.write(sh.summarizer.getSummary(htags).toString());
                     } else if (genre == AbstractAnalyzer.Genre.PLAIN) {
-                        printPlain(fargs, doc, docId, rpath);
+                        printPlain(fargs, docId, rpath);
                     }
                 }
 
-                if (sh.historyContext != null) {
-                    sh.historyContext.getContext(new File(sh.sourceRoot, rpath),
-                            rpath, out, sh.contextPath);
+                if (sh.historyContext != null && !timedOut) {
+                    sh.historyContext.getContext(sh.searcher, docId,
+                            new File(sh.sourceRoot, rpath), rpath, out, sh.contextPath);
                 }
                 out.write("</code></td></tr>\n");
             }
@@ -262,8 +268,8 @@ public final class Results {
         }
     }
 
-    private static void printPlain(PrintPlainFinalArgs fargs, Document doc,
-        int docId, String rpath) throws ClassNotFoundException, IOException {
+    private static void printPlain(PrintPlainFinalArgs fargs, int docId,
+        String rpath) throws ClassNotFoundException, IOException {
 
         fargs.shelp.sourceContext.toggleAlt();
 
@@ -277,6 +283,7 @@ public final class Results {
              * PlainLinetokenizer. E.g., when source code is updated (thus
              * affecting timestamps) but re-indexing is not yet complete.
              */
+            Document doc = fargs.shelp.searcher.doc(docId, StoredFieldSets.CONTEXT);
             Definitions tags = null;
             IndexableField tagsField = doc.getField(QueryBuilder.TAGS);
             if (tagsField != null) {
@@ -290,6 +297,15 @@ public final class Results {
                 scopes = new Scopes();
             }
             boolean isDefSearch = fargs.shelp.builder.isDefSearch();
+            Reader storedText = StoredText.getReader(doc);
+            if (storedText != null) {
+                try (Reader r = storedText) {
+                    fargs.shelp.sourceContext.getContext(r, fargs.out,
+                        fargs.xrefPrefix, fargs.morePrefix, rpath, tags, true,
+                        isDefSearch, null, scopes);
+                }
+                return;
+            }
             // SRCROOT is read with UTF-8 as a default.
             File sourceFile = new File(fargs.shelp.sourceRoot, rpath);
             try (FileInputStream fis = new FileInputStream(sourceFile);
@@ -0,0 +1,295 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License (the "License").
+ * You may not use this file except in compliance with the License.
+ *
+ * See LICENSE.txt included in this distribution for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at LICENSE.txt.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information: Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ */
+
+/*
+ * Copyright (c) 2021, Oracle and/or its affiliates. All rights reserved.
+ */
+package org.opengrok.indexer.search;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.lucene.index.ExitableDirectoryReader;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.MultiReader;
+import org.apache.lucene.index.QueryTimeout;
+import org.apache.lucene.search.Collector;
+import org.apache.lucene.search.CollectorManager;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.TimeLimitingCollector;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.search.TopFieldCollector;
+import org.apache.lucene.search.TopFieldDocs;
+import org.apache.lucene.search.TopScoreDocCollector;
+import org.apache.lucene.search.Weight;
+import org.opengrok.indexer.Metrics;
+import org.opengrok.indexer.configuration.RuntimeEnvironment;
+
+/**
+ * Deadline of a search request, see {@link RuntimeEnvironment#getSearchTimeout()}.
+ * <p>
+ * The searches run with the deadline stop once it has passed and return the
+ * hits collected so far. Both the collection of the hits, with a
+ * {@link TimeLimitingCollector}, and the enumeration of the terms matching
+ * multi-term queries such as regular expressions, by reading the index with
+ * {@link ExitableDirectoryReader.ExitableFilterAtomicReader}, are bounded.
+ * The generation of the context of the hits is expected to check
+ * {@link #shouldExit()} as well. Whether any of it was cut short is available
+ * from {@link #isExceeded()}.
+ */
+public final class SearchDeadline implements QueryTimeout {
+
+    /**
+     * Same as the threshold of exactly counted hits used by
+     * {@link IndexSearcher#search(Query, int, Sort)}.
+     */
+    private static final int TOTAL_HITS_THRESHOLD = 1000;
+
+    private final long timeout;
+    private final long deadline;
+    private final long baseline;
+    private volatile boolean exceeded;
+
+    /**
+     * @param timeout time in milliseconds from now the searches are allowed
+     * to take or 0 for no limit
+     */
+    public SearchDeadline(long timeout) {
+        this.timeout = Math.max(0, timeout);
+        this.deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(this.timeout);
+        this.baseline = TimeLimitingCollector.getGlobalCounter().get();
+    }
+
+    /**
+     * Get the timeout for a request which asks for a specific one. The
+     * configured timeout cannot be exceeded, only shortened.
+     * @param requested requested timeout in milliseconds or {@code null}
+     * to use the configured one
+     * @return timeout in milliseconds or 0 for no limit
+     */
+    public static long getTimeout(Long requested) {
+        long configured = RuntimeEnvironment.getInstance().getSearchTimeout();
+        if (requested == null || requested <= 0) {
+            return configured;
+        }
+        return configured > 0 ? Math.min(configured, requested) : requested;
+    }
+
+    /**
+     * @return timeout in milliseconds or 0 for no limit
+     */
+    public long getTimeout() {
+        return timeout;
+    }
+
+    @Override
+    public boolean isTimeoutEnabled() {
+        return timeout > 0;
+    }
+
+    @Override
+    public boolean shouldExit() {
+        return isTimeoutEnabled() && System.nanoTime() - deadline >= 0;
+    }
+
+    /**
+     * @return milliseconds left until the deadline, {@code Long.MAX_VALUE}
+     * if there is no limit
+     */
+    public long getRemainingMillis() {
+        if (!isTimeoutEnabled()) {
+            return Long.MAX_VALUE;
+        }
+        return Math.max(0, TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime()));
+    }
+
+    /**
+     * @return whether any search or context generation was cut short
+     */
+    public boolean isExceeded() {
+        return exceeded;
+    }
+
+    /**
+     * Record that a search or context generation was cut short. The first
+     * call is counted in the {@code search.timeouts} metric.
+     */
+    public synchronized void setExceeded() {
+        if (exceeded) {
+            return;
+        }
+        exceeded = true;
+        MeterRegistry meterRegistry = Metrics.getRegistry();
+        if (meterRegistry != null) {
+            Counter.builder("search.timeouts").
+                    description("searches which did not finish in time and returned partial results").
+                    register(meterRegistry).
+                    increment();
+        }
+    }
+
+    /**
+     * Find the top hits by relevance which follow the given hit.
+     * @param searcher searcher to use
+     * @param after last hit of the previous page or {@code null}
+     * @param query query to run
+     * @param n number of hits to return
+     * @return top hits collected before the deadline
+     * @throws IOException if the search failed
+     */
+    public TopDocs searchAfter(IndexSearcher searcher, ScoreDoc after, Query query, int n) throws IOException {
+        CollectorManager<TopScoreDocCollector, TopDocs> manager =
+                new CollectorManager<TopScoreDocCollector, TopDocs>() {
+            @Override
+            public TopScoreDocCollector newCollector() {
+                return TopScoreDocCollector.create(n, after, Short.MAX_VALUE);
+            }
+
+            @Override
+            public TopDocs reduce(Collection<TopScoreDocCollector> collectors) {
+                TopDocs[] topDocs = new TopDocs[collectors.size()];
+                int i = 0;
+                for (TopScoreDocCollector collector : collectors) {
+                    topDocs[i++] = collector.topDocs();
+                }
+                return TopDocs.merge(0, n, topDocs);
+            }
+        };
+        if (!isTimeoutEnabled()) {
+            return searcher.search(query, manager);
+        }
+        if (shouldExit()) {
+            setExceeded();
+            return manager.reduce(Collections.singletonList(manager.newCollector()));
+        }
+        try {
+            return getExitableSearcher(searcher).search(query, manager);
+        } catch (ExitableDirectoryReader.ExitingReaderException e) {
+            // thrown while rewriting the query, before any hits were collected
+            setExceeded();
+            return manager.reduce(Collections.singletonList(manager.newCollector()));
+        }
+    }
+
+    /**
+     * Find the top hits in the given sort order.
+     * @param searcher searcher to use
+     * @param query query to run
+     * @param n number of hits to return
+     * @param sort sort order
+     * @return top hits collected before the deadline
+     * @throws IOException if the search failed
+     */
+    public TopFieldDocs search(IndexSearcher searcher, Query query, int n, Sort sort) throws IOException {
+        if (!isTimeoutEnabled()) {
+            return searcher.search(query, n, sort);
+        }
+        if (!shouldExit()) {
+            try {
+                return getExitableSearcher(searcher).search(query, n, sort);
+            } catch (ExitableDirectoryReader.ExitingReaderException e) {
+                // thrown while rewriting the query, before any hits were collected
+            }
+        }
+        setExceeded();
+        return createCollector(searcher, n, sort).topDocs();
+    }
+
+    /**
+     * @return collector of the top hits in the sort order which counts the
+     * hits the same as {@link IndexSearcher#search(Query, int, Sort)}
+     */
+    static TopFieldCollector createCollector(IndexSearcher searcher, int n, Sort sort) {
+        int numHits = Math.max(1, Math.min(n, searcher.getIndexReader().maxDoc()));
+        return TopFieldCollector.create(sort, numHits, TOTAL_HITS_THRESHOLD);
+    }
+
+    /**
+     * Run the search until it finishes or the deadline passes.
+     * @param searcher searcher to use
+     * @param query query to run
+     * @param collector collector of the hits
+     * @return whether the search finished before the deadline
+     * @throws IOException if the search failed
+     */
+    public boolean search(IndexSearcher searcher, Query query, Collector collector) throws IOException {
+        if (!isTimeoutEnabled()) {
+            searcher.search(query, collector);
+            return true;
+        }
+        if (shouldExit()) {
+            setExceeded();
+            return false;
+        }
+
+        try {
+            getExitableSearcher(searcher).search(query, collector);
+        } catch (ExitableDirectoryReader.ExitingReaderException e) {
+            setExceeded();
+        }
+        return !isExceeded();
+    }
+
+    /**
+     * Get a searcher of the same documents, with the same document IDs and
+     * the same executor for searching the segments concurrently, which stops
+     * enumerating terms and collecting hits once the deadline has passed. The
+     * hits collected from each segment until then are kept.
+     */
+    private IndexSearcher getExitableSearcher(IndexSearcher searcher) throws IOException {
+        List<LeafReaderContext> leaves = searcher.getIndexReader().leaves();
+        IndexReader[] exitableLeaves = new IndexReader[leaves.size()];
+        for (int i = 0; i < exitableLeaves.length; i++) {
+            LeafReader leaf = leaves.get(i).reader();
+            exitableLeaves[i] = new ExitableDirectoryReader.ExitableFilterAtomicReader(leaf, this);
+        }
+        /*
+         * The wrapping reader is not closed as closing it would close the
+         * leaves of the searcher as well.
+         */
+        IndexSearcher exitableSearcher = new IndexSearcher(new MultiReader(exitableLeaves, false),
+                searcher.getExecutor()) {
+            @Override
+            protected void search(List<LeafReaderContext> leaves, Weight weight, Collector collector)
+                    throws IOException {
+                TimeLimitingCollector limitingCollector = new TimeLimitingCollector(collector,
+                        TimeLimitingCollector.getGlobalCounter(), timeout);
+                limitingCollector.setBaseline(baseline);
+                try {
+                    super.search(leaves, weight, limitingCollector);
+                } catch (TimeLimitingCollector.TimeExceededException |
+                        ExitableDirectoryReader.ExitingReaderException e) {
+                    setExceeded();
+                }
+            }
+        };
+        exitableSearcher.setSimilarity(searcher.getSimilarity());
+        return exitableSearcher;
+    }
+}
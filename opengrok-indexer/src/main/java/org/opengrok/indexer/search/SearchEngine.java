@@ -31,10 +31,17 @@ import java.io.FileReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.Reader;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
 import java.util.SortedSet;
+import java.util.TreeMap;
 import java.util.TreeSet;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -49,13 +56,14 @@ import org.apache.lucene.queryparser.classic.ParseException;
 import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.Query;
 import org.apache.lucene.search.ScoreDoc;
-import org.apache.lucene.search.TopScoreDocCollector;
+import org.apache.lucene.search.TopDocs;
 import org.apache.lucene.store.FSDirectory;
 import org.apache.lucene.util.Version;
 import org.opengrok.indexer.analysis.AbstractAnalyzer;
 import org.opengrok.indexer.analysis.CompatibleAnalyser;
 import org.opengrok.indexer.analysis.Definitions;
 import org.opengrok.indexer.analysis.Scopes;
+import org.opengrok.indexer.analysis.StoredText;
 import org.opengrok.indexer.configuration.Project;
 import org.opengrok.indexer.configuration.RuntimeEnvironment;
 import org.opengrok.indexer.configuration.SuperIndexSearcher;
@@ -125,8 +133,6 @@ public class SearchEngine {
     private Context sourceContext;
     private HistoryContext historyContext;
     private Summarizer summarizer;
-    // internal structure to hold the results from lucene
-    private final List<Document> docs;
     private final char[] content = new char[1024 * 8];
     private String source;
     private String data;
@@ -134,8 +140,26 @@ public class SearchEngine {
     int cachePages = RuntimeEnvironment.getInstance().getCachePages();
     int totalHits = 0;
     private ScoreDoc[] hits;
-    private TopScoreDocCollector collector;
     private IndexSearcher searcher;
+    private MultiProjectSearcher projectSearcher;
+    /**
+     * Window of hits to collect set by {@link #searchPage(List, ScoreDoc, byte[], int, int)}.
+     * If {@code pageSize} is 0, the hits are collected as described in {@link #search()}.
+     */
+    private ScoreDoc pageAfter;
+    private byte[] pageAfterVersion;
+    private int pageStart;
+    private int pageSize;
+    /**
+     * Versions of the searched indexes keyed by project names, see
+     * {@link QueryResultCache#getIndexVersions(java.util.Collection, List)}.
+     */
+    private SortedMap<String, Long> indexVersions;
+    /**
+     * Time limit in milliseconds of the searches, see {@link #setTimeout(long)}.
+     */
+    private long timeout = RuntimeEnvironment.getInstance().getSearchTimeout();
+    private SearchDeadline deadline = new SearchDeadline(0);
     boolean allCollected;
     private final ArrayList<SuperIndexSearcher> searcherList = new ArrayList<>();
 
@@ -143,7 +167,6 @@ public class SearchEngine {
      * Creates a new instance of SearchEngine.
      */
     public SearchEngine() {
-        docs = new ArrayList<>();
     }
 
     /**
@@ -182,7 +205,9 @@ public class SearchEngine {
      * @throws IOException
      */
     private void searchSingleDatabase(File root, boolean paging) throws IOException {
-        IndexReader ireader = DirectoryReader.open(FSDirectory.open(root.toPath()));
+        DirectoryReader ireader = DirectoryReader.open(FSDirectory.open(root.toPath()));
+        indexVersions = new TreeMap<>();
+        indexVersions.put(QueryResultCache.NO_PROJECT, ireader.getVersion());
         searcher = new IndexSearcher(ireader);
         searchIndex(searcher, paging);
     }
@@ -203,30 +228,83 @@ public class SearchEngine {
         // We use MultiReader even for single project. This should
         // not matter given that MultiReader is just a cheap wrapper
         // around set of IndexReader objects.
-        MultiReader searchables = RuntimeEnvironment.getInstance().
-            getMultiReader(projects, searcherList);
+        RuntimeEnvironment env = RuntimeEnvironment.getInstance();
+        int firstSearcher = searcherList.size();
+        MultiReader searchables = env.getMultiReader(projects, searcherList);
         searcher = new IndexSearcher(searchables);
+        List<SuperIndexSearcher> projectSearchers = searcherList.subList(firstSearcher, searcherList.size());
+        indexVersions = QueryResultCache.getIndexVersions(projects, projectSearchers);
+        if (env.isProjectSearchConcurrent() && searchables != null) {
+            projectSearcher = new MultiProjectSearcher(projects, projectSearchers, deadline);
+        }
         searchIndex(searcher, paging);
     }
 
     private void searchIndex(IndexSearcher searcher, boolean paging) throws IOException {
-        collector = TopScoreDocCollector.create(hitsPerPage * cachePages, Short.MAX_VALUE);
         Statistics stat = new Statistics();
-        searcher.search(query, collector);
-        totalHits = collector.getTotalHits();
+        TopDocs topDocs;
+        if (pageAfter != null) {
+            if (Arrays.equals(pageAfterVersion, getIndexVersion())) {
+                pageStart = 0;
+            } else {
+                // The document IDs changed since the hit was collected, count the hits instead.
+                pageAfter = null;
+            }
+        }
+        if (pageSize > 0) {
+            topDocs = searchTop(searcher, pageAfter, pageStart + pageSize);
+        } else {
+            topDocs = searchTop(searcher, null, hitsPerPage * cachePages);
+        }
+        totalHits = (int) topDocs.totalHits.value;
         stat.report(LOGGER, Level.FINEST, "search via SearchEngine done",
                 "search.latency", new String[]{"category", "engine",
                         "outcome", totalHits > 0 ? "success" : "empty"});
-        if (!paging && totalHits > 0) {
-            collector = TopScoreDocCollector.create(totalHits, Short.MAX_VALUE);
-            searcher.search(query, collector);
+        if (pageSize > 0) {
+            ScoreDoc[] top = topDocs.scoreDocs;
+            hits = Arrays.copyOfRange(top, Math.min(pageStart, top.length), top.length);
+            // the window is all there is to collect, see results()
+            allCollected = true;
+        } else {
+            if (!paging && totalHits > 0) {
+                topDocs = searchTop(searcher, null, totalHits);
+            }
+            hits = topDocs.scoreDocs;
+        }
+    }
+
+    /**
+     * Find the top {@code n} hits of the query following {@code after},
+     * either with the searcher or, when searching the projects concurrently,
+     * with {@link #projectSearcher}.
+     */
+    private TopDocs searchTop(IndexSearcher searcher, ScoreDoc after, int n) throws IOException {
+        QueryResultCache.Key cacheKey = null;
+        if (after == null && indexVersions != null) {
+            cacheKey = new QueryResultCache.Key(query, "score", indexVersions);
+            TopDocs cached = QueryResultCache.getInstance().get(cacheKey, n);
+            if (cached != null) {
+                return cached;
+            }
+        }
+
+        Query searchQuery = TrigramQueryRewriter.rewrite(query);
+        TopDocs topDocs;
+        if (projectSearcher != null) {
+            topDocs = projectSearcher.searchAfter(after, searchQuery, n);
+            if (projectSearcher.isPartial()) {
+                return topDocs;
+            }
+        } else {
+            topDocs = deadline.searchAfter(searcher, after, searchQuery, n);
+            if (deadline.isExceeded()) {
+                return topDocs;
+            }
         }
-        hits = collector.topDocs().scoreDocs;
-        for (ScoreDoc hit : hits) {
-            int docId = hit.doc;
-            Document d = searcher.doc(docId);
-            docs.add(d);
+        if (cacheKey != null) {
+            QueryResultCache.getInstance().put(cacheKey, topDocs);
         }
+        return topDocs;
     }
 
     /**
@@ -284,6 +362,101 @@ public class SearchEngine {
         return search(projects, new File(RuntimeEnvironment.getInstance().getDataRootFile(), IndexDatabase.INDEX_DIR));
     }
 
+    /**
+     * Execute a search limited to specific project names which collects only
+     * a window of the hits and loads only their documents.
+     * <p>
+     * The window starts at the hit at {@code position}. To get the next
+     * window, pass the last element of {@link #scoreDocs()} as {@code after}
+     * and {@link #getIndexVersion()} as {@code afterIndexVersion} to a new
+     * instance. The hits are then collected after {@code after}, unless the
+     * index has changed in between so that the document IDs refer to
+     * different documents; in that case the first {@code position} hits are
+     * skipped instead.
+     * <p>
+     * The hits of the window are available via {@link #scoreDocs()} and
+     * {@link #results(int, int, List)} starting from 0.
+     * Call to this method must be eventually followed by call to destroy()
+     * so that IndexSearcher objects are properly freed.
+     *
+     * @param projects projects to search
+     * @param after last hit of the previous window or {@code null}
+     * @param afterIndexVersion index version at the time {@code after} was collected
+     * @param position position of the first hit of the window
+     * @param size maximum number of hits in the window
+     * @return total number of hits
+     */
+    public int searchPage(List<Project> projects, ScoreDoc after, byte[] afterIndexVersion, int position, int size) {
+        if (size <= 0) {
+            throw new IllegalArgumentException("size must be positive");
+        }
+        pageAfter = after;
+        pageAfterVersion = afterIndexVersion;
+        pageStart = Math.max(0, position);
+        pageSize = size;
+        try {
+            search(projects, new File(RuntimeEnvironment.getInstance().getDataRootFile(), IndexDatabase.INDEX_DIR));
+        } finally {
+            pageAfter = null;
+            pageAfterVersion = null;
+            pageStart = 0;
+            pageSize = 0;
+        }
+        return totalHits;
+    }
+
+    /**
+     * Set the time limit of the searches and of the generation of the
+     * results, see {@link RuntimeEnvironment#getSearchTimeout()}.
+     * Defaults to the configured limit.
+     * @param timeout time limit in milliseconds or 0 for no limit
+     */
+    public void setTimeout(long timeout) {
+        this.timeout = timeout;
+    }
+
+    /**
+     * Gets whether the search or the generation of the results did not finish
+     * in time, so that only some of the hits were found or only some of the
+     * results have context.
+     * @return whether the results are partial
+     */
+    public boolean isPartial() {
+        return deadline.isExceeded();
+    }
+
+    /**
+     * Gets the version of the searched index from {@code search(...)} if it
+     * was called. It is a SHA-256 digest of the versions of the indexes of
+     * the searched projects, so it changes whenever any of them changes.
+     * @return version of the index or {@code null} if it is not known
+     */
+    public byte[] getIndexVersion() {
+        if (indexVersions == null) {
+            return null;
+        }
+
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            /*
+             * This will not happen since "Every implementation of the Java
+             * platform is required to support the following standard
+             * MessageDigest algorithms: MD5, SHA-1, SHA-256."
+             */
+            throw new RuntimeException(e);
+        }
+        ByteBuffer version = ByteBuffer.allocate(Long.BYTES);
+        for (Map.Entry<String, Long> entry : indexVersions.entrySet()) {
+            digest.update(entry.getKey().getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            version.clear();
+            digest.update(version.putLong(entry.getValue()).array());
+        }
+        return digest.digest();
+    }
+
     /**
      * Execute a search without authorization.
      *
@@ -318,7 +491,10 @@ public class SearchEngine {
     private int search(List<Project> projects, File root) {
         source = RuntimeEnvironment.getInstance().getSourceRootPath();
         data = RuntimeEnvironment.getInstance().getDataRootPath();
-        docs.clear();
+        hits = null;
+        projectSearcher = null;
+        indexVersions = null;
+        deadline = new SearchDeadline(timeout);
 
         QueryBuilder newBuilder = createQueryBuilder();
         try {
@@ -343,7 +519,7 @@ public class SearchEngine {
                     Level.WARNING, SEARCH_EXCEPTION_MSG, e);
         }
 
-        if (!docs.isEmpty()) {
+        if (hits != null && hits.length > 0) {
             sourceContext = null;
             summarizer = null;
             try {
@@ -419,36 +595,23 @@ public class SearchEngine {
         // TODO check if below fits for if end=old hits.length, or it should include it
         if (end > hits.length && !allCollected) {
             //do the requery, we want more than 5 pages
-            collector = TopScoreDocCollector.create(totalHits, Short.MAX_VALUE);
             try {
-                searcher.search(query, collector);
+                hits = searchTop(searcher, null, totalHits).scoreDocs;
             } catch (Exception e) { // this exception should never be hit, since search() will hit this before
                 LOGGER.log(
                         Level.WARNING, SEARCH_EXCEPTION_MSG, e);
             }
-            hits = collector.topDocs().scoreDocs;
-            Document d = null;
-            for (int i = start; i < hits.length; i++) {
-                int docId = hits[i].doc;
-                try {
-                    d = searcher.doc(docId);
-                } catch (Exception e) {
-                    LOGGER.log(
-                            Level.SEVERE, SEARCH_EXCEPTION_MSG, e);
-                }
-                docs.add(d);
-            }
             allCollected = true;
         }
 
         //TODO generation of ret(results) could be cashed and consumers of engine would just print them in whatever
-        // form they need, this way we could get rid of docs
-        // the only problem is that count of docs is usually smaller than number of results
+        // form they need
         for (int ii = start; ii < end; ++ii) {
             boolean alt = (ii % 2 == 0);
             boolean hasContext = false;
             try {
-                Document doc = docs.get(ii);
+                // Load only the fields the context is produced from, and only for the requested hits.
+                Document doc = searcher.doc(hits[ii].doc, StoredFieldSets.CONTEXT);
                 String filename = doc.get(QueryBuilder.PATH);
 
                 AbstractAnalyzer.Genre genre = AbstractAnalyzer.Genre.get(doc.get(QueryBuilder.T));
@@ -462,30 +625,42 @@ public class SearchEngine {
                 if (scopesField != null) {
                     scopes = Scopes.deserialize(scopesField.binaryValue().bytes);
                 }
-                int nhits = docs.size();
+                int nhits = hits.length;
 
-                if (sourceContext != null) {
+                // Once out of time, list the remaining hits without context.
+                boolean timedOut = deadline.shouldExit();
+                if (timedOut) {
+                    deadline.setExceeded();
+                }
+                if (sourceContext != null && !timedOut) {
                     sourceContext.toggleAlt();
                     try {
-                        if (AbstractAnalyzer.Genre.PLAIN == genre && (source != null)) {
+                        Reader storedText = StoredText.getReader(doc);
+                        if (AbstractAnalyzer.Genre.PLAIN == genre && storedText != null) {
+                            hasContext = sourceContext.getContext(storedText,
+                                null, null, null, filename, tags, nhits > 100,
+                                false, ret, scopes);
+                        } else if (AbstractAnalyzer.Genre.PLAIN == genre && (source != null)) {
                             // SRCROOT is read with UTF-8 as a default.
                             hasContext = sourceContext.getContext(
                                 new InputStreamReader(new FileInputStream(
                                 source + filename), StandardCharsets.UTF_8),
                                 null, null, null, filename, tags, nhits > 100,
                                 false, ret, scopes);
-                        } else if (AbstractAnalyzer.Genre.XREFABLE == genre && data != null && summarizer != null) {
+                        } else if (AbstractAnalyzer.Genre.XREFABLE == genre && summarizer != null &&
+                                (storedText != null || data != null)) {
                             int l;
                             /**
                              * For backward compatibility, read the
                              * OpenGrok-produced document using the system
                              * default charset.
                              */
-                            try (Reader r = RuntimeEnvironment.getInstance().isCompressXref()
+                            try (Reader r = storedText != null ? storedText :
+                                    RuntimeEnvironment.getInstance().isCompressXref()
                                     ? new HTMLStripCharFilter(new BufferedReader(new InputStreamReader(new GZIPInputStream(new FileInputStream(
                                             TandemPath.join(data + Prefix.XREF_P + filename, ".gz"))))))
                                     : new HTMLStripCharFilter(new BufferedReader(new FileReader(data + Prefix.XREF_P + filename)))) {
-                                l = r.read(content);
+                                l = Math.max(0, r.read(content));
                             }
                             //TODO FIX below fragmenter according to either summarizer or context
                             // (to get line numbers, might be hard, since xref writers will need to be fixed too,
@@ -511,8 +686,8 @@ public class SearchEngine {
                         hasContext |= sourceContext.getContext(null, null, null, null, filename, tags, false, false, ret, scopes);
                     }
                 }
-                if (historyContext != null) {
-                    hasContext |= historyContext.getContext(source + filename, filename, ret);
+                if (historyContext != null && !timedOut) {
+                    hasContext |= historyContext.getContext(searcher, hits[ii].doc, source + filename, filename, ret);
                 }
                 if (!hasContext) {
                     ret.add(new Hit(filename, "...", "", false, alt));
@@ -0,0 +1,87 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License (the "License").
+ * You may not use this file except in compliance with the License.
+ *
+ * See LICENSE.txt included in this distribution for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at LICENSE.txt.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information: Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ */
+
+/*
+ * Copyright (c) 2021, Oracle and/or its affiliates. All rights reserved.
+ */
+package org.opengrok.indexer.search;
+
+import java.util.Set;
+
+import org.apache.lucene.search.IndexSearcher;
+
+/**
+ * Sets of the stored fields to load with {@link IndexSearcher#doc(int, Set)}
+ * for the different uses of the documents of the search hits.
+ * <p>
+ * Loading a document with all its fields decompresses the large
+ * {@link QueryBuilder#TAGS}, {@link QueryBuilder#SCOPES} and
+ * {@link QueryBuilder#STORED_TEXT} values even when only the path of the
+ * file is shown, so each use loads only the fields it reads.
+ */
+public final class StoredFieldSets {
+
+    /**
+     * Path of the file, e.g. for grouping the hits by directory.
+     */
+    public static final Set<String> PATH = Set.of(QueryBuilder.PATH);
+
+    /**
+     * Fields shown in the list of the hits without their context.
+     */
+    public static final Set<String> LISTING = Set.of(QueryBuilder.PATH, QueryBuilder.DATE, QueryBuilder.T);
+
+    /**
+     * Fields needed to produce the context of a hit by reading the file text.
+     */
+    public static final Set<String> CONTEXT = Set.of(QueryBuilder.PATH, QueryBuilder.T,
+            QueryBuilder.TAGS, QueryBuilder.SCOPES, QueryBuilder.STORED_TEXT);
+
+    /**
+     * Fields needed to produce the context of a hit from the index or to find
+     * a definition in the file.
+     */
+    public static final Set<String> DEFINITIONS = Set.of(QueryBuilder.PATH,
+            QueryBuilder.TAGS, QueryBuilder.SCOPES);
+
+    /**
+     * History entries of the file for the context of history search hits.
+     */
+    public static final Set<String> HISTORY = Set.of(QueryBuilder.STORED_HISTORY);
+
+    /**
+     * Type of the file, which selects the analyzer used by the highlighter.
+     */
+    public static final Set<String> FILE_TYPE = Set.of(QueryBuilder.TYPE);
+
+    /**
+     * Fields needed to get the text of the file for highlighting.
+     */
+    public static final Set<String> FILE_CONTENT = Set.of(QueryBuilder.PATH, QueryBuilder.U,
+            QueryBuilder.STORED_TEXT);
+
+    /**
+     * Fields of the documents of line and LOC counts.
+     */
+    public static final Set<String> NUM_LINES_LOC = Set.of(QueryBuilder.D, QueryBuilder.PATH,
+            QueryBuilder.NUML, QueryBuilder.LOC);
+
+    private StoredFieldSets() {
+    }
+}
@@ -0,0 +1,241 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License (the "License").
+ * You may not use this file except in compliance with the License.
+ *
+ * See LICENSE.txt included in this distribution for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at LICENSE.txt.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information: Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ */
+
+/*
+ * Copyright (c) 2021, Oracle and/or its affiliates. All rights reserved.
+ */
+package org.opengrok.indexer.search;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.AutomatonQuery;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.BoostQuery;
+import org.apache.lucene.search.ConstantScoreQuery;
+import org.apache.lucene.search.PhraseQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.RegexpQuery;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.WildcardQuery;
+import org.opengrok.indexer.analysis.TrigramFilter;
+import org.opengrok.indexer.configuration.RuntimeEnvironment;
+
+/**
+ * Rewrites wildcard and regular expression queries on {@link QueryBuilder#FULL}
+ * to use the trigrams in {@link QueryBuilder#FULL_TRIGRAMS}, see
+ * {@link TrigramFilter}, instead of going through the whole term dictionary.
+ * <p>
+ * A wildcard query which is a single literal surrounded by {@code *}, e.g.
+ * {@code *handler} or {@code *handle*}, is replaced with the phrase of the
+ * trigrams of the literal, which matches the same documents. Other wildcard
+ * and regular expression queries with a literal of at least three characters
+ * are rewritten to the terms which contain the trigrams of the literals and
+ * are accepted by the query, found via {@link TrigramTermIndex}. The index is
+ * built for each segment on its first such search and kept on the heap until
+ * the segment is closed. Queries without such a literal are kept as they are
+ * since the trigrams cannot narrow them down.
+ * <p>
+ * The rewritten queries are meant only for finding the matching documents;
+ * the original query should still be used for highlighting the matches.
+ */
+public final class TrigramQueryRewriter {
+
+    /**
+     * Characters of regular expressions which make the literals of the
+     * expression not required, so no filter can be derived from it.
+     */
+    private static final String UNSUPPORTED_REGEXP_CHARS = "|~&<\"@#";
+
+    private TrigramQueryRewriter() {
+    }
+
+    /**
+     * Rewrite the query if trigram index is enabled.
+     * @param query query to rewrite
+     * @return rewritten query or {@code query} itself if there is nothing to rewrite
+     */
+    public static Query rewrite(Query query) {
+        if (query == null || !RuntimeEnvironment.getInstance().isTrigramIndexEnabled()) {
+            return query;
+        }
+        return rewriteQuery(query);
+    }
+
+    static Query rewriteQuery(Query query) {
+        if (query instanceof BooleanQuery) {
+            return rewriteBoolean((BooleanQuery) query);
+        } else if (query instanceof BoostQuery) {
+            BoostQuery boostQuery = (BoostQuery) query;
+            Query rewritten = rewriteQuery(boostQuery.getQuery());
+            return rewritten == boostQuery.getQuery() ? query : new BoostQuery(rewritten, boostQuery.getBoost());
+        } else if (query instanceof WildcardQuery) {
+            return rewriteWildcard((WildcardQuery) query);
+        } else if (query instanceof RegexpQuery) {
+            return rewriteRegexp((RegexpQuery) query);
+        }
+        return query;
+    }
+
+    private static Query rewriteBoolean(BooleanQuery query) {
+        BooleanQuery.Builder builder = new BooleanQuery.Builder();
+        builder.setMinimumNumberShouldMatch(query.getMinimumNumberShouldMatch());
+        boolean changed = false;
+        for (BooleanClause clause : query) {
+            Query rewritten = rewriteQuery(clause.getQuery());
+            changed |= rewritten != clause.getQuery();
+            builder.add(rewritten, clause.getOccur());
+        }
+        return changed ? builder.build() : query;
+    }
+
+    private static Query rewriteWildcard(WildcardQuery query) {
+        Term term = query.getTerm();
+        if (!QueryBuilder.FULL.equals(term.field())) {
+            return query;
+        }
+
+        String pattern = term.text();
+        List<String> literals = new ArrayList<>();
+        StringBuilder literal = new StringBuilder().append(TrigramFilter.START);
+        boolean onlyStrings = true;
+        for (int i = 0; i < pattern.length(); i++) {
+            char c = pattern.charAt(i);
+            if (c == WildcardQuery.WILDCARD_ESCAPE && i + 1 < pattern.length()) {
+                literal.append(pattern.charAt(++i));
+            } else if (c == WildcardQuery.WILDCARD_STRING || c == WildcardQuery.WILDCARD_CHAR) {
+                onlyStrings &= c == WildcardQuery.WILDCARD_STRING;
+                addLiteral(literals, literal);
+            } else {
+                literal.append(c);
+            }
+        }
+        literal.append(TrigramFilter.END);
+        addLiteral(literals, literal);
+
+        if (literals.size() == 1 && onlyStrings && TrigramFilter.trigrams(literals.get(0)).size() > 0) {
+            // The phrase matches exactly the terms containing the literal.
+            return new ConstantScoreQuery(phrase(literals.get(0)));
+        }
+        return rewriteToTerms(query, literals);
+    }
+
+    private static Query rewriteRegexp(RegexpQuery query) {
+        if (!QueryBuilder.FULL.equals(query.getField())) {
+            return query;
+        }
+        String regexp = query.toString(query.getField());
+        regexp = regexp.substring(1, regexp.length() - 1); // trim / from /regexp/
+        List<String> literals = getRegexpLiterals(regexp);
+        return literals == null ? query : rewriteToTerms(query, literals);
+    }
+
+    /**
+     * Get the literals every term matching the regular expression has to
+     * contain. The analysis is conservative: only the literals outside of any
+     * groups and character classes are considered.
+     * @param regexp regular expression
+     * @return literals, possibly with {@link TrigramFilter#START} or
+     * {@link TrigramFilter#END}, or {@code null} if the expression is not supported
+     */
+    static List<String> getRegexpLiterals(String regexp) {
+        List<String> literals = new ArrayList<>();
+        StringBuilder literal = new StringBuilder();
+        int depth = 0;
+        for (int i = 0; i < regexp.length(); i++) {
+            char c = regexp.charAt(i);
+            if (UNSUPPORTED_REGEXP_CHARS.indexOf(c) >= 0) {
+                return null;
+            } else if (c == '\\') {
+                i++;
+                addLiteral(literals, literal);
+            } else if (c == '[') {
+                for (i++; i < regexp.length() && regexp.charAt(i) != ']'; i++) {
+                    if (regexp.charAt(i) == '\\') {
+                        i++;
+                    }
+                }
+                addLiteral(literals, literal);
+            } else if (c == '(') {
+                depth++;
+                addLiteral(literals, literal);
+            } else if (c == ')') {
+                depth--;
+            } else if (c == '?' || c == '*' || c == '{') {
+                // The last character is optional or repeated.
+                if (literal.length() > 0) {
+                    literal.setLength(literal.length() - 1);
+                }
+                addLiteral(literals, literal);
+                if (c == '{') {
+                    i = Math.max(i, regexp.indexOf('}', i));
+                }
+            } else if (c == '+') {
+                addLiteral(literals, literal);
+            } else if (depth == 0 && (Character.isLetterOrDigit(c) || c == '_')) {
+                if (i == 0) {
+                    literal.append(TrigramFilter.START);
+                }
+                literal.append(c);
+            } else {
+                addLiteral(literals, literal);
+            }
+        }
+        if (literal.length() > 0) {
+            literal.append(TrigramFilter.END);
+            addLiteral(literals, literal);
+        }
+        return literals;
+    }
+
+    private static void addLiteral(List<String> literals, StringBuilder literal) {
+        if (literal.length() > 0) {
+            String text = literal.toString();
+            if (!text.equals(String.valueOf(TrigramFilter.START)) &&
+                    !text.equals(String.valueOf(TrigramFilter.END))) {
+                literals.add(text);
+            }
+            literal.setLength(0);
+        }
+    }
+
+    /**
+     * @return the query matching the terms which contain the trigrams of the
+     * literals or the query itself if none of the literals is long enough
+     */
+    private static Query rewriteToTerms(AutomatonQuery query, List<String> literals) {
+        Set<String> trigrams = new LinkedHashSet<>();
+        for (String literal : literals) {
+            trigrams.addAll(TrigramFilter.trigrams(literal));
+        }
+        return trigrams.isEmpty() ? query : new TrigramTermQuery(query, trigrams);
+    }
+
+    private static Query phrase(String literal) {
+        List<String> trigrams = TrigramFilter.trigrams(literal);
+        if (trigrams.size() == 1) {
+            return new TermQuery(new Term(QueryBuilder.FULL_TRIGRAMS, trigrams.get(0)));
+        }
+        return new PhraseQuery(QueryBuilder.FULL_TRIGRAMS, trigrams.toArray(new String[0]));
+    }
+}
@@ -0,0 +1,464 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License (the "License").
+ * You may not use this file except in compliance with the License.
+ *
+ * See LICENSE.txt included in this distribution for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at LICENSE.txt.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information: Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ */
+
+/*
+ * Copyright (c) 2021, Oracle and/or its affiliates. All rights reserved.
+ */
+package org.opengrok.indexer.search;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.store.AlreadyClosedException;
+import org.apache.lucene.util.ArrayUtil;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.BytesRefArray;
+import org.apache.lucene.util.BytesRefBuilder;
+import org.apache.lucene.util.RamUsageEstimator;
+import org.apache.lucene.util.automaton.ByteRunAutomaton;
+import org.opengrok.indexer.Metrics;
+import org.opengrok.indexer.analysis.TrigramFilter;
+import org.opengrok.indexer.configuration.RuntimeEnvironment;
+import org.opengrok.indexer.logger.LoggerFactory;
+import org.opengrok.indexer.util.Statistics;
+
+/**
+ * Maps the trigrams of the terms of a field in a segment, in the form
+ * produced by {@link TrigramFilter}, to the terms which contain them, so that
+ * the terms matching a wildcard or regular expression can be found by
+ * checking only the terms containing its literals rather than the whole
+ * term dictionary.
+ * <p>
+ * The index is built from the term dictionary in the background when a
+ * segment is searched for the first time, see
+ * {@link RuntimeEnvironment#getTrigramIndexExecutor()}, and kept on the heap
+ * until the segment is closed. The terms of each trigram are stored as
+ * delta-encoded variable length integers.
+ * <p>
+ * The indexes are bounded by their estimated memory, see
+ * {@link RuntimeEnvironment#getTrigramTermIndexCacheSize()}, and the least
+ * recently used ones are evicted first. They are not used if the size is not
+ * positive.
+ */
+final class TrigramTermIndex {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(TrigramTermIndex.class);
+
+    /**
+     * Estimated overhead of a trigram in {@link #postings}, i.e. of its map
+     * entry, its string and the headers of its arrays.
+     */
+    private static final long POSTINGS_ENTRY_OVERHEAD = 32 + 2 * RamUsageEstimator.NUM_BYTES_OBJECT_REF +
+            RamUsageEstimator.shallowSizeOfInstance(String.class) + 2 * RamUsageEstimator.NUM_BYTES_ARRAY_HEADER;
+
+    /**
+     * The indexes in the order of their use, guarded by itself.
+     */
+    private static final Map<Key, TrigramTermIndex> INDEXES = new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * Estimated size of {@link #INDEXES} in bytes, guarded by {@link #INDEXES}.
+     */
+    private static long cacheBytes;
+
+    /**
+     * Indexes being built.
+     */
+    private static final Set<Key> PENDING = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Indexes which are larger than the size limit, so that they are not built again.
+     */
+    private static final Set<Key> OVERSIZED = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Indexes whose segments have a listener which drops them when closed.
+     */
+    private static final Set<Key> LISTENED = ConcurrentHashMap.newKeySet();
+
+    private static Counter hits;
+    private static Counter misses;
+    private static Counter evictions;
+
+    static {
+        MeterRegistry meterRegistry = Metrics.getRegistry();
+        if (meterRegistry != null) {
+            hits = Counter.builder("search.trigram.cache.get").
+                    description("trigram term index cache hits").
+                    tag("what", "hits").
+                    register(meterRegistry);
+            misses = Counter.builder("search.trigram.cache.get").
+                    description("trigram term index cache misses").
+                    tag("what", "miss").
+                    register(meterRegistry);
+            evictions = Counter.builder("search.trigram.cache.evictions").
+                    description("trigram term indexes evicted to stay within the size limit").
+                    register(meterRegistry);
+            Gauge.builder("search.trigram.cache.size", TrigramTermIndex::getCacheSize).
+                    description("estimated size of the trigram term indexes in bytes").
+                    register(meterRegistry);
+        }
+    }
+
+    private final BytesRefArray terms;
+
+    /**
+     * Identifiers of the terms, i.e. their indexes in {@link #terms}, of each trigram.
+     */
+    private final Map<String, byte[]> postings;
+
+    /**
+     * Estimated size of the index in bytes.
+     */
+    private final long bytes;
+
+    private TrigramTermIndex(BytesRefArray terms, Map<String, byte[]> postings, long bytes) {
+        this.terms = terms;
+        this.postings = postings;
+        this.bytes = bytes;
+    }
+
+    /**
+     * Get the index of the field of the segment. If it is not built yet, its
+     * building is started in the background.
+     * @param reader segment reader
+     * @param field field of the terms
+     * @return index of the field or {@code null} if it is not available
+     */
+    static TrigramTermIndex get(LeafReader reader, String field) {
+        IndexReader.CacheHelper cacheHelper = reader.getCoreCacheHelper();
+        if (cacheHelper == null || RuntimeEnvironment.getInstance().getTrigramTermIndexCacheSize() <= 0) {
+            return null;
+        }
+
+        Key key = new Key(cacheHelper.getKey(), field);
+        TrigramTermIndex index;
+        synchronized (INDEXES) {
+            index = INDEXES.get(key);
+        }
+        if (index != null) {
+            if (hits != null) {
+                hits.increment();
+            }
+            return index;
+        }
+        if (misses != null) {
+            misses.increment();
+        }
+
+        if (!OVERSIZED.contains(key) && PENDING.add(key)) {
+            try {
+                RuntimeEnvironment.getInstance().getTrigramIndexExecutor().submit(() -> {
+                    try {
+                        load(reader, field);
+                    } catch (IOException | AlreadyClosedException e) {
+                        LOGGER.log(Level.FINE, "Cannot build trigram index", e);
+                    } finally {
+                        PENDING.remove(key);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                PENDING.remove(key);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Build the index of the field of the segment if it is not available yet
+     * and keep it if it fits within the size limit.
+     * @param reader segment reader
+     * @param field field of the terms
+     * @return index of the field or {@code null} if the segment has no such
+     * field or the index is not kept
+     * @throws IOException if the terms could not be read
+     */
+    static TrigramTermIndex load(LeafReader reader, String field) throws IOException {
+        long limit = RuntimeEnvironment.getInstance().getTrigramTermIndexCacheSize();
+        IndexReader.CacheHelper cacheHelper = reader.getCoreCacheHelper();
+        if (cacheHelper == null || limit <= 0) {
+            return null;
+        }
+        Key key = new Key(cacheHelper.getKey(), field);
+        synchronized (INDEXES) {
+            TrigramTermIndex index = INDEXES.get(key);
+            if (index != null) {
+                return index;
+            }
+        }
+
+        // Keep the segment open until the index is cached, so that it is dropped when it is closed.
+        if (!reader.tryIncRef()) {
+            return null;
+        }
+        try {
+            Terms fieldTerms = reader.terms(field);
+            if (fieldTerms == null) {
+                return null;
+            }
+            if (LISTENED.add(key)) {
+                cacheHelper.addClosedListener(closedKey -> {
+                    remove(key);
+                    OVERSIZED.remove(key);
+                    LISTENED.remove(key);
+                });
+            }
+
+            TrigramTermIndex index = build(fieldTerms);
+            if (index.bytes > limit) {
+                OVERSIZED.add(key);
+                LOGGER.log(Level.FINE, "Trigram index of {0} bytes exceeds the size limit", index.bytes);
+                return null;
+            }
+            synchronized (INDEXES) {
+                TrigramTermIndex previous = INDEXES.put(key, index);
+                if (previous != null) {
+                    cacheBytes -= previous.bytes;
+                }
+                cacheBytes += index.bytes;
+                evict(limit);
+            }
+            return index;
+        } finally {
+            reader.decRef();
+        }
+    }
+
+    /**
+     * @return estimated size of the cached indexes in bytes
+     */
+    static long getCacheSize() {
+        synchronized (INDEXES) {
+            return cacheBytes;
+        }
+    }
+
+    private static void remove(Key key) {
+        synchronized (INDEXES) {
+            TrigramTermIndex index = INDEXES.remove(key);
+            if (index != null) {
+                cacheBytes -= index.bytes;
+            }
+        }
+    }
+
+    private static void evict(long limit) {
+        Iterator<TrigramTermIndex> iterator = INDEXES.values().iterator();
+        while (cacheBytes > limit && iterator.hasNext()) {
+            cacheBytes -= iterator.next().bytes;
+            iterator.remove();
+            if (evictions != null) {
+                evictions.increment();
+            }
+        }
+    }
+
+    private static TrigramTermIndex build(Terms fieldTerms) throws IOException {
+        Statistics elapsed = new Statistics();
+        org.apache.lucene.util.Counter termBytes = org.apache.lucene.util.Counter.newCounter();
+        BytesRefArray terms = new BytesRefArray(termBytes);
+        Map<String, PostingsBuilder> builders = new HashMap<>();
+        TermsEnum termsEnum = fieldTerms.iterator();
+        BytesRef term;
+        while ((term = termsEnum.next()) != null) {
+            int id = terms.append(term);
+            String text = TrigramFilter.START + term.utf8ToString() + TrigramFilter.END;
+            for (String trigram : TrigramFilter.trigrams(text)) {
+                builders.computeIfAbsent(trigram, t -> new PostingsBuilder()).add(id);
+            }
+        }
+
+        Map<String, byte[]> postings = new HashMap<>(builders.size() * 4 / 3 + 1);
+        long bytes = RamUsageEstimator.shallowSizeOfInstance(TrigramTermIndex.class) + termBytes.get() +
+                (long) RamUsageEstimator.NUM_BYTES_OBJECT_REF * builders.size() * 2;
+        for (Map.Entry<String, PostingsBuilder> entry : builders.entrySet()) {
+            byte[] list = entry.getValue().toBytes();
+            postings.put(entry.getKey(), list);
+            bytes += POSTINGS_ENTRY_OVERHEAD + 2L * entry.getKey().length() + list.length;
+        }
+        elapsed.report(LOGGER, Level.FINE, String.format("Built trigram index of %d terms", terms.size()));
+        return new TrigramTermIndex(terms, postings, bytes);
+    }
+
+    /**
+     * Add the terms which contain all the trigrams and are accepted by the
+     * automaton.
+     * @param trigrams trigrams which the terms have to contain, not empty
+     * @param automaton automaton which the terms have to be accepted by
+     * @param matching collection to add the matching terms to
+     */
+    void collect(Collection<String> trigrams, ByteRunAutomaton automaton, Collection<BytesRef> matching) {
+        byte[][] lists = new byte[trigrams.size()][];
+        int i = 0;
+        for (String trigram : trigrams) {
+            byte[] list = postings.get(trigram);
+            if (list == null) {
+                return;
+            }
+            lists[i++] = list;
+        }
+        // Start with the shortest list to keep the intersection small.
+        Arrays.sort(lists, Comparator.comparingInt(list -> list.length));
+
+        int[] candidates = decode(lists[0]);
+        int count = candidates.length;
+        for (int j = 1; j < lists.length && count > 0; j++) {
+            count = intersect(candidates, count, lists[j]);
+        }
+
+        BytesRefBuilder spare = new BytesRefBuilder();
+        for (int j = 0; j < count; j++) {
+            BytesRef term = terms.get(spare, candidates[j]);
+            if (automaton.run(term.bytes, term.offset, term.length)) {
+                matching.add(BytesRef.deepCopyOf(term));
+            }
+        }
+    }
+
+    /**
+     * Keep only the candidates which are also in the list.
+     * @return number of the candidates kept at the start of the array
+     */
+    private static int intersect(int[] candidates, int count, byte[] list) {
+        PostingsReader reader = new PostingsReader(list);
+        int kept = 0;
+        int id = reader.next();
+        for (int i = 0; i < count && id >= 0; i++) {
+            while (id >= 0 && id < candidates[i]) {
+                id = reader.next();
+            }
+            if (id == candidates[i]) {
+                candidates[kept++] = id;
+            }
+        }
+        return kept;
+    }
+
+    private static int[] decode(byte[] list) {
+        PostingsReader reader = new PostingsReader(list);
+        int[] ids = new int[8];
+        int count = 0;
+        int id;
+        while ((id = reader.next()) >= 0) {
+            ids = ArrayUtil.grow(ids, count + 1);
+            ids[count++] = id;
+        }
+        return ArrayUtil.copyOfSubArray(ids, 0, count);
+    }
+
+    private static final class PostingsBuilder {
+        private byte[] bytes = new byte[4];
+        private int length;
+        private int last = -1;
+
+        void add(int id) {
+            if (id == last) {
+                // The trigram occurs more than once in the term.
+                return;
+            }
+            int delta = id - last;
+            last = id;
+            bytes = ArrayUtil.grow(bytes, length + 5);
+            while ((delta & ~0x7F) != 0) {
+                bytes[length++] = (byte) ((delta & 0x7F) | 0x80);
+                delta >>>= 7;
+            }
+            bytes[length++] = (byte) delta;
+        }
+
+        byte[] toBytes() {
+            return ArrayUtil.copyOfSubArray(bytes, 0, length);
+        }
+    }
+
+    private static final class PostingsReader {
+        private final byte[] bytes;
+        private int position;
+        private int last = -1;
+
+        PostingsReader(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        /**
+         * @return next term identifier or -1 if there are no more
+         */
+        int next() {
+            if (position == bytes.length) {
+                return -1;
+            }
+            int delta = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = bytes[position++];
+                delta |= (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+            last += delta;
+            return last;
+        }
+    }
+
+    private static final class Key {
+        private final IndexReader.CacheKey segment;
+        private final String field;
+
+        Key(IndexReader.CacheKey segment, String field) {
+            this.segment = segment;
+            this.field = field;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            Key key = (Key) o;
+            return segment == key.segment && field.equals(key.field);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * System.identityHashCode(segment) + field.hashCode();
+        }
+    }
+
+}
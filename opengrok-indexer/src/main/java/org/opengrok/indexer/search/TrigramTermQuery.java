@@ -0,0 +1,124 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License (the "License").
+ * You may not use this file except in compliance with the License.
+ *
+ * See LICENSE.txt included in this distribution for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at LICENSE.txt.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information: Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ */
+
+/*
+ * Copyright (c) 2021, Oracle and/or its affiliates. All rights reserved.
+ */
+package org.opengrok.indexer.search;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.search.AutomatonQuery;
+import org.apache.lucene.search.ConstantScoreQuery;
+import org.apache.lucene.search.MatchNoDocsQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.QueryVisitor;
+import org.apache.lucene.search.TermInSetQuery;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.automaton.ByteRunAutomaton;
+import org.apache.lucene.util.automaton.Operations;
+
+/**
+ * Wildcard or regular expression query which is rewritten to the terms
+ * matching it by checking only the terms containing the given trigrams,
+ * see {@link TrigramTermIndex}. Until the indexes of all the segments are
+ * available, it is rewritten to the original query.
+ */
+final class TrigramTermQuery extends Query {
+
+    private final AutomatonQuery query;
+
+    /**
+     * Trigrams which every term matching the query contains.
+     */
+    private final Set<String> trigrams;
+
+    /**
+     * @param query wildcard or regular expression query
+     * @param trigrams trigrams which every term matching the query contains, not empty
+     */
+    TrigramTermQuery(AutomatonQuery query, Set<String> trigrams) {
+        if (trigrams.isEmpty()) {
+            throw new IllegalArgumentException("No trigrams");
+        }
+        this.query = query;
+        this.trigrams = trigrams;
+    }
+
+    AutomatonQuery getQuery() {
+        return query;
+    }
+
+    Set<String> getTrigrams() {
+        return trigrams;
+    }
+
+    @Override
+    public Query rewrite(IndexReader reader) throws IOException {
+        List<TrigramTermIndex> indexes = new ArrayList<>();
+        for (LeafReaderContext context : reader.leaves()) {
+            if (context.reader().terms(query.getField()) == null) {
+                continue;
+            }
+            TrigramTermIndex index = TrigramTermIndex.get(context.reader(), query.getField());
+            if (index == null) {
+                return query;
+            }
+            indexes.add(index);
+        }
+
+        ByteRunAutomaton automaton = new ByteRunAutomaton(query.getAutomaton(), query.isAutomatonBinary(),
+                Operations.DEFAULT_MAX_DETERMINIZED_STATES);
+        Set<BytesRef> terms = new HashSet<>();
+        for (TrigramTermIndex index : indexes) {
+            index.collect(trigrams, automaton, terms);
+        }
+        if (terms.isEmpty()) {
+            return new MatchNoDocsQuery("No terms matching " + query);
+        }
+        return new ConstantScoreQuery(new TermInSetQuery(query.getField(), terms));
+    }
+
+    @Override
+    public void visit(QueryVisitor visitor) {
+        query.visit(visitor);
+    }
+
+    @Override
+    public String toString(String field) {
+        return query.toString(field);
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        return sameClassAs(other) && query.equals(((TrigramTermQuery) other).query) &&
+                trigrams.equals(((TrigramTermQuery) other).trigrams);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * (31 * classHash() + query.hashCode()) + trigrams.hashCode();
+    }
+}
@@ -46,6 +46,7 @@ import org.opengrok.indexer.configuration.RuntimeEnvironment;
 import org.opengrok.indexer.logger.LoggerFactory;
 import org.opengrok.indexer.search.Hit;
 import org.opengrok.indexer.search.QueryBuilder;
+import org.opengrok.indexer.search.StoredFieldSets;
 import org.opengrok.indexer.util.IOUtils;
 import org.opengrok.indexer.web.Util;
 
@@ -139,7 +140,7 @@ public class Context {
 
         Document doc;
         try {
-            doc = searcher.doc(docId);
+            doc = searcher.doc(docId, StoredFieldSets.DEFINITIONS);
         } catch (IOException e) {
             LOGGER.log(Level.WARNING, "ERROR getting searcher doc(int)", e);
             return false;
@@ -33,7 +33,10 @@ import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import org.apache.lucene.document.Document;
+import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.Query;
+import org.opengrok.indexer.analysis.StoredHistory;
 import org.opengrok.indexer.history.History;
 import org.opengrok.indexer.history.HistoryEntry;
 import org.opengrok.indexer.history.HistoryException;
@@ -41,6 +44,7 @@ import org.opengrok.indexer.history.HistoryGuru;
 import org.opengrok.indexer.logger.LoggerFactory;
 import org.opengrok.indexer.search.Hit;
 import org.opengrok.indexer.search.QueryBuilder;
+import org.opengrok.indexer.search.StoredFieldSets;
 import org.opengrok.indexer.web.Prefix;
 import org.opengrok.indexer.web.QueryParameters;
 import org.opengrok.indexer.web.Util;
@@ -85,10 +89,35 @@ public class HistoryContext {
             LOGGER.log(Level.INFO, "Null history got for {0}", f);
             return false;
         }
-        return getHistoryContext(history, path, null, hits, null);
+        return getHistoryContext(history.getHistoryEntries().iterator(), path, null, hits, null);
 
     }
 
+    /**
+     * Get the matching history entries of a search hit, read from the
+     * history stored in the index, see {@link StoredHistory}, if the document
+     * of the hit has it or else from {@link HistoryGuru}.
+     *
+     * @param searcher  the searcher of the hit
+     * @param docId     the document ID of the hit
+     * @param filename  the source file (SOURCE_ROOT + path)
+     * @param path      the path of the file (rooted at SOURCE_ROOT)
+     * @param hits      list of hits to add the matches to
+     * @return {@code true} if at least one match has been added
+     * @throws HistoryException history exception
+     */
+    public boolean getContext(IndexSearcher searcher, int docId, String filename, String path, List<Hit> hits)
+            throws HistoryException {
+        if (m == null) {
+            return false;
+        }
+        Iterator<HistoryEntry> entries = getStoredEntries(searcher, docId);
+        if (entries == null) {
+            return getContext(filename, path, hits);
+        }
+        return getHistoryContext(entries, path, null, hits, null);
+    }
+
     public boolean getContext(String parent, String basename, String path, Writer out, String context)
             throws HistoryException {
         return getContext(new File(parent, basename), path, out, context);
@@ -116,21 +145,63 @@ public class HistoryContext {
             LOGGER.log(Level.INFO, "Null history got for {0}", src);
             return false;
         }
-        return getHistoryContext(hist, path, out, null, context);
+        return getHistoryContext(hist.getHistoryEntries().iterator(), path, out, null, context);
+    }
+
+    /**
+     * Write out the matching history entries of a search hit, read from the
+     * history stored in the index, see {@link StoredHistory}, if the document
+     * of the hit has it or else from {@link HistoryGuru}.
+     *
+     * @param searcher  the searcher of the hit
+     * @param docId     the document ID of the hit
+     * @param src       the source file represented by <var>path</var>
+     *                  (SOURCE_ROOT + path)
+     * @param path      the path of the file (rooted at SOURCE_ROOT)
+     * @param out       write destination
+     * @param context   the servlet context path of the application (the path
+     *  prefix for URLs)
+     * @return {@code true} if at least one line has been written out.
+     * @throws HistoryException history exception
+     */
+    public boolean getContext(IndexSearcher searcher, int docId, File src, String path, Writer out, String context)
+            throws HistoryException {
+        if (m == null) {
+            return false;
+        }
+        Iterator<HistoryEntry> entries = getStoredEntries(searcher, docId);
+        if (entries == null) {
+            return getContext(src, path, out, context);
+        }
+        return getHistoryContext(entries, path, out, null, context);
+    }
+
+    /**
+     * @return the history entries stored in the document or {@code null} if
+     * there are none or they cannot be read
+     */
+    private static Iterator<HistoryEntry> getStoredEntries(IndexSearcher searcher, int docId) {
+        try {
+            Document doc = searcher.doc(docId, StoredFieldSets.HISTORY);
+            return StoredHistory.getEntries(doc);
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "ERROR getting searcher doc(int)", e);
+            return null;
+        }
     }
 
     /**
-     * Writes matching History log entries from 'in' to 'out' or to 'hits'.
-     * @param in the history to fetch entries from
+     * Writes matching History log entries from 'it' to 'out' or to 'hits'.
+     * @param it the history entries, newest first
      * @param out to write matched context
      * @param path path to the file
      * @param hits list of hits
      * @param wcontext web context - beginning of url
      */
     private boolean getHistoryContext(
-            History in, String path, Writer out, List<Hit> hits, String wcontext) {
-        if (in == null) {
-            throw new IllegalArgumentException("`in' is null");
+            Iterator<HistoryEntry> it, String path, Writer out, List<Hit> hits, String wcontext) {
+        if (it == null) {
+            throw new IllegalArgumentException("`it' is null");
         }
         if ((out == null) == (hits == null)) {
             // There should be exactly one destination for the output. If
@@ -144,7 +215,6 @@ public class HistoryContext {
         }
 
         int matchedLines = 0;
-        Iterator<HistoryEntry> it = in.getHistoryEntries().iterator();
         try {
             HistoryEntry he;
             HistoryEntry nhe = null;
@@ -27,25 +27,36 @@ import java.io.Reader;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.document.DateTools;
 import org.apache.lucene.document.Document;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.ReaderUtil;
+import org.apache.lucene.index.Term;
 import org.apache.lucene.search.DocIdSetIterator;
 import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.Query;
+import org.apache.lucene.search.QueryVisitor;
+import org.apache.lucene.search.uhighlight.FieldOffsetStrategy;
+import org.apache.lucene.search.uhighlight.OffsetsEnum;
 import org.apache.lucene.search.uhighlight.UHComponents;
 import org.apache.lucene.search.uhighlight.UnifiedHighlighter;
+import org.apache.lucene.util.ArrayUtil;
 import org.apache.lucene.util.BytesRef;
 import org.opengrok.indexer.analysis.AnalyzerGuru;
 import org.opengrok.indexer.analysis.ExpandTabsReader;
+import org.opengrok.indexer.analysis.StoredText;
 import org.opengrok.indexer.analysis.StreamSource;
 import org.opengrok.indexer.configuration.RuntimeEnvironment;
 import org.opengrok.indexer.logger.LoggerFactory;
 import org.opengrok.indexer.search.QueryBuilder;
+import org.opengrok.indexer.search.StoredFieldSets;
 import org.opengrok.indexer.util.IOUtils;
 import org.opengrok.indexer.web.Util;
 
@@ -64,6 +75,13 @@ public class OGKUnifiedHighlighter extends UnifiedHighlighter {
 
     private String fileTypeName;
 
+    /**
+     * Query being highlighted during the execution of
+     * {@link #highlightFieldsUnion(java.lang.String[], org.apache.lucene.search.Query, int, int)},
+     * used to find the blocks of the stored text to decompress.
+     */
+    private Query highlightQuery;
+
     /**
      * Initializes an instance with
      * {@link UnifiedHighlighter#UnifiedHighlighter(org.apache.lucene.search.IndexSearcher, org.apache.lucene.analysis.Analyzer)}
@@ -127,12 +145,14 @@ public class OGKUnifiedHighlighter extends UnifiedHighlighter {
          * getIndexAnalyzer() (if it is called due to requiring ANALYSIS) can be
          * influenced by fileTypeName.
          */
-        Document doc = searcher.doc(docId);
+        Document doc = searcher.doc(docId, StoredFieldSets.FILE_TYPE);
         fileTypeName = doc == null ? null : doc.get(QueryBuilder.TYPE);
+        highlightQuery = query;
         try {
             return highlightFieldsUnionWork(fields, query, docId, lineLimit);
         } finally {
             fileTypeName = null;
+            highlightQuery = null;
         }
     }
 
@@ -188,12 +208,18 @@ public class OGKUnifiedHighlighter extends UnifiedHighlighter {
     }
 
     /**
-     * Produces original text by reading from OpenGrok source content relative
+     * Produces original text from the text stored in the index, see
+     * {@link StoredText}, or else by reading from OpenGrok source content relative
      * to {@link RuntimeEnvironment#getSourceRootPath()} and returns the content
      * for each document if the timestamp matches -- or else just {@code null}
      * for a missing file or a timestamp mismatch (as "the returned Strings must
      * be identical to what was indexed.")
      * <p>
+     * If the offsets of the matches are available without analyzing the text,
+     * i.e. from the postings or the term vectors, only the blocks of the
+     * stored text around them are decompressed, see
+     * {@link StoredText#getExpandedText(Document, int, int[], int)}.
+     * <p>
      * "This method must load fields for at least one document from the given
      * {@link DocIdSetIterator} but need not return all of them; by default the
      * character lengths are summed and this method will return early when
@@ -216,11 +242,22 @@ public class OGKUnifiedHighlighter extends UnifiedHighlighter {
             if (docId == DocIdSetIterator.NO_MORE_DOCS) {
                 break;
             }
-            Document doc = searcher.doc(docId);
+            Document doc = searcher.doc(docId, StoredFieldSets.FILE_CONTENT);
 
-            String path = doc.get(QueryBuilder.PATH);
-            String storedU = doc.get(QueryBuilder.U);
-            String content = getRepoFileContent(path, storedU);
+            String content = null;
+            if (StoredText.isStored(doc)) {
+                int[] offsets = getMatchOffsets(fields, docId);
+                if (offsets != null) {
+                    content = StoredText.getExpandedText(doc, tabSize, offsets, env.getContextSurround());
+                }
+                if (content == null) {
+                    content = readContent(StoredText.getReader(doc));
+                }
+            } else {
+                String path = doc.get(QueryBuilder.PATH);
+                String storedU = doc.get(QueryBuilder.U);
+                content = getRepoFileContent(path, storedU);
+            }
 
             CharSequence[] seqs = new CharSequence[fields.length];
             Arrays.fill(seqs, content);
@@ -278,6 +315,40 @@ public class OGKUnifiedHighlighter extends UnifiedHighlighter {
         return res;
     }
 
+    /**
+     * Gets the start offsets of the matches of {@link #highlightQuery} in the
+     * document from the postings or the term vectors.
+     * @return offsets or {@code null} if the offsets of any of the fields
+     * require analyzing the text or there are no matches
+     */
+    private int[] getMatchOffsets(String[] fields, int docId) throws IOException {
+        if (highlightQuery == null) {
+            return null;
+        }
+        List<LeafReaderContext> leaves = searcher.getIndexReader().leaves();
+        LeafReaderContext leaf = leaves.get(ReaderUtil.subIndex(docId, leaves));
+        Set<Term> queryTerms = new HashSet<>();
+        highlightQuery.visit(QueryVisitor.termCollector(queryTerms));
+
+        int[] offsets = new int[16];
+        int count = 0;
+        for (String field : fields) {
+            UHComponents components = getHighlightComponents(field, highlightQuery, queryTerms);
+            OffsetSource offsetSource = getOptimizedOffsetSource(components);
+            if (offsetSource == OffsetSource.ANALYSIS) {
+                return null;
+            }
+            FieldOffsetStrategy strategy = getOffsetStrategy(offsetSource, components);
+            try (OffsetsEnum offsetsEnum = strategy.getOffsetsEnum(leaf.reader(), docId - leaf.docBase, null)) {
+                while (offsetsEnum.nextPosition()) {
+                    offsets = ArrayUtil.grow(offsets, count + 1);
+                    offsets[count++] = offsetsEnum.startOffset();
+                }
+            }
+        }
+        return count == 0 ? null : ArrayUtil.copyOfSubArray(offsets, 0, count);
+    }
+
     private String getRepoFileContent(String repoRelPath, String storedU)
             throws IOException {
 
@@ -307,23 +378,26 @@ public class OGKUnifiedHighlighter extends UnifiedHighlighter {
             return null;
         }
 
-        StringBuilder bld = new StringBuilder();
         StreamSource src = StreamSource.fromFile(repoAbsFile);
-        try (InputStream in = src.getStream();
-            Reader rdr = getReader(in)) {
+        try (InputStream in = src.getStream()) {
+            return readContent(IOUtils.createBOMStrippedReader(in,
+                StandardCharsets.UTF_8.name()));
+        }
+    }
+
+    /**
+     * Reads the content the same way as it was read for indexing, i.e. with
+     * the tabs expanded.
+     */
+    private String readContent(Reader in) throws IOException {
+        StringBuilder bld = new StringBuilder();
+        try (Reader rdr = ExpandTabsReader.wrap(new BufferedReader(in),
+            tabSize)) {
             int c;
             while ((c = rdr.read()) != -1) {
                 bld.append((char) c);
             }
         }
-
         return bld.toString();
     }
-
-    private Reader getReader(InputStream in) throws IOException {
-        Reader bsrdr = IOUtils.createBOMStrippedReader(in,
-            StandardCharsets.UTF_8.name());
-        BufferedReader bufrdr = new BufferedReader(bsrdr);
-        return ExpandTabsReader.wrap(bufrdr, tabSize);
-    }
 }
@@ -30,8 +30,10 @@ import java.util.logging.Level;
 import java.util.logging.Logger;
 
 public class Progress implements AutoCloseable {
+    private static final long UNKNOWN_COUNT = -1;
+
     private final Logger logger;
-    private final long totalCount;
+    private volatile long totalCount;
     private final String suffix;
 
     private final AtomicLong currentCount = new AtomicLong();
@@ -51,7 +53,7 @@ public class Progress implements AutoCloseable {
         this.totalCount = totalCount;
 
         // Assuming printProgress configuration setting cannot be changed on the fly.
-        if (totalCount > 0 && RuntimeEnvironment.getInstance().isPrintProgress()) {
+        if ((totalCount > 0 || totalCount == UNKNOWN_COUNT) && RuntimeEnvironment.getInstance().isPrintProgress()) {
             // spawn a logger thread.
             run = true;
             loggerThread = new Thread(this::logLoop,
@@ -60,6 +62,24 @@ public class Progress implements AutoCloseable {
         }
     }
 
+    /**
+     * Creates progress of an operation whose total count is not known yet.
+     * @param logger logger instance
+     * @param suffix string suffix to identify the operation
+     * @see #setTotalCount(long)
+     */
+    public Progress(Logger logger, String suffix) {
+        this(logger, suffix, UNKNOWN_COUNT);
+    }
+
+    /**
+     * Set the total count once it is known so that the percentage is logged.
+     * @param totalCount total count
+     */
+    public void setTotalCount(long totalCount) {
+        this.totalCount = totalCount;
+    }
+
     // for testing
     Thread getLoggerThread() {
         return loggerThread;
@@ -99,9 +119,15 @@ public class Progress implements AutoCloseable {
 
                 // Do not log if there was no progress.
                 if (logger.isLoggable(currentLevel)) {
-                    logger.log(currentLevel, "Progress: {0} ({1}%) for {2}",
-                            new Object[]{currentCount, currentCount * 100.0f /
-                                    totalCount, suffix});
+                    long total = totalCount;
+                    if (total == UNKNOWN_COUNT) {
+                        logger.log(currentLevel, "Progress: {0} for {1}",
+                                new Object[]{currentCount, suffix});
+                    } else {
+                        logger.log(currentLevel, "Progress: {0} ({1}%) for {2}",
+                                new Object[]{currentCount, currentCount * 100.0f /
+                                        total, suffix});
+                    }
                 }
             }
 
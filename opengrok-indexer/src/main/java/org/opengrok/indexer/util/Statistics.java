@@ -22,6 +22,7 @@
  */
 package org.opengrok.indexer.util;
 
+import io.micrometer.core.instrument.DistributionSummary;
 import io.micrometer.core.instrument.MeterRegistry;
 import io.micrometer.core.instrument.Timer;
 import org.opengrok.indexer.Metrics;
@@ -95,6 +96,42 @@ public class Statistics {
         }
     }
 
+    /**
+     * Log a message along with how much time it took since the constructor was called
+     * and the rate at which the given number of items was processed in that time.
+     * If there is a metrics registry, it will update the timer specified by the meter name
+     * and a distribution summary of the rate named {@code meterName + ".rate"}.
+     * @param logger logger instance
+     * @param logLevel log level
+     * @param msg message string
+     * @param meterName name of the meter
+     * @param count number of items processed
+     * @param unit name of the items used in the message, e.g. {@code files}
+     * @see Metrics#getRegistry()
+     */
+    public void reportThroughput(Logger logger, Level logLevel, String msg, String meterName,
+            long count, String unit) {
+        Duration duration = Duration.between(startTime, Instant.now());
+        double rate = count * 1000.0 / Math.max(duration.toMillis(), 1);
+
+        if (logger.isLoggable(logLevel)) {
+            String timeStr = StringUtils.getReadableTime(duration.toMillis());
+            logger.log(logLevel, String.format("%s (%d %s, %.1f %s/s, took %s)",
+                    msg, count, unit, rate, unit, timeStr));
+        }
+
+        MeterRegistry registry = Metrics.getRegistry();
+        if (registry != null) {
+            Timer.builder(meterName).
+                    register(registry).
+                    record(duration);
+            DistributionSummary.builder(meterName + ".rate").
+                    baseUnit(unit + "/s").
+                    register(registry).
+                    record(rate);
+        }
+    }
+
     /**
      * log a message along with how much time it took since the constructor was called.
      * If there is a metrics registry, it will update the timer specified by the meter name.
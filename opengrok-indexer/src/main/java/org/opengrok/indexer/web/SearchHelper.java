@@ -33,7 +33,9 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.SortedMap;
 import java.util.SortedSet;
+import java.util.TreeMap;
 import java.util.TreeSet;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -59,6 +61,7 @@ import org.apache.lucene.search.SortField;
 import org.apache.lucene.search.TermQuery;
 import org.apache.lucene.search.TopDocs;
 import org.apache.lucene.search.TopFieldDocs;
+import org.apache.lucene.search.TotalHits;
 import org.apache.lucene.search.Weight;
 import org.apache.lucene.search.spell.DirectSpellChecker;
 import org.apache.lucene.search.spell.SuggestMode;
@@ -74,9 +77,14 @@ import org.opengrok.indexer.configuration.SuperIndexSearcher;
 import org.opengrok.indexer.index.IndexDatabase;
 import org.opengrok.indexer.index.IndexedSymlink;
 import org.opengrok.indexer.logger.LoggerFactory;
+import org.opengrok.indexer.search.MultiProjectSearcher;
 import org.opengrok.indexer.search.QueryBuilder;
+import org.opengrok.indexer.search.QueryResultCache;
+import org.opengrok.indexer.search.SearchDeadline;
 import org.opengrok.indexer.search.SettingsHelper;
+import org.opengrok.indexer.search.StoredFieldSets;
 import org.opengrok.indexer.search.Summarizer;
+import org.opengrok.indexer.search.TrigramQueryRewriter;
 import org.opengrok.indexer.search.context.Context;
 import org.opengrok.indexer.search.context.HistoryContext;
 import org.opengrok.indexer.util.ForbiddenSymlinkException;
@@ -178,6 +186,22 @@ public class SearchHelper {
      * once the results are read.
      */
     private final ArrayList<SuperIndexSearcher> searcherList = new ArrayList<>();
+    /**
+     * Searches the projects concurrently if enabled. Set via
+     * {@link #prepareExec(SortedSet)} for multi-project searches.
+     */
+    private MultiProjectSearcher projectSearcher;
+    /**
+     * Versions of the searched indexes used as part of the key of
+     * {@link QueryResultCache}. Set via {@link #prepareExec(SortedSet)}.
+     */
+    private SortedMap<String, Long> indexVersions;
+    /**
+     * Deadline of the search and of printing its results, see
+     * {@link RuntimeEnvironment#getSearchTimeout()}. Set via
+     * {@link #prepareExec(SortedSet)}.
+     */
+    public SearchDeadline deadline = new SearchDeadline(0);
     /**
      * Close IndexReader associated with searches on destroy().
      */
@@ -190,6 +214,12 @@ public class SearchHelper {
      * Total number of hits.
      */
     public long totalHits;
+    /**
+     * Whether {@link #totalHits} is exact or only a lower bound, which is the
+     * case when a sorted search terminated early, see
+     * {@link IndexDatabase#DATE_INDEX_SORT}.
+     */
+    public boolean totalHitsExact = true;
     /**
      * the query created by {@link #builder} via
      * {@link #prepareExec(SortedSet)}.
@@ -271,6 +301,7 @@ public class SearchHelper {
         }
 
         settingsHelper = null;
+        deadline = new SearchDeadline(RuntimeEnvironment.getInstance().getSearchTimeout());
         // the Query created by the QueryBuilder
         try {
             indexDir = new File(dataRoot, IndexDatabase.INDEX_DIR);
@@ -283,8 +314,11 @@ public class SearchHelper {
             if (projects.isEmpty()) {
                 // no project setup
                 FSDirectory dir = FSDirectory.open(indexDir.toPath());
-                reader = DirectoryReader.open(dir);
+                DirectoryReader directoryReader = DirectoryReader.open(dir);
+                reader = directoryReader;
                 searcher = new IndexSearcher(reader);
+                indexVersions = new TreeMap<>();
+                indexVersions.put(QueryResultCache.NO_PROJECT, directoryReader.getVersion());
                 closeOnDestroy = true;
             } else {
                 // Check list of project names first to make sure all of them
@@ -314,9 +348,15 @@ public class SearchHelper {
                 // We use MultiReader even for single project. This should
                 // not matter given that MultiReader is just a cheap wrapper
                 // around set of IndexReader objects.
+                int firstSearcher = searcherList.size();
                 reader = RuntimeEnvironment.getInstance().getMultiReader(projects, searcherList);
                 if (reader != null) {
                     searcher = new IndexSearcher(reader);
+                    List<SuperIndexSearcher> projectSearchers = searcherList.subList(firstSearcher, searcherList.size());
+                    if (RuntimeEnvironment.getInstance().isProjectSearchConcurrent()) {
+                        projectSearcher = new MultiProjectSearcher(projects, projectSearchers, deadline);
+                    }
+                    indexVersions = QueryResultCache.getIndexVersions(projects, projectSearchers);
                 } else {
                     errorMsg = "Failed to initialize search. Check the index";
                     if (!projects.isEmpty()) {
@@ -333,7 +373,8 @@ public class SearchHelper {
             // Most probably they are not reused. SearcherLifetimeManager might help here.
             switch (order) {
                 case LASTMODIFIED:
-                    sort = new Sort(new SortField(QueryBuilder.DATE, SortField.Type.STRING, true));
+                    // Same as the index sort, if any, so that the search can terminate early.
+                    sort = IndexDatabase.DATE_INDEX_SORT;
                     break;
                 case BY_PATH:
                     sort = new Sort(new SortField(QueryBuilder.FULLPATH, SortField.Type.STRING));
@@ -392,8 +433,9 @@ public class SearchHelper {
             return this;
         }
         try {
-            TopFieldDocs fdocs = searcher.search(query, start + maxItems, sort);
+            TopFieldDocs fdocs = search(start + maxItems);
             totalHits = fdocs.totalHits.value;
+            totalHitsExact = fdocs.totalHits.relation == TotalHits.Relation.EQUAL_TO;
             hits = fdocs.scoreDocs;
 
             /*
@@ -418,6 +460,39 @@ public class SearchHelper {
         return this;
     }
 
+    /**
+     * Find the top {@code n} hits of {@link #query} in {@link #sort} order,
+     * looking them up in {@link QueryResultCache} first.
+     */
+    private TopFieldDocs search(int n) throws IOException {
+        QueryResultCache.Key cacheKey = null;
+        if (indexVersions != null) {
+            cacheKey = new QueryResultCache.Key(query, sort.toString(), indexVersions);
+            TopDocs cached = QueryResultCache.getInstance().get(cacheKey, n);
+            if (cached instanceof TopFieldDocs) {
+                return (TopFieldDocs) cached;
+            }
+        }
+
+        Query searchQuery = TrigramQueryRewriter.rewrite(query);
+        TopFieldDocs fdocs;
+        if (projectSearcher != null) {
+            fdocs = projectSearcher.search(searchQuery, n, sort);
+            if (projectSearcher.isPartial()) {
+                return fdocs;
+            }
+        } else {
+            fdocs = deadline.search(searcher, searchQuery, n, sort);
+            if (deadline.isExceeded()) {
+                return fdocs;
+            }
+        }
+        if (cacheKey != null) {
+            QueryResultCache.getInstance().put(cacheKey, fdocs);
+        }
+        return fdocs;
+    }
+
     private void maybeRedirectToDefinition(int docID, TermQuery termQuery)
             throws IOException, ClassNotFoundException {
         // Bug #3900: Check if this is a search for a single term, and that
@@ -427,7 +502,7 @@ public class SearchHelper {
         // Attempt to create a direct link to the definition if we search for
         // one single definition term AND we have exactly one match AND there
         // is only one definition of that symbol in the document that matches.
-        Document doc = searcher.doc(docID);
+        Document doc = searcher.doc(docID, StoredFieldSets.DEFINITIONS);
         IndexableField tagsField = doc.getField(QueryBuilder.TAGS);
         if (tagsField != null) {
             byte[] rawTags = tagsField.binaryValue().bytes;
@@ -450,7 +525,7 @@ public class SearchHelper {
          * must be subsequently converted to a line number and that is tractable
          * only from plain text.
          */
-        Document doc = searcher.doc(docID);
+        Document doc = searcher.doc(docID, StoredFieldSets.LISTING);
         String genre = doc.get(QueryBuilder.T);
         if (!AbstractAnalyzer.Genre.PLAIN.typeName().equals(genre)) {
             return;
@@ -487,7 +562,7 @@ public class SearchHelper {
     }
 
     private void redirectToFile(int docID) throws IOException {
-        Document doc = searcher.doc(docID);
+        Document doc = searcher.doc(docID, StoredFieldSets.PATH);
         redirect = contextPath + Prefix.XREF_P + Util.URIEncodePath(doc.get(QueryBuilder.PATH));
     }
 
@@ -677,7 +752,7 @@ public class SearchHelper {
         }
 
         int docID = top.scoreDocs[0].doc;
-        Document doc = searcher.doc(docID);
+        Document doc = searcher.doc(docID, StoredFieldSets.PATH);
 
         String foundPath = doc.get(QueryBuilder.PATH);
         // Only use the result if PATH matches exactly.
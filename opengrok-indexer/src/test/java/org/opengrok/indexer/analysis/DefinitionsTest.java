@@ -24,12 +24,17 @@
 package org.opengrok.indexer.analysis;
 
 import org.junit.jupiter.api.Test;
+import org.opengrok.indexer.analysis.Definitions.Tag;
 
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectOutputStream;
+import java.util.List;
 import java.util.Set;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 /**
@@ -145,4 +150,64 @@ public class DefinitionsTest {
         assertEquals(instance.getSymbols().size(), instance2.getSymbols().size());
     }
 
+    @Test
+    public void serializeRoundTrip() throws Exception {
+        Definitions instance = new Definitions();
+        instance.addTag(3, "foo", "function", "int foo(int a)", "ns", "(int a)", 4, 7);
+        instance.addTag(1, "bar", "variable", "int bar;", 4, 7);
+        instance.addTag(3, "a", "argument", "int foo(int a)", null, null, 12, 13);
+        Definitions instance2 = Definitions.deserialize(instance.serialize());
+
+        List<Tag> tags = instance2.getTags();
+        assertEquals(3, tags.size());
+        for (int i = 0; i < tags.size(); i++) {
+            Tag expected = instance.getTags().get(i);
+            Tag actual = tags.get(i);
+            assertEquals(expected.line, actual.line);
+            assertEquals(expected.symbol, actual.symbol);
+            assertEquals(expected.type, actual.type);
+            assertEquals(expected.text, actual.text);
+            assertEquals(expected.namespace, actual.namespace);
+            assertEquals(expected.signature, actual.signature);
+            assertEquals(expected.lineStart, actual.lineStart);
+            assertEquals(expected.lineEnd, actual.lineEnd);
+        }
+        assertTrue(instance2.hasDefinitionAt("foo", 3, new String[1]));
+        assertEquals(instance.numberOfSymbols(), instance2.numberOfSymbols());
+    }
+
+    @Test
+    public void getTagsOfLineFromSerialized() throws Exception {
+        Definitions instance = new Definitions();
+        instance.addTag(1, "one", "variable", "int one;", 4, 7);
+        instance.addTag(5, "five", "function", "void five()", 5, 9);
+        instance.addTag(5, "arg", "argument", "void five()", 10, 13);
+        instance.addTag(9, "nine", "variable", "int nine;", 4, 8);
+        Definitions instance2 = Definitions.deserialize(instance.serialize());
+
+        List<Tag> tags = instance2.getTags(5);
+        assertNotNull(tags);
+        assertEquals(2, tags.size());
+        assertEquals("five", tags.get(0).symbol);
+        assertEquals("arg", tags.get(1).symbol);
+        assertNull(instance2.getTags(2));
+        assertNull(instance2.getTags(10));
+        assertEquals(1, instance2.getTags(9).size());
+    }
+
+    @Test
+    public void deserializeJavaSerialized() throws Exception {
+        Definitions instance = new Definitions();
+        instance.addTag(1, "one", "", "", 0, 0);
+        byte[] serial;
+        try (ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+             ObjectOutputStream oos = new ObjectOutputStream(bytes)) {
+            oos.writeObject(instance);
+            oos.flush();
+            serial = bytes.toByteArray();
+        }
+        Definitions instance2 = Definitions.deserialize(serial);
+        assertEquals(1, instance2.getTags().size());
+        assertTrue(instance2.hasSymbol("one"));
+    }
 }
@@ -25,9 +25,12 @@ package org.opengrok.indexer.analysis;
 import org.junit.jupiter.api.Test;
 import org.opengrok.indexer.analysis.Scopes.Scope;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.ObjectOutputStream;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
 
 /**
  *
@@ -75,4 +78,32 @@ public class ScopesTest {
         assertEquals(1, deserialized.size());
     }
 
+    @Test
+    void testSerializeRoundTrip() throws IOException, ClassNotFoundException {
+        Scopes scopes = new Scopes();
+        scopes.addScope(new Scope(40, 45, "inner", "ns", null));
+        scopes.addScope(new Scope(10, 20, "outer", "ns", "(int a)"));
+        Scopes deserialized = Scopes.deserialize(scopes.serialize());
+        assertEquals(2, deserialized.size());
+        Scope scope = deserialized.getScope(15);
+        assertEquals("outer", scope.getName());
+        assertEquals("ns", scope.getNamespace());
+        assertEquals("(int a)", scope.getSignature());
+        assertEquals(10, scope.getLineFrom());
+        assertEquals(20, scope.getLineTo());
+        assertNull(deserialized.getScope(42).getSignature());
+        assertEquals(Scopes.GLOBAL_SCOPE, deserialized.getScope(30));
+    }
+
+    @Test
+    void testDeserializeJavaSerialized() throws IOException, ClassNotFoundException {
+        Scopes scopes = new Scopes();
+        scopes.addScope(new Scope(1, 100, "name", "namespace", "signature"));
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream oos = new ObjectOutputStream(bytes)) {
+            oos.writeObject(scopes);
+        }
+        Scopes deserialized = Scopes.deserialize(bytes.toByteArray());
+        assertEquals("name", deserialized.getScope(50).getName());
+    }
 }
@@ -0,0 +1,79 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License (the "License").
+ * You may not use this file except in compliance with the License.
+ *
+ * See LICENSE.txt included in this distribution for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at LICENSE.txt.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information: Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ */
+
+/*
+ * Copyright (c) 2021, Oracle and/or its affiliates. All rights reserved.
+ */
+package org.opengrok.indexer.analysis;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+
+import org.apache.lucene.document.Document;
+import org.junit.jupiter.api.Test;
+import org.opengrok.indexer.history.History;
+import org.opengrok.indexer.history.HistoryEntry;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * Unit test class for StoredHistory.
+ */
+public class StoredHistoryTest {
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        List<HistoryEntry> entries = new ArrayList<>();
+        entries.add(new HistoryEntry("2", new Date(1600000000000L), "alice",
+                "Fix the handler\n\nwith a longer \u00e9xplanation", true));
+        entries.add(new HistoryEntry("1", null, null, "Initial import", true));
+        History history = new History();
+        history.setHistoryEntries(entries);
+
+        Document doc = new Document();
+        StoredHistory.addField(doc, history);
+
+        Iterator<HistoryEntry> it = StoredHistory.getEntries(doc);
+        for (HistoryEntry expected : entries) {
+            HistoryEntry entry = it.next();
+            assertEquals(expected.getRevision(), entry.getRevision());
+            assertEquals(expected.getDate(), entry.getDate());
+            assertEquals(expected.getAuthor(), entry.getAuthor());
+            assertEquals(expected.getMessage(), entry.getMessage());
+        }
+        assertFalse(it.hasNext());
+    }
+
+    @Test
+    public void testEmpty() throws IOException {
+        Document doc = new Document();
+        StoredHistory.addField(doc, new History());
+        assertFalse(StoredHistory.getEntries(doc).hasNext());
+    }
+
+    @Test
+    public void testNotStored() {
+        assertNull(StoredHistory.getEntries(new Document()));
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License (the "License").
+ * You may not use this file except in compliance with the License.
+ *
+ * See LICENSE.txt included in this distribution for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at LICENSE.txt.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information: Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ */
+
+/*
+ * Copyright (c) 2021, Oracle and/or its affiliates. All rights reserved.
+ */
+package org.opengrok.indexer.analysis;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+
+import org.apache.lucene.document.Document;
+import org.junit.jupiter.api.Test;
+import org.opengrok.indexer.search.QueryBuilder;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Unit test class for StoredText.
+ */
+public class StoredTextTest {
+
+    private static String read(Reader reader) throws IOException {
+        StringBuilder text = new StringBuilder();
+        char[] buf = new char[1000];
+        int n;
+        while ((n = reader.read(buf)) != -1) {
+            text.append(buf, 0, n);
+        }
+        return text.toString();
+    }
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; text.length() < 2 * StoredText.BLOCK_SIZE + 100; i++) {
+            text.append("line ").append(i).append("\tcontent\n");
+        }
+        // Put a surrogate pair across the boundary of the first block.
+        text.insert(StoredText.BLOCK_SIZE - 1, "\uD83D\uDE00");
+
+        Document doc = new Document();
+        StoredText.addFields(doc, new StringReader(text.toString()), 0);
+        assertTrue(StoredText.isStored(doc));
+        assertEquals(3, doc.getFields(QueryBuilder.STORED_TEXT).length);
+        assertEquals(text.toString(), read(StoredText.getReader(doc)));
+    }
+
+    private static int lineBreaks(String text) {
+        int count = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '\n' || (c == '\r' && (i + 1 == text.length() || text.charAt(i + 1) != '\n'))) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static void assertSameLine(String expected, String actual, int offset) {
+        assertEquals(expected.length(), actual.length());
+        assertEquals(lineBreaks(expected.substring(0, offset)), lineBreaks(actual.substring(0, offset)));
+        int start = expected.lastIndexOf('\n', offset) + 1;
+        int end = expected.indexOf('\n', offset);
+        assertEquals(expected.substring(start, end), actual.substring(start, end));
+    }
+
+    /**
+     * Only the blocks of the lines of the offsets are decompressed, the rest
+     * of the text keeps its length and line breaks.
+     */
+    @Test
+    public void testExpandedText() throws IOException {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; text.length() < 3 * StoredText.BLOCK_SIZE; i++) {
+            text.append("\tline ").append(i).append(i % 2 == 0 ? "\n" : "\r\n");
+        }
+        // A line longer than a block.
+        for (int i = 0; i < StoredText.BLOCK_SIZE; i++) {
+            text.append("x\t");
+        }
+        text.append("y\nend\n");
+
+        Document doc = new Document();
+        StoredText.addFields(doc, new StringReader(text.toString()), 4);
+        String expanded = read(ExpandTabsReader.wrap(new StringReader(text.toString()), 4));
+
+        int offset = expanded.indexOf("line 4000");
+        String sparse = StoredText.getExpandedText(doc, 4, new int[] {offset}, 0);
+        assertSameLine(expanded, sparse, offset);
+        assertNotEquals(expanded, sparse);
+
+        offset = expanded.indexOf('y');
+        sparse = StoredText.getExpandedText(doc, 4, new int[] {offset}, 0);
+        assertSameLine(expanded, sparse, offset);
+        assertNotEquals(expanded, sparse);
+
+        assertEquals(expanded, StoredText.getExpandedText(doc, 4, new int[] {offset}, Integer.MAX_VALUE));
+        assertNull(StoredText.getExpandedText(doc, 8, new int[] {offset}, 0));
+    }
+
+    @Test
+    public void testByteOrderMarkStripped() throws IOException {
+        Document doc = new Document();
+        StoredText.addFields(doc, StreamSource.fromString("\uFEFFint main;"), null);
+        assertEquals("int main;", read(StoredText.getReader(doc)));
+    }
+
+    @Test
+    public void testEmpty() throws IOException {
+        Document doc = new Document();
+        StoredText.addFields(doc, StreamSource.fromBytes("".getBytes(StandardCharsets.UTF_8)), null);
+        assertTrue(StoredText.isStored(doc));
+        assertEquals("", read(StoredText.getReader(doc)));
+    }
+
+    @Test
+    public void testNotStored() {
+        Document doc = new Document();
+        assertFalse(StoredText.isStored(doc));
+        assertNull(StoredText.getReader(doc));
+    }
+}
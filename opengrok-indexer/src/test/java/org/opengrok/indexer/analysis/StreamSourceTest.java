@@ -0,0 +1,68 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License (the "License").
+ * You may not use this file except in compliance with the License.
+ *
+ * See LICENSE.txt included in this distribution for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at LICENSE.txt.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information: Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ */
+
+/*
+ * Copyright (c) 2021, Oracle and/or its affiliates. All rights reserved.
+ */
+package org.opengrok.indexer.analysis;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class StreamSourceTest {
+
+    private static final String CONTENT = "int main(void) {\n    return 0;\n}\n";
+
+    private static String readAll(StreamSource src) throws IOException {
+        try (InputStream in = src.getStream()) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    @Test
+    public void testFromFileWithinLimitIsReadOnce(@TempDir Path tempDir) throws IOException {
+        Path file = tempDir.resolve("main.c");
+        Files.writeString(file, CONTENT);
+
+        StreamSource src = StreamSource.fromFile(file.toFile(), 1024);
+        // The file is not needed anymore once the source has been created.
+        Files.delete(file);
+        assertEquals(CONTENT, readAll(src));
+        assertEquals(CONTENT, readAll(src));
+    }
+
+    @Test
+    public void testFromFileAboveLimitIsStreamed(@TempDir Path tempDir) throws IOException {
+        Path file = tempDir.resolve("main.c");
+        Files.writeString(file, CONTENT);
+
+        StreamSource src = StreamSource.fromFile(file.toFile(), 4);
+        assertEquals(CONTENT, readAll(src));
+        Files.writeString(file, "changed");
+        assertEquals("changed", readAll(src));
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License (the "License").
+ * You may not use this file except in compliance with the License.
+ *
+ * See LICENSE.txt included in this distribution for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at LICENSE.txt.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information: Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ */
+
+/*
+ * Copyright (c) 2021, Oracle and/or its affiliates. All rights reserved.
+ */
+package org.opengrok.indexer.analysis;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.lucene.analysis.Tokenizer;
+import org.apache.lucene.analysis.core.WhitespaceTokenizer;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.analysis.tokenattributes.PositionIncrementAttribute;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Unit test class for TrigramFilter.
+ */
+public class TrigramFilterTest {
+
+    @Test
+    public void testIncrementToken() throws Exception {
+        Tokenizer tokenizer = new WhitespaceTokenizer();
+        tokenizer.setReader(new StringReader("abcd x"));
+        List<String> terms = new ArrayList<>();
+        List<Integer> increments = new ArrayList<>();
+        try (TrigramFilter filter = new TrigramFilter(tokenizer)) {
+            CharTermAttribute term = filter.addAttribute(CharTermAttribute.class);
+            PositionIncrementAttribute posInc = filter.addAttribute(PositionIncrementAttribute.class);
+            filter.reset();
+            while (filter.incrementToken()) {
+                terms.add(term.toString());
+                increments.add(posInc.getPositionIncrement());
+            }
+            filter.end();
+        }
+
+        assertEquals(Arrays.asList("\u0002ab", "abc", "bcd", "cd\u0003", "\u0002x\u0003"), terms);
+        assertEquals(Arrays.asList(2, 1, 1, 1, 2), increments);
+    }
+
+    @Test
+    public void testTrigrams() {
+        assertEquals(Arrays.asList("han", "and", "ndl"), TrigramFilter.trigrams("handl"));
+        assertEquals(Arrays.asList("ler", "er\u0003"), TrigramFilter.trigrams("ler\u0003"));
+        assertEquals(0, TrigramFilter.trigrams("ab").size());
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License (the "License").
+ * You may not use this file except in compliance with the License.
+ *
+ * See LICENSE.txt included in this distribution for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at LICENSE.txt.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information: Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ */
+
+/*
+ * Copyright (c) 2021, Oracle and/or its affiliates. All rights reserved.
+ */
+package org.opengrok.indexer.history;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.opengrok.indexer.condition.RepositoryInstalled.Type.MERCURIAL;
+import static org.opengrok.indexer.history.MercurialRepositoryTest.runHgCommand;
+
+import java.io.File;
+import java.nio.file.Paths;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.opengrok.indexer.condition.EnabledForRepository;
+import org.opengrok.indexer.configuration.RuntimeEnvironment;
+import org.opengrok.indexer.util.TestRepository;
+
+/**
+ * Test the binary history cache, namely incremental updates and migration
+ * from {@link FileHistoryCache}.
+ */
+class BinaryHistoryCacheTest {
+
+    private final RuntimeEnvironment env = RuntimeEnvironment.getInstance();
+    private TestRepository repositories;
+    private BinaryHistoryCache cache;
+
+    private boolean savedIsTagsEnabled;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        repositories = new TestRepository();
+        repositories.create(getClass().getResourceAsStream("repositories.zip"));
+
+        cache = new BinaryHistoryCache();
+        cache.initialize();
+
+        savedIsTagsEnabled = env.isTagsEnabled();
+        env.setTagsEnabled(false);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        repositories.destroy();
+        repositories = null;
+        cache = null;
+
+        env.setTagsEnabled(savedIsTagsEnabled);
+    }
+
+    /**
+     * Incremental reindex should append the new history entries to the cache
+     * file and produce the same history as reindex from scratch.
+     */
+    @EnabledForRepository(MERCURIAL)
+    @Test
+    void testStoreIncrementalAppends() throws Exception {
+        File reposRoot = new File(repositories.getSourceRoot(), "mercurial");
+        Repository repo = RepositoryFactory.getRepository(reposRoot);
+        cache.store(repo.getHistory(reposRoot), repo);
+
+        File main = new File(reposRoot, "main.c");
+        File cacheFile = cache.getCachedFile(main);
+        assertEquals(1, BinaryHistoryFile.getChunkCount(cacheFile));
+
+        // Avoid uncommitted changes.
+        runHgCommand(reposRoot, "revert", "--all");
+        runHgCommand(reposRoot, "import",
+                Paths.get(getClass().getResource("/history/hg-export-tag.txt").toURI()).toString());
+        repo.createCache(cache, cache.getLatestCachedRevision(repo));
+
+        assertEquals(2, BinaryHistoryFile.getChunkCount(cacheFile));
+        History history = cache.get(main, repo, true);
+        assertEquals(3, history.getHistoryEntries().size());
+        assertEquals("13:3d386f6bd848", history.getHistoryEntries().get(0).getRevision());
+        HistoryEntry last = cache.getLastHistoryEntry(main);
+        assertNotNull(last);
+        assertEquals("13:3d386f6bd848", last.getRevision());
+
+        cache.clear(repo);
+        cache.store(repo.getHistory(reposRoot), repo);
+        assertEquals(history, cache.get(main, repo, true));
+    }
+
+    /**
+     * Cache files of {@link FileHistoryCache} should be converted when read.
+     */
+    @EnabledForRepository(MERCURIAL)
+    @Test
+    void testMigrateFileHistoryCache() throws Exception {
+        File reposRoot = new File(repositories.getSourceRoot(), "mercurial");
+        Repository repo = RepositoryFactory.getRepository(reposRoot);
+        FileHistoryCache fileCache = new FileHistoryCache();
+        fileCache.initialize();
+        fileCache.store(repo.getHistory(reposRoot), repo);
+
+        File main = new File(reposRoot, "main.c");
+        File legacyFile = fileCache.getCachedFile(main);
+        assertTrue(legacyFile.exists());
+        assertTrue(cache.hasCacheForFile(main));
+        History expected = FileHistoryCache.readCache(legacyFile);
+
+        assertEquals(expected, cache.get(main, repo, true));
+        assertFalse(legacyFile.exists());
+        assertTrue(cache.getCachedFile(main).exists());
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License (the "License").
+ * You may not use this file except in compliance with the License.
+ *
+ * See LICENSE.txt included in this distribution for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at LICENSE.txt.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information: Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ */
+
+/*
+ * Copyright (c) 2021, Oracle and/or its affiliates. All rights reserved.
+ */
+package org.opengrok.indexer.history;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class BinaryHistoryFileTest {
+
+    @TempDir
+    Path tempDir;
+
+    private static History createHistory(int from, int to) {
+        List<HistoryEntry> entries = new ArrayList<>();
+        for (int i = to; i >= from; i--) {
+            HistoryEntry entry = new HistoryEntry("rev" + i, new Date(1000L * i), "author" + i,
+                    "message " + i + "\nsecond line", true);
+            entry.addFile("/repo/file" + i);
+            entries.add(entry);
+        }
+        return new History(entries);
+    }
+
+    @Test
+    void testWriteAndRead() throws IOException {
+        File file = tempDir.resolve("history.bin").toFile();
+        History history = createHistory(1, 3);
+        history.getHistoryEntries().get(1).setDate(null);
+        history.getHistoryEntries().get(2).setAuthor(null);
+        history.addTags(history.getHistoryEntries().get(0), "v1.0");
+
+        BinaryHistoryFile.write(file, history);
+
+        assertEquals(history, BinaryHistoryFile.read(file, Integer.MAX_VALUE));
+        assertEquals(1, BinaryHistoryFile.getChunkCount(file));
+    }
+
+    @Test
+    void testAppendAndReadNewest() throws IOException {
+        File file = tempDir.resolve("history.bin").toFile();
+        BinaryHistoryFile.write(file, createHistory(1, 2));
+        BinaryHistoryFile.append(file, createHistory(3, 5), 1);
+
+        assertEquals(2, BinaryHistoryFile.getChunkCount(file));
+        assertEquals(createHistory(1, 5), BinaryHistoryFile.read(file, Integer.MAX_VALUE));
+
+        History newest = BinaryHistoryFile.read(file, 1);
+        assertEquals(1, newest.getHistoryEntries().size());
+        assertEquals("rev5", newest.getHistoryEntries().get(0).getRevision());
+        assertEquals(4, BinaryHistoryFile.read(file, 4).getHistoryEntries().size());
+    }
+
+    @Test
+    void testAppendReplacesFile() throws IOException {
+        File file = tempDir.resolve("history.bin").toFile();
+        BinaryHistoryFile.write(file, createHistory(1, 2));
+        BinaryHistoryFile.append(file, createHistory(3, 3), 1);
+
+        // no temporary file is left behind
+        assertArrayEquals(new String[] {"history.bin"}, tempDir.toFile().list());
+        assertEquals(createHistory(1, 3), BinaryHistoryFile.read(file, Integer.MAX_VALUE));
+    }
+
+    @Test
+    void testTruncatedFileIsRejected() throws IOException {
+        File file = tempDir.resolve("history.bin").toFile();
+        BinaryHistoryFile.write(file, createHistory(1, 2));
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(raf.length() - 1);
+        }
+
+        assertThrows(IOException.class, () -> BinaryHistoryFile.read(file, Integer.MAX_VALUE));
+        assertThrows(IOException.class, () -> BinaryHistoryFile.getChunkCount(file));
+    }
+}
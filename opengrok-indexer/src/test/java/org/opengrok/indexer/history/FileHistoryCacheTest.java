@@ -30,6 +30,7 @@ import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.opengrok.indexer.condition.RepositoryInstalled.Type.GIT;
 import static org.opengrok.indexer.condition.RepositoryInstalled.Type.MERCURIAL;
 import static org.opengrok.indexer.condition.RepositoryInstalled.Type.SCCS;
 import static org.opengrok.indexer.condition.RepositoryInstalled.Type.SUBVERSION;
@@ -886,6 +887,36 @@ class FileHistoryCacheTest {
         checkNoHistoryFetchRepo("teamware", "header.h", true, true);
     }
 
+    /**
+     * Once the history of a repository is cached, the files of the repository
+     * without cached history are not asked for their history even though the
+     * history of other repositories is still being cached.
+     */
+    @EnabledForRepository({MERCURIAL, GIT})
+    @Test
+    void testNoHistoryFetchForDoneRepository() throws Exception {
+        env.setFetchHistoryWhenNotInCache(false);
+
+        File doneRoot = new File(repositories.getSourceRoot(), "mercurial");
+        Repository doneRepo = Mockito.spy(RepositoryFactory.getRepository(doneRoot));
+        File runningRoot = new File(repositories.getSourceRoot(), "git");
+        Repository runningRepo = Mockito.spy(RepositoryFactory.getRepository(runningRoot));
+
+        cache.setHistoryIndexDone(doneRepo);
+        assertFalse(cache.isHistoryIndexDone());
+
+        File untracked = new File(doneRoot, "untracked.c");
+        assertTrue(untracked.createNewFile());
+        assertNull(cache.get(untracked, doneRepo, true));
+        Mockito.verify(doneRepo, Mockito.never()).getHistory(Mockito.any(File.class));
+
+        untracked = new File(runningRoot, "untracked.c");
+        assertTrue(untracked.createNewFile());
+        Mockito.doReturn(new History()).when(runningRepo).getHistory(untracked);
+        cache.get(untracked, runningRepo, true);
+        Mockito.verify(runningRepo).getHistory(untracked);
+    }
+
     /**
      * Test history when activating PathAccepter for ignoring files.
      */
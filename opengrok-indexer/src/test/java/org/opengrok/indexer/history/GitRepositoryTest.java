@@ -57,8 +57,10 @@ import org.opengrok.indexer.util.TestRepository;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
@@ -168,6 +170,42 @@ public class GitRepositoryTest {
         }
     }
 
+    @Test
+    void testJGitRepositoryPool() throws Exception {
+        String root = new File(repository.getSourceRoot(), "git").getAbsolutePath();
+        JGitRepositoryPool pool = new JGitRepositoryPool(1);
+        org.eclipse.jgit.lib.Repository first;
+        try (org.eclipse.jgit.lib.Repository repo = pool.get(root)) {
+            first = repo;
+        }
+        try (org.eclipse.jgit.lib.Repository repo = pool.get(root)) {
+            assertSame(first, repo);
+        }
+
+        // Changed version should cause the repository to be reopened.
+        pool.setVersion(root, "1");
+        pool.setVersion(root, "2");
+        assertEquals(0, pool.size());
+        org.eclipse.jgit.lib.Repository second;
+        try (org.eclipse.jgit.lib.Repository repo = pool.get(root)) {
+            second = repo;
+            assertNotSame(first, second);
+        }
+
+        // Only single repository fits in the pool.
+        File otherDir = new File(repository.getSourceRoot(), "gitPool");
+        try (Git git = Git.init().setDirectory(otherDir).call()) {
+            try (org.eclipse.jgit.lib.Repository repo = pool.get(otherDir.getAbsolutePath())) {
+                assertNotSame(second, repo);
+            }
+            assertEquals(1, pool.size());
+            pool.clear();
+            assertEquals(0, pool.size());
+        } finally {
+            removeRecursive(otherDir);
+        }
+    }
+
     @Test
     public void testDetermineBranchBasic() throws Exception {
         // First check branch of known repository.
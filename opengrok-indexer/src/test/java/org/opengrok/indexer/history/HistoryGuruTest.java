@@ -24,6 +24,7 @@
 package org.opengrok.indexer.history;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertNull;
@@ -144,6 +145,40 @@ public class HistoryGuruTest {
         }
     }
 
+    @Test
+    @EnabledForRepository(MERCURIAL)
+    void testAnnotationCache() throws Exception {
+        HistoryGuru instance = HistoryGuru.getInstance();
+        File file = Paths.get(repository.getSourceRoot(), "mercurial", "main.c").toFile();
+        Annotation expected = instance.annotate(file, null);
+        assertNotNull(expected);
+
+        boolean savedAnnotationCacheEnabled = env.isAnnotationCacheEnabled();
+        env.setAnnotationCacheEnabled(true);
+        try {
+            instance.createAnnotationCache(file);
+            File cacheDir = new File(env.getDataRootFile(),
+                    "annotationcache" + env.getPathRelativeToSourceRoot(file));
+            assertTrue(new File(cacheDir, "current").exists());
+
+            Annotation cached = instance.annotate(file, null);
+            assertEquals(expected.size(), cached.size());
+            for (int i = 1; i <= expected.size(); i++) {
+                assertEquals(expected.getRevision(i), cached.getRevision(i));
+                assertEquals(expected.getAuthor(i), cached.getAuthor(i));
+            }
+            for (String rev : expected.getRevisions()) {
+                assertEquals(expected.getDesc(rev), cached.getDesc(rev));
+                assertEquals(expected.getFileVersion(rev), cached.getFileVersion(rev));
+            }
+
+            instance.clearCacheFile(env.getPathRelativeToSourceRoot(file));
+            assertFalse(cacheDir.exists());
+        } finally {
+            env.setAnnotationCacheEnabled(savedAnnotationCacheEnabled);
+        }
+    }
+
     @Test
     public void getCacheInfo() throws HistoryException {
         // FileHistoryCache is used by default
@@ -0,0 +1,166 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License (the "License").
+ * You may not use this file except in compliance with the License.
+ *
+ * See LICENSE.txt included in this distribution for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at LICENSE.txt.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information: Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ */
+
+
+/*
+ * Copyright (c) 2021, Oracle and/or its affiliates. All rights reserved.
+ */
+package org.opengrok.indexer.history;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.opengrok.indexer.condition.RepositoryInstalled.Type.MERCURIAL;
+import static org.opengrok.indexer.history.MercurialRepositoryTest.runHgCommand;
+
+import java.io.File;
+import java.nio.file.Paths;
+import java.util.Date;
+import java.util.Map;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.opengrok.indexer.condition.EnabledForRepository;
+import org.opengrok.indexer.configuration.RuntimeEnvironment;
+import org.opengrok.indexer.util.TestRepository;
+
+/**
+ * Test the history cache stored in Lucene index per repository.
+ */
+class LuceneHistoryCacheTest {
+
+    private final RuntimeEnvironment env = RuntimeEnvironment.getInstance();
+    private TestRepository repositories;
+    private LuceneHistoryCache cache;
+
+    private boolean savedIsTagsEnabled;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        repositories = new TestRepository();
+        repositories.create(getClass().getResourceAsStream("repositories.zip"));
+
+        cache = new LuceneHistoryCache(false);
+        cache.initialize();
+
+        savedIsTagsEnabled = env.isTagsEnabled();
+        env.setTagsEnabled(false);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        repositories.destroy();
+        repositories = null;
+        cache = null;
+
+        env.setTagsEnabled(savedIsTagsEnabled);
+    }
+
+    /**
+     * The cache should return the same history as {@link FileHistoryCache}
+     * without creating per file cache files, also after incremental update.
+     */
+    @EnabledForRepository(MERCURIAL)
+    @Test
+    void testStoreAndGet() throws Exception {
+        File reposRoot = new File(repositories.getSourceRoot(), "mercurial");
+        Repository repo = RepositoryFactory.getRepository(reposRoot);
+        cache.store(repo.getHistory(reposRoot), repo);
+
+        File main = new File(reposRoot, "main.c");
+        assertTrue(cache.hasCacheForFile(main));
+        assertFalse(cache.getCachedFile(main).exists());
+        assertTrue(new File(cache.getRepositoryHistDataDirname(repo), LuceneHistoryCache.INDEX_DIR_NAME).isDirectory());
+
+        // Avoid uncommitted changes.
+        runHgCommand(reposRoot, "revert", "--all");
+        runHgCommand(reposRoot, "import",
+                Paths.get(getClass().getResource("/history/hg-export-tag.txt").toURI()).toString());
+        repo.createCache(cache, cache.getLatestCachedRevision(repo));
+
+        History history = cache.get(main, repo, true);
+        assertEquals(3, history.getHistoryEntries().size());
+        assertEquals("13:3d386f6bd848", history.getHistoryEntries().get(0).getRevision());
+        HistoryEntry last = cache.getLastHistoryEntry(main);
+        assertNotNull(last);
+        assertEquals("13:3d386f6bd848", last.getRevision());
+
+        FileHistoryCache fileCache = new FileHistoryCache();
+        fileCache.initialize();
+        fileCache.clear(repo);
+        fileCache.store(repo.getHistory(reposRoot), repo);
+        assertEquals(fileCache.get(main, repo, true), history);
+    }
+
+    @EnabledForRepository(MERCURIAL)
+    @Test
+    void testGetLastModifiedTimes() throws Exception {
+        File reposRoot = new File(repositories.getSourceRoot(), "mercurial");
+        Repository repo = RepositoryFactory.getRepository(reposRoot);
+        cache.store(repo.getHistory(reposRoot), repo);
+
+        Map<String, Date> times = cache.getLastModifiedTimes(reposRoot, repo);
+        assertTrue(times.containsKey("main.c"));
+        assertEquals(cache.getLastHistoryEntry(new File(reposRoot, "main.c")).getDate(), times.get("main.c"));
+    }
+
+    @EnabledForRepository(MERCURIAL)
+    @Test
+    void testClearFile() throws Exception {
+        File reposRoot = new File(repositories.getSourceRoot(), "mercurial");
+        Repository repo = RepositoryFactory.getRepository(reposRoot);
+        cache.store(repo.getHistory(reposRoot), repo);
+
+        File main = new File(reposRoot, "main.c");
+        assertTrue(cache.hasCacheForFile(main));
+        cache.clearFile(env.getPathRelativeToSourceRoot(main));
+        // The searchers see changes done outside of store() after flush.
+        assertTrue(cache.hasCacheForFile(main));
+        cache.flush();
+        assertFalse(cache.hasCacheForFile(main));
+        assertTrue(cache.hasCacheForFile(new File(reposRoot, "Makefile")));
+    }
+
+    /**
+     * The web application reads the index without competing with the indexer
+     * for the index lock and sees only the committed changes.
+     */
+    @EnabledForRepository(MERCURIAL)
+    @Test
+    void testReadOnlyWhileWriterOpen() throws Exception {
+        File reposRoot = new File(repositories.getSourceRoot(), "mercurial");
+        Repository repo = RepositoryFactory.getRepository(reposRoot);
+        cache.store(repo.getHistory(reposRoot), repo);
+
+        File main = new File(reposRoot, "main.c");
+        cache.clearFile(env.getPathRelativeToSourceRoot(main));
+
+        LuceneHistoryCache readOnlyCache = new LuceneHistoryCache(true);
+        readOnlyCache.initialize();
+        assertTrue(readOnlyCache.hasCacheForFile(main));
+        assertNotNull(readOnlyCache.getLastHistoryEntry(main));
+        assertThrows(HistoryException.class, () -> readOnlyCache.store(repo.getHistory(reposRoot), repo));
+
+        cache.flush();
+        assertFalse(new LuceneHistoryCache(true).hasCacheForFile(main));
+    }
+}
@@ -25,6 +25,7 @@ package org.opengrok.indexer.index;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.util.Arrays;
 import java.util.TreeSet;
@@ -176,6 +177,60 @@ public class IndexDatabaseTest {
         assertEquals(origNumFiles - 1, idb.getNumFiles());
     }
 
+    /**
+     * Test that the parallel directory traversal picks up a newly added file
+     * and keeps the existing documents intact.
+     */
+    @Test
+    public void testParallelTraversal() throws Exception {
+        RuntimeEnvironment env = RuntimeEnvironment.getInstance();
+        String projectName = "bazaar";
+        IndexDatabase idb = new IndexDatabase(new Project(projectName, "/" + projectName));
+        final int origNumFiles = idb.getNumFiles();
+
+        File newDir = new File(repository.getSourceRoot(), projectName + File.separator + "parallel");
+        assertTrue(newDir.mkdir());
+        Files.writeString(new File(newDir, "added.c").toPath(), "int main(void) { return 0; }\n");
+
+        env.setParallelTraversalEnabled(true);
+        try {
+            idb.update();
+        } finally {
+            env.setParallelTraversalEnabled(false);
+        }
+
+        assertTrue(idb.getNumFiles() > origNumFiles);
+        assertTrue(idb.getFiles().contains("/" + projectName + "/parallel/added.c"));
+    }
+
+    /**
+     * Test that the indexing pipeline indexes a newly added file and removes
+     * the document of a deleted file.
+     */
+    @Test
+    public void testIndexingPipeline() throws Exception {
+        RuntimeEnvironment env = RuntimeEnvironment.getInstance();
+        String projectName = "teamware";
+        IndexDatabase idb = new IndexDatabase(new Project(projectName, "/" + projectName));
+        File projectRoot = new File(repository.getSourceRoot(), projectName);
+
+        File addedFile = new File(projectRoot, "pipelined.c");
+        Files.writeString(addedFile.toPath(), "int main(void) { return 0; }\n");
+        String removedPath = idb.getFiles().stream().filter(p -> p.endsWith(".c")).findFirst().orElse(null);
+        assertNotNull(removedPath);
+        assertTrue(new File(repository.getSourceRoot(), removedPath).delete());
+
+        env.setIndexingPipelineEnabled(true);
+        try {
+            idb.update();
+        } finally {
+            env.setIndexingPipelineEnabled(false);
+        }
+
+        assertTrue(idb.getFiles().contains("/" + projectName + "/pipelined.c"));
+        assertFalse(idb.getFiles().contains(removedPath));
+    }
+
     /**
      * This is a test of {@code populateDocument} so it should be rather in {@code AnalyzerGuruTest}
      * however it lacks the pre-requisite indexing phase.
@@ -0,0 +1,190 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License (the "License").
+ * You may not use this file except in compliance with the License.
+ *
+ * See LICENSE.txt included in this distribution for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at LICENSE.txt.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information: Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ */
+
+/*
+ * Copyright (c) 2021, Oracle and/or its affiliates. All rights reserved.
+ */
+package org.opengrok.indexer.index;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.document.DateTools;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.SortedDocValuesField;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.FieldDoc;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.TopFieldDocs;
+import org.apache.lucene.search.TotalHits;
+import org.apache.lucene.store.ByteBuffersDirectory;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.util.BytesRef;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.opengrok.indexer.logger.LoggerFactory;
+import org.opengrok.indexer.search.QueryBuilder;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests of the index sort by {@link IndexDatabase#DATE_INDEX_SORT}.
+ */
+public class IndexSortTest {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(IndexSortTest.class);
+
+    /**
+     * Number of files of the synthetic project.
+     */
+    private static final int NUM_FILES = 5_000;
+    /**
+     * Number of files of the synthetic project of the benchmark.
+     */
+    private static final int NUM_BENCHMARK_FILES = 200_000;
+    private static final int HITS_PER_PAGE = 25;
+    private static final int ROUNDS = 20;
+
+    @Test
+    public void testGetIndexSort() throws IOException {
+        try (Directory directory = new ByteBuffersDirectory()) {
+            assertNull(IndexDatabase.getIndexSort(directory, false));
+            assertEquals(IndexDatabase.DATE_INDEX_SORT, IndexDatabase.getIndexSort(directory, true));
+
+            // An existing unsorted index stays unsorted.
+            createIndex(directory, null, 10);
+            assertNull(IndexDatabase.getIndexSort(directory, true));
+        }
+        try (Directory directory = new ByteBuffersDirectory()) {
+            // An existing sorted index stays sorted.
+            createIndex(directory, IndexDatabase.DATE_INDEX_SORT, 10);
+            assertEquals(IndexDatabase.DATE_INDEX_SORT, IndexDatabase.getIndexSort(directory, false));
+        }
+    }
+
+    /**
+     * Checks that the search for the newest files matching a common term
+     * finds the same files in an unsorted and a sorted index and stops
+     * collecting early in the sorted one.
+     */
+    @Test
+    public void testSortedSearchTerminatesEarly() throws IOException {
+        try (Directory unsorted = new ByteBuffersDirectory();
+             Directory sorted = new ByteBuffersDirectory()) {
+            createIndex(unsorted, null, NUM_FILES);
+            createIndex(sorted, IndexDatabase.DATE_INDEX_SORT, NUM_FILES);
+
+            try (DirectoryReader unsortedReader = DirectoryReader.open(unsorted);
+                 DirectoryReader sortedReader = DirectoryReader.open(sorted)) {
+                Query query = new TermQuery(new Term(QueryBuilder.FULL, "common"));
+
+                TopFieldDocs unsortedTop = new IndexSearcher(unsortedReader).search(query, HITS_PER_PAGE,
+                        IndexDatabase.DATE_INDEX_SORT);
+                TopFieldDocs sortedTop = new IndexSearcher(sortedReader).search(query, HITS_PER_PAGE,
+                        IndexDatabase.DATE_INDEX_SORT);
+
+                assertEquals(HITS_PER_PAGE, sortedTop.scoreDocs.length);
+                for (int i = 0; i < HITS_PER_PAGE; i++) {
+                    assertEquals(getDate(unsortedTop, i), getDate(sortedTop, i));
+                }
+                // Not all the matching files were visited.
+                assertEquals(TotalHits.Relation.GREATER_THAN_OR_EQUAL_TO, sortedTop.totalHits.relation);
+                assertTrue(sortedTop.totalHits.value < NUM_FILES);
+            }
+        }
+    }
+
+    /**
+     * Compares the latency of the search for the newest files matching a
+     * common term in an unsorted and a sorted synthetic index. Run with
+     * {@code -Dopengrok.benchmark=true}.
+     */
+    @Test
+    @EnabledIfSystemProperty(named = "opengrok.benchmark", matches = "true")
+    public void benchmarkSortedSearch() throws IOException {
+        try (Directory unsorted = new ByteBuffersDirectory();
+             Directory sorted = new ByteBuffersDirectory()) {
+            createIndex(unsorted, null, NUM_BENCHMARK_FILES);
+            createIndex(sorted, IndexDatabase.DATE_INDEX_SORT, NUM_BENCHMARK_FILES);
+
+            try (DirectoryReader unsortedReader = DirectoryReader.open(unsorted);
+                 DirectoryReader sortedReader = DirectoryReader.open(sorted)) {
+                Query query = new TermQuery(new Term(QueryBuilder.FULL, "common"));
+
+                long unsortedNanos = measure(new IndexSearcher(unsortedReader), query);
+                long sortedNanos = measure(new IndexSearcher(sortedReader), query);
+                LOGGER.log(Level.INFO, "Newest {0} of {1} files: unsorted index {2} us, sorted index {3} us",
+                        new Object[]{HITS_PER_PAGE, NUM_BENCHMARK_FILES,
+                                TimeUnit.NANOSECONDS.toMicros(unsortedNanos),
+                                TimeUnit.NANOSECONDS.toMicros(sortedNanos)});
+            }
+        }
+    }
+
+    private static void createIndex(Directory directory, Sort indexSort, int numFiles) throws IOException {
+        IndexWriterConfig iwc = new IndexWriterConfig(new StandardAnalyzer());
+        iwc.setIndexSort(indexSort);
+        Random random = new Random(numFiles);
+        long now = System.currentTimeMillis();
+        try (IndexWriter writer = new IndexWriter(directory, iwc)) {
+            for (int i = 0; i < numFiles; i++) {
+                // Modification times in random order, as the files are traversed by name.
+                long time = now - TimeUnit.SECONDS.toMillis(random.nextInt(10 * numFiles));
+                String date = DateTools.timeToString(time, DateTools.Resolution.MILLISECOND);
+                Document doc = new Document();
+                doc.add(new SortedDocValuesField(QueryBuilder.DATE, new BytesRef(date)));
+                doc.add(new TextField(QueryBuilder.FULL, "common file" + i, Field.Store.NO));
+                writer.addDocument(doc);
+            }
+            writer.forceMerge(1);
+        }
+    }
+
+    private static BytesRef getDate(TopFieldDocs top, int i) {
+        return (BytesRef) ((FieldDoc) top.scoreDocs[i]).fields[0];
+    }
+
+    /**
+     * @return average time in nanoseconds of the search for the newest files
+     */
+    private static long measure(IndexSearcher searcher, Query query) throws IOException {
+        for (int i = 0; i < ROUNDS; i++) {
+            searcher.search(query, HITS_PER_PAGE, IndexDatabase.DATE_INDEX_SORT); // warm up
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < ROUNDS; i++) {
+            searcher.search(query, HITS_PER_PAGE, IndexDatabase.DATE_INDEX_SORT);
+        }
+        return (System.nanoTime() - start) / ROUNDS;
+    }
+}
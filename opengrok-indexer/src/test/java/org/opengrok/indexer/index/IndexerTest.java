@@ -365,6 +365,39 @@ public class IndexerTest {
         testrepo.destroy();
     }
 
+    /**
+     * Test that history cache generated in pipeline with indexing is complete
+     * once the indexing is done.
+     */
+    @Test
+    @EnabledForRepository(MERCURIAL)
+    void testHistoryCachePipeline() throws Exception {
+        RuntimeEnvironment env = RuntimeEnvironment.getInstance();
+
+        TestRepository testrepo = new TestRepository();
+        testrepo.create(HistoryGuru.class.getResourceAsStream("repositories.zip"));
+
+        env.setSourceRoot(testrepo.getSourceRoot());
+        env.setDataRoot(testrepo.getDataRoot());
+        env.setHistoryEnabled(true);
+        env.setProjectsEnabled(true);
+        env.setHistoryCachePipelineEnabled(true);
+        try {
+            Indexer.getInstance().prepareIndexer(env, true, true,
+                    false, null, null);
+            assertTrue(env.getProjects().containsKey("mercurial"));
+            Indexer.getInstance().doIndexerExecution(true, null, null);
+
+            assertTrue(HistoryGuru.getInstance().getCacheFuture(null).isDone());
+            File historyFile = new File(env.getDataRootPath(),
+                    TandemPath.join("historycache/mercurial/main.c", ".gz"));
+            assertTrue(historyFile.exists(), "history cache for main.c has to exist");
+        } finally {
+            env.setHistoryCachePipelineEnabled(false);
+            testrepo.destroy();
+        }
+    }
+
     @Test
     @EnabledForRepository(MERCURIAL)
     void testSetRepositories() throws Exception {
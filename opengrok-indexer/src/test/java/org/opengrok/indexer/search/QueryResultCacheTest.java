@@ -0,0 +1,126 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License (the "License").
+ * You may not use this file except in compliance with the License.
+ *
+ * See LICENSE.txt included in this distribution for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at LICENSE.txt.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information: Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ */
+
+/*
+ * Copyright (c) 2021, Oracle and/or its affiliates. All rights reserved.
+ */
+package org.opengrok.indexer.search;
+
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.search.TotalHits;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.opengrok.indexer.configuration.RuntimeEnvironment;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+public class QueryResultCacheTest {
+
+    private final RuntimeEnvironment env = RuntimeEnvironment.getInstance();
+    private final QueryResultCache cache = QueryResultCache.getInstance();
+    private long cacheSize;
+
+    @BeforeEach
+    public void setUp() {
+        cacheSize = env.getQueryResultCacheSize();
+        env.setQueryResultCacheSize(1024 * 1024);
+        cache.clear();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        cache.clear();
+        env.setQueryResultCacheSize(cacheSize);
+    }
+
+    private static QueryResultCache.Key key(String text, String project, long version) {
+        SortedMap<String, Long> versions = new TreeMap<>();
+        versions.put(project, version);
+        return new QueryResultCache.Key(new TermQuery(new Term(QueryBuilder.FULL, text)), "score", versions);
+    }
+
+    private static TopDocs topDocs(int count, long totalHits) {
+        ScoreDoc[] scoreDocs = new ScoreDoc[count];
+        for (int i = 0; i < count; i++) {
+            scoreDocs[i] = new ScoreDoc(i, count - i);
+        }
+        return new TopDocs(new TotalHits(totalHits, TotalHits.Relation.EQUAL_TO), scoreDocs);
+    }
+
+    @Test
+    public void testGet() {
+        cache.put(key("main", "p", 1), topDocs(10, 100));
+
+        TopDocs cached = cache.get(key("main", "p", 1), 5);
+        assertNotNull(cached);
+        assertEquals(5, cached.scoreDocs.length);
+        assertEquals(100, cached.totalHits.value);
+
+        // Not enough hits cached.
+        assertNull(cache.get(key("main", "p", 1), 20));
+        // Different index version or query.
+        assertNull(cache.get(key("main", "p", 2), 5));
+        assertNull(cache.get(key("other", "p", 1), 5));
+    }
+
+    @Test
+    public void testGetAllHits() {
+        cache.put(key("main", "p", 1), topDocs(3, 3));
+        TopDocs cached = cache.get(key("main", "p", 1), 10);
+        assertNotNull(cached);
+        assertEquals(3, cached.scoreDocs.length);
+    }
+
+    @Test
+    public void testInvalidate() {
+        cache.put(key("main", "p", 1), topDocs(3, 3));
+        cache.put(key("main", "q", 1), topDocs(3, 3));
+        cache.invalidate("p");
+        assertNull(cache.get(key("main", "p", 1), 3));
+        assertNotNull(cache.get(key("main", "q", 1), 3));
+    }
+
+    @Test
+    public void testEviction() {
+        cache.put(key("first", "p", 1), topDocs(100, 100));
+        long entrySize = cache.getSize();
+        env.setQueryResultCacheSize(entrySize + entrySize / 2);
+
+        cache.put(key("second", "p", 1), topDocs(100, 100));
+        assertNull(cache.get(key("first", "p", 1), 100));
+        assertNotNull(cache.get(key("second", "p", 1), 100));
+        assertEquals(entrySize, cache.getSize());
+    }
+
+    @Test
+    public void testDisabled() {
+        env.setQueryResultCacheSize(0);
+        cache.put(key("main", "p", 1), topDocs(3, 3));
+        assertNull(cache.get(key("main", "p", 1), 3));
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License (the "License").
+ * You may not use this file except in compliance with the License.
+ *
+ * See LICENSE.txt included in this distribution for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at LICENSE.txt.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information: Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ */
+
+/*
+ * Copyright (c) 2021, Oracle and/or its affiliates. All rights reserved.
+ */
+package org.opengrok.indexer.search;
+
+import java.io.IOException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.RegexpQuery;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.store.ByteBuffersDirectory;
+import org.apache.lucene.store.Directory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.opengrok.indexer.configuration.RuntimeEnvironment;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class SearchDeadlineTest {
+
+    private final RuntimeEnvironment env = RuntimeEnvironment.getInstance();
+    private long searchTimeout;
+    private Directory directory;
+    private DirectoryReader reader;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        searchTimeout = env.getSearchTimeout();
+        directory = new ByteBuffersDirectory();
+        try (IndexWriter writer = new IndexWriter(directory, new IndexWriterConfig(new StandardAnalyzer()))) {
+            for (int i = 0; i < 10; i++) {
+                Document doc = new Document();
+                doc.add(new TextField(QueryBuilder.FULL, "handler" + i, Field.Store.NO));
+                writer.addDocument(doc);
+            }
+        }
+        reader = DirectoryReader.open(directory);
+    }
+
+    @AfterEach
+    public void tearDown() throws IOException {
+        reader.close();
+        directory.close();
+        env.setSearchTimeout(searchTimeout);
+    }
+
+    @Test
+    public void testGetTimeout() {
+        env.setSearchTimeout(0);
+        assertEquals(0, SearchDeadline.getTimeout(null));
+        assertEquals(500, SearchDeadline.getTimeout(500L));
+
+        env.setSearchTimeout(1000);
+        assertEquals(1000, SearchDeadline.getTimeout(null));
+        assertEquals(500, SearchDeadline.getTimeout(500L));
+        assertEquals(1000, SearchDeadline.getTimeout(5000L));
+    }
+
+    @Test
+    public void testNoLimit() throws IOException {
+        SearchDeadline deadline = new SearchDeadline(0);
+        TopDocs topDocs = deadline.searchAfter(new IndexSearcher(reader), null,
+                new RegexpQuery(new Term(QueryBuilder.FULL, "hand.*")), 100);
+        assertEquals(10, topDocs.scoreDocs.length);
+        assertFalse(deadline.shouldExit());
+        assertFalse(deadline.isExceeded());
+    }
+
+    @Test
+    public void testWithinLimit() throws IOException {
+        SearchDeadline deadline = new SearchDeadline(60_000);
+        TopDocs topDocs = deadline.searchAfter(new IndexSearcher(reader), null,
+                new RegexpQuery(new Term(QueryBuilder.FULL, "hand.*")), 100);
+        assertEquals(10, topDocs.scoreDocs.length);
+        assertFalse(deadline.isExceeded());
+    }
+
+    @Test
+    public void testConcurrentSegments() throws IOException {
+        try (Directory segmentsDirectory = new ByteBuffersDirectory()) {
+            try (IndexWriter writer = new IndexWriter(segmentsDirectory,
+                    new IndexWriterConfig(new StandardAnalyzer()))) {
+                for (int i = 0; i < 12; i++) {
+                    Document doc = new Document();
+                    doc.add(new TextField(QueryBuilder.FULL, "handler" + i, Field.Store.NO));
+                    writer.addDocument(doc);
+                    writer.commit();
+                }
+            }
+            AtomicInteger executed = new AtomicInteger();
+            Executor executor = command -> {
+                executed.incrementAndGet();
+                command.run();
+            };
+            try (DirectoryReader segmentsReader = DirectoryReader.open(segmentsDirectory)) {
+                SearchDeadline deadline = new SearchDeadline(60_000);
+                TopDocs topDocs = deadline.searchAfter(new IndexSearcher(segmentsReader, executor), null,
+                        new RegexpQuery(new Term(QueryBuilder.FULL, "hand.*")), 100);
+                assertEquals(12, topDocs.scoreDocs.length);
+                assertFalse(deadline.isExceeded());
+                assertTrue(executed.get() > 0);
+            }
+        }
+    }
+
+    @Test
+    public void testExceeded() throws Exception {
+        SearchDeadline deadline = new SearchDeadline(1);
+        Thread.sleep(10);
+        assertTrue(deadline.shouldExit());
+        TopDocs topDocs = deadline.searchAfter(new IndexSearcher(reader), null,
+                new RegexpQuery(new Term(QueryBuilder.FULL, "hand.*")), 100);
+        assertEquals(0, topDocs.scoreDocs.length);
+        assertTrue(deadline.isExceeded());
+    }
+}
@@ -24,9 +24,12 @@
 package org.opengrok.indexer.search;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.Collections;
+import java.util.Set;
 import java.util.TreeSet;
 
+import org.apache.lucene.search.ScoreDoc;
 import org.junit.jupiter.api.AfterAll;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
@@ -148,6 +151,39 @@ public class SearchEngineTest {
                 instance.getQuery());
     }
 
+    @Test
+    public void testConcurrentProjectSearch() throws IOException {
+        RuntimeEnvironment env = RuntimeEnvironment.getInstance();
+        assertTrue(env.hasProjects());
+
+        Set<String> expected = searchPaths("main");
+        assertFalse(expected.isEmpty());
+
+        int threadCount = env.getProjectSearchThreadCount();
+        env.setProjectSearchThreadCount(2);
+        try {
+            assertEquals(expected, searchPaths("main"));
+        } finally {
+            env.setProjectSearchThreadCount(threadCount);
+        }
+    }
+
+    private static Set<String> searchPaths(String freetext) throws IOException {
+        SearchEngine instance = new SearchEngine();
+        instance.setFreetext(freetext);
+        Set<String> paths = new TreeSet<>();
+        try {
+            int count = instance.search();
+            assertEquals(count, instance.scoreDocs().length);
+            for (ScoreDoc scoreDoc : instance.scoreDocs()) {
+                paths.add(instance.doc(scoreDoc.doc).get(QueryBuilder.PATH));
+            }
+        } finally {
+            instance.destroy();
+        }
+        return paths;
+    }
+
     /* see https://github.com/oracle/opengrok/issues/2030
     @Test
     public void testSearch() {
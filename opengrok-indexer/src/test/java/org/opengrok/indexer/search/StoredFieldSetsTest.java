@@ -0,0 +1,137 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License (the "License").
+ * You may not use this file except in compliance with the License.
+ *
+ * See LICENSE.txt included in this distribution for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at LICENSE.txt.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information: Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ */
+
+/*
+ * Copyright (c) 2021, Oracle and/or its affiliates. All rights reserved.
+ */
+package org.opengrok.indexer.search;
+
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.TreeSet;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.opengrok.indexer.configuration.RuntimeEnvironment;
+import org.opengrok.indexer.index.Indexer;
+import org.opengrok.indexer.index.IndexerTest;
+import org.opengrok.indexer.util.TestRepository;
+import org.opengrok.indexer.web.SearchHelper;
+import org.opengrok.indexer.web.SortOrder;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks that the documents loaded with the {@link StoredFieldSets} have all
+ * the fields their uses read, by producing the search results from them.
+ */
+public class StoredFieldSetsTest {
+
+    private static TestRepository repository;
+    private static RuntimeEnvironment env;
+
+    @BeforeAll
+    public static void setUpClass() throws Exception {
+        repository = new TestRepository();
+        repository.create(IndexerTest.class.getResourceAsStream("source.zip"));
+
+        env = RuntimeEnvironment.getInstance();
+        env.setSourceRoot(repository.getSourceRoot());
+        env.setDataRoot(repository.getDataRoot());
+        env.setHistoryEnabled(false);
+        env.setProjectsEnabled(true);
+
+        Indexer.getInstance().prepareIndexer(env, true, true,
+                false, null, null);
+        env.setDefaultProjectsFromNames(new TreeSet<>(Collections.singletonList("/c")));
+        Indexer.getInstance().doIndexerExecution(true, null, null);
+    }
+
+    @AfterAll
+    public static void tearDownClass() {
+        repository.destroy();
+    }
+
+    /**
+     * The listing reads {@link StoredFieldSets#PATH} and
+     * {@link StoredFieldSets#LISTING}, and its context
+     * {@link StoredFieldSets#DEFINITIONS}, {@link StoredFieldSets#FILE_TYPE}
+     * and {@link StoredFieldSets#FILE_CONTENT}.
+     */
+    @Test
+    public void testListing() throws Exception {
+        boolean lastEditedDisplayMode = env.isLastEditedDisplayMode();
+        env.setLastEditedDisplayMode(true);
+
+        SearchHelper sh = new SearchHelper();
+        sh.dataRoot = env.getDataRootFile();
+        sh.order = SortOrder.RELEVANCY;
+        sh.builder = new QueryBuilder().setFreetext("foobar").setPath("foobar.c");
+        sh.start = 0;
+        sh.maxItems = env.getHitsPerPage();
+        sh.contextPath = env.getUrlPrefix();
+        sh.sourceRoot = env.getSourceRootFile();
+        try {
+            sh.prepareExec(new TreeSet<>(Collections.singleton("c"))).executeQuery().prepareSummary();
+            assertNull(sh.errorMsg);
+            assertTrue(sh.totalHits > 0);
+
+            StringWriter out = new StringWriter();
+            Results.prettyPrint(out, sh, 0, sh.totalHits);
+            String listing = out.toString();
+
+            assertTrue(listing.contains(">foobar.c</a>"), listing);
+            assertTrue(listing.contains("Last modified: "), listing);
+            assertTrue(listing.contains("<b>foobar</b>"), listing);
+        } finally {
+            sh.destroy();
+            env.setLastEditedDisplayMode(lastEditedDisplayMode);
+        }
+    }
+
+    /**
+     * {@link SearchEngine#results(int, int, List)} reads
+     * {@link StoredFieldSets#CONTEXT}.
+     */
+    @Test
+    public void testResultsContext() {
+        SearchEngine instance = new SearchEngine();
+        instance.setFreetext("foobar");
+        instance.setFile("foobar.c");
+        List<Hit> hits = new ArrayList<>();
+        try {
+            int noHits = instance.search();
+            assertTrue(noHits > 0);
+            instance.results(0, noHits, hits);
+        } finally {
+            instance.destroy();
+        }
+
+        assertFalse(hits.isEmpty());
+        for (Hit hit : hits) {
+            assertTrue(hit.getPath().endsWith("/foobar.c"), hit.getPath());
+        }
+        assertTrue(hits.stream().anyMatch(hit -> hit.getLine() != null && hit.getLine().contains("foobar")));
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License (the "License").
+ * You may not use this file except in compliance with the License.
+ *
+ * See LICENSE.txt included in this distribution for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at LICENSE.txt.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information: Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ */
+
+/*
+ * Copyright (c) 2021, Oracle and/or its affiliates. All rights reserved.
+ */
+package org.opengrok.indexer.search;
+
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.ConstantScoreQuery;
+import org.apache.lucene.search.PhraseQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.RegexpQuery;
+import org.apache.lucene.search.WildcardQuery;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TrigramQueryRewriterTest {
+
+    @Test
+    public void testLeadingWildcard() {
+        Query rewritten = TrigramQueryRewriter.rewriteQuery(
+                new WildcardQuery(new Term(QueryBuilder.FULL, "*handler")));
+        assertEquals(new ConstantScoreQuery(new PhraseQuery(QueryBuilder.FULL_TRIGRAMS,
+                "han", "and", "ndl", "dle", "ler", "er\u0003")), rewritten);
+    }
+
+    @Test
+    public void testInnerWildcard() {
+        WildcardQuery query = new WildcardQuery(new Term(QueryBuilder.FULL, "*ab?cd*"));
+        assertSame(query, TrigramQueryRewriter.rewriteQuery(query));
+
+        query = new WildcardQuery(new Term(QueryBuilder.FULL, "abc?def*"));
+        assertEquals(new TrigramTermQuery(query, new LinkedHashSet<>(Arrays.asList("\u0002ab", "abc", "def"))),
+                TrigramQueryRewriter.rewriteQuery(query));
+    }
+
+    @Test
+    public void testOtherFields() {
+        WildcardQuery query = new WildcardQuery(new Term(QueryBuilder.DEFS, "*handler"));
+        assertSame(query, TrigramQueryRewriter.rewriteQuery(query));
+    }
+
+    @Test
+    public void testRegexpLiterals() {
+        assertEquals(Arrays.asList("\u0002get", "handler\u0003"),
+                TrigramQueryRewriter.getRegexpLiterals("get.*handler"));
+        assertEquals(Arrays.asList("ab", "de"),
+                TrigramQueryRewriter.getRegexpLiterals("[x]abc?(foo)de+"));
+        assertNull(TrigramQueryRewriter.getRegexpLiterals("foo|bar"));
+
+        RegexpQuery query = new RegexpQuery(new Term(QueryBuilder.FULL, "get.*handler"));
+        Query rewritten = TrigramQueryRewriter.rewriteQuery(query);
+        assertTrue(rewritten instanceof TrigramTermQuery);
+        assertEquals(Set.of("\u0002ge", "get", "han", "and", "ndl", "dle", "ler", "er\u0003"),
+                ((TrigramTermQuery) rewritten).getTrigrams());
+
+        query = new RegexpQuery(new Term(QueryBuilder.FULL, "a.b"));
+        assertSame(query, TrigramQueryRewriter.rewriteQuery(query));
+    }
+}
@@ -0,0 +1,167 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License (the "License").
+ * You may not use this file except in compliance with the License.
+ *
+ * See LICENSE.txt included in this distribution for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at LICENSE.txt.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information: Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ */
+
+/*
+ * Copyright (c) 2021, Oracle and/or its affiliates. All rights reserved.
+ */
+package org.opengrok.indexer.search;
+
+import java.io.IOException;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import org.apache.lucene.analysis.core.WhitespaceAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.ConstantScoreQuery;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.MatchNoDocsQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.RegexpQuery;
+import org.apache.lucene.search.WildcardQuery;
+import org.apache.lucene.store.ByteBuffersDirectory;
+import org.apache.lucene.store.Directory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.opengrok.indexer.analysis.TrigramFilter;
+import org.opengrok.indexer.configuration.RuntimeEnvironment;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TrigramTermQueryTest {
+
+    private static final String[][] SEGMENTS = {
+            {"getHandler setHandler", "getHandlerFor handle", "get handler"},
+            {"getEventHandler abcXdefY", "abcdef abcxdef", "gethandler"},
+    };
+
+    private Directory directory;
+    private DirectoryReader reader;
+    private IndexSearcher searcher;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        directory = new ByteBuffersDirectory();
+        try (IndexWriter writer = new IndexWriter(directory, new IndexWriterConfig(new WhitespaceAnalyzer()))) {
+            for (String[] segment : SEGMENTS) {
+                for (String text : segment) {
+                    Document doc = new Document();
+                    doc.add(new TextField(QueryBuilder.FULL, text, Field.Store.NO));
+                    writer.addDocument(doc);
+                }
+                writer.commit();
+            }
+        }
+        reader = DirectoryReader.open(directory);
+        searcher = new IndexSearcher(reader);
+    }
+
+    @AfterEach
+    public void tearDown() throws IOException {
+        reader.close();
+        directory.close();
+    }
+
+    private static Set<String> trigrams(String... literals) {
+        Set<String> trigrams = new LinkedHashSet<>();
+        for (String literal : literals) {
+            trigrams.addAll(TrigramFilter.trigrams(literal));
+        }
+        return trigrams;
+    }
+
+    private void loadIndexes() throws IOException {
+        for (LeafReaderContext context : reader.leaves()) {
+            assertNotNull(TrigramTermIndex.load(context.reader(), QueryBuilder.FULL));
+        }
+    }
+
+    private void assertSameMatches(Query query) throws IOException {
+        Query rewritten = TrigramQueryRewriter.rewriteQuery(query);
+        assertNotSame(query, rewritten);
+        assertEquals(searcher.count(query), searcher.count(rewritten), query.toString());
+    }
+
+    @Test
+    public void testSameMatches() throws IOException {
+        assertTrue(reader.leaves().size() > 1);
+        assertSameMatches(new WildcardQuery(new Term(QueryBuilder.FULL, "get*Handler")));
+        assertSameMatches(new WildcardQuery(new Term(QueryBuilder.FULL, "*Handler?or")));
+        assertSameMatches(new WildcardQuery(new Term(QueryBuilder.FULL, "abc?def*")));
+        assertSameMatches(new RegexpQuery(new Term(QueryBuilder.FULL, "get.*Handler")));
+        assertSameMatches(new RegexpQuery(new Term(QueryBuilder.FULL, "abc[a-z]def")));
+    }
+
+    @Test
+    public void testRewriteToTerms() throws IOException {
+        loadIndexes();
+        Query query = new TrigramTermQuery(new WildcardQuery(new Term(QueryBuilder.FULL, "get*Handler")),
+                trigrams("\u0002get", "Handler\u0003"));
+        Query rewritten = searcher.rewrite(query);
+        assertTrue(rewritten instanceof ConstantScoreQuery, rewritten.toString());
+        assertEquals(2, searcher.count(rewritten));
+
+        query = new TrigramTermQuery(new WildcardQuery(new Term(QueryBuilder.FULL, "set*Handler")),
+                trigrams("\u0002set", "Handler\u0003", "xyz"));
+        assertTrue(searcher.rewrite(query) instanceof MatchNoDocsQuery);
+    }
+
+    /**
+     * The indexes are accounted while their segments are open.
+     */
+    @Test
+    public void testCacheSize() throws IOException {
+        long size = TrigramTermIndex.getCacheSize();
+        loadIndexes();
+        assertTrue(TrigramTermIndex.getCacheSize() > size);
+        reader.close();
+        assertEquals(size, TrigramTermIndex.getCacheSize());
+    }
+
+    /**
+     * The original query is used if the indexes do not fit within the size limit.
+     */
+    @Test
+    public void testIndexTooLarge() throws IOException {
+        RuntimeEnvironment env = RuntimeEnvironment.getInstance();
+        long size = env.getTrigramTermIndexCacheSize();
+        env.setTrigramTermIndexCacheSize(1);
+        try {
+            assertNull(TrigramTermIndex.load(reader.leaves().get(0).reader(), QueryBuilder.FULL));
+            WildcardQuery wildcard = new WildcardQuery(new Term(QueryBuilder.FULL, "set*Handler"));
+            Query query = new TrigramTermQuery(wildcard, trigrams("\u0002set", "Handler\u0003"));
+            assertSame(wildcard, query.rewrite(reader));
+            assertEquals(1, searcher.count(query));
+        } finally {
+            env.setTrigramTermIndexCacheSize(size);
+        }
+    }
+}
@@ -39,6 +39,7 @@ import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.atLeast;
 import static org.mockito.Mockito.times;
 
@@ -87,6 +88,21 @@ public class ProgressTest {
         Mockito.verify(logger, times(totalCount)).log(any(), anyString(), any(Object[].class));
     }
 
+    @Test
+    public void testUnknownTotalCount() {
+        final Logger logger = Mockito.mock(Logger.class);
+
+        Mockito.when(logger.isLoggable(any())).thenReturn(true);
+        try (Progress progress = new Progress(logger, "foo")) {
+            assertNotNull(progress.getLoggerThread());
+            for (int i = 0; i < 10; i++) {
+                progress.increment();
+            }
+        }
+
+        Mockito.verify(logger, atLeast(1)).log(any(), eq("Progress: {0} for {1}"), any(Object[].class));
+    }
+
     @Test
     public void testThreads() throws InterruptedException {
         final Logger logger = Mockito.mock(Logger.class);
@@ -23,6 +23,7 @@
  */
 package org.opengrok.web.api.v1.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import jakarta.inject.Inject;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.ws.rs.DefaultValue;
@@ -34,18 +35,26 @@ import jakarta.ws.rs.WebApplicationException;
 import jakarta.ws.rs.core.Context;
 import jakarta.ws.rs.core.MediaType;
 import jakarta.ws.rs.core.Response;
+import jakarta.ws.rs.core.StreamingOutput;
 import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
 import org.opengrok.indexer.configuration.Project;
 import org.opengrok.indexer.search.Hit;
+import org.opengrok.indexer.search.SearchDeadline;
 import org.opengrok.indexer.search.SearchEngine;
 import org.opengrok.indexer.web.QueryParameters;
 import org.opengrok.web.PageConfig;
 import org.opengrok.web.api.v1.filter.CorsEnable;
 import org.opengrok.web.api.v1.suggester.provider.service.SuggesterService;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
 import java.time.Duration;
 import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Base64;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
@@ -59,6 +68,17 @@ public class SearchController {
 
     private static final int MAX_RESULTS = 1000;
 
+    static final String CURSOR_PARAM = "cursor";
+
+    static final String TIMEOUT_PARAM = "timeout";
+
+    static final String STREAM_PATH = "stream";
+
+    /**
+     * Newline delimited JSON, one JSON document per line.
+     */
+    static final String NDJSON_MEDIA_TYPE = "application/x-ndjson";
+
     @Inject
     private SuggesterService suggester;
 
@@ -76,37 +96,130 @@ public class SearchController {
             @QueryParam("projects") final List<String> projects,
             @QueryParam("maxresults") // Akin to QueryParameters.COUNT_PARAM
             @DefaultValue(MAX_RESULTS + "") final int maxResults,
-            @QueryParam(QueryParameters.START_PARAM) @DefaultValue(0 + "") final int startDocIndex
+            @QueryParam(QueryParameters.START_PARAM) @DefaultValue(0 + "") final int startDocIndex,
+            @QueryParam(CURSOR_PARAM) final String cursor,
+            @QueryParam(TIMEOUT_PARAM) final Long timeout
     ) {
         try (SearchEngineWrapper engine = new SearchEngineWrapper(full, def, symbol, path, hist, type)) {
-
-            if (!engine.isValid()) {
-                throw new WebApplicationException("Invalid request", Response.Status.BAD_REQUEST);
-            }
-
             Instant startTime = Instant.now();
 
-            suggester.onSearch(projects, engine.getQuery());
+            int windowSize = searchWindow(engine, req, projects, maxResults, startDocIndex, cursor, timeout);
 
-            Map<String, List<SearchHit>> hits = engine.search(req, projects, startDocIndex, maxResults)
+            Map<String, List<SearchHit>> hits = engine.results(0, windowSize)
                     .stream()
                     .collect(Collectors.groupingBy(Hit::getPath,
                             Collectors.mapping(h -> new SearchHit(h.getLine(), h.getLineno()), Collectors.toList())));
 
             long duration = Duration.between(startTime, Instant.now()).toMillis();
 
-            int endDocument = startDocIndex + hits.size() - 1;
+            int endDocument = engine.startDocument + hits.size() - 1;
 
-            return new SearchResult(duration, engine.numResults, hits, startDocIndex, endDocument);
+            return new SearchResult(duration, engine.numResults, hits, engine.startDocument, endDocument,
+                    engine.nextCursor == null ? null : engine.nextCursor.encode(), engine.isPartial());
         }
     }
 
+    /**
+     * Streaming variant of {@link #search(HttpServletRequest, String, String, String, String, String, String,
+     * List, int, int, String, Long)}. The hits of each file are written as a separate line as soon as the context
+     * of the file is produced, followed by a line with the summary in the same form as the response of
+     * {@code search} with empty results.
+     */
+    @GET
+    @Path(STREAM_PATH)
+    @CorsEnable
+    @Produces(NDJSON_MEDIA_TYPE)
+    public StreamingOutput searchStream(
+            @Context final HttpServletRequest req,
+            @QueryParam(QueryParameters.FULL_SEARCH_PARAM) final String full,
+            @QueryParam("def") final String def, // Nearly QueryParameters.DEFS_SEARCH_PARAM
+            @QueryParam("symbol") final String symbol, // Akin to QueryBuilder.REFS_SEARCH_PARAM
+            @QueryParam(QueryParameters.PATH_SEARCH_PARAM) final String path,
+            @QueryParam(QueryParameters.HIST_SEARCH_PARAM) final String hist,
+            @QueryParam(QueryParameters.TYPE_SEARCH_PARAM) final String type,
+            @QueryParam("projects") final List<String> projects,
+            @QueryParam("maxresults") // Akin to QueryParameters.COUNT_PARAM
+            @DefaultValue(MAX_RESULTS + "") final int maxResults,
+            @QueryParam(QueryParameters.START_PARAM) @DefaultValue(0 + "") final int startDocIndex,
+            @QueryParam(CURSOR_PARAM) final String cursor,
+            @QueryParam(TIMEOUT_PARAM) final Long timeout
+    ) {
+        SearchEngineWrapper engine = new SearchEngineWrapper(full, def, symbol, path, hist, type);
+        try {
+            Instant startTime = Instant.now();
+
+            int windowSize = searchWindow(engine, req, projects, maxResults, startDocIndex, cursor, timeout);
+
+            return out -> {
+                try (SearchEngineWrapper searchEngine = engine) {
+                    ObjectMapper mapper = new ObjectMapper();
+                    int files = 0;
+                    for (int i = 0; i < windowSize; i++) {
+                        List<Hit> hits = searchEngine.results(i, i + 1);
+                        if (hits.isEmpty()) {
+                            continue;
+                        }
+                        List<SearchHit> fileHits = hits.stream()
+                                .map(h -> new SearchHit(h.getLine(), h.getLineno()))
+                                .collect(Collectors.toList());
+                        writeLine(mapper, out, new FileResult(hits.get(0).getPath(), fileHits));
+                        files++;
+                    }
+
+                    long duration = Duration.between(startTime, Instant.now()).toMillis();
+                    writeLine(mapper, out, new SearchResult(duration, searchEngine.numResults,
+                            Collections.emptyMap(), searchEngine.startDocument, searchEngine.startDocument + files - 1,
+                            searchEngine.nextCursor == null ? null : searchEngine.nextCursor.encode(),
+                            searchEngine.isPartial()));
+                }
+            };
+        } catch (RuntimeException e) {
+            engine.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Search the window of the results requested by the parameters.
+     * @return number of documents in the window
+     */
+    private int searchWindow(
+            final SearchEngineWrapper engine,
+            final HttpServletRequest req,
+            final List<String> projects,
+            final int maxResults,
+            final int startDocIndex,
+            final String cursor,
+            final Long timeout
+    ) {
+        if (!engine.isValid()) {
+            throw new WebApplicationException("Invalid request", Response.Status.BAD_REQUEST);
+        }
+        SearchCursor searchCursor = cursor == null ? null : SearchCursor.decode(cursor);
+        engine.setTimeout(SearchDeadline.getTimeout(timeout));
+
+        suggester.onSearch(projects, engine.getQuery());
+
+        return engine.search(req, projects, startDocIndex, maxResults, searchCursor);
+    }
+
+    private static void writeLine(final ObjectMapper mapper, final OutputStream out, final Object value)
+            throws IOException {
+        out.write(mapper.writeValueAsBytes(value));
+        out.write('\n');
+        out.flush();
+    }
+
     private static class SearchEngineWrapper implements AutoCloseable {
 
         private final SearchEngine engine = new SearchEngine();
 
         private int numResults;
 
+        private int startDocument;
+
+        private SearchCursor nextCursor;
+
         private SearchEngineWrapper(
                 final String full,
                 final String def,
@@ -123,33 +236,68 @@ public class SearchController {
             engine.setType(type);
         }
 
-        public List<Hit> search(
+        private void setTimeout(final long timeout) {
+            engine.setTimeout(timeout);
+        }
+
+        private boolean isPartial() {
+            return engine.isPartial();
+        }
+
+        /**
+         * Search only the window of {@code maxResults} hits starting either
+         * at {@code startDocIndex} or where {@code cursor} points to.
+         * @return number of documents in the window
+         */
+        public int search(
                 final HttpServletRequest req,
                 final List<String> projects,
                 final int startDocIndex,
-                final int maxResults
+                final int maxResults,
+                final SearchCursor cursor
         ) {
             Set<Project> allProjects = PageConfig.get(req).getProjectHelper().getAllProjects();
+            List<Project> searchedProjects;
             if (projects == null || projects.isEmpty()) {
-                numResults = engine.search(new ArrayList<>(allProjects));
+                searchedProjects = new ArrayList<>(allProjects);
             } else {
-                numResults = engine.search(allProjects.stream()
+                searchedProjects = allProjects.stream()
                         .filter(p -> projects.contains(p.getName()))
-                        .collect(Collectors.toList()));
+                        .collect(Collectors.toList());
             }
 
-            if (startDocIndex > numResults) {
-                return Collections.emptyList();
+            int windowSize = Math.max(maxResults, 1);
+            if (cursor == null) {
+                startDocument = Math.max(startDocIndex, 0);
+                numResults = engine.searchPage(searchedProjects, null, null, startDocument, windowSize);
+            } else {
+                // The engine falls back to the position if the index changed since the cursor was issued.
+                startDocument = cursor.position;
+                numResults = engine.searchPage(searchedProjects, cursor.after, cursor.indexVersion,
+                        startDocument, windowSize);
             }
 
-            int resultSize = numResults - startDocIndex;
-            if (resultSize > maxResults) {
-                resultSize = maxResults;
+            ScoreDoc[] window = engine.scoreDocs();
+            if (window == null || window.length == 0 || maxResults <= 0) {
+                return 0;
             }
 
-            List<Hit> results = new ArrayList<>();
-            engine.results(startDocIndex, startDocIndex + resultSize, results);
+            int nextPosition = startDocument + window.length;
+            if (nextPosition < numResults) {
+                nextCursor = new SearchCursor(nextPosition, window[window.length - 1], engine.getIndexVersion());
+            }
+            return window.length;
+        }
 
+        /**
+         * Produce the hits of the documents of the window from {@code start}
+         * up to {@code end} (exclusive) with their context.
+         */
+        public List<Hit> results(final int start, final int end) {
+            List<Hit> results = new ArrayList<>();
+            if (end > start) {
+                engine.results(start, end, results);
+            }
             return results;
         }
 
@@ -167,6 +315,67 @@ public class SearchController {
         }
     }
 
+    /**
+     * Opaque continuation token of the search results. It holds the last hit
+     * of the returned window so that the next window can be collected with
+     * {@code searchAfter} and, as a fallback for when the index has changed
+     * since, the position of the next window.
+     */
+    static final class SearchCursor {
+
+        /**
+         * Length of the index version digest, see {@link SearchEngine#getIndexVersion()}.
+         */
+        private static final int VERSION_SIZE = 32;
+
+        private static final int SIZE = 2 * Integer.BYTES + Float.BYTES + VERSION_SIZE;
+
+        private final int position;
+
+        private final ScoreDoc after;
+
+        private final byte[] indexVersion;
+
+        /**
+         * @param indexVersion version of the searched index or {@code null}
+         * if it is not known, in which case the cursor falls back to the position
+         */
+        SearchCursor(final int position, final ScoreDoc after, final byte[] indexVersion) {
+            this.position = position;
+            this.after = after;
+            this.indexVersion = indexVersion == null || indexVersion.length != VERSION_SIZE
+                    ? new byte[VERSION_SIZE] : indexVersion;
+        }
+
+        String encode() {
+            ByteBuffer buffer = ByteBuffer.allocate(SIZE);
+            buffer.putInt(position);
+            buffer.putInt(after.doc);
+            buffer.putFloat(after.score);
+            buffer.put(indexVersion);
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(buffer.array());
+        }
+
+        static SearchCursor decode(final String cursor) {
+            try {
+                ByteBuffer buffer = ByteBuffer.wrap(Base64.getUrlDecoder().decode(cursor));
+                if (buffer.remaining() != SIZE) {
+                    throw new IllegalArgumentException("unexpected cursor length");
+                }
+                int position = buffer.getInt();
+                ScoreDoc after = new ScoreDoc(buffer.getInt(), buffer.getFloat());
+                byte[] indexVersion = new byte[VERSION_SIZE];
+                buffer.get(indexVersion);
+                if (position < 0) {
+                    throw new IllegalArgumentException("negative position");
+                }
+                return new SearchCursor(position, after, indexVersion);
+            } catch (IllegalArgumentException | BufferUnderflowException e) {
+                throw new WebApplicationException("Invalid cursor", Response.Status.BAD_REQUEST);
+            }
+        }
+    }
+
     private static class SearchResult {
 
         private final long time;
@@ -179,18 +388,26 @@ public class SearchController {
 
         private final Map<String, List<SearchHit>> results;
 
+        private final String nextCursor;
+
+        private final boolean partialResult;
+
         private SearchResult(
                 final long time,
                 final int resultCount,
                 final Map<String, List<SearchHit>> results,
                 final int startDocument,
-                final int endDocument
+                final int endDocument,
+                final String nextCursor,
+                final boolean partialResult
         ) {
             this.time = time;
             this.resultCount = resultCount;
             this.results = results;
             this.startDocument = startDocument;
             this.endDocument = endDocument;
+            this.nextCursor = nextCursor;
+            this.partialResult = partialResult;
         }
 
         public long getTime() {
@@ -212,6 +429,42 @@ public class SearchController {
         public int getEndDocument() {
             return endDocument;
         }
+
+        /**
+         * @return token to pass as the {@code cursor} parameter to get the
+         * following results or {@code null} if there are none
+         */
+        public String getNextCursor() {
+            return nextCursor;
+        }
+
+        /**
+         * @return whether the search did not finish in time so that some
+         * hits may be missing or lack the matching lines
+         */
+        public boolean isPartialResult() {
+            return partialResult;
+        }
+    }
+
+    private static class FileResult {
+
+        private final String path;
+
+        private final List<SearchHit> results;
+
+        private FileResult(final String path, final List<SearchHit> results) {
+            this.path = path;
+            this.results = results;
+        }
+
+        public String getPath() {
+            return path;
+        }
+
+        public List<SearchHit> getResults() {
+            return results;
+        }
     }
 
     private static class SearchHit {
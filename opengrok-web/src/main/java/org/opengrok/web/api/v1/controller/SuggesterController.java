@@ -224,6 +224,7 @@ public final class SuggesterController {
                 logger.log(Level.WARNING, "Could not add search counts for " + urlStr, e);
             }
         }
+        suggester.flushSearchCounts();
     }
 
     private Query getQuery(final String field, final String value) throws ParseException {
@@ -89,6 +89,11 @@ public interface SuggesterService {
      */
     void onSearch(Iterable<String> projects, Query q);
 
+    /**
+     * Applies the most popular completion data updates of {@link #onSearch(Iterable, Query)} which are still pending.
+     */
+    void flushSearchCounts();
+
     /**
      * Increments most popular completion data for the specified {@code term} by {@code value}.
      * @param project project to update
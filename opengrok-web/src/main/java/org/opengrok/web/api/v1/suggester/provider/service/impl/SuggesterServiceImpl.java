@@ -248,6 +248,20 @@ public class SuggesterServiceImpl implements SuggesterService {
         }
     }
 
+    /** {@inheritDoc} */
+    @Override
+    public void flushSearchCounts() {
+        lock.readLock().lock();
+        try {
+            if (suggester == null) {
+                return;
+            }
+            suggester.flushSearchCounts();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
     /** {@inheritDoc} */
     @Override
     public boolean increaseSearchCount(final String project, final Term term, final int value) {
@@ -318,6 +332,8 @@ public class SuggesterServiceImpl implements SuggesterService {
                 suggesterConfig.getAllowedFields(),
                 suggesterConfig.getTimeThreshold(),
                 rebuildParalleismLevel,
+                suggesterConfig.isOffHeapLookups(),
+                suggesterConfig.getMaxResidentProjects(),
                 Metrics.getRegistry());
 
         new Thread(() -> {
@@ -198,6 +198,10 @@ include file="menu.jspf"
 	  }
         %></p><%
         }
+        if (searchHelper.deadline.isExceeded()) {
+        %>
+        <p class="pagetitle">The search did not finish in time, there may be hits it did not get to.</p><%
+        }
         %>
         <p class="pagetitle"> Your search <b><%
             Util.htmlize(searchHelper.query.toString(), out); %></b>
@@ -222,7 +226,7 @@ include file="menu.jspf"
         <p class="pagetitle">Searched <b><%
             Util.htmlize(searchHelper.query.toString(), out);
             %></b> (Results <b> <%= start + 1 %> – <%= thispage + start
-            %></b> of <b><%= totalHits %></b>) sorted by <%=
+            %></b> of <b><%= totalHits %><%= searchHelper.totalHitsExact ? "" : "+" %></b>) sorted by <%=
             searchHelper.order.getDesc() %></p><%
         if (slider.length() > 0) {
         %>
@@ -234,6 +238,10 @@ include file="menu.jspf"
         %>
         </table>
         <%
+        if (searchHelper.deadline.isExceeded()) {
+        %>
+        <p class="pagetitle">The search did not finish in time, the results are partial.</p><%
+        }
         if (slider.length() > 0) {
         %>
         <p class="slider"><%= slider %></p><%
@@ -22,8 +22,12 @@
  */
 package org.opengrok.web.api.v1.controller;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import jakarta.ws.rs.core.Application;
+import jakarta.ws.rs.WebApplicationException;
 import jakarta.ws.rs.core.Response;
+import org.apache.lucene.search.ScoreDoc;
 import org.junit.jupiter.api.AfterAll;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
@@ -34,6 +38,8 @@ import org.opengrok.web.api.v1.RestApp;
 import java.util.Collections;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.opengrok.web.api.v1.filter.CorsFilter.ALLOW_CORS_HEADER;
 import static org.opengrok.web.api.v1.filter.CorsFilter.CORS_REQUEST_HEADER;
 
@@ -75,4 +81,55 @@ public class SearchControllerTest extends OGKJerseyTest {
                 .get();
         assertEquals("*", response.getHeaderString(ALLOW_CORS_HEADER));
     }
+
+    @Test
+    public void testSearchCursorRoundTrip() {
+        byte[] indexVersion = new byte[32];
+        indexVersion[0] = 7;
+        SearchController.SearchCursor cursor = new SearchController.SearchCursor(10, new ScoreDoc(42, 1.5f),
+                indexVersion);
+        String token = cursor.encode();
+        assertEquals(token, SearchController.SearchCursor.decode(token).encode());
+    }
+
+    @Test
+    public void testInvalidSearchCursor() {
+        assertThrows(WebApplicationException.class, () -> SearchController.SearchCursor.decode("bogus"));
+
+        Response response = target(SearchController.PATH)
+                .queryParam("full", "main")
+                .queryParam(SearchController.CURSOR_PARAM, "bogus")
+                .request()
+                .get();
+        assertEquals(Response.Status.BAD_REQUEST.getStatusCode(), response.getStatus());
+    }
+
+    @Test
+    public void testSearchStreamInvalidRequest() {
+        Response response = target(SearchController.PATH)
+                .path(SearchController.STREAM_PATH)
+                .request()
+                .get();
+        assertEquals(Response.Status.BAD_REQUEST.getStatusCode(), response.getStatus());
+    }
+
+    @Test
+    public void testSearchStreamEndsWithSummary() throws Exception {
+        Response response = target(SearchController.PATH)
+                .path(SearchController.STREAM_PATH)
+                .queryParam("full", "main")
+                .request()
+                .get();
+        assertEquals(Response.Status.OK.getStatusCode(), response.getStatus());
+        assertEquals(SearchController.NDJSON_MEDIA_TYPE, response.getMediaType().toString());
+
+        String[] lines = response.readEntity(String.class).split("\n");
+        JsonNode summary = new ObjectMapper().readTree(lines[lines.length - 1]);
+        assertTrue(summary.has("resultCount"));
+        assertTrue(summary.has("partialResult"));
+        assertEquals(lines.length - 1, summary.get("endDocument").asInt() - summary.get("startDocument").asInt() + 1);
+        for (int i = 0; i < lines.length - 1; i++) {
+            assertTrue(new ObjectMapper().readTree(lines[i]).has("path"));
+        }
+    }
 }
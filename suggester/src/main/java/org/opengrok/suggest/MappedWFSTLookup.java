@@ -0,0 +1,218 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License (the "License").
+ * You may not use this file except in compliance with the License.
+ *
+ * See LICENSE.txt included in this distribution for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at LICENSE.txt.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information: Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ */
+
+/*
+ * Copyright (c) 2021, Oracle and/or its affiliates. All rights reserved.
+ */
+package org.opengrok.suggest;
+
+import org.apache.lucene.search.suggest.InputIterator;
+import org.apache.lucene.search.suggest.Lookup;
+import org.apache.lucene.search.suggest.fst.WFSTCompletionLookup;
+import org.apache.lucene.store.DataInput;
+import org.apache.lucene.store.DataOutput;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.IOContext;
+import org.apache.lucene.store.IndexInput;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.BytesRefBuilder;
+import org.apache.lucene.util.CharsRefBuilder;
+import org.apache.lucene.util.IOUtils;
+import org.apache.lucene.util.RamUsageEstimator;
+import org.apache.lucene.util.fst.FST;
+import org.apache.lucene.util.fst.OffHeapFSTStore;
+import org.apache.lucene.util.fst.PositiveIntOutputs;
+import org.apache.lucene.util.fst.Util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Read-only counterpart of {@link WFSTCompletionLookup} for the files stored by it. The FST is not loaded onto the
+ * heap but traversed in the memory-mapped file. Returns the same results as {@link WFSTCompletionLookup} with the
+ * exact match first.
+ */
+class MappedWFSTLookup extends Lookup implements Closeable {
+
+    private final IndexInput input;
+
+    private final long count;
+
+    /**
+     * {@code null} if the lookup has no entries.
+     */
+    private final FST<Long> fst;
+
+    /**
+     * @param dir memory-mapped directory with the stored WFST
+     * @param fileName name of the file stored by {@link WFSTCompletionLookup#store(java.io.OutputStream)}
+     * @throws IOException if the file could not be mapped
+     */
+    MappedWFSTLookup(final Directory dir, final String fileName) throws IOException {
+        input = dir.openInput(fileName, IOContext.READ);
+        try {
+            count = input.readVLong();
+            if (input.getFilePointer() < input.length()) {
+                fst = new FST<>(input, input, PositiveIntOutputs.getSingleton(), new OffHeapFSTStore());
+            } else {
+                fst = null;
+            }
+        } catch (IOException | RuntimeException e) {
+            IOUtils.closeWhileHandlingException(input);
+            throw e;
+        }
+    }
+
+    /**
+     * @return size of the mapped file in bytes
+     */
+    long getMappedBytes() {
+        return input.length();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getCount() {
+        return count;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public List<LookupResult> lookup(
+            final CharSequence key,
+            final Set<BytesRef> contexts,
+            final boolean onlyMorePopular,
+            int num
+    ) throws IOException {
+        if (contexts != null) {
+            throw new IllegalArgumentException("this suggester doesn't support contexts");
+        }
+        if (fst == null) {
+            return Collections.emptyList();
+        }
+
+        BytesRefBuilder scratch = new BytesRefBuilder();
+        scratch.copyChars(key);
+        int prefixLength = scratch.length();
+        FST.Arc<Long> arc = new FST.Arc<>();
+
+        Long prefixOutput = lookupPrefix(scratch.get(), arc);
+        if (prefixOutput == null) {
+            return Collections.emptyList();
+        }
+
+        List<LookupResult> results = new ArrayList<>(num);
+        CharsRefBuilder spare = new CharsRefBuilder();
+        if (arc.isFinal()) {
+            spare.copyUTF8Bytes(scratch.get());
+            results.add(new LookupResult(spare.toString(), decodeWeight(prefixOutput + arc.nextFinalOutput())));
+            if (--num == 0) {
+                return results;
+            }
+        }
+
+        Util.TopResults<Long> completions = Util.shortestPaths(fst, arc, prefixOutput, Long::compareTo, num, false);
+
+        BytesRefBuilder suffix = new BytesRefBuilder();
+        for (Util.Result<Long> completion : completions) {
+            scratch.setLength(prefixLength);
+            Util.toBytesRef(completion.input, suffix);
+            scratch.append(suffix);
+            spare.copyUTF8Bytes(scratch.get());
+            results.add(new LookupResult(spare.toString(), decodeWeight(completion.output)));
+        }
+        return results;
+    }
+
+    /**
+     * Returns the weight associated with an input string, or {@code null} if it does not exist.
+     * @param key input string
+     * @return weight of the input string
+     * @throws IOException if the mapped file could not be read
+     */
+    public Object get(final CharSequence key) throws IOException {
+        if (fst == null) {
+            return null;
+        }
+        FST.Arc<Long> arc = new FST.Arc<>();
+        Long result = lookupPrefix(new BytesRef(key), arc);
+        if (result == null || !arc.isFinal()) {
+            return null;
+        }
+        return decodeWeight(result + arc.nextFinalOutput());
+    }
+
+    private Long lookupPrefix(final BytesRef scratch, final FST.Arc<Long> arc) throws IOException {
+        long output = 0;
+        FST.BytesReader bytesReader = fst.getBytesReader();
+
+        fst.getFirstArc(arc);
+
+        byte[] bytes = scratch.bytes;
+        int pos = scratch.offset;
+        int end = pos + scratch.length;
+        while (pos < end) {
+            if (fst.findTargetArc(bytes[pos++] & 0xff, arc, arc, bytesReader) == null) {
+                return null;
+            }
+            output += arc.output();
+        }
+        return output;
+    }
+
+    /**
+     * Inverse of the weight encoding of {@link WFSTCompletionLookup}.
+     */
+    private static int decodeWeight(final long encoded) {
+        return (int) (Integer.MAX_VALUE - encoded);
+    }
+
+    @Override
+    public void build(final InputIterator inputIterator) {
+        throw new UnsupportedOperationException("Memory-mapped lookup is read-only");
+    }
+
+    @Override
+    public boolean store(final DataOutput output) {
+        throw new UnsupportedOperationException("Memory-mapped lookup is read-only");
+    }
+
+    @Override
+    public boolean load(final DataInput input) {
+        throw new UnsupportedOperationException("Memory-mapped lookup is read-only");
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long ramBytesUsed() {
+        return RamUsageEstimator.shallowSizeOf(this) + (fst == null ? 0 : fst.ramBytesUsed());
+    }
+
+    /**
+     * Unmaps the file. The lookup must no longer be used.
+     */
+    @Override
+    public void close() throws IOException {
+        input.close();
+    }
+}
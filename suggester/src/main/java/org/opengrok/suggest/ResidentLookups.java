@@ -0,0 +1,117 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License (the "License").
+ * You may not use this file except in compliance with the License.
+ *
+ * See LICENSE.txt included in this distribution for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at LICENSE.txt.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information: Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ */
+
+/*
+ * Copyright (c) 2021, Oracle and/or its affiliates. All rights reserved.
+ */
+package org.opengrok.suggest;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps track of the projects with memory-mapped lookups and unmaps the least recently used ones when there are
+ * more of them than allowed.
+ */
+final class ResidentLookups {
+
+    private final int maxResidentProjects;
+
+    /**
+     * Projects with mapped lookups in the access order.
+     */
+    private final Map<SuggesterProjectData, Boolean> projects = new LinkedHashMap<>(16, 0.75f, true);
+
+    private final Timer loadTimer;
+
+    /**
+     * @param maxResidentProjects maximum number of projects with mapped lookups
+     * @param registry registry for the load time and resident size metrics
+     */
+    ResidentLookups(final int maxResidentProjects, final MeterRegistry registry) {
+        if (maxResidentProjects < 1) {
+            throw new IllegalArgumentException("Maximum number of resident projects cannot be less than 1");
+        }
+        this.maxResidentProjects = maxResidentProjects;
+
+        loadTimer = Timer.builder("suggester.lookup.load.latency").
+                description("latency of memory-mapping the suggester data of a project").
+                register(registry);
+        Gauge.builder("suggester.lookup.resident.projects", this, ResidentLookups::getResidentProjects).
+                description("number of projects with memory-mapped suggester data").
+                register(registry);
+        Gauge.builder("suggester.lookup.resident.size", this, ResidentLookups::getResidentBytes).
+                description("size of the memory-mapped suggester data").
+                baseUnit("bytes").
+                register(registry);
+    }
+
+    /**
+     * Records that the lookups of the project were mapped and unmaps the least recently used projects if needed.
+     * @param data project data which mapped its lookups
+     * @param loadNanos time it took to map the lookups
+     */
+    void loaded(final SuggesterProjectData data, final long loadNanos) {
+        loadTimer.record(loadNanos, TimeUnit.NANOSECONDS);
+
+        List<SuggesterProjectData> evicted = new ArrayList<>();
+        synchronized (this) {
+            projects.put(data, Boolean.TRUE);
+            Iterator<SuggesterProjectData> it = projects.keySet().iterator();
+            while (projects.size() > maxResidentProjects) {
+                evicted.add(it.next());
+                it.remove();
+            }
+        }
+        // outside of the monitor, unloading waits for the project data
+        evicted.forEach(SuggesterProjectData::unload);
+    }
+
+    /**
+     * Marks the project as the most recently used one.
+     * @param data project data whose lookups were used
+     */
+    synchronized void touch(final SuggesterProjectData data) {
+        projects.get(data);
+    }
+
+    /**
+     * Stops tracking the project, e.g. because its lookups were unmapped.
+     * @param data project data
+     */
+    synchronized void remove(final SuggesterProjectData data) {
+        projects.remove(data);
+    }
+
+    synchronized int getResidentProjects() {
+        return projects.size();
+    }
+
+    synchronized long getResidentBytes() {
+        return projects.keySet().stream().mapToLong(SuggesterProjectData::getMappedBytes).sum();
+    }
+}
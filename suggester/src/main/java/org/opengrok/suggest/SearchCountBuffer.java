@@ -0,0 +1,160 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License (the "License").
+ * You may not use this file except in compliance with the License.
+ *
+ * See LICENSE.txt included in this distribution for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at LICENSE.txt.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information: Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ */
+
+/*
+ * Copyright (c) 2021, Oracle and/or its affiliates. All rights reserved.
+ */
+package org.opengrok.suggest;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.lucene.index.Term;
+
+import java.io.Closeable;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Coalesces the search count increments of the searches in memory and applies them to the popularity maps in
+ * batches on a background thread, so that the searches do not wait for the popularity maps. If there are too many
+ * terms with pending increments, the increments of the new terms are dropped.
+ */
+final class SearchCountBuffer implements Closeable {
+
+    private static final Logger LOGGER = Logger.getLogger(SearchCountBuffer.class.getName());
+
+    private final Map<PendingTerm, Integer> pending = new ConcurrentHashMap<>();
+
+    private final int maxPendingTerms;
+
+    private final Counter droppedCounter;
+
+    private final ScheduledExecutorService flushExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = Executors.defaultThreadFactory().newThread(runnable);
+        thread.setName("suggester-search-count-flush");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * @param maxPendingTerms maximum number of terms with pending increments
+     * @param flushInterval how often to apply the pending increments
+     * @param registry registry for the metrics
+     */
+    SearchCountBuffer(final int maxPendingTerms, final Duration flushInterval, final MeterRegistry registry) {
+        if (maxPendingTerms < 1) {
+            throw new IllegalArgumentException("Maximum number of pending terms cannot be less than 1");
+        }
+        this.maxPendingTerms = maxPendingTerms;
+
+        droppedCounter = Counter.builder("suggester.search.count.dropped").
+                description("search count increments dropped because of too many pending ones").
+                register(registry);
+        Gauge.builder("suggester.search.count.pending", pending, Map::size).
+                description("number of terms with pending search count increments").
+                register(registry);
+
+        long interval = flushInterval.toMillis();
+        flushExecutor.scheduleWithFixedDelay(this::flush, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Increments the search count of the term by 1 with the next flush.
+     * @param data project data with the term
+     * @param term term which was searched for
+     */
+    void increment(final SuggesterProjectData data, final Term term) {
+        PendingTerm key = new PendingTerm(data, term);
+        if (pending.size() >= maxPendingTerms && !pending.containsKey(key)) {
+            droppedCounter.increment();
+            return;
+        }
+        pending.merge(key, 1, Integer::sum);
+    }
+
+    /**
+     * Applies the pending increments to the popularity maps.
+     */
+    void flush() {
+        for (PendingTerm key : pending.keySet()) {
+            Integer value = pending.remove(key);
+            if (value == null) {
+                continue;
+            }
+            try {
+                key.data.incrementSearchCount(key.term, value);
+            } catch (Exception e) {
+                LOGGER.log(Level.FINE, "Could not update search count for " + key.term, e);
+            }
+        }
+    }
+
+    /**
+     * Stops the periodic flushing and applies the pending increments.
+     */
+    @Override
+    public void close() {
+        flushExecutor.shutdown();
+        try {
+            if (!flushExecutor.awaitTermination(1, TimeUnit.MINUTES)) {
+                LOGGER.log(Level.WARNING, "Search count flush did not finish in time");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+    }
+
+    private static final class PendingTerm {
+
+        private final SuggesterProjectData data;
+
+        private final Term term;
+
+        PendingTerm(final SuggesterProjectData data, final Term term) {
+            this.data = data;
+            this.term = term;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            PendingTerm that = (PendingTerm) o;
+            return data == that.data && term.equals(that.term);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(System.identityHashCode(data), term);
+        }
+    }
+}
@@ -27,11 +27,13 @@ import io.micrometer.core.instrument.Timer;
 import org.apache.commons.lang3.time.DurationFormatUtils;
 import org.apache.lucene.index.DirectoryReader;
 import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReaderContext;
 import org.apache.lucene.index.Term;
 import org.apache.lucene.search.Query;
 import org.apache.lucene.store.Directory;
 import org.apache.lucene.store.FSDirectory;
 import org.apache.lucene.util.BytesRef;
+import org.opengrok.suggest.popular.PopularityCounter;
 import org.opengrok.suggest.query.SuggesterPrefixQuery;
 import org.opengrok.suggest.query.SuggesterQuery;
 
@@ -73,6 +75,10 @@ public final class Suggester implements Closeable {
 
     private static final Logger LOGGER = Logger.getLogger(Suggester.class.getName());
 
+    private static final int MAX_PENDING_SEARCH_COUNTS = 100_000;
+
+    private static final Duration SEARCH_COUNT_FLUSH_INTERVAL = Duration.ofSeconds(1);
+
     private final Map<String, SuggesterProjectData> projectData = new ConcurrentHashMap<>();
 
     private final Object lock = new Object();
@@ -93,6 +99,16 @@ public final class Suggester implements Closeable {
 
     private final int rebuildParallelismLevel;
 
+    /**
+     * Projects with memory-mapped lookups or {@code null} if the lookups are kept on the heap.
+     */
+    private final ResidentLookups residentLookups;
+
+    /**
+     * Pending search count increments or {@code null} if the most popular completion is disabled.
+     */
+    private final SearchCountBuffer searchCountBuffer;
+
     private volatile boolean rebuilding;
     private volatile boolean terminating;
     private final Lock rebuildLock = new ReentrantLock();
@@ -121,7 +137,11 @@ public final class Suggester implements Closeable {
      * @param allowedFields fields for which should the suggester be enabled,
      * if {@code null} then enabled for all fields
      * @param timeThreshold time in milliseconds after which the suggestions requests should time out
-     * @param registry
+     * @param rebuildParallelismLevel number of threads used to rebuild the suggester data
+     * @param offHeapLookups specifies if the stored WFSTs should be memory-mapped on the first lookup instead of
+     * being loaded onto the heap
+     * @param maxResidentProjects maximum number of projects with memory-mapped WFSTs if {@code offHeapLookups}
+     * @param registry registry for the suggester metrics
      */
     public Suggester(
             final File suggesterDir,
@@ -132,6 +152,8 @@ public final class Suggester implements Closeable {
             final Set<String> allowedFields,
             final int timeThreshold,
             final int rebuildParallelismLevel,
+            final boolean offHeapLookups,
+            final int maxResidentProjects,
             MeterRegistry registry) {
         if (suggesterDir == null) {
             throw new IllegalArgumentException("Suggester needs to have directory specified");
@@ -150,6 +172,10 @@ public final class Suggester implements Closeable {
         this.allowedFields = new HashSet<>(allowedFields);
         this.timeThreshold = timeThreshold;
         this.rebuildParallelismLevel = rebuildParallelismLevel;
+        this.residentLookups = offHeapLookups ? new ResidentLookups(maxResidentProjects, registry) : null;
+        this.searchCountBuffer = allowMostPopular
+                ? new SearchCountBuffer(MAX_PENDING_SEARCH_COUNTS, SEARCH_COUNT_FLUSH_INTERVAL, registry)
+                : null;
 
         suggesterRebuildTimer = Timer.builder("suggester.rebuild.latency").
                 description("suggester rebuild latency").
@@ -225,7 +251,7 @@ public final class Suggester implements Closeable {
                 LOGGER.log(Level.FINE, "Initializing {0}", indexDir);
 
                 SuggesterProjectData wfst = new SuggesterProjectData(FSDirectory.open(indexDir.path),
-                        getSuggesterDir(indexDir.name), allowMostPopular, allowedFields);
+                        getSuggesterDir(indexDir.name), allowMostPopular, allowedFields, residentLookups);
                 wfst.init();
                 if (projectsEnabled) {
                     projectData.put(indexDir.name, wfst);
@@ -424,21 +450,12 @@ public final class Suggester implements Closeable {
                 partialResult.value = true;
                 return Stream.empty();
             }
-            boolean gotLock = data.tryLock();
-            if (!gotLock) { // do not wait for rebuild
-                partialResult.value = true;
-                return Stream.empty();
-            }
 
-            try {
-                String prefix = suggesterQuery.getPrefix().text();
+            String prefix = suggesterQuery.getPrefix().text();
 
-                return data.lookup(suggesterQuery.getField(), prefix, resultSize)
-                        .stream()
-                        .map(item -> new LookupResultItem(item.key.toString(), namedIndexReader.name, item.value));
-            } finally {
-                data.unlock();
-            }
+            return data.lookup(suggesterQuery.getField(), prefix, resultSize)
+                    .stream()
+                    .map(item -> new LookupResultItem(item.key.toString(), namedIndexReader.name, item.value));
         }).collect(Collectors.toList());
 
         return new Suggestions(results, partialResult.value);
@@ -452,7 +469,27 @@ public final class Suggester implements Closeable {
         List<LookupResultItem> results = new ArrayList<>(readers.size() * resultSize);
         List<SuggesterSearchTask> searchTasks = new ArrayList<>(readers.size());
         for (NamedIndexReader ir : readers) {
-            searchTasks.add(new SuggesterSearchTask(ir, query, suggesterQuery, results));
+            SuggesterProjectData data = projectData.get(ir.name);
+            if (data == null) {
+                LOGGER.log(Level.FINE, "{0} not yet initialized", ir.name);
+                continue;
+            }
+
+            SuggesterSearcher searcher = new SuggesterSearcher(ir.reader, resultSize);
+            Query rewrittenQuery;
+            try {
+                rewrittenQuery = searcher.rewriteQuery(query);
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Could not rewrite query", e);
+                continue;
+            }
+            PopularityCounter searchCounts = data.getSearchCounts(suggesterQuery.getField());
+
+            // search the segments concurrently so that the largest project does not dominate the latency
+            for (LeafReaderContext leafReaderContext : ir.reader.leaves()) {
+                searchTasks.add(new SuggesterSearchTask(searcher, leafReaderContext, ir.name, rewrittenQuery,
+                        suggesterQuery, searchCounts, results));
+            }
         }
 
         List<Future<Void>> futures;
@@ -489,7 +526,7 @@ public final class Suggester implements Closeable {
     }
 
     /**
-     * Handler for search events.
+     * Handler for search events. The search counts are updated asynchronously, see {@link #flushSearchCounts()}.
      * @param projects projects that the {@code query} was used to search in
      * @param query query that was used to perform the search
      */
@@ -504,7 +541,7 @@ public final class Suggester implements Closeable {
                 for (Term t : terms) {
                     SuggesterProjectData data = projectData.get(PROJECTS_DISABLED_KEY);
                     if (data != null) {
-                        data.incrementSearchCount(t);
+                        searchCountBuffer.increment(data, t);
                     }
                 }
             } else {
@@ -512,7 +549,7 @@ public final class Suggester implements Closeable {
                     for (Term t : terms) {
                         SuggesterProjectData data = projectData.get(project);
                         if (data != null) {
-                            data.incrementSearchCount(t);
+                            searchCountBuffer.increment(data, t);
                         }
                     }
                 }
@@ -524,6 +561,15 @@ public final class Suggester implements Closeable {
         }
     }
 
+    /**
+     * Applies the search count updates of {@link #onSearch(Iterable, Query)} which are still pending.
+     */
+    public void flushSearchCounts() {
+        if (searchCountBuffer != null) {
+            searchCountBuffer.flush();
+        }
+    }
+
     /**
      * Sets the new maximum number of elements the suggester should suggest.
      * @param resultSize new number of suggestions to return
@@ -553,6 +599,7 @@ public final class Suggester implements Closeable {
      * @param project project where the term resides
      * @param term term for which to increase search count
      * @param value positive value by which to increase the search count
+     * @param waitForLock has no effect, the search counts are no longer locked while the data is rebuilt
      * @return false if update failed, otherwise true
      */
     public boolean increaseSearchCount(final String project, final Term term, final int value, final boolean waitForLock) {
@@ -572,7 +619,7 @@ public final class Suggester implements Closeable {
             return false;
         }
 
-        return data.incrementSearchCount(term, value, waitForLock);
+        return data.incrementSearchCount(term, value);
     }
 
     /**
@@ -606,6 +653,9 @@ public final class Suggester implements Closeable {
     public void close() {
         executorService.shutdownNow();
         terminating = true;
+        if (searchCountBuffer != null) {
+            searchCountBuffer.close();
+        }
         projectData.values().forEach(f -> {
             try {
                 f.close();
@@ -615,25 +665,37 @@ public final class Suggester implements Closeable {
         });
     }
 
-    private class SuggesterSearchTask implements Callable<Void> {
+    /**
+     * Searches one segment of a project index for the suggestions.
+     */
+    private static class SuggesterSearchTask implements Callable<Void> {
 
-        private final NamedIndexReader namedIndexReader;
+        private final SuggesterSearcher searcher;
+        private final LeafReaderContext leafReaderContext;
+        private final String project;
         private final Query query;
         private final SuggesterQuery suggesterQuery;
+        private final PopularityCounter searchCounts;
         private final List<LookupResultItem> results;
 
         private volatile boolean finished = false;
         private volatile boolean started = false;
 
         SuggesterSearchTask(
-                final NamedIndexReader namedIndexReader,
+                final SuggesterSearcher searcher,
+                final LeafReaderContext leafReaderContext,
+                final String project,
                 final Query query,
                 final SuggesterQuery suggesterQuery,
+                final PopularityCounter searchCounts,
                 final List<LookupResultItem> results
         ) {
-            this.namedIndexReader = namedIndexReader;
+            this.searcher = searcher;
+            this.leafReaderContext = leafReaderContext;
+            this.project = project;
             this.query = query;
             this.suggesterQuery = suggesterQuery;
+            this.searchCounts = searchCounts;
             this.results = results;
         }
 
@@ -642,27 +704,11 @@ public final class Suggester implements Closeable {
             try {
                 started = true;
 
-                SuggesterProjectData data = projectData.get(namedIndexReader.name);
-                if (data == null) {
-                    LOGGER.log(Level.FINE, "{0} not yet initialized", namedIndexReader.name);
-                    return null;
-                }
-                boolean gotLock = data.tryLock();
-                if (!gotLock) { // do not wait for rebuild
-                    return null;
-                }
-
-                try {
-                    SuggesterSearcher searcher = new SuggesterSearcher(namedIndexReader.reader, resultSize);
+                List<LookupResultItem> resultItems = searcher.suggest(query, leafReaderContext, project,
+                        suggesterQuery, searchCounts);
 
-                    List<LookupResultItem> resultItems = searcher.suggest(query, namedIndexReader.name, suggesterQuery,
-                            data.getSearchCounts(suggesterQuery.getField()));
-
-                    synchronized (results) {
-                        results.addAll(resultItems);
-                    }
-                } finally {
-                    data.unlock();
+                synchronized (results) {
+                    results.addAll(resultItems);
                 }
             } finally {
                 synchronized (this) {
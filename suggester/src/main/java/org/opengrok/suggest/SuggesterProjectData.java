@@ -28,12 +28,12 @@ import org.apache.lucene.index.FieldInfos;
 import org.apache.lucene.index.IndexCommit;
 import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.Term;
-import org.apache.lucene.search.spell.LuceneDictionary;
 import org.apache.lucene.search.suggest.InputIterator;
 import org.apache.lucene.search.suggest.Lookup;
 import org.apache.lucene.search.suggest.fst.WFSTCompletionLookup;
 import org.apache.lucene.store.Directory;
 import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.store.MMapDirectory;
 import org.apache.lucene.util.BytesRef;
 import org.opengrok.suggest.popular.PopularityCounter;
 import org.opengrok.suggest.popular.PopularityMap;
@@ -46,8 +46,10 @@ import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
@@ -56,8 +58,9 @@ import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
-import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -76,6 +79,8 @@ class SuggesterProjectData implements Closeable {
 
     private static final String WFST_FILE_SUFFIX = ".wfst";
 
+    private static final String TERM_FREQUENCIES_FILE_SUFFIX = ".freqs";
+
     private static final String SEARCH_COUNT_MAP_NAME = "search_count.db";
 
     private static final String VERSION_FILE_NAME = "version.txt";
@@ -88,15 +93,33 @@ class SuggesterProjectData implements Closeable {
 
     private final Path suggesterDir;
 
-    private final Map<String, WFSTCompletionLookup> lookups = new HashMap<>();
+    private final boolean allowMostPopular;
+
+    /**
+     * Serializes the initialization, rebuilds and closing. Lookups do not take it, they use {@link #data}.
+     */
+    private final Lock lock = new ReentrantLock();
 
-    private final Map<String, PopularityMap> searchCountMaps = new HashMap<>();
+    /**
+     * Data used by the lookups, replaced as a whole by {@link #init()} and {@link #rebuild()}. Replaced only by
+     * {@link #swapData(Data)} and {@link #swapData(Data, Data)}.
+     */
+    private volatile Data data = new Data(Collections.emptySet(), Collections.emptyMap(), Collections.emptyMap());
 
-    private final Map<String, Double> averageLengths = new HashMap<>();
+    /**
+     * Serializes the memory mapping of the lookups.
+     */
+    private final Object loadLock = new Object();
 
-    private final boolean allowMostPopular;
+    /**
+     * Projects with memory-mapped lookups or {@code null} if the lookups are kept on the heap.
+     */
+    private final ResidentLookups residentLookups;
 
-    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    /**
+     * Directory used to memory-map the stored WFSTs or {@code null} if the lookups are kept on the heap.
+     */
+    private final Directory mappedDir;
 
     private final Set<String> allowedFields;
 
@@ -109,13 +132,29 @@ class SuggesterProjectData implements Closeable {
             final Path suggesterDir,
             final boolean allowMostPopular,
             final Set<String> allowedFields
+    ) throws IOException {
+        this(indexDir, suggesterDir, allowMostPopular, allowedFields, null);
+    }
+
+    /**
+     * @param residentLookups if not {@code null}, the stored WFSTs are memory-mapped on the first lookup instead of
+     * being loaded onto the heap and unmapped when the project is evicted from {@code residentLookups}
+     */
+    SuggesterProjectData(
+            final Directory indexDir,
+            final Path suggesterDir,
+            final boolean allowMostPopular,
+            final Set<String> allowedFields,
+            final ResidentLookups residentLookups
     ) throws IOException {
         this.indexDir = indexDir;
         this.suggesterDir = suggesterDir;
         this.allowMostPopular = allowMostPopular;
         this.allowedFields = allowedFields;
+        this.residentLookups = residentLookups;
 
         tempDir = FSDirectory.open(Paths.get(System.getProperty(TMP_DIR_PROPERTY)));
+        mappedDir = residentLookups != null ? new MMapDirectory(suggesterDir) : null;
 
         initFields();
     }
@@ -146,24 +185,24 @@ class SuggesterProjectData implements Closeable {
      * @throws IOException if initialization was not successful
      */
     public void init() throws IOException {
-        lock.writeLock().lock();
+        lock.lock();
         try {
             long commitVersion = getCommitVersion();
 
+            Map<String, Double> averageLengths = new HashMap<>();
+            Map<String, Lookup> lookups;
             if (hasStoredData() && commitVersion == getDataVersion()) {
-                loadStoredWFSTs();
+                lookups = loadStoredWFSTs(averageLengths);
             } else {
                 createSuggesterDir();
-                build();
+                lookups = build(averageLengths);
             }
 
-            if (allowMostPopular) {
-                initSearchCountMap();
-            }
+            swap(lookups, averageLengths);
 
             storeDataVersion(commitVersion);
         } finally {
-            lock.writeLock().unlock();
+            lock.unlock();
         }
     }
 
@@ -186,25 +225,29 @@ class SuggesterProjectData implements Closeable {
         return children != null && children.length > 0;
     }
 
-    private void loadStoredWFSTs() throws IOException {
+    private Map<String, Lookup> loadStoredWFSTs(final Map<String, Double> averageLengths)
+            throws IOException {
+        Map<String, Lookup> lookups = new HashMap<>();
         try (IndexReader indexReader = DirectoryReader.open(indexDir)) {
             for (String field : fields) {
 
                 File WFSTfile = getWFSTFile(field);
                 if (WFSTfile.exists()) {
-                    WFSTCompletionLookup WFST = loadStoredWFST(WFSTfile);
+                    Lookup WFST = mappedDir != null ? new MappedWFSTLookup(mappedDir, WFSTfile.getName())
+                            : loadStoredWFST(WFSTfile);
                     lookups.put(field, WFST);
                 } else {
                     logger.log(Level.INFO, "Missing WFST file for {0} field in {1}, creating a new one",
                             new Object[] {field, suggesterDir});
 
-                    WFSTCompletionLookup lookup = build(indexReader, field);
+                    WFSTCompletionLookup lookup = build(indexReader, field, averageLengths);
                     store(lookup, field);
 
                     lookups.put(field, lookup);
                 }
             }
         }
+        return lookups;
     }
 
     private WFSTCompletionLookup loadStoredWFST(final File file) throws IOException {
@@ -228,42 +271,57 @@ class SuggesterProjectData implements Closeable {
     }
 
     /**
-     * Forces the rebuild of the data structure.
+     * Forces the rebuild of the data structure. The lookups keep using the current data until the new one is
+     * built.
      * @throws IOException if some error occurred
      */
     public void rebuild() throws IOException {
-        lock.writeLock().lock();
+        lock.lock();
         try {
             initFields();
-            build();
+            Map<String, Double> averageLengths = new HashMap<>();
+            Map<String, Lookup> lookups = build(averageLengths);
 
-            if (allowMostPopular) {
-                initSearchCountMap();
-            }
+            swap(lookups, averageLengths);
 
             storeDataVersion(getCommitVersion());
         } finally {
-            lock.writeLock().unlock();
+            lock.unlock();
         }
     }
 
-    private void build() throws IOException {
+    private Map<String, Lookup> build(final Map<String, Double> averageLengths) throws IOException {
+        Map<String, Lookup> lookups = new HashMap<>();
         try (IndexReader indexReader = DirectoryReader.open(indexDir)) {
             for (String field : fields) {
-                WFSTCompletionLookup lookup = build(indexReader, field);
+                WFSTCompletionLookup lookup = build(indexReader, field, averageLengths);
                 store(lookup, field);
 
                 lookups.put(field, lookup);
             }
         }
+        return lookups;
     }
 
-    private WFSTCompletionLookup build(final IndexReader indexReader, final String field) throws IOException {
-        WFSTInputIterator iterator = new WFSTInputIterator(
-                new LuceneDictionary(indexReader, field).getEntryIterator(), indexReader, field, getSearchCounts(field));
+    private WFSTCompletionLookup build(final IndexReader indexReader, final String field,
+                                       final Map<String, Double> averageLengths) throws IOException {
+        File stored = getFile(field + TERM_FREQUENCIES_FILE_SUFFIX);
+        File tempFile = getFile(field + TERM_FREQUENCIES_FILE_SUFFIX + ".tmp");
 
         WFSTCompletionLookup lookup = createWFST();
-        lookup.build(iterator);
+        WFSTInputIterator iterator;
+        try (TermFrequencies frequencies = new TermFrequencies(stored, indexReader, field, tempFile)) {
+            logger.log(Level.FINE, "Reading {0} terms of field {1} for {2}",
+                    new Object[] {frequencies.isIncremental() ? "new" : "all", field, suggesterDir});
+
+            iterator = new WFSTInputIterator(frequencies, indexReader.numDocs(), getSearchCounts(field));
+            lookup.build(iterator);
+        } catch (IOException e) {
+            // read all the terms the next time
+            Files.deleteIfExists(stored.toPath());
+            throw e;
+        }
+        Files.move(tempFile.toPath(), stored.toPath(), StandardCopyOption.REPLACE_EXISTING);
 
         if (lookup.getCount() > 0) {
             double averageLength = (double) iterator.termLengthAccumulator / lookup.getCount();
@@ -273,10 +331,17 @@ class SuggesterProjectData implements Closeable {
         return lookup;
     }
 
+    /**
+     * Stores the WFST to a temporary file first so that the stored one is replaced only once the new one is
+     * complete.
+     */
     private void store(final WFSTCompletionLookup WFST, final String field) throws IOException {
-        try (FileOutputStream fos = new FileOutputStream(getWFSTFile(field))) {
+        File file = getWFSTFile(field);
+        File tempFile = getFile(field + WFST_FILE_SUFFIX + ".tmp");
+        try (FileOutputStream fos = new FileOutputStream(tempFile)) {
             WFST.store(fos);
         }
+        Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
     }
 
     private void createSuggesterDir() throws IOException {
@@ -288,9 +353,114 @@ class SuggesterProjectData implements Closeable {
         }
     }
 
-    private void initSearchCountMap() throws IOException {
-        searchCountMaps.values().forEach(PopularityMap::close);
-        searchCountMaps.clear();
+    /**
+     * Replaces the data used by the lookups with the new lookups and their popularity maps. The replaced data
+     * is released once the lookups using it finish. Memory-mapped lookups are mapped again on the first use.
+     */
+    private void swap(final Map<String, Lookup> lookups, final Map<String, Double> averageLengths)
+            throws IOException {
+        Map<String, PopularityMap> searchCountMaps = Collections.emptyMap();
+        if (allowMostPopular) {
+            searchCountMaps = initSearchCountMaps(lookups, averageLengths);
+        }
+
+        Set<String> lookupFields = new HashSet<>(lookups.keySet());
+        if (residentLookups != null) {
+            closeLookups(lookups);
+            swapData(new Data(lookupFields, null, searchCountMaps));
+            residentLookups.remove(this);
+        } else {
+            swapData(new Data(lookupFields, lookups, searchCountMaps));
+        }
+    }
+
+    private synchronized void swapData(final Data replacement) {
+        Data old = data;
+        data = replacement;
+        old.retire(replacement);
+    }
+
+    private synchronized boolean swapData(final Data expected, final Data replacement) {
+        if (data != expected) {
+            return false;
+        }
+        swapData(replacement);
+        return true;
+    }
+
+    private static void closeLookups(final Map<String, Lookup> lookups) {
+        for (Lookup lookup : lookups.values()) {
+            if (lookup instanceof MappedWFSTLookup) {
+                try {
+                    ((MappedWFSTLookup) lookup).close();
+                } catch (IOException e) {
+                    logger.log(Level.WARNING, "Could not unmap WFST", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Memory-maps the stored WFSTs if they are not mapped yet.
+     */
+    private void load() {
+        long start = System.nanoTime();
+        synchronized (loadLock) {
+            Data current = data;
+            if (current.lookups != null) {
+                return;
+            }
+
+            Map<String, Lookup> lookups = new HashMap<>();
+            try {
+                for (String field : current.fields) {
+                    File file = getWFSTFile(field);
+                    if (file.exists()) {
+                        lookups.put(field, new MappedWFSTLookup(mappedDir, file.getName()));
+                    }
+                }
+            } catch (IOException e) {
+                logger.log(Level.WARNING, "Could not memory-map WFSTs in " + suggesterDir, e);
+                closeLookups(lookups);
+                return;
+            }
+
+            if (!swapData(current, new Data(current.fields, lookups, current.searchCountMaps))) {
+                // replaced by a rebuild in the meantime
+                closeLookups(lookups);
+                return;
+            }
+        }
+        residentLookups.loaded(this, System.nanoTime() - start);
+    }
+
+    /**
+     * Unmaps the memory-mapped WFSTs once the lookups using them finish. They are mapped again on the next lookup.
+     */
+    void unload() {
+        Data current = data;
+        if (current.lookups == null || current.isClosed()) {
+            return;
+        }
+        swapData(current, new Data(current.fields, null, current.searchCountMaps));
+    }
+
+    /**
+     * @return size of the memory-mapped WFSTs in bytes
+     */
+    long getMappedBytes() {
+        return data.mappedBytes;
+    }
+
+    /**
+     * Gets the popularity maps for the new lookups. The maps of the current data are reused, so the search
+     * counts incremented while the new lookups were built are kept.
+     */
+    private Map<String, PopularityMap> initSearchCountMaps(
+            final Map<String, Lookup> lookups,
+            final Map<String, Double> averageLengths
+    ) throws IOException {
+        Map<String, PopularityMap> searchCountMaps = new HashMap<>();
 
         for (String field : fields) {
             int numEntries = (int) lookups.get(field).getCount();
@@ -302,29 +472,33 @@ class SuggesterProjectData implements Closeable {
 
             ChronicleMapConfiguration conf = ChronicleMapConfiguration.load(suggesterDir, field);
             if (conf == null) { // it was not yet initialized
-                conf = new ChronicleMapConfiguration(numEntries, getAverageLength(field));
+                conf = new ChronicleMapConfiguration(numEntries, getAverageLength(field, averageLengths));
                 conf.save(suggesterDir, field);
             }
 
-            File f = getChronicleMapFile(field);
-
+            PopularityMap current = data.searchCountMaps.get(field);
             ChronicleMapAdapter m;
-            try {
-                m = new ChronicleMapAdapter(field, conf.getAverageKeySize(), conf.getEntries(), f);
-            } catch (IllegalArgumentException e) {
-                logger.log(Level.SEVERE, "Could not create ChronicleMap for field " + field + " in directory "
-                        + suggesterDir + " due to invalid key size ("
-                        + conf.getAverageKeySize() + ") or number of entries: (" + conf.getEntries() + "):", e);
-                return;
-            } catch (Throwable t) {
-                logger.log(Level.SEVERE,
-                        "Could not create ChronicleMap for field " + field + " in directory "
-                                + suggesterDir + " , most popular completion disabled, if you are using "
-                                + "JDK9+ make sure to specify: "
-                                + "--add-exports java.base/jdk.internal.ref=ALL-UNNAMED "
-                                + "--add-exports java.base/jdk.internal.misc=ALL-UNNAMED "
-                                + "--add-exports java.base/sun.nio.ch=ALL-UNNAMED", t);
-                return;
+            if (current instanceof ChronicleMapAdapter) {
+                m = (ChronicleMapAdapter) current;
+            } else {
+                File f = getChronicleMapFile(field);
+                try {
+                    m = new ChronicleMapAdapter(field, conf.getAverageKeySize(), conf.getEntries(), f);
+                } catch (IllegalArgumentException e) {
+                    logger.log(Level.SEVERE, "Could not create ChronicleMap for field " + field + " in directory "
+                            + suggesterDir + " due to invalid key size ("
+                            + conf.getAverageKeySize() + ") or number of entries: (" + conf.getEntries() + "):", e);
+                    return searchCountMaps;
+                } catch (Throwable t) {
+                    logger.log(Level.SEVERE,
+                            "Could not create ChronicleMap for field " + field + " in directory "
+                                    + suggesterDir + " , most popular completion disabled, if you are using "
+                                    + "JDK9+ make sure to specify: "
+                                    + "--add-exports java.base/jdk.internal.ref=ALL-UNNAMED "
+                                    + "--add-exports java.base/jdk.internal.misc=ALL-UNNAMED "
+                                    + "--add-exports java.base/sun.nio.ch=ALL-UNNAMED", t);
+                    return searchCountMaps;
+                }
             }
 
             if (getCommitVersion() != getDataVersion()) {
@@ -332,24 +506,41 @@ class SuggesterProjectData implements Closeable {
 
                 if (conf.getEntries() < lookups.get(field).getCount()) {
                     int newEntriesCount = (int) lookups.get(field).getCount();
-                    double newKeyAvgLength = getAverageLength(field);
+                    double newKeyAvgLength = getAverageLength(field, averageLengths);
 
                     conf.setEntries(newEntriesCount);
                     conf.setAverageKeySize(newKeyAvgLength);
                     conf.save(suggesterDir, field);
 
-                    m.resize(newEntriesCount, newKeyAvgLength);
+                    if (m == current) {
+                        // the current map stays in use until the swap
+                        m = resizedCopy(m, newEntriesCount, newKeyAvgLength);
+                    } else {
+                        m.resize(newEntriesCount, newKeyAvgLength);
+                    }
                 }
             }
             searchCountMaps.put(field, m);
         }
+        return searchCountMaps;
+    }
+
+    private ChronicleMapAdapter resizedCopy(final ChronicleMapAdapter m, final int newEntriesCount,
+                                            final double newKeyAvgLength) {
+        try {
+            return m.resizedCopy(newEntriesCount, newKeyAvgLength);
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Could not resize ChronicleMap in directory " + suggesterDir
+                    + ", keeping the current one", e);
+            return m;
+        }
     }
 
     private File getChronicleMapFile(final String field) {
         return suggesterDir.resolve(field + "_" + SEARCH_COUNT_MAP_NAME).toFile();
     }
 
-    private double getAverageLength(final String field) {
+    private double getAverageLength(final String field, final Map<String, Double> averageLengths) {
         if (averageLengths.containsKey(field)) {
             return averageLengths.get(field);
         }
@@ -357,8 +548,57 @@ class SuggesterProjectData implements Closeable {
         return AVERAGE_LENGTH_DEFAULT;
     }
 
-    private void removeOldTerms(final ChronicleMapAdapter adapter, final WFSTCompletionLookup lookup) {
-        adapter.removeIf(key -> lookup.get(key.toString()) == null);
+    private void removeOldTerms(final ChronicleMapAdapter adapter, final Lookup lookup) {
+        adapter.removeIf(key -> get(lookup, key.toString()) == null);
+    }
+
+    private static Object get(final Lookup lookup, final String key) {
+        if (lookup instanceof MappedWFSTLookup) {
+            try {
+                return ((MappedWFSTLookup) lookup).get(key);
+            } catch (IOException e) {
+                logger.log(Level.WARNING, "Could not read memory-mapped WFST", e);
+                return null;
+            }
+        }
+        return ((WFSTCompletionLookup) lookup).get(key);
+    }
+
+    /**
+     * Acquires the current data. It has to be released by {@link Data#release()} once it is no longer used.
+     * @return current data or {@code null} if this object was closed
+     */
+    private Data acquireData() {
+        while (true) {
+            Data current = data;
+            if (current.acquire()) {
+                return current;
+            }
+            if (current == data) {
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Acquires the current data with the lookups memory-mapped if they are not kept on the heap.
+     * @return current data or {@code null} if this object was closed
+     * @see #acquireData()
+     */
+    private Data acquireLoadedData() {
+        Data current = acquireData();
+        if (current == null || residentLookups == null) {
+            return current;
+        }
+        if (current.lookups == null) {
+            current.release();
+            load();
+            current = acquireData();
+        }
+        if (current != null && current.lookups != null) {
+            residentLookups.touch(this);
+        }
+        return current;
     }
 
     /**
@@ -369,9 +609,12 @@ class SuggesterProjectData implements Closeable {
      * @return terms with highest score
      */
     public List<Lookup.LookupResult> lookup(final String field, final String prefix, final int resultSize) {
-        lock.readLock().lock();
+        Data current = acquireLoadedData();
+        if (current == null) {
+            return Collections.emptyList();
+        }
         try {
-            WFSTCompletionLookup lookup = lookups.get(field);
+            Lookup lookup = current.getLookup(field);
             if (lookup == null) {
                 logger.log(Level.WARNING, "No WFST for field {0} in {1}", new Object[] {field, suggesterDir});
                 return Collections.emptyList();
@@ -381,7 +624,7 @@ class SuggesterProjectData implements Closeable {
             logger.log(Level.WARNING, "Could not perform lookup in {0} for {1}:{2}",
                     new Object[] {suggesterDir, field, prefix});
         } finally {
-            lock.readLock().unlock();
+            current.release();
         }
         return Collections.emptyList();
     }
@@ -390,7 +633,7 @@ class SuggesterProjectData implements Closeable {
      * Removes all stored data structures.
      */
     public void remove() {
-        lock.writeLock().lock();
+        lock.lock();
         try {
             try {
                 close();
@@ -404,7 +647,7 @@ class SuggesterProjectData implements Closeable {
                 logger.log(Level.WARNING, "Cannot remove suggester data: {0}", suggesterDir);
             }
         } finally {
-            lock.writeLock().unlock();
+            lock.unlock();
         }
     }
 
@@ -423,79 +666,75 @@ class SuggesterProjectData implements Closeable {
      * @return false if update failed, otherwise true
      */
     public boolean incrementSearchCount(final Term term, final int value) {
-        return incrementSearchCount(term, value, false);
-    }
-
-    boolean incrementSearchCount(final Term term, final int value, boolean waitForLock) {
         if (term == null) {
             throw new IllegalArgumentException("Cannot increment search count for null");
         }
 
-        boolean ret = false;
-        boolean gotLock;
-        if (waitForLock) {
-            lock.readLock().lock();
-        } else {
-            gotLock = lock.readLock().tryLock();
-            if (!gotLock) {
-                logger.log(Level.INFO, "Cannot increment search count for term {0} in {1}, rebuild in progress",
-                        new Object[]{term, suggesterDir});
-                return false;
-            }
+        Data current = acquireLoadedData();
+        if (current == null) {
+            return false;
         }
-
         try {
-            if (lookups.get(term.field()).get(term.text()) == null) {
+            Lookup lookup = current.getLookup(term.field());
+            if (lookup == null || get(lookup, term.text()) == null) {
                 logger.log(Level.FINE, "Cannot increment search count for unknown term {0} in {1}",
                         new Object[]{term, suggesterDir});
                 return false; // unknown term
             }
 
-            PopularityMap map = searchCountMaps.get(term.field());
+            PopularityMap map = current.searchCountMaps.get(term.field());
             if (map != null) {
                 map.increment(term.bytes(), value);
-                ret = true;
+                return true;
             }
         } finally {
-            lock.readLock().unlock();
+            current.release();
         }
-        return ret;
+        return false;
     }
 
     /**
-     * Returns search counts for term field. For the time the returned data structure is used this object needs to be
-     * locked by {@link #tryLock()}.
+     * Returns search counts for term field. The counts are always read from the current data.
      * @param field term field
      * @return search counts object
      */
     public PopularityCounter getSearchCounts(final String field) {
-        if (!searchCountMaps.containsKey(field)) {
-            return key -> 0;
-        }
-
-        return key -> searchCountMaps.get(field).get(key);
+        return key -> {
+            Data current = acquireData();
+            if (current == null) {
+                return 0;
+            }
+            try {
+                PopularityMap map = current.searchCountMaps.get(field);
+                return map == null ? 0 : map.get(key);
+            } finally {
+                current.release();
+            }
+        };
     }
 
     /**
-     * Closes the open data structures.
+     * Closes the open data structures. The popularity maps are closed once the lookups using them finish.
      * @throws IOException if the index directory could not be closed
      */
     @Override
     public void close() throws IOException {
-        lock.writeLock().lock();
+        lock.lock();
         try {
-            searchCountMaps.values().forEach(val -> {
-                try {
-                    val.close();
-                } catch (Exception e) {
-                    logger.log(Level.WARNING, "Could not properly close most popular completion data", e);
-                }
-            });
+            swapData(Data.closed());
+            if (residentLookups != null) {
+                residentLookups.remove(this);
+            }
+
             indexDir.close();
 
             tempDir.close();
+
+            if (mappedDir != null) {
+                mappedDir.close();
+            }
         } finally {
-            lock.writeLock().unlock();
+            lock.unlock();
         }
     }
 
@@ -522,21 +761,6 @@ class SuggesterProjectData implements Closeable {
         }
     }
 
-    /**
-     * Tries to lock the inner data structures for reading, so far only for {@link #getSearchCounts(String)}.
-     * @return {@code true} if lock was acquired, {@code false} otherwise
-     */
-    public boolean tryLock() {
-        return lock.readLock().tryLock();
-    }
-
-    /**
-     * Unlocks the inner data structures for reading.
-     */
-    public void unlock() {
-        lock.readLock().unlock();
-    }
-
     /**
      * Returns the searched terms sorted according to their popularity.
      * @param field field for which to return the data
@@ -545,9 +769,12 @@ class SuggesterProjectData implements Closeable {
      * @return list of terms with their popularity
      */
     public List<Entry<BytesRef, Integer>> getSearchCountsSorted(final String field, int page, int pageSize) {
-        lock.readLock().lock();
+        Data current = acquireData();
+        if (current == null) {
+            return Collections.emptyList();
+        }
         try {
-            PopularityMap map = searchCountMaps.get(field);
+            PopularityMap map = current.searchCountMaps.get(field);
             if (map == null) {
                 logger.log(Level.FINE, "No search count map initialized for field {0}", field);
                 return Collections.emptyList();
@@ -555,7 +782,7 @@ class SuggesterProjectData implements Closeable {
 
             return map.getPopularityData(page, pageSize);
         } finally {
-            lock.readLock().unlock();
+            current.release();
         }
     }
 
@@ -568,30 +795,156 @@ class SuggesterProjectData implements Closeable {
                 '}';
     }
 
+    /**
+     * The WFSTs and popularity maps of the fields. Each {@link #init()} and {@link #rebuild()} builds a new
+     * instance and swaps it in, so the lookups never wait for them. The replaced instance closes its popularity
+     * maps and memory-mapped WFSTs which were not handed over to its successor once the operations which
+     * acquired it release it.
+     */
+    private static final class Data {
+
+        private final Set<String> fields;
+
+        /**
+         * {@code null} if the memory-mapped lookups are not mapped.
+         */
+        private final Map<String, Lookup> lookups;
+
+        private final Map<String, PopularityMap> searchCountMaps;
+
+        private final long mappedBytes;
+
+        /**
+         * One reference for being the current data plus one for each operation using it. Closed at zero.
+         */
+        private final AtomicInteger references;
+
+        private Data successor;
+
+        Data(
+                final Set<String> fields,
+                final Map<String, Lookup> lookups,
+                final Map<String, PopularityMap> searchCountMaps
+        ) {
+            this(fields, lookups, searchCountMaps, 1);
+        }
+
+        private Data(
+                final Set<String> fields,
+                final Map<String, Lookup> lookups,
+                final Map<String, PopularityMap> searchCountMaps,
+                final int references
+        ) {
+            this.fields = fields;
+            this.lookups = lookups;
+            this.searchCountMaps = searchCountMaps;
+            this.references = new AtomicInteger(references);
+
+            long bytes = 0;
+            if (lookups != null) {
+                for (Lookup lookup : lookups.values()) {
+                    if (lookup instanceof MappedWFSTLookup) {
+                        bytes += ((MappedWFSTLookup) lookup).getMappedBytes();
+                    }
+                }
+            }
+            this.mappedBytes = bytes;
+        }
+
+        /**
+         * @return data which cannot be acquired, used once the project data is closed
+         */
+        static Data closed() {
+            return new Data(Collections.emptySet(), Collections.emptyMap(), Collections.emptyMap(), 0);
+        }
+
+        boolean isClosed() {
+            return references.get() == 0;
+        }
+
+        /**
+         * @return lookup of the field or {@code null} if there is none or it is not mapped
+         */
+        Lookup getLookup(final String field) {
+            return lookups == null ? null : lookups.get(field);
+        }
+
+        /**
+         * @return {@code false} if this data is already closed
+         */
+        boolean acquire() {
+            int count;
+            do {
+                count = references.get();
+                if (count == 0) {
+                    return false;
+                }
+            } while (!references.compareAndSet(count, count + 1));
+            return true;
+        }
+
+        void release() {
+            if (references.decrementAndGet() == 0) {
+                close();
+            }
+        }
+
+        /**
+         * Releases the reference of being the current data.
+         * @param successor data which replaced this one
+         */
+        void retire(final Data successor) {
+            // The maps and lookups handed over must stay open until this data is closed as well.
+            if (successor.acquire()) {
+                this.successor = successor;
+            }
+            release();
+        }
+
+        private void close() {
+            for (PopularityMap map : searchCountMaps.values()) {
+                if (successor != null && successor.searchCountMaps.containsValue(map)) {
+                    continue;
+                }
+                try {
+                    map.close();
+                } catch (Exception e) {
+                    logger.log(Level.WARNING, "Could not properly close most popular completion data", e);
+                }
+            }
+            if (lookups != null) {
+                Map<String, Lookup> toClose = new HashMap<>(lookups);
+                if (successor != null && successor.lookups != null) {
+                    toClose.values().removeAll(successor.lookups.values());
+                }
+                closeLookups(toClose);
+            }
+            if (successor != null) {
+                successor.release();
+            }
+        }
+    }
+
     /**
      * An {@link InputIterator} for WFST data structure with most popular completion support.
      */
     private static class WFSTInputIterator implements InputIterator {
 
-        private final InputIterator wrapped;
-
-        private final IndexReader indexReader;
+        private final TermFrequencies frequencies;
 
-        private final String field;
+        private final int numDocs;
 
         private long termLengthAccumulator = 0;
 
         private final PopularityCounter searchCounts;
 
         WFSTInputIterator(
-                final InputIterator wrapped,
-                final IndexReader indexReader,
-                final String field,
+                final TermFrequencies frequencies,
+                final int numDocs,
                 final PopularityCounter searchCounts
         ) {
-            this.wrapped = wrapped;
-            this.indexReader = indexReader;
-            this.field = field;
+            this.frequencies = frequencies;
+            this.numDocs = numDocs;
             this.searchCounts = searchCounts;
         }
 
@@ -602,7 +955,7 @@ class SuggesterProjectData implements Closeable {
             if (last != null) {
                 int add = searchCounts.get(last);
 
-                return SuggesterUtils.computeScore(indexReader, field, last)
+                return SuggesterUtils.computeScore(frequencies.docFreq(), numDocs)
                         + add * SuggesterSearcher.TERM_ALREADY_SEARCHED_MULTIPLIER;
             }
 
@@ -611,31 +964,31 @@ class SuggesterProjectData implements Closeable {
 
         @Override
         public BytesRef payload() {
-            return wrapped.payload();
+            return null;
         }
 
         @Override
         public boolean hasPayloads() {
-            return wrapped.hasPayloads();
+            return false;
         }
 
         @Override
         public Set<BytesRef> contexts() {
-            return wrapped.contexts();
+            return null;
         }
 
         @Override
         public boolean hasContexts() {
-            return wrapped.hasContexts();
+            return false;
         }
 
         @Override
         public BytesRef next() throws IOException {
-            last = wrapped.next();
+            last = frequencies.next();
 
             // skip very large terms because of the buffer exception
             while (last != null && last.length > MAX_TERM_SIZE) {
-                last = wrapped.next();
+                last = frequencies.next();
             }
 
             if (last != null) {
@@ -40,6 +40,7 @@ import org.apache.lucene.search.Query;
 import org.apache.lucene.search.Scorable;
 import org.apache.lucene.search.ScoreMode;
 import org.apache.lucene.search.Scorer;
+import org.apache.lucene.search.Weight;
 import org.apache.lucene.util.BytesRef;
 import org.opengrok.suggest.popular.PopularityCounter;
 import org.opengrok.suggest.query.SuggesterRangeQuery;
@@ -50,7 +51,6 @@ import org.opengrok.suggest.query.SuggesterQuery;
 import org.opengrok.suggest.query.customized.CustomPhraseQuery;
 
 import java.io.IOException;
-import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Set;
@@ -69,8 +69,6 @@ class SuggesterSearcher extends IndexSearcher {
 
     private final int resultSize;
 
-    private boolean interrupted;
-
     private final int numDocs;
 
     /**
@@ -83,54 +81,49 @@ class SuggesterSearcher extends IndexSearcher {
         this.resultSize = resultSize;
     }
 
+    /**
+     * Rewrites the query on which the suggestions depend for
+     * {@link #suggest(Query, LeafReaderContext, String, SuggesterQuery, PopularityCounter)}.
+     * @param query query on which the suggestions depend, can be {@code null}
+     * @return rewritten query
+     * @throws IOException if the query could not be rewritten
+     */
+    Query rewriteQuery(final Query query) throws IOException {
+        if (query == null) {
+            return null;
+        }
+        return query.rewrite(getIndexReader());
+    }
+
     /**
      * Returns the suggestions for generic {@link SuggesterQuery} (almost all except lone
-     * {@link org.opengrok.suggest.query.SuggesterPrefixQuery} for which see {@link SuggesterProjectData}).
-     * @param query query on which the suggestions depend
+     * {@link org.opengrok.suggest.query.SuggesterPrefixQuery} for which see {@link SuggesterProjectData}) from one
+     * segment of the index. The segments can be searched concurrently. If the thread is interrupted, the suggestions
+     * found so far are returned.
+     * @param query query on which the suggestions depend rewritten by {@link #rewriteQuery(Query)}
+     * @param leafReaderContext segment of the index of this searcher
      * @param project name of the project
      * @param suggesterQuery query for the suggestions
-     * @param popularityCounter data structure which contains the number of times the terms were searched for. It is
-     * used to provide the most popular completion functionality.
-     * @return suggestions
+     * @param searchCounts data structure which contains the number of times the terms were searched for
+     * @return at most {@code resultSize} suggestions with the highest score in the segment, the scores of the same
+     * suggestions from different segments are to be summed
      */
-    public List<LookupResultItem> suggest(
+    List<LookupResultItem> suggest(
             final Query query,
+            final LeafReaderContext leafReaderContext,
             final String project,
             final SuggesterQuery suggesterQuery,
-            final PopularityCounter popularityCounter
+            final PopularityCounter searchCounts
     ) {
-        List<LookupResultItem> results = new ArrayList<>(resultSize * leafContexts.size());
-
-        Query rewrittenQuery = null;
-
         try {
-            if (query != null) {
-                rewrittenQuery = query.rewrite(getIndexReader());
-            }
+            return suggestFromSegment(query, leafReaderContext, project, suggesterQuery, searchCounts);
         } catch (IOException e) {
-            logger.log(Level.WARNING, "Could not rewrite query", e);
-            return results;
-        }
-
-        for (LeafReaderContext context : this.leafContexts) {
-            if (interrupted) {
-                break;
-            }
-            try {
-                results.addAll(suggest(rewrittenQuery, context, project, suggesterQuery, popularityCounter));
-            } catch (IOException e) {
-                logger.log(Level.WARNING, "Cannot perform suggester search", e);
-            }
-        }
-
-        if (results.size() > resultSize) {
-            return SuggesterUtils.combineResults(results, resultSize);
+            logger.log(Level.WARNING, "Cannot perform suggester search", e);
+            return Collections.emptyList();
         }
-
-        return results;
     }
 
-    private List<LookupResultItem> suggest(
+    private List<LookupResultItem> suggestFromSegment(
             final Query query,
             final LeafReaderContext leafReaderContext,
             final String project,
@@ -138,7 +131,6 @@ class SuggesterSearcher extends IndexSearcher {
             final PopularityCounter searchCounts
     ) throws IOException {
         if (Thread.currentThread().isInterrupted()) {
-            interrupted = true;
             return Collections.emptyList();
         }
 
@@ -156,7 +148,7 @@ class SuggesterSearcher extends IndexSearcher {
         ComplexQueryData complexQueryData = null;
         if (needsDocumentIds) {
             complexQueryData = getComplexQueryData(query, leafReaderContext);
-            if (interrupted) {
+            if (complexQueryData == null) { // interrupted
                 return Collections.emptyList();
             }
         }
@@ -174,7 +166,6 @@ class SuggesterSearcher extends IndexSearcher {
         BytesRef term = termsEnum.next();
         while (term != null) {
             if (Thread.currentThread().isInterrupted()) {
-                interrupted = true;
                 break;
             }
 
@@ -225,7 +216,9 @@ class SuggesterSearcher extends IndexSearcher {
 
         BitIntsHolder documentIds = new BitIntsHolder();
         try {
-            search(query, new Collector() {
+            // only the documents of the segment are needed
+            Weight weight = createWeight(rewrite(query), ScoreMode.COMPLETE_NO_SCORES, 1);
+            search(Collections.singletonList(leafReaderContext), weight, new Collector() {
                 @Override
                 public LeafCollector getLeafCollector(final LeafReaderContext context) {
                     return new LeafCollector() {
@@ -270,7 +263,6 @@ class SuggesterSearcher extends IndexSearcher {
             });
         } catch (IOException e) {
             if (Thread.currentThread().isInterrupted()) {
-                interrupted = true;
                 return null;
             } else {
                 logger.log(Level.WARNING, "Could not get document ids for " + query, e);
@@ -22,26 +22,21 @@
  */
 package org.opengrok.suggest;
 
-import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.Term;
 import org.apache.lucene.search.BooleanClause;
 import org.apache.lucene.search.BooleanQuery;
 import org.apache.lucene.search.PhraseQuery;
 import org.apache.lucene.search.Query;
 import org.apache.lucene.search.TermQuery;
-import org.apache.lucene.util.BytesRef;
 import org.opengrok.suggest.query.SuggesterPrefixQuery;
 import org.opengrok.suggest.query.SuggesterQuery;
 
-import java.io.IOException;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
-import java.util.logging.Level;
-import java.util.logging.Logger;
 
 /**
  * Provides some useful utility methods to be used in suggester module.
@@ -50,10 +45,6 @@ public class SuggesterUtils {
 
     public static final int NORMALIZED_DOCUMENT_FREQUENCY_MULTIPLIER = 1000;
 
-    private static final Logger logger = Logger.getLogger(SuggesterUtils.class.getName());
-
-    private static final long DEFAULT_TERM_WEIGHT = 0;
-
     private SuggesterUtils() {
     }
 
@@ -85,29 +76,15 @@ public class SuggesterUtils {
     }
 
     /**
-     * Computes score of the of the specified term.
-     * @param indexReader reader where the term occurs
-     * @param field term field
-     * @param bytesRef term text
+     * Computes score of a term.
+     * @param documentFrequency number of documents which contain the term
+     * @param numDocs number of documents in the index
      * @return score for the term
      */
-    static long computeScore(final IndexReader indexReader, final String field, final BytesRef bytesRef) {
-        try {
-            Term term = new Term(field, bytesRef);
-            double normalizedDocumentFrequency = computeNormalizedDocumentFrequency(indexReader, term);
-
-            return (long) (normalizedDocumentFrequency * NORMALIZED_DOCUMENT_FREQUENCY_MULTIPLIER);
-        } catch (IOException e) {
-            logger.log(Level.WARNING, "Could not compute weight for " + bytesRef, e);
-        }
-        return DEFAULT_TERM_WEIGHT;
-    }
-
-    private static double computeNormalizedDocumentFrequency(final IndexReader indexReader, final Term term)
-            throws IOException {
-        int documentFrequency = indexReader.docFreq(term);
+    static long computeScore(final int documentFrequency, final int numDocs) {
+        double normalizedDocumentFrequency = ((double) documentFrequency) / numDocs;
 
-        return ((double) documentFrequency) / indexReader.numDocs();
+        return (long) (normalizedDocumentFrequency * NORMALIZED_DOCUMENT_FREQUENCY_MULTIPLIER);
     }
 
     /**
@@ -0,0 +1,309 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License (the "License").
+ * You may not use this file except in compliance with the License.
+ *
+ * See LICENSE.txt included in this distribution for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at LICENSE.txt.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information: Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ */
+
+/*
+ * Copyright (c) 2021, Oracle and/or its affiliates. All rights reserved.
+ */
+package org.opengrok.suggest;
+
+import org.apache.lucene.index.FilterLeafReader;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.SegmentReader;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.BytesRefBuilder;
+import org.apache.lucene.util.PriorityQueue;
+import org.apache.lucene.util.StringHelper;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Iterates the terms of a field in sorted order together with their document frequencies and stores them along
+ * with the identifiers of the index segments they were read from. The next time, only the terms of the segments
+ * added to the index since are read and merged with the stored ones.
+ * <p>
+ * The document frequency of a term is the sum of its document frequencies in the segments, which do not change
+ * when documents are deleted. Once a segment which was read is gone, e.g. because it was merged, the stored
+ * frequencies cannot be used and the terms of all the segments are read again.
+ */
+final class TermFrequencies implements Closeable {
+
+    private static final Logger logger = Logger.getLogger(TermFrequencies.class.getName());
+
+    private final TermSourceQueue queue;
+
+    private final DataOutputStream out;
+
+    private final BytesRefBuilder term = new BytesRefBuilder();
+
+    private int docFreq;
+
+    private final boolean incremental;
+
+    /**
+     * @param stored file with the stored frequencies of the field, need not exist
+     * @param indexReader reader of the index
+     * @param field field of the terms
+     * @param output file where to store the frequencies, must be different from {@code stored}
+     * @throws IOException if the index or the stored frequencies could not be read or the output written
+     */
+    TermFrequencies(final File stored, final IndexReader indexReader, final String field, final File output)
+            throws IOException {
+        List<String> segmentIds = new ArrayList<>();
+        for (LeafReaderContext context : indexReader.leaves()) {
+            segmentIds.add(getSegmentId(context.reader()));
+        }
+
+        Set<String> storedSegmentIds = readSegmentIds(stored);
+        incremental = storedSegmentIds != null && !segmentIds.contains(null)
+                && segmentIds.containsAll(storedSegmentIds);
+
+        queue = new TermSourceQueue(indexReader.leaves().size() + 1);
+        try {
+            if (incremental) {
+                queue.addIfNotEmpty(new StoredTermSource(stored));
+            }
+            for (LeafReaderContext context : indexReader.leaves()) {
+                if (incremental && storedSegmentIds.contains(getSegmentId(context.reader()))) {
+                    continue;
+                }
+                Terms terms = context.reader().terms(field);
+                if (terms != null) {
+                    queue.addIfNotEmpty(new SegmentTermSource(terms.iterator()));
+                }
+            }
+
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(output)));
+            out.writeInt(segmentIds.size());
+            for (String segmentId : segmentIds) {
+                out.writeUTF(segmentId == null ? "" : segmentId);
+            }
+        } catch (IOException | RuntimeException e) {
+            queue.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return whether only the terms of the new segments are read
+     */
+    boolean isIncremental() {
+        return incremental;
+    }
+
+    /**
+     * Moves to the next term and stores it.
+     * @return next term or {@code null} if there are no more terms
+     * @throws IOException if the terms could not be read or stored
+     */
+    BytesRef next() throws IOException {
+        if (queue.size() == 0) {
+            return null;
+        }
+
+        term.copyBytes(queue.top().term);
+        docFreq = 0;
+        while (queue.size() > 0 && queue.top().term.equals(term.get())) {
+            TermSource source = queue.top();
+            docFreq += source.docFreq;
+            if (source.next()) {
+                queue.updateTop();
+            } else {
+                queue.pop().close();
+            }
+        }
+
+        out.writeBoolean(true);
+        out.writeInt(term.length());
+        out.write(term.bytes(), 0, term.length());
+        out.writeInt(docFreq);
+
+        return term.get();
+    }
+
+    /**
+     * @return document frequency of the current term
+     */
+    int docFreq() {
+        return docFreq;
+    }
+
+    /**
+     * Finishes the stored file. It is complete only if all the terms were iterated.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            queue.close();
+        } finally {
+            try {
+                out.writeBoolean(false);
+            } finally {
+                out.close();
+            }
+        }
+    }
+
+    private static String getSegmentId(final LeafReader reader) {
+        LeafReader unwrapped = FilterLeafReader.unwrap(reader);
+        if (unwrapped instanceof SegmentReader) {
+            return StringHelper.idToString(((SegmentReader) unwrapped).getSegmentInfo().info.getId());
+        }
+        return null;
+    }
+
+    /**
+     * @return identifiers of the segments of the stored frequencies or {@code null} if they cannot be used
+     */
+    private static Set<String> readSegmentIds(final File stored) {
+        if (!stored.exists()) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(stored)))) {
+            return readSegmentIds(in);
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Could not read stored term frequencies " + stored, e);
+            return null;
+        }
+    }
+
+    private static Set<String> readSegmentIds(final DataInputStream in) throws IOException {
+        int count = in.readInt();
+        Set<String> segmentIds = new HashSet<>();
+        for (int i = 0; i < count; i++) {
+            segmentIds.add(in.readUTF());
+        }
+        return segmentIds;
+    }
+
+    private abstract static class TermSource implements Closeable {
+
+        BytesRef term;
+
+        int docFreq;
+
+        /**
+         * @return {@code false} if there are no more terms
+         */
+        abstract boolean next() throws IOException;
+
+        @Override
+        public void close() throws IOException {
+        }
+    }
+
+    private static class SegmentTermSource extends TermSource {
+
+        private final TermsEnum termsEnum;
+
+        SegmentTermSource(final TermsEnum termsEnum) {
+            this.termsEnum = termsEnum;
+        }
+
+        @Override
+        boolean next() throws IOException {
+            term = termsEnum.next();
+            if (term == null) {
+                return false;
+            }
+            docFreq = termsEnum.docFreq();
+            return true;
+        }
+    }
+
+    private static class StoredTermSource extends TermSource {
+
+        private final DataInputStream in;
+
+        private final BytesRefBuilder builder = new BytesRefBuilder();
+
+        StoredTermSource(final File stored) throws IOException {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(stored)));
+            try {
+                readSegmentIds(in);
+            } catch (IOException e) {
+                in.close();
+                throw e;
+            }
+        }
+
+        @Override
+        boolean next() throws IOException {
+            if (!in.readBoolean()) {
+                return false;
+            }
+            int length = in.readInt();
+            builder.grow(length);
+            in.readFully(builder.bytes(), 0, length);
+            builder.setLength(length);
+            term = builder.get();
+            docFreq = in.readInt();
+            return true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+
+    private static class TermSourceQueue extends PriorityQueue<TermSource> implements Closeable {
+
+        TermSourceQueue(final int maxSize) {
+            super(maxSize);
+        }
+
+        @Override
+        protected boolean lessThan(final TermSource a, final TermSource b) {
+            return a.term.compareTo(b.term) < 0;
+        }
+
+        void addIfNotEmpty(final TermSource source) throws IOException {
+            if (source.next()) {
+                add(source);
+            } else {
+                source.close();
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            while (size() > 0) {
+                pop().close();
+            }
+        }
+    }
+}
@@ -142,6 +142,40 @@ public class ChronicleMapAdapter implements PopularityMap {
         }
     }
 
+    /**
+     * Creates a resized copy of the underlying {@link ChronicleMap} persisted to the same file. Unlike
+     * {@link #resize(int, double)}, this instance stays usable until it is closed, however, the increments made
+     * to it after the copy was created are not reflected in the copy.
+     * @param newMapSize new entries count
+     * @param newMapAvgKey new average key size
+     * @return resized copy
+     * @throws IOException if some error occurred, e.g. the file of the mapped map cannot be deleted on this platform
+     */
+    public ChronicleMapAdapter resizedCopy(final int newMapSize, final double newMapAvgKey) throws IOException {
+        if (newMapSize < 0) {
+            throw new IllegalArgumentException("Cannot resize chronicle map to negative size");
+        }
+        if (newMapAvgKey < 0) {
+            throw new IllegalArgumentException("Cannot resize chronicle map to map with negative key size");
+        }
+
+        Path tempFile = Files.createTempFile("opengrok", "chronicle");
+
+        try {
+            map.getAll(tempFile.toFile());
+
+            // the existing mapping stays valid after the file is deleted
+            Files.delete(chronicleMapFile.toPath());
+
+            ChronicleMapAdapter copy = new ChronicleMapAdapter(map.name(), newMapAvgKey, newMapSize,
+                    chronicleMapFile);
+            copy.map.putAll(tempFile.toFile());
+            return copy;
+        } finally {
+            Files.delete(tempFile);
+        }
+    }
+
     /**
      * Closes the opened {@link ChronicleMap}.
      */
@@ -0,0 +1,116 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License (the "License").
+ * You may not use this file except in compliance with the License.
+ *
+ * See LICENSE.txt included in this distribution for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at LICENSE.txt.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information: Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ */
+
+/*
+ * Copyright (c) 2021, Oracle and/or its affiliates. All rights reserved.
+ */
+package org.opengrok.suggest;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.commons.io.FileUtils;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.store.ByteBuffersDirectory;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.util.BytesRef;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class SearchCountBufferTest {
+
+    private static final String FIELD = "test";
+
+    private Directory dir;
+
+    private Path tempDir;
+
+    private SuggesterProjectData data;
+
+    private final MeterRegistry registry = new SimpleMeterRegistry();
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        dir = new ByteBuffersDirectory();
+        tempDir = Files.createTempDirectory("test");
+
+        try (IndexWriter iw = new IndexWriter(dir, new IndexWriterConfig())) {
+            Document doc = new Document();
+            doc.add(new TextField(FIELD, "term1 term2", Field.Store.NO));
+
+            iw.addDocument(doc);
+        }
+
+        data = new SuggesterProjectData(dir, tempDir, true, Collections.singleton(FIELD));
+        data.init();
+    }
+
+    @AfterEach
+    public void tearDown() throws IOException {
+        data.close();
+        FileUtils.deleteDirectory(tempDir.toFile());
+    }
+
+    @Test
+    public void testIncrementsCoalescedUntilFlush() {
+        SearchCountBuffer buffer = new SearchCountBuffer(10, Duration.ofHours(1), registry);
+
+        buffer.increment(data, new Term(FIELD, "term1"));
+        buffer.increment(data, new Term(FIELD, "term1"));
+        buffer.increment(data, new Term(FIELD, "term1"));
+
+        assertEquals(0, data.getSearchCounts(FIELD).get(new BytesRef("term1")));
+        assertEquals(1, registry.get("suggester.search.count.pending").gauge().value());
+
+        buffer.flush();
+
+        assertEquals(3, data.getSearchCounts(FIELD).get(new BytesRef("term1")));
+        assertEquals(0, registry.get("suggester.search.count.pending").gauge().value());
+
+        buffer.close();
+    }
+
+    @Test
+    public void testNewTermsDroppedWhenFull() {
+        SearchCountBuffer buffer = new SearchCountBuffer(1, Duration.ofHours(1), registry);
+
+        buffer.increment(data, new Term(FIELD, "term1"));
+        buffer.increment(data, new Term(FIELD, "term2"));
+        buffer.increment(data, new Term(FIELD, "term1"));
+
+        buffer.close();
+
+        assertEquals(2, data.getSearchCounts(FIELD).get(new BytesRef("term1")));
+        assertEquals(0, data.getSearchCounts(FIELD).get(new BytesRef("term2")));
+        assertEquals(1, registry.get("suggester.search.count.dropped").counter().count());
+    }
+}
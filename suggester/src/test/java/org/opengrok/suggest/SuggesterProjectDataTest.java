@@ -22,6 +22,7 @@
  */
 package org.opengrok.suggest;
 
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.apache.commons.io.FileUtils;
 import org.apache.lucene.document.Document;
 import org.apache.lucene.document.Field;
@@ -48,6 +49,7 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map.Entry;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.collection.IsIterableContainingInAnyOrder.containsInAnyOrder;
@@ -162,6 +164,75 @@ public class SuggesterProjectDataTest {
         assertThat(suggestions, Matchers.containsInAnyOrder("term3", "term4", "term5"));
     }
 
+    @Test
+    public void testSearchCountsKeptWhenRebuildResizesMap() throws IOException {
+        addText(FIELD, "term1 term2");
+
+        init(true);
+
+        data.incrementSearchCount(new Term(FIELD, "term2"), 10);
+
+        String moreTerms = IntStream.range(0, 1000).mapToObj(i -> "other" + i).collect(Collectors.joining(" "));
+        addText(FIELD, moreTerms);
+
+        data.rebuild();
+
+        assertEquals(10, data.getSearchCounts(FIELD).get(new BytesRef("term2")));
+        assertThat(getSuggestions(FIELD, "t", 10), Matchers.contains("term2", "term1"));
+    }
+
+    @Test
+    public void testMappedLookupSameAsHeap() throws IOException {
+        addText(FIELD, "term1 term2 term1 text term3 term1 term2");
+
+        init(false);
+        List<Lookup.LookupResult> expected = data.lookup(FIELD, "te", 10);
+        data.close();
+
+        data = new SuggesterProjectData(dir, tempDir, false, Collections.singleton(FIELD),
+                new ResidentLookups(1, new SimpleMeterRegistry()));
+        data.init();
+        assertEquals(0, data.getMappedBytes());
+
+        List<Lookup.LookupResult> results = data.lookup(FIELD, "te", 10);
+
+        assertEquals(expected.stream().map(r -> r.key + ":" + r.value).collect(Collectors.toList()),
+                results.stream().map(r -> r.key + ":" + r.value).collect(Collectors.toList()));
+        assertTrue(data.getMappedBytes() > 0);
+    }
+
+    @Test
+    public void testLeastRecentlyUsedProjectUnmapped() throws IOException {
+        ResidentLookups residentLookups = new ResidentLookups(1, new SimpleMeterRegistry());
+
+        addText(FIELD, "term1 term2");
+        data = new SuggesterProjectData(dir, tempDir, false, Collections.singleton(FIELD), residentLookups);
+        data.init();
+
+        Directory otherDir = new ByteBuffersDirectory();
+        try (IndexWriter iw = new IndexWriter(otherDir, new IndexWriterConfig())) {
+            Document doc = new Document();
+            doc.add(new TextField(FIELD, "term3", Field.Store.NO));
+            iw.addDocument(doc);
+        }
+        try (SuggesterProjectData other = new SuggesterProjectData(otherDir, tempDir.resolve("other"), false,
+                Collections.singleton(FIELD), residentLookups)) {
+            other.init();
+
+            assertThat(getSuggestions(FIELD, "t", 10), containsInAnyOrder("term1", "term2"));
+            assertEquals(1, residentLookups.getResidentProjects());
+
+            assertEquals(1, other.lookup(FIELD, "t", 10).size());
+            assertEquals(1, residentLookups.getResidentProjects());
+            assertEquals(0, data.getMappedBytes());
+            assertEquals(other.getMappedBytes(), residentLookups.getResidentBytes());
+
+            // mapped again on the next lookup
+            assertThat(getSuggestions(FIELD, "t", 10), containsInAnyOrder("term1", "term2"));
+            assertEquals(0, other.getMappedBytes());
+        }
+    }
+
     @Test
     public void testDifferentPrefixes() throws IOException {
         addText(FIELD, "abc bbc cbc dbc efc gfc");
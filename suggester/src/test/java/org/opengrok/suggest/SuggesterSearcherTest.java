@@ -29,7 +29,9 @@ import org.apache.lucene.index.DirectoryReader;
 import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.IndexWriter;
 import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.LeafReaderContext;
 import org.apache.lucene.index.Term;
+import org.apache.lucene.search.Query;
 import org.apache.lucene.search.TermQuery;
 import org.apache.lucene.store.ByteBuffersDirectory;
 import org.apache.lucene.store.Directory;
@@ -37,14 +39,17 @@ import org.apache.lucene.util.BytesRef;
 import org.junit.jupiter.api.AfterAll;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
+import org.opengrok.suggest.popular.PopularityCounter;
 import org.opengrok.suggest.query.SuggesterFuzzyQuery;
 import org.opengrok.suggest.query.SuggesterPhraseQuery;
 import org.opengrok.suggest.query.SuggesterPrefixQuery;
+import org.opengrok.suggest.query.SuggesterQuery;
 import org.opengrok.suggest.query.SuggesterRangeQuery;
 import org.opengrok.suggest.query.SuggesterRegexpQuery;
 import org.opengrok.suggest.query.SuggesterWildcardQuery;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.stream.Collectors;
@@ -83,9 +88,37 @@ public class SuggesterSearcherTest {
         dir.close();
     }
 
+    /**
+     * Searches the segments one after another, see {@link Suggester} for the concurrent search.
+     */
+    static List<LookupResultItem> suggest(
+            final SuggesterSearcher searcher,
+            final Query query,
+            final String project,
+            final SuggesterQuery suggesterQuery,
+            final PopularityCounter searchCounts,
+            final int resultSize
+    ) throws IOException {
+        Query rewrittenQuery = searcher.rewriteQuery(query);
+        List<LookupResultItem> results = new ArrayList<>();
+        for (LeafReaderContext context : searcher.getIndexReader().leaves()) {
+            results.addAll(searcher.suggest(rewrittenQuery, context, project, suggesterQuery, searchCounts));
+        }
+        return SuggesterUtils.combineResults(results, resultSize);
+    }
+
+    private static List<LookupResultItem> suggest(
+            final Query query,
+            final String project,
+            final SuggesterQuery suggesterQuery,
+            final PopularityCounter searchCounts
+    ) throws IOException {
+        return suggest(searcher, query, project, suggesterQuery, searchCounts, 10);
+    }
+
     @Test
-    public void suggesterPrefixQueryTest() {
-        List<LookupResultItem> suggestions = searcher.suggest(new TermQuery(new Term("test", "test")), "test",
+    public void suggesterPrefixQueryTest() throws IOException {
+        List<LookupResultItem> suggestions = suggest(new TermQuery(new Term("test", "test")), "test",
                 new SuggesterPrefixQuery(new Term("test", "o")), k -> 0);
 
         List<String> tokens = suggestions.stream().map(LookupResultItem::getPhrase).collect(Collectors.toList());
@@ -94,8 +127,8 @@ public class SuggesterSearcherTest {
     }
 
     @Test
-    public void suggesterWildcardQueryTest() {
-        List<LookupResultItem> suggestions = searcher.suggest(new TermQuery(new Term("test", "test")), "test",
+    public void suggesterWildcardQueryTest() throws IOException {
+        List<LookupResultItem> suggestions = suggest(new TermQuery(new Term("test", "test")), "test",
                 new SuggesterWildcardQuery(new Term("test", "?pengrok")), k -> 0);
 
         List<String> tokens = suggestions.stream().map(LookupResultItem::getPhrase).collect(Collectors.toList());
@@ -104,8 +137,8 @@ public class SuggesterSearcherTest {
     }
 
     @Test
-    public void suggesterRegexpQueryTest() {
-        List<LookupResultItem> suggestions = searcher.suggest(new TermQuery(new Term("test", "test")), "test",
+    public void suggesterRegexpQueryTest() throws IOException {
+        List<LookupResultItem> suggestions = suggest(new TermQuery(new Term("test", "test")), "test",
                 new SuggesterRegexpQuery(new Term("test", ".pengrok")), k -> 0);
 
         List<String> tokens = suggestions.stream().map(LookupResultItem::getPhrase).collect(Collectors.toList());
@@ -114,8 +147,8 @@ public class SuggesterSearcherTest {
     }
 
     @Test
-    public void suggesterFuzzyQueryTest() {
-        List<LookupResultItem> suggestions = searcher.suggest(new TermQuery(new Term("test", "test")), "test",
+    public void suggesterFuzzyQueryTest() throws IOException {
+        List<LookupResultItem> suggestions = suggest(new TermQuery(new Term("test", "test")), "test",
                 new SuggesterFuzzyQuery(new Term("test", "opengroc"), 1, 0), k -> 0);
 
         List<String> tokens = suggestions.stream().map(LookupResultItem::getPhrase).collect(Collectors.toList());
@@ -124,10 +157,10 @@ public class SuggesterSearcherTest {
     }
 
     @Test
-    public void suggesterPhraseQueryTest() {
+    public void suggesterPhraseQueryTest() throws IOException {
         SuggesterPhraseQuery q = new SuggesterPhraseQuery("test", "abc", Arrays.asList("opengrok", "openabc"), 0);
 
-        List<LookupResultItem> suggestions = searcher.suggest(q.getPhraseQuery(), "test",
+        List<LookupResultItem> suggestions = suggest(q.getPhraseQuery(), "test",
                 q.getSuggesterQuery(), k -> 0);
 
         List<String> tokens = suggestions.stream().map(LookupResultItem::getPhrase).collect(Collectors.toList());
@@ -136,11 +169,11 @@ public class SuggesterSearcherTest {
     }
 
     @Test
-    public void testRangeQueryUpper() {
+    public void testRangeQueryUpper() throws IOException {
         SuggesterRangeQuery q = new SuggesterRangeQuery("test", new BytesRef("opengrok"),
                 new BytesRef("t"), true, true, SuggesterRangeQuery.SuggestPosition.UPPER);
 
-        List<LookupResultItem> suggestions = searcher.suggest(null, "test", q, k -> 0);
+        List<LookupResultItem> suggestions = suggest(null, "test", q, k -> 0);
 
         List<String> tokens = suggestions.stream().map(LookupResultItem::getPhrase).collect(Collectors.toList());
 
@@ -148,11 +181,11 @@ public class SuggesterSearcherTest {
     }
 
     @Test
-    public void testRangeQueryLower() {
+    public void testRangeQueryLower() throws IOException {
         SuggesterRangeQuery q = new SuggesterRangeQuery("test", new BytesRef("o"),
                 new BytesRef("test"), true, true, SuggesterRangeQuery.SuggestPosition.LOWER);
 
-        List<LookupResultItem> suggestions = searcher.suggest(null, "test", q, k -> 0);
+        List<LookupResultItem> suggestions = suggest(null, "test", q, k -> 0);
 
         List<String> tokens = suggestions.stream().map(LookupResultItem::getPhrase).collect(Collectors.toList());
 
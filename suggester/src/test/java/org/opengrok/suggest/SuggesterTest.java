@@ -40,7 +40,9 @@ import org.apache.lucene.store.Directory;
 import org.apache.lucene.store.FSDirectory;
 import org.apache.lucene.util.BytesRef;
 import org.junit.jupiter.api.Test;
+import org.opengrok.suggest.query.SuggesterPhraseQuery;
 import org.opengrok.suggest.query.SuggesterPrefixQuery;
+import org.opengrok.suggest.query.SuggesterQuery;
 import org.opengrok.suggest.query.SuggesterWildcardQuery;
 
 import java.io.IOException;
@@ -49,6 +51,7 @@ import java.nio.file.Path;
 import java.time.Duration;
 import java.util.AbstractMap.SimpleEntry;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
@@ -60,6 +63,7 @@ import static org.awaitility.Awaitility.await;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.collection.IsIterableContainingInAnyOrder.containsInAnyOrder;
 import static org.hamcrest.collection.IsIterableContainingInOrder.contains;
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
@@ -103,7 +107,7 @@ public class SuggesterTest {
     @Test
     public void testNullSuggesterDir() {
         assertThrows(IllegalArgumentException.class,
-                () -> new Suggester(null, 10, Duration.ofMinutes(5), false, true, null, Integer.MAX_VALUE, 1, registry));
+                () -> new Suggester(null, 10, Duration.ofMinutes(5), false, true, null, Integer.MAX_VALUE, 1, false, 1, registry));
     }
 
     @Test
@@ -111,7 +115,7 @@ public class SuggesterTest {
         assertThrows(IllegalArgumentException.class, () -> {
             Path tempFile = Files.createTempFile("opengrok", "test");
             try {
-                new Suggester(tempFile.toFile(), 10, null, false, true, null, Integer.MAX_VALUE, 1, registry);
+                new Suggester(tempFile.toFile(), 10, null, false, true, null, Integer.MAX_VALUE, 1, false, 1, registry);
             } finally {
                 tempFile.toFile().delete();
             }
@@ -123,7 +127,7 @@ public class SuggesterTest {
         assertThrows(IllegalArgumentException.class, () -> {
             Path tempFile = Files.createTempFile("opengrok", "test");
             try {
-                new Suggester(tempFile.toFile(), 10, Duration.ofMinutes(-4), false, true, null, Integer.MAX_VALUE, 1, registry);
+                new Suggester(tempFile.toFile(), 10, Duration.ofMinutes(-4), false, true, null, Integer.MAX_VALUE, 1, false, 1, registry);
             } finally {
                 tempFile.toFile().delete();
             }
@@ -131,17 +135,27 @@ public class SuggesterTest {
     }
 
     private SuggesterTestData initSuggester() throws IOException {
+        return initSuggester(Integer.MAX_VALUE, "term1 term2 term3");
+    }
+
+    /**
+     * @param timeThreshold time in milliseconds after which the suggestions requests time out
+     * @param texts texts of the documents, each of them is added in a separate segment
+     */
+    private SuggesterTestData initSuggester(final int timeThreshold, final String... texts) throws IOException {
         Path tempIndexDir = Files.createTempDirectory("opengrok");
         Directory dir = FSDirectory.open(tempIndexDir);
 
-        addText(dir, "term1 term2 term3");
+        for (String text : texts) {
+            addText(dir, text);
+        }
 
         dir.close();
 
         Path tempSuggesterDir = Files.createTempDirectory("opengrok");
 
         Suggester s = new Suggester(tempSuggesterDir.toFile(), 10, Duration.ofMinutes(1), true,
-                true, Collections.singleton("test"), Integer.MAX_VALUE, Runtime.getRuntime().availableProcessors(), registry);
+                true, Collections.singleton("test"), timeThreshold, Runtime.getRuntime().availableProcessors(), false, 1, registry);
 
         s.init(Collections.singleton(new Suggester.NamedIndexDir("test", tempIndexDir)));
 
@@ -215,7 +229,7 @@ public class SuggesterTest {
 
         t.s = new Suggester(t.suggesterDir.toFile(), 10, Duration.ofMinutes(1), false,
                 true, Collections.singleton("test"), Integer.MAX_VALUE,
-                Runtime.getRuntime().availableProcessors(), registry);
+                Runtime.getRuntime().availableProcessors(), false, 1, registry);
 
         t.s.init(Collections.singleton(t.getNamedIndexDir()));
 
@@ -257,6 +271,62 @@ public class SuggesterTest {
         t.close();
     }
 
+    private static Map<String, Long> getScores(final List<LookupResultItem> items) {
+        return items.stream().collect(Collectors.toMap(LookupResultItem::getPhrase, LookupResultItem::getScore));
+    }
+
+    private static List<LookupResultItem> searchConcurrently(
+            final SuggesterTestData t,
+            final Suggester.NamedIndexReader ir,
+            final SuggesterQuery suggesterQuery,
+            final Query query
+    ) throws IOException {
+        Suggester.Suggestions suggestions = t.s.search(Collections.singletonList(ir), suggesterQuery, query);
+        assertFalse(suggestions.isPartialResult());
+
+        List<LookupResultItem> sequential = SuggesterSearcherTest.suggest(new SuggesterSearcher(ir.getReader(), 10),
+                query, ir.getName(), suggesterQuery, k -> 0, 10);
+        assertEquals(getScores(sequential), getScores(suggestions.getItems()));
+
+        return suggestions.getItems();
+    }
+
+    @Test
+    public void testComplexQuerySearchMultipleSegments() throws IOException {
+        SuggesterTestData t = initSuggester(Integer.MAX_VALUE,
+                "term1 term2 term3", "term1 term4 abc", "term2 term1 term3");
+
+        Suggester.NamedIndexReader ir = t.getNamedIndexReader();
+        assertEquals(3, ir.getReader().leaves().size());
+
+        SuggesterPhraseQuery phraseQuery = new SuggesterPhraseQuery("test", "abc",
+                Arrays.asList("term1", "termabc"), 0);
+        List<LookupResultItem> res = searchConcurrently(t, ir, phraseQuery.getSuggesterQuery(),
+                phraseQuery.getPhraseQuery());
+        assertThat(res.stream().map(LookupResultItem::getPhrase).collect(Collectors.toList()),
+                containsInAnyOrder("term2", "term3", "term4"));
+
+        res = searchConcurrently(t, ir, new SuggesterPrefixQuery(new Term("test", "term")),
+                new TermQuery(new Term("test", "term2")));
+        assertThat(res.stream().map(LookupResultItem::getPhrase).collect(Collectors.toList()),
+                containsInAnyOrder("term1", "term3"));
+
+        t.close();
+    }
+
+    @Test
+    public void testComplexQuerySearchTimeout() throws IOException {
+        // no time at all so that the search of every segment is cancelled
+        SuggesterTestData t = initSuggester(0, "term1 term2 term3", "term1 term4");
+
+        Suggester.Suggestions suggestions = t.s.search(Collections.singletonList(t.getNamedIndexReader()),
+                new SuggesterWildcardQuery(new Term("test", "*1")), null);
+
+        assertTrue(suggestions.isPartialResult());
+
+        t.close();
+    }
+
     @Test
     @SuppressWarnings("unchecked") // for contains()
     public void testOnSearch() throws IOException {
@@ -268,6 +338,7 @@ public class SuggesterTest {
                 .build();
 
         t.s.onSearch(Collections.singleton("test"), q);
+        t.s.flushSearchCounts();
 
         List<Entry<BytesRef, Integer>> res = t.s.getSearchCounts("test", "test", 0, 10);
 
@@ -0,0 +1,147 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the
+ * Common Development and Distribution License (the "License").
+ * You may not use this file except in compliance with the License.
+ *
+ * See LICENSE.txt included in this distribution for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each
+ * file and include the License file at LICENSE.txt.
+ * If applicable, add the following below this CDDL HEADER, with the
+ * fields enclosed by brackets "[]" replaced with your own identifying
+ * information: Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ */
+
+/*
+ * Copyright (c) 2021, Oracle and/or its affiliates. All rights reserved.
+ */
+package org.opengrok.suggest;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.store.ByteBuffersDirectory;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.util.BytesRef;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TermFrequenciesTest {
+
+    private static final String FIELD = "test";
+
+    private Directory dir;
+
+    private Path tempDir;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        dir = new ByteBuffersDirectory();
+        tempDir = Files.createTempDirectory("test");
+    }
+
+    @AfterEach
+    public void tearDown() throws IOException {
+        dir.close();
+        FileUtils.deleteDirectory(tempDir.toFile());
+    }
+
+    @Test
+    public void testNewSegmentsMerged() throws IOException {
+        addTexts("term1 term2", "term2 term3");
+
+        Map<String, Integer> first = read(false);
+        assertEquals(Map.of("term1", 1, "term2", 2, "term3", 1), first);
+
+        addTexts("term0 term3");
+        deleteText("term1");
+
+        // deleted documents are counted until the segment is merged
+        Map<String, Integer> second = read(true);
+        assertEquals(Map.of("term0", 1, "term1", 1, "term2", 2, "term3", 2), second);
+        assertEquals("term0,term1,term2,term3", String.join(",", second.keySet()));
+    }
+
+    @Test
+    public void testAllTermsReadAfterMerge() throws IOException {
+        addTexts("term1 term2", "term2 term3");
+        read(false);
+
+        addTexts("term4");
+        deleteText("term1");
+        try (IndexWriter iw = new IndexWriter(dir, new IndexWriterConfig())) {
+            iw.forceMerge(1);
+        }
+
+        assertEquals(Map.of("term2", 1, "term3", 1, "term4", 1), read(false));
+    }
+
+    /**
+     * Reads the frequencies and replaces the stored ones as the suggester does.
+     */
+    private Map<String, Integer> read(final boolean expectIncremental) throws IOException {
+        File stored = tempDir.resolve(FIELD + ".freqs").toFile();
+        File output = tempDir.resolve(FIELD + ".freqs.tmp").toFile();
+
+        Map<String, Integer> result = new LinkedHashMap<>();
+        try (IndexReader reader = DirectoryReader.open(dir);
+             TermFrequencies frequencies = new TermFrequencies(stored, reader, FIELD, output)) {
+            if (expectIncremental) {
+                assertTrue(frequencies.isIncremental());
+            } else {
+                assertFalse(frequencies.isIncremental());
+            }
+
+            BytesRef term;
+            while ((term = frequencies.next()) != null) {
+                result.put(term.utf8ToString(), frequencies.docFreq());
+            }
+        }
+        Files.move(output.toPath(), stored.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        return result;
+    }
+
+    /**
+     * Adds the documents as one segment.
+     */
+    private void addTexts(final String... texts) throws IOException {
+        try (IndexWriter iw = new IndexWriter(dir, new IndexWriterConfig())) {
+            for (String text : texts) {
+                Document doc = new Document();
+                doc.add(new TextField(FIELD, text, Field.Store.NO));
+
+                iw.addDocument(doc);
+            }
+        }
+    }
+
+    private void deleteText(final String term) throws IOException {
+        try (IndexWriter iw = new IndexWriter(dir, new IndexWriterConfig())) {
+            iw.deleteDocuments(new Term(FIELD, term));
+        }
+    }
+}